@@ -15,6 +15,11 @@ android {
         versionName = "1.0"
 
         testInstrumentationRunner = "androidx.test.runner.AndroidJUnitRunner"
+
+        // Server that receives coffee shop submissions, e.g. -PsubmissionEndpoint=https://...;
+        // empty keeps them queued on the device
+        buildConfigField("String", "SUBMISSION_ENDPOINT",
+            "\"${providers.gradleProperty("submissionEndpoint").getOrElse("")}\"")
     }
 
     // Configure signing with keystore
@@ -42,6 +47,10 @@ android {
         debug {
             // Default debug signing config is automatically applied
             // No explicit signingConfig needed for debug
+
+            // A submission server on the development machine, as seen from the emulator
+            buildConfigField("String", "SUBMISSION_ENDPOINT",
+                "\"${providers.gradleProperty("submissionEndpoint").getOrElse("http://10.0.2.2:8080/submissions")}\"")
         }
     }
     compileOptions {
@@ -52,6 +61,16 @@ android {
     kotlinOptions {
         jvmTarget = "11"
     }
+    
+    // BuildConfig.DEBUG compiles tracing out of release builds; SUBMISSION_ENDPOINT is set above
+    buildFeatures {
+        buildConfig = true
+    }
+    
+    // JVM unit tests run against stubs: android.util.Log and friends do nothing
+    testOptions {
+        unitTests.isReturnDefaultValues = true
+    }
 }
 
 dependencies {
@@ -59,11 +78,13 @@ dependencies {
     implementation("androidx.appcompat:appcompat:1.6.1")
     implementation("com.google.android.material:material:1.11.0")
     implementation("androidx.constraintlayout:constraintlayout:2.1.4")
+    implementation("androidx.lifecycle:lifecycle-viewmodel:2.6.2")
+    implementation("androidx.lifecycle:lifecycle-viewmodel-savedstate:2.6.2")
     
     // Google Maps and Places dependencies
     implementation("com.google.android.gms:play-services-maps:18.1.0")
     implementation("com.google.android.gms:play-services-location:21.0.1")
-    implementation("com.google.android.libraries.places:places:3.2.0")
+    implementation("com.google.android.libraries.places:places:3.4.0")
     
     // osmdroid dependencies
     implementation("org.osmdroid:osmdroid-android:6.1.17")
@@ -73,8 +94,15 @@ dependencies {
     implementation("com.squareup.okhttp3:okhttp:4.12.0")
     implementation("com.squareup.okhttp3:logging-interceptor:4.12.0")
     
+    // Gson streaming reader for incremental Overpass response parsing
+    implementation("com.google.code.gson:gson:2.10.1")
+    
+    // WorkManager for background cache warming on unmetered networks
+    implementation("androidx.work:work-runtime:2.9.0")
+    
     // Testing dependencies
     testImplementation("junit:junit:4.13.2")
+    testImplementation("com.squareup.okhttp3:mockwebserver:4.12.0")
     androidTestImplementation("androidx.test.ext:junit:1.1.5")
     androidTestImplementation("androidx.test.espresso:espresso-core:3.5.1")
 }
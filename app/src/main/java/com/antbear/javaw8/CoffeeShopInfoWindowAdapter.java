@@ -11,6 +11,7 @@ import android.widget.TextView;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import com.antbear.javaw8.map.PlaceSnippet;
 import com.google.android.gms.maps.GoogleMap;
 import com.google.android.gms.maps.model.Marker;
 
@@ -51,12 +52,12 @@ public class CoffeeShopInfoWindowAdapter implements GoogleMap.InfoWindowAdapter
             // Parse the snippet to extract different parts
             String snippet = marker.getSnippet();
             if (snippet != null) {
-                String[] lines = snippet.split("\n");
+                PlaceSnippet parts = PlaceSnippet.parse(snippet);
                 
                 // Address is the first line
                 TextView addressView = view.findViewById(R.id.txt_address);
-                if (lines.length > 0) {
-                    addressView.setText(lines[0]);
+                if (parts.getFirstLine() != null) {
+                    addressView.setText(parts.getFirstLine());
                 } else {
                     addressView.setText("Address not available");
                 }
@@ -64,30 +65,25 @@ public class CoffeeShopInfoWindowAdapter implements GoogleMap.InfoWindowAdapter
                 // Phone number
                 LinearLayout phoneContainer = view.findViewById(R.id.phone_container);
                 TextView phoneView = view.findViewById(R.id.txt_phone);
-                boolean hasPhone = false;
+                boolean hasPhone = parts.getPhoneLine() != null;
                 
                 // Rating
                 LinearLayout ratingContainer = view.findViewById(R.id.rating_container);
                 TextView ratingView = view.findViewById(R.id.txt_rating);
-                boolean hasRating = false;
+                boolean hasRating = parts.getRatingLine() != null;
                 
                 // Sample data indicator
                 TextView sampleIndicator = view.findViewById(R.id.txt_sample_indicator);
-                boolean isSampleData = false;
+                boolean isSampleData = parts.isSampleData();
                 
-                // Process the remaining lines
-                for (String line : lines) {
-                    if (line.startsWith("Phone:")) {
-                        phoneView.setText(line);
-                        hasPhone = true;
-                    } else if (line.startsWith("Rating:")) {
-                        ratingView.setText(line);
-                        hasRating = true;
-                    } else if (line.contains("(Sample Data)")) {
-                        sampleIndicator.setText("Sample data - real coffee shops may vary");
-                        sampleIndicator.setVisibility(View.VISIBLE);
-                        isSampleData = true;
-                    }
+                if (hasPhone) {
+                    phoneView.setText(parts.getPhoneLine());
+                }
+                if (hasRating) {
+                    ratingView.setText(parts.getRatingLine());
+                }
+                if (isSampleData) {
+                    sampleIndicator.setText("Sample data - real coffee shops may vary");
                 }
                 
                 // Show/hide containers based on data availability
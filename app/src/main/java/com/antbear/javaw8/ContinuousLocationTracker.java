@@ -0,0 +1,111 @@
+package com.antbear.javaw8;
+
+import android.Manifest;
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.location.Location;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.core.app.ActivityCompat;
+import androidx.lifecycle.DefaultLifecycleObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import com.google.android.gms.location.FusedLocationProviderClient;
+import com.google.android.gms.location.LocationCallback;
+import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.LocationResult;
+import com.google.android.gms.location.Priority;
+
+/**
+ * Lifecycle-aware location updates for users who move while the map is open.
+ * Uses balanced-power, batched updates with a minimum displacement, so the
+ * device only wakes up for meaningful movement, and stops updates entirely
+ * whenever the observed lifecycle is not started (map not visible).
+ */
+public class ContinuousLocationTracker implements DefaultLifecycleObserver {
+    private static final String TAG = "ContinuousLocation";
+    
+    private static final long UPDATE_INTERVAL_MS = 30 * 1000; // 30 seconds
+    private static final long MAX_BATCH_DELAY_MS = 2 * 60 * 1000; // deliver batches at least every 2 minutes
+    private static final float MIN_DISPLACEMENT_METERS = 100;
+    
+    /**
+     * Receives the latest location of each delivered batch on the main thread.
+     */
+    public interface Listener {
+        void onLocationChanged(Location location);
+    }
+    
+    private final Context context;
+    private final FusedLocationProviderClient fusedLocationClient;
+    private final Listener listener;
+    private boolean receivingUpdates = false;
+    
+    private final LocationCallback locationCallback = new LocationCallback() {
+        @Override
+        public void onLocationResult(@NonNull LocationResult result) {
+            // Batched results may hold several fixes; only the most recent one matters
+            Location location = result.getLastLocation();
+            if (location != null) {
+                listener.onLocationChanged(location);
+            }
+        }
+    };
+    
+    public ContinuousLocationTracker(Context context, FusedLocationProviderClient fusedLocationClient,
+                                     Listener listener) {
+        this.context = context;
+        this.fusedLocationClient = fusedLocationClient;
+        this.listener = listener;
+    }
+    
+    @Override
+    public void onStart(@NonNull LifecycleOwner owner) {
+        startUpdates();
+    }
+    
+    @Override
+    public void onStop(@NonNull LifecycleOwner owner) {
+        stopUpdates();
+    }
+    
+    /**
+     * Start updates if permission is granted. Safe to call again after
+     * permission is granted while the lifecycle is already started.
+     */
+    @SuppressLint("MissingPermission")
+    public void startUpdates() {
+        if (receivingUpdates || !hasLocationPermission()) return;
+        
+        LocationRequest request = new LocationRequest.Builder(
+                Priority.PRIORITY_BALANCED_POWER_ACCURACY, UPDATE_INTERVAL_MS)
+                .setMinUpdateDistanceMeters(MIN_DISPLACEMENT_METERS)
+                .setMaxUpdateDelayMillis(MAX_BATCH_DELAY_MS)
+                .build();
+        
+        fusedLocationClient.requestLocationUpdates(request, locationCallback, Looper.getMainLooper());
+        receivingUpdates = true;
+        Log.d(TAG, "Continuous location updates started");
+    }
+    
+    /**
+     * Stop updates.
+     */
+    public void stopUpdates() {
+        if (!receivingUpdates) return;
+        
+        fusedLocationClient.removeLocationUpdates(locationCallback);
+        receivingUpdates = false;
+        Log.d(TAG, "Continuous location updates stopped");
+    }
+    
+    private boolean hasLocationPermission() {
+        return ActivityCompat.checkSelfPermission(context,
+                Manifest.permission.ACCESS_FINE_LOCATION) == PackageManager.PERMISSION_GRANTED ||
+            ActivityCompat.checkSelfPermission(context,
+                Manifest.permission.ACCESS_COARSE_LOCATION) == PackageManager.PERMISSION_GRANTED;
+    }
+}
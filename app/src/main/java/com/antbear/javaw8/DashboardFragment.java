@@ -1,18 +1,136 @@
 package com.antbear.javaw8;
 
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.location.Location;
 import android.os.Bundle;
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.Button;
+import android.widget.EditText;
+import android.widget.RatingBar;
+import android.widget.Toast;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.core.app.ActivityCompat;
 import androidx.fragment.app.Fragment;
 
+import com.antbear.javaw8.map.AppExecutors;
+import com.antbear.javaw8.map.PlaceSubmission;
+import com.antbear.javaw8.map.SubmissionQueue;
+import com.google.android.gms.location.FusedLocationProviderClient;
+import com.google.android.gms.location.LocationServices;
+
+/**
+ * The "Submit a Coffee Shop" form. Submissions are placed at the device's
+ * location and saved to the {@link SubmissionQueue}, which shows them on the
+ * map right away and uploads them once the device is online.
+ */
 public class DashboardFragment extends Fragment {
+    private static final String TAG = "DashboardFragment";
+
+    private EditText nameInput;
+    private EditText addressInput;
+    private EditText phoneInput;
+    private RatingBar ratingBar;
+    private Button submitButton;
+    private FusedLocationProviderClient fusedLocationClient;
 
     @Nullable
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container, @Nullable Bundle savedInstanceState) {
         return inflater.inflate(R.layout.fragment_dashboard, container, false);
     }
+
+    @Override
+    public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+
+        nameInput = view.findViewById(R.id.name_input);
+        addressInput = view.findViewById(R.id.address_input);
+        phoneInput = view.findViewById(R.id.phone_input);
+        ratingBar = view.findViewById(R.id.rating_bar);
+        submitButton = view.findViewById(R.id.submit_button);
+        fusedLocationClient = LocationServices.getFusedLocationProviderClient(requireActivity());
+
+        submitButton.setOnClickListener(v -> submit());
+    }
+
+    private void submit() {
+        String name = nameInput.getText().toString().trim();
+        if (name.isEmpty()) {
+            nameInput.setError(getString(R.string.submission_name_required));
+            return;
+        }
+
+        boolean hasPermission = ActivityCompat.checkSelfPermission(requireContext(),
+                Manifest.permission.ACCESS_FINE_LOCATION) == PackageManager.PERMISSION_GRANTED ||
+            ActivityCompat.checkSelfPermission(requireContext(),
+                Manifest.permission.ACCESS_COARSE_LOCATION) == PackageManager.PERMISSION_GRANTED;
+        if (!hasPermission) {
+            showToast(getString(R.string.submission_location_unavailable));
+            return;
+        }
+
+        // No double submissions while the location and duplicate check are pending
+        submitButton.setEnabled(false);
+        fusedLocationClient.getLastLocation()
+                .addOnSuccessListener(requireActivity(), this::queueSubmission)
+                .addOnFailureListener(requireActivity(), e -> {
+                    Log.e(TAG, "Error getting location: " + e.getMessage(), e);
+                    if (!isAdded()) return;
+                    submitButton.setEnabled(true);
+                    showToast(getString(R.string.submission_location_unavailable));
+                });
+    }
+
+    private void queueSubmission(Location location) {
+        // The listener outlives this tab if the user switched away before the fix arrived
+        if (!isAdded()) return;
+
+        if (location == null) {
+            submitButton.setEnabled(true);
+            showToast(getString(R.string.submission_location_unavailable));
+            return;
+        }
+
+        PlaceSubmission submission = new PlaceSubmission(
+                nameInput.getText().toString().trim(),
+                addressInput.getText().toString().trim(),
+                phoneInput.getText().toString().trim(),
+                ratingBar.getRating(),
+                location.getLatitude(),
+                location.getLongitude());
+        Context appContext = requireContext().getApplicationContext();
+        SubmissionQueue.getInstance(appContext).submit(submission)
+                .whenCompleteAsync((result, error) -> {
+                    // The form may be gone by the time the queue answers
+                    if (getView() == null) return;
+                    submitButton.setEnabled(true);
+
+                    if (error != null) {
+                        Log.e(TAG, "Error queueing submission: " + error.getMessage(), error);
+                        showToast(getString(R.string.submission_failed));
+                    } else if (result.isDuplicate()) {
+                        showToast(getString(R.string.submission_duplicate, result.getDuplicate().getName()));
+                    } else {
+                        showToast(getString(R.string.submission_queued));
+                        clearForm();
+                    }
+                }, AppExecutors.main());
+    }
+
+    private void clearForm() {
+        nameInput.setText("");
+        addressInput.setText("");
+        phoneInput.setText("");
+        ratingBar.setRating(0);
+    }
+
+    private void showToast(String message) {
+        Toast.makeText(requireContext(), message, Toast.LENGTH_SHORT).show();
+    }
 }
@@ -2,6 +2,7 @@ package com.antbear.javaw8;
 
 import android.Manifest;
 import android.content.Intent;
+import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
 import android.location.Location;
 import android.net.Uri;
@@ -12,29 +13,47 @@ import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.appcompat.widget.SearchView;
 import androidx.core.app.ActivityCompat;
 import androidx.fragment.app.Fragment;
+import androidx.lifecycle.ViewModelProvider;
 
+import com.antbear.javaw8.map.AppSettings;
+import com.antbear.javaw8.map.ExpandingRingSearch;
+import com.antbear.javaw8.map.LastResultsStore;
+import com.antbear.javaw8.map.MapCameraPosition;
 import com.antbear.javaw8.map.MapFactory;
 import com.antbear.javaw8.map.MapProvider;
+import com.antbear.javaw8.map.MapSnapshot;
+import com.antbear.javaw8.map.MappedPlaceSnapshot;
 import com.antbear.javaw8.map.MapTogglePreference;
 import com.antbear.javaw8.map.PlaceInfo;
+import com.antbear.javaw8.map.SearchArea;
+import com.antbear.javaw8.map.SettingsRepository;
+import com.antbear.javaw8.map.VisitedAreas;
 import com.google.android.gms.location.FusedLocationProviderClient;
 import com.google.android.gms.location.LocationServices;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class HomeFragment extends Fragment {
 
     private static final String TAG = "HomeFragment";
     private static final int LOCATION_PERMISSION_REQUEST_CODE = 1;
-    private static final double SEARCH_RADIUS_METERS = 2000; // 2 km radius
+    private static final double FIRST_RING_RADIUS_METERS = 500; // progressive search starts here
+    private static final int PROGRESSIVE_TARGET_RESULTS = 20; // stop widening once this many are found
     private static final long CAMERA_IDLE_DEBOUNCE_MS = 1000; // 1 second debounce for map movements
+    private static final double MIN_COVERED_NEIGHBORHOOD_METERS = 500; // re-search if less is covered
+    private static final int MAX_TYPEAHEAD_RESULTS = 20;
     
     private MapProvider mapProvider;
     private FusedLocationProviderClient fusedLocationClient;
@@ -45,18 +64,76 @@ public class HomeFragment extends Fragment {
     
     // Map to track marker IDs
     private final Map<String, String> markerTitleById = new HashMap<>();
+    
+    // Places currently rendered, kept so the map can be restored without re-fetching
+    private final List<PlaceInfo> displayedPlaces = new ArrayList<>();
+    private MapStateViewModel mapStateViewModel;
+    private boolean restoredFromSnapshot = false;
+    private SearchArea currentSearchArea;
+    
+    private LastResultsStore lastResultsStore;
+    private StartupOrchestrator startupOrchestrator;
+    private ContinuousLocationTracker continuousLocationTracker;
+    private MarkerBatchScheduler<PlaceInfo> markerScheduler;
+    private MapFrameMonitor frameMonitor;
+    private TextView frameStatsHud;
+    private ExpandingRingSearch currentSearch;
+    
+    // Settings the current results were searched with; searched again when they change
+    private SettingsRepository settingsRepository;
+    private final SettingsRepository.Listener settingsListener = this::onSettingsChanged;
+    private AppSettings searchSettings;
+    
+    // Places shown before the user started typing, restored when the search box is cleared
+    private List<PlaceInfo> placesBeforeFilter;
+    private SearchView placeSearchView;
 
     @Nullable
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container, @Nullable Bundle savedInstanceState) {
+        long start = StartupTimer.now();
+        
+        // Start map provider initialization first so it runs in parallel with inflation
+        boolean useGoogleMaps = MapTogglePreference.isUsingGoogleMaps(requireContext());
+        mapProvider = MapFactory.createMapProviderAsync(requireContext(), useGoogleMaps);
+        
         View view = inflater.inflate(R.layout.fragment_home, container, false);
         
+        // Spreads marker creation over frames so large result sets don't stall the UI
+        markerScheduler = new MarkerBatchScheduler<>(
+                requireActivity().getWindowManager().getDefaultDisplay().getRefreshRate(),
+                this::addPlaceMarker);
+        
+        // Frame times while the map moves, to see how the number of markers affects panning
+        frameMonitor = new MapFrameMonitor(requireActivity().getWindow(), mapProvider,
+                requireActivity().getWindowManager().getDefaultDisplay().getRefreshRate());
+        
         // Initialize the FusedLocationProviderClient
         fusedLocationClient = LocationServices.getFusedLocationProviderClient(requireActivity());
         
-        // Initialize the appropriate map provider based on settings
-        boolean useGoogleMaps = MapTogglePreference.isUsingGoogleMaps(requireContext());
-        mapProvider = MapFactory.createMapProvider(requireContext(), useGoogleMaps);
+        // Scoped to the activity so state survives the fragment being recreated on rotation
+        mapStateViewModel = new ViewModelProvider(requireActivity()).get(MapStateViewModel.class);
+        
+        // Start location, connection warm-up and cache loading while the map view is created
+        lastResultsStore = new LastResultsStore(requireContext());
+        startupOrchestrator = new StartupOrchestrator(requireContext(), mapProvider,
+                fusedLocationClient, lastResultsStore, new StartupOrchestrator.Listener() {
+            @Override
+            public void onCachedResults(MappedPlaceSnapshot snapshot) {
+                showCachedResults(snapshot);
+            }
+            
+            @Override
+            public void onLocationAvailable(Location location) {
+                HomeFragment.this.onLocationAvailable(location);
+            }
+            
+            @Override
+            public void onRefinedLocation(Location location) {
+                HomeFragment.this.onRefinedLocation(location);
+            }
+        });
+        startupOrchestrator.start();
         
         // Set up map ready listener
         mapProvider.setOnMapReadyListener(new MapProvider.OnMapReadyListener() {
@@ -67,14 +144,59 @@ public class HomeFragment extends Fragment {
         });
         
         // Create the map fragment
-        mapProvider.createMapFragment(getChildFragmentManager(), R.id.map_container);
+        mapProvider.createMapFragment(getChildFragmentManager(), this, R.id.map_container);
         
+        StartupTimer.endSection("HomeFragment.onCreateView", start);
         return view;
     }
     
+    @Override
+    public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+        
+        // Follow the user while the map is visible; updates stop with the view lifecycle
+        continuousLocationTracker = new ContinuousLocationTracker(requireContext(), fusedLocationClient,
+                new ContinuousLocationTracker.Listener() {
+            @Override
+            public void onLocationChanged(Location location) {
+                onUserMoved(location);
+            }
+        });
+        getViewLifecycleOwner().getLifecycle().addObserver(continuousLocationTracker);
+        
+        frameStatsHud = view.findViewById(R.id.frame_stats_hud);
+        settingsRepository = SettingsRepository.getInstance(requireContext());
+        settingsRepository.addListener(settingsListener);
+        
+        // Match cached places on every keystroke; no network round trip
+        placeSearchView = view.findViewById(R.id.place_search);
+        placeSearchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                placeSearchView.clearFocus();
+                return true;
+            }
+            
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                showCachedMatches(newText);
+                return true;
+            }
+        });
+    }
+    
+    @Override
+    public void onResume() {
+        super.onResume();
+        frameMonitor.start();
+    }
+    
     @Override
     public void onPause() {
         super.onPause();
+        frameMonitor.stop();
+        saveMapState();
+        
         // Cancel any pending fallback timer to prevent memory leaks
         if (fallbackRunnable != null) {
             fallbackHandler.removeCallbacks(fallbackRunnable);
@@ -91,6 +213,8 @@ public class HomeFragment extends Fragment {
      * Set up the map after it's ready
      */
     private void setupMap() {
+        StartupTimer.mark("Map ready");
+        
         // Set up info window click listener to open directions
         mapProvider.setOnInfoWindowClickListener(new MapProvider.OnInfoWindowClickListener() {
             @Override
@@ -99,8 +223,16 @@ public class HomeFragment extends Fragment {
             }
         });
         
+        // Re-render the previous state instantly instead of re-fetching
+        restoredFromSnapshot = restoreMapState();
+        
         // Enable my location button if permission is granted
         enableMyLocation();
+        startupOrchestrator.onMapReady();
+        
+        if (restoredFromSnapshot) {
+            return;
+        }
         
         // Default location (in case permission is denied)
         double defaultLat = 37.4220;
@@ -111,6 +243,103 @@ public class HomeFragment extends Fragment {
         mapProvider.addMarker(defaultLat, defaultLng, "Test Marker", "This is a test marker");
     }
     
+    /**
+     * Restore the camera and markers from the saved map state, if it holds search results.
+     * State saved before the first search completed only has the default camera, so the
+     * first location fix must still search.
+     * @return true if a saved state was rendered
+     */
+    private boolean restoreMapState() {
+        MapSnapshot snapshot = mapStateViewModel.getSnapshot();
+        if (snapshot == null || snapshot.getCameraPosition() == null
+                || snapshot.getSearchArea() == null || snapshot.getPlaces().length == 0) {
+            return false;
+        }
+        
+        MapCameraPosition camera = snapshot.getCameraPosition();
+        mapProvider.moveCamera(camera.getLatitude(), camera.getLongitude(), camera.getZoomLevel());
+        
+        renderPlaces(snapshot.getPlaces());
+        currentSearchArea = snapshot.getSearchArea();
+        
+        Tracer.d(TAG, "Restored map state with %d places", snapshot.getPlaces().length);
+        return true;
+    }
+    
+    /**
+     * Show the previous session's results while waiting for a location fix.
+     * They are replaced once a fresh search completes.
+     */
+    private void showCachedResults(MappedPlaceSnapshot snapshot) {
+        // Anything already on the map is at least as fresh as the disk cache
+        if (restoredFromSnapshot || totalCoffeeShopsAdded > 0) return;
+        
+        MapCameraPosition camera = snapshot.getCameraPosition();
+        if (lastKnownLocation == null && camera != null) {
+            mapProvider.moveCamera(camera.getLatitude(), camera.getLongitude(), camera.getZoomLevel());
+        }
+        
+        // Places are read from the mapped file as their markers are attached
+        markerScheduler.submit(snapshot.asList());
+        
+        Tracer.event("home.cached_results", snapshot.size());
+        Tracer.d(TAG, "Showing %d cached places", snapshot.size());
+    }
+    
+    /**
+     * Show cached places matching the text typed so far, nearest to the
+     * viewport first, or restore the previous places once the text is cleared.
+     */
+    private void showCachedMatches(String text) {
+        if (text.trim().isEmpty()) {
+            if (placesBeforeFilter != null) {
+                PlaceInfo[] previous = placesBeforeFilter.toArray(new PlaceInfo[0]);
+                placesBeforeFilter = null;
+                clearPlaceMarkers();
+                renderPlaces(previous);
+            }
+            return;
+        }
+        
+        MapCameraPosition camera = mapProvider.getCameraPosition();
+        if (camera == null) return;
+        
+        if (placesBeforeFilter == null) {
+            placesBeforeFilter = new ArrayList<>(displayedPlaces);
+        }
+        
+        List<PlaceInfo> matches = mapProvider.findCachedPlaces(text,
+                camera.getLatitude(), camera.getLongitude(), MAX_TYPEAHEAD_RESULTS);
+        clearPlaceMarkers();
+        renderPlaces(matches.toArray(new PlaceInfo[0]));
+    }
+    
+    /**
+     * Forget the places a name filter hid and empty the search box, so the
+     * box does not show text that no longer filters the map.
+     */
+    private void clearNameFilter() {
+        placesBeforeFilter = null;
+        if (placeSearchView != null && placeSearchView.getQuery().length() > 0) {
+            // Reports an empty query, which finds no filter to undo
+            placeSearchView.setQuery("", false);
+        }
+    }
+    
+    /**
+     * Save the camera and search results so they survive recreation and process death.
+     * While the search box filters the map, the results it hides are saved instead of the matches.
+     */
+    private void saveMapState() {
+        if (mapProvider == null || mapStateViewModel == null) return;
+        
+        MapCameraPosition camera = mapProvider.getCameraPosition();
+        if (camera == null) return;
+        
+        List<PlaceInfo> places = placesBeforeFilter != null ? placesBeforeFilter : displayedPlaces;
+        mapStateViewModel.saveState(camera, places.toArray(new PlaceInfo[0]), currentSearchArea);
+    }
+    
     /**
      * Open directions to a marker location
      */
@@ -170,20 +399,11 @@ public class HomeFragment extends Fragment {
             // Enable the my-location layer
             mapProvider.enableMyLocation(true);
             
-            // Get the user's last known location
-            fusedLocationClient.getLastLocation()
-                .addOnSuccessListener(requireActivity(), location -> {
-                    if (location != null) {
-                        // Save the user's last known location
-                        lastKnownLocation = location;
-                        
-                        // Got the user's location, center the map there
-                        mapProvider.moveCamera(location.getLatitude(), location.getLongitude(), 15);
-                        
-                        // Search for nearby coffee shops
-                        searchNearbyCoffeeShops();
-                    }
-                });
+            // Get the user's last known location (no-op if already requested at startup)
+            startupOrchestrator.requestLocation();
+            if (continuousLocationTracker != null) {
+                continuousLocationTracker.startUpdates();
+            }
         } else {
             // Request permission
             requestPermissions(new String[]{
@@ -193,6 +413,92 @@ public class HomeFragment extends Fragment {
         }
     }
     
+    /**
+     * Handle the location fix delivered by the startup orchestrator.
+     */
+    private void onLocationAvailable(Location location) {
+        // Save the user's last known location
+        lastKnownLocation = location;
+        
+        // Keep the restored camera and results; no need to search again
+        if (restoredFromSnapshot) {
+            return;
+        }
+        
+        // Got the user's location, center the map there
+        mapProvider.moveCamera(location.getLatitude(), location.getLongitude(), 15);
+        
+        // Search for nearby coffee shops
+        searchNearbyCoffeeShops();
+    }
+    
+    /**
+     * Handle a high-accuracy fix that followed the coarse one. Only searches again
+     * when the refined position is not already well covered by the current results.
+     */
+    private void onRefinedLocation(Location location) {
+        lastKnownLocation = location;
+        
+        if (restoredFromSnapshot) {
+            return;
+        }
+        
+        if (currentSearchArea != null && currentSearchArea.covers(
+                location.getLatitude(), location.getLongitude(), MIN_COVERED_NEIGHBORHOOD_METERS)) {
+            Tracer.d(TAG, "Refined location is inside the searched area; keeping current results");
+            return;
+        }
+        
+        mapProvider.moveCamera(location.getLatitude(), location.getLongitude(), 15);
+        searchNearbyCoffeeShops();
+    }
+    
+    /**
+     * Handle a continuous location update. Results are only refreshed once the
+     * user walks out of the area the current results cover.
+     */
+    private void onUserMoved(Location location) {
+        lastKnownLocation = location;
+        
+        // The startup location pipeline has not produced a first search yet
+        if (currentSearchArea == null) {
+            return;
+        }
+        
+        if (currentSearchArea.covers(location.getLatitude(), location.getLongitude(),
+                MIN_COVERED_NEIGHBORHOOD_METERS)) {
+            return;
+        }
+        
+        Tracer.d(TAG, "User left the searched area; refreshing results");
+        searchNearbyCoffeeShops();
+    }
+    
+    /**
+     * Handle loaded or changed settings. Searches again when a setting that
+     * shapes the results changed, e.g. after returning from Settings.
+     */
+    private void onSettingsChanged(AppSettings settings) {
+        AppSettings previous = searchSettings;
+        searchSettings = settings;
+        
+        // The frame stats overlay is for dogfooding; release builds never show it
+        boolean debuggable = (requireContext().getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+        frameMonitor.setHud(debuggable && settings.isFrameStatsHud() ? frameStatsHud : null);
+        
+        // The first delivery is the loaded settings, which the first search already uses
+        if (previous == null || currentSearchArea == null) {
+            return;
+        }
+        
+        if (settings.getSearchRadiusKm() != previous.getSearchRadiusKm()
+                || settings.isProgressiveSearch() != previous.isProgressiveSearch()
+                || settings.isOfflineMode() != previous.isOfflineMode()) {
+            Tracer.d(TAG, "Search settings changed; refreshing results");
+            searchNearbyCoffeeShops();
+        }
+    }
+    
     @Override
     public void onRequestPermissionsResult(int requestCode, @NonNull String[] permissions, 
                                            @NonNull int[] grantResults) {
@@ -224,17 +530,35 @@ public class HomeFragment extends Fragment {
         
         if (markerId != null) {
             markerTitleById.put(markerId, place.getName());
+            displayedPlaces.add(place);
             totalCoffeeShopsAdded++;
+            startupOrchestrator.reportFirstMarker();
         }
     }
     
+    /**
+     * Queue markers for a set of places, attached a frame-budgeted chunk at a time
+     */
+    private void renderPlaces(PlaceInfo[] places) {
+        markerScheduler.submit(Arrays.asList(places));
+    }
+    
+    /**
+     * Remove all place markers from the map
+     */
+    private void clearPlaceMarkers() {
+        markerScheduler.cancel();
+        mapProvider.clearMarkers();
+        markerTitleById.clear();
+        displayedPlaces.clear();
+        totalCoffeeShopsAdded = 0;
+    }
+    
     /**
      * Search for coffee shops near the user's location
      */
     private void searchNearbyCoffeeShops() {
-        // Reset the counter each time we start a new search
-        totalCoffeeShopsAdded = 0;
-        markerTitleById.clear();
+        // Existing markers (e.g. cached results) stay visible until the new results replace them
         
         // Start fallback timer
         startFallbackTimer();
@@ -256,38 +580,97 @@ public class HomeFragment extends Fragment {
         
         // Show toast to let user know we're searching
         Toast.makeText(requireContext(), "Searching for coffee shops nearby...", Toast.LENGTH_SHORT).show();
-        Log.d(TAG, "Starting map search for coffee shops at: " + 
-              lastKnownLocation.getLatitude() + ", " + lastKnownLocation.getLongitude());
+        Tracer.d(TAG, "Starting map search for coffee shops at: %f, %f",
+                lastKnownLocation.getLatitude(), lastKnownLocation.getLongitude());
+        
+        AppSettings settings = settingsRepository.getSnapshot();
+        double maxRadius = settings.getSearchRadiusMeters();
+        double firstRingRadius = settings.isProgressiveSearch() ? FIRST_RING_RADIUS_METERS : maxRadius;
+        searchSettings = settings;
+        double searchLatitude = lastKnownLocation.getLatitude();
+        double searchLongitude = lastKnownLocation.getLongitude();
+        currentSearchArea = new SearchArea(searchLatitude, searchLongitude, maxRadius);
+        
+        // A newer position supersedes any search still in flight
+        if (currentSearch != null) {
+            currentSearch.cancel();
+        }
+        
+        // Learn where the user searches so the background cache warmer can keep those areas
+        // fresh; once per search, not per ring
+        VisitedAreas.getInstance(requireContext()).recordSearch("coffee shop", searchLatitude,
+                searchLongitude, maxRadius);
         
-        // Search for coffee shops near the user's location using the map provider
-        mapProvider.searchNearbyPlaces(
+        // Search for coffee shops near the user's location, nearest ring first, rendering batches as they arrive
+        currentSearch = ExpandingRingSearch.start(
+            mapProvider,
             "coffee shop", 
-            lastKnownLocation.getLatitude(), 
-            lastKnownLocation.getLongitude(), 
-            SEARCH_RADIUS_METERS,
-            new MapProvider.OnPlacesFoundListener() {
+            searchLatitude,
+            searchLongitude,
+            firstRingRadius,
+            maxRadius,
+            PROGRESSIVE_TARGET_RESULTS,
+            new MapProvider.OnPlacesStreamListener() {
+                private final List<PlaceInfo> found = new ArrayList<>();
+                
                 @Override
-                public void onPlacesFound(PlaceInfo[] places) {
-                    if (places.length > 0) {
-                        for (PlaceInfo place : places) {
-                            addPlaceMarker(place);
-                        }
-                        Toast.makeText(requireContext(), "Found " + places.length + " coffee shops", Toast.LENGTH_SHORT).show();
-                    } else {
-                        onPlacesError("No coffee shops found");
+                public void onPlacesBatch(PlaceInfo[] places) {
+                    if (!isAdded()) return;
+                    
+                    // The first batch replaces whatever was shown before, including a name filter
+                    if (found.isEmpty()) {
+                        clearNameFilter();
+                        clearPlaceMarkers();
                     }
+                    found.addAll(Arrays.asList(places));
+                    Tracer.event("home.batch", places.length);
+                    renderPlaces(places);
                 }
                 
                 @Override
-                public void onPlacesError(String errorMessage) {
+                public void onSearchComplete(int totalPlaces) {
+                    if (!isAdded()) return;
+                    
+                    if (found.isEmpty()) {
+                        onSearchError("No coffee shops found");
+                        return;
+                    }
+                    
+                    // Enough places may have been found before widening to the full radius
+                    currentSearchArea = new SearchArea(searchLatitude, searchLongitude,
+                            currentSearch.getCoveredRadiusMeters());
+                    
+                    // Remember these results for the next cold start
+                    lastResultsStore.saveAsync(new MapSnapshot(mapProvider.getCameraPosition(),
+                            found.toArray(new PlaceInfo[0]), currentSearchArea));
+                    Toast.makeText(requireContext(), "Found " + totalPlaces + " coffee shops", Toast.LENGTH_SHORT).show();
+                }
+                
+                @Override
+                public void onSearchError(String errorMessage) {
+                    if (!isAdded()) return;
+                    
                     Log.e(TAG, "Error finding places: " + errorMessage);
                     Toast.makeText(requireContext(), errorMessage, Toast.LENGTH_SHORT).show();
-                    addFallbackCoffeeShops();
+                    
+                    // Keep showing earlier (e.g. cached) results rather than replacing them with samples
+                    if (totalCoffeeShopsAdded == 0) {
+                        addFallbackCoffeeShops();
+                    }
                 }
             }
         );
     }
     
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        settingsRepository.removeListener(settingsListener);
+        frameMonitor.setHud(null);
+        frameStatsHud = null;
+        placeSearchView = null;
+    }
+    
     @Override
     public void onDestroy() {
         super.onDestroy();
@@ -302,6 +685,18 @@ public class HomeFragment extends Fragment {
             cameraIdleRunnable = null;
         }
         
+        if (startupOrchestrator != null) {
+            startupOrchestrator.cancel();
+        }
+        
+        if (markerScheduler != null) {
+            markerScheduler.cancel();
+        }
+        
+        if (currentSearch != null) {
+            currentSearch.cancel();
+        }
+        
         // Clean up map provider resources
         if (mapProvider != null) {
             mapProvider.onDestroy();
@@ -323,8 +718,8 @@ public class HomeFragment extends Fragment {
             public void run() {
                 // Check if any coffee shops were added
                 if (totalCoffeeShopsAdded == 0) {
-                    Log.d(TAG, "Fallback timer triggered - no coffee shops were found after " + 
-                         (FALLBACK_TIMEOUT_MS/1000) + " seconds");
+                    Tracer.d(TAG, "Fallback timer triggered - no coffee shops were found after %d seconds",
+                            FALLBACK_TIMEOUT_MS / 1000);
                     
                     // Only add fallbacks if we haven't added any coffee shops yet
                     if (isAdded()) { // Make sure fragment is still attached
@@ -336,28 +731,27 @@ public class HomeFragment extends Fragment {
                         });
                     }
                 } else {
-                    Log.d(TAG, "Fallback timer ignored - " + totalCoffeeShopsAdded + 
-                         " coffee shops were already added");
+                    Tracer.d(TAG, "Fallback timer ignored - %d coffee shops were already added",
+                            totalCoffeeShopsAdded);
                 }
             }
         };
         
         // Schedule the fallback runnable
         fallbackHandler.postDelayed(fallbackRunnable, FALLBACK_TIMEOUT_MS);
-        Log.d(TAG, "Fallback timer started - will check for markers in " + 
-             (FALLBACK_TIMEOUT_MS/1000) + " seconds");
+        Tracer.d(TAG, "Fallback timer started - will check for markers in %d seconds",
+                FALLBACK_TIMEOUT_MS / 1000);
     }
     
     /**
      * Adds hardcoded fallback coffee shop locations when the Places API fails
      */
     private void addFallbackCoffeeShops() {
-        Log.d(TAG, "Adding fallback coffee shop markers");
+        Tracer.d(TAG, "Adding fallback coffee shop markers");
         Toast.makeText(requireContext(), "Using sample coffee shop locations", Toast.LENGTH_LONG).show();
         
         // Clear any existing markers
-        markerTitleById.clear();
-        totalCoffeeShopsAdded = 0;
+        clearPlaceMarkers();
         
         // Center point for our fallbacks - use user location if available, otherwise default
         double centerLat = (lastKnownLocation != null) ? lastKnownLocation.getLatitude() : 37.4220;
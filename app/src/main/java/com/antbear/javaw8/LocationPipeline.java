@@ -0,0 +1,147 @@
+package com.antbear.javaw8;
+
+import android.annotation.SuppressLint;
+import android.location.Location;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.antbear.javaw8.map.SearchMetrics;
+import com.google.android.gms.location.CurrentLocationRequest;
+import com.google.android.gms.location.FusedLocationProviderClient;
+import com.google.android.gms.location.Priority;
+import com.google.android.gms.tasks.CancellationTokenSource;
+
+/**
+ * Two-phase location acquisition.
+ * Phase one delivers the best cheap fix as fast as possible: the last known
+ * location if it is recent, otherwise a coarse network fix. Phase two runs in
+ * parallel and delivers a high-accuracy fix, bounded by a timeout, so callers
+ * can refine what they showed for the coarse fix.
+ * Callers must hold a location permission before calling {@link #start()}.
+ */
+public class LocationPipeline {
+    private static final String TAG = "LocationPipeline";
+    
+    private static final long LAST_LOCATION_MAX_AGE_MS = 2 * 60 * 1000; // 2 minutes
+    private static final long COARSE_TIMEOUT_MS = 1000;
+    private static final long REFINED_TIMEOUT_MS = 10000;
+    
+    // A fresh fix this precise needs no refinement
+    private static final float GOOD_ENOUGH_ACCURACY_METERS = 25;
+    private static final long GOOD_ENOUGH_MAX_AGE_MS = 30 * 1000;
+    
+    /**
+     * Receives location fixes on the main thread.
+     */
+    public interface Listener {
+        void onCoarseLocation(Location location);
+        void onRefinedLocation(Location location);
+    }
+    
+    private final FusedLocationProviderClient fusedLocationClient;
+    private final Listener listener;
+    private final CancellationTokenSource cancellationSource = new CancellationTokenSource();
+    
+    private boolean coarseDelivered = false;
+    private boolean finished = false;
+    private long startNanos;
+    
+    public LocationPipeline(FusedLocationProviderClient fusedLocationClient, Listener listener) {
+        this.fusedLocationClient = fusedLocationClient;
+        this.listener = listener;
+    }
+    
+    /**
+     * Start both phases. The high-accuracy request runs concurrently with the
+     * cheap lookup; whichever fix arrives first is delivered as the coarse fix.
+     */
+    @SuppressLint("MissingPermission")
+    public void start() {
+        startNanos = System.nanoTime();
+        fusedLocationClient.getLastLocation()
+            .addOnSuccessListener(location -> {
+                if (location != null && ageMillis(location) <= LAST_LOCATION_MAX_AGE_MS) {
+                    deliverCoarse(location);
+                } else {
+                    requestCoarseFix();
+                }
+            })
+            .addOnFailureListener(e -> requestCoarseFix());
+        
+        requestRefinedFix();
+    }
+    
+    /**
+     * Cancel outstanding requests and stop delivering fixes.
+     */
+    public void cancel() {
+        finished = true;
+        cancellationSource.cancel();
+    }
+    
+    @SuppressLint("MissingPermission")
+    private void requestCoarseFix() {
+        CurrentLocationRequest request = new CurrentLocationRequest.Builder()
+                .setPriority(Priority.PRIORITY_BALANCED_POWER_ACCURACY)
+                .setMaxUpdateAgeMillis(LAST_LOCATION_MAX_AGE_MS)
+                .setDurationMillis(COARSE_TIMEOUT_MS)
+                .build();
+        
+        fusedLocationClient.getCurrentLocation(request, cancellationSource.getToken())
+            .addOnSuccessListener(location -> {
+                if (location != null) {
+                    deliverCoarse(location);
+                } else {
+                    Tracer.d(TAG, "No coarse fix within %dms", COARSE_TIMEOUT_MS);
+                }
+            });
+    }
+    
+    @SuppressLint("MissingPermission")
+    private void requestRefinedFix() {
+        CurrentLocationRequest request = new CurrentLocationRequest.Builder()
+                .setPriority(Priority.PRIORITY_HIGH_ACCURACY)
+                .setMaxUpdateAgeMillis(0)
+                .setDurationMillis(REFINED_TIMEOUT_MS)
+                .build();
+        
+        fusedLocationClient.getCurrentLocation(request, cancellationSource.getToken())
+            .addOnSuccessListener(location -> {
+                if (location == null || finished) {
+                    Tracer.d(TAG, "No high-accuracy fix within %dms", REFINED_TIMEOUT_MS);
+                    return;
+                }
+                
+                if (!coarseDelivered) {
+                    // The precise fix won the race; there is nothing left to refine
+                    deliverCoarse(location);
+                    finished = true;
+                    return;
+                }
+                
+                finished = true;
+                SearchMetrics.getInstance().record(SearchMetrics.Stage.LOCATION_REFINED,
+                        System.nanoTime() - startNanos);
+                listener.onRefinedLocation(location);
+            })
+            .addOnFailureListener(e -> Log.e(TAG, "Error getting high-accuracy location: " + e.getMessage(), e));
+    }
+    
+    private void deliverCoarse(Location location) {
+        if (coarseDelivered || finished) return;
+        coarseDelivered = true;
+        
+        SearchMetrics.getInstance().record(SearchMetrics.Stage.LOCATION_COARSE, System.nanoTime() - startNanos);
+        listener.onCoarseLocation(location);
+        
+        if (location.hasAccuracy() && location.getAccuracy() <= GOOD_ENOUGH_ACCURACY_METERS
+                && ageMillis(location) <= GOOD_ENOUGH_MAX_AGE_MS) {
+            Tracer.d(TAG, "Coarse fix is already precise; skipping refinement");
+            cancel();
+        }
+    }
+    
+    private static long ageMillis(Location location) {
+        return (SystemClock.elapsedRealtimeNanos() - location.getElapsedRealtimeNanos()) / 1_000_000;
+    }
+}
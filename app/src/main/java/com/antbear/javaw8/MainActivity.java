@@ -6,6 +6,7 @@ import androidx.fragment.app.FragmentManager;
 import androidx.fragment.app.FragmentTransaction;
 
 import android.os.Bundle;
+import com.antbear.javaw8.map.CacheWarmingWorker;
 import com.google.android.material.bottomnavigation.BottomNavigationView;
 
 public class MainActivity extends AppCompatActivity {
@@ -49,6 +50,9 @@ public class MainActivity extends AppCompatActivity {
             }
             return false;
         });
+
+        // Keep frequently searched areas cached while charging on Wi-Fi
+        CacheWarmingWorker.schedule(getApplicationContext());
     }
 
     /**
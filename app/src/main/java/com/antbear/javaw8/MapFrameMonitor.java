@@ -0,0 +1,173 @@
+package com.antbear.javaw8;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.Log;
+import android.view.FrameMetrics;
+import android.view.View;
+import android.view.Window;
+import android.widget.TextView;
+
+import com.antbear.javaw8.map.MapFrameStats;
+import com.antbear.javaw8.map.MapProvider;
+import com.antbear.javaw8.map.MapRenderLoad;
+
+import java.util.Locale;
+
+/**
+ * Records how long frames take while the map is being panned, flung or
+ * zoomed, into a {@link MapFrameStats} session per visit. Frame durations
+ * come from {@link FrameMetrics}, which covers the render thread as well
+ * as the main thread, and arrive on a background thread. Each frame is
+ * tagged with the map's marker count, zoom and loading tiles as of the
+ * latest camera move. Optionally shows the live frame rate over the map.
+ * Must be started and stopped on the main thread.
+ */
+public class MapFrameMonitor {
+    private static final String TAG = "MapFrameMonitor";
+    
+    private static final long DEFAULT_FRAME_INTERVAL_NANOS = 16_666_667L; // 60 Hz
+    // Frames this long after the last camera move still belong to the interaction (e.g. settling)
+    private static final long INTERACTION_TAIL_NANOS = 250_000_000L;
+    private static final long HUD_INTERVAL_NANOS = 500_000_000L;
+    
+    private final Window window;
+    private final MapProvider mapProvider;
+    private final long frameBudgetNanos;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final MapRenderLoad renderLoad = new MapRenderLoad();
+    
+    private HandlerThread metricsThread;
+    private MapFrameStats.Session session;
+    private volatile TextView hud;
+    
+    // Written on the main thread at each camera move, read on the metrics thread
+    private volatile long lastMoveNanos;
+    private volatile int markers;
+    private volatile double zoom;
+    private volatile int pendingTiles = MapRenderLoad.UNKNOWN;
+    
+    // Metrics thread only
+    private long hudWindowStart;
+    private long hudLastFrame;
+    private int hudFrames;
+    private int hudJanky;
+    
+    private final Window.OnFrameMetricsAvailableListener metricsListener =
+            (frameWindow, frameMetrics, dropCount) -> onFrame(frameMetrics, dropCount);
+    
+    private final MapProvider.OnCameraMoveListener cameraMoveListener = this::onCameraMove;
+    
+    /**
+     * @param window The window the map is drawn in
+     * @param mapProvider The map to tag frames with
+     * @param refreshRateHz Display refresh rate, or 0 to assume 60 Hz; frames slower than one refresh are janky
+     */
+    public MapFrameMonitor(Window window, MapProvider mapProvider, float refreshRateHz) {
+        this.window = window;
+        this.mapProvider = mapProvider;
+        this.frameBudgetNanos = refreshRateHz > 0
+                ? (long) (1_000_000_000L / refreshRateHz)
+                : DEFAULT_FRAME_INTERVAL_NANOS;
+    }
+    
+    /**
+     * Start a session. Frames are only recorded while the map moves.
+     */
+    public void start() {
+        if (session != null) return;
+        
+        session = MapFrameStats.getInstance().startSession(frameBudgetNanos);
+        metricsThread = new HandlerThread(TAG);
+        metricsThread.start();
+        window.addOnFrameMetricsAvailableListener(metricsListener, new Handler(metricsThread.getLooper()));
+        mapProvider.setOnCameraMoveListener(cameraMoveListener);
+    }
+    
+    /**
+     * Stop recording and finish the session.
+     */
+    public void stop() {
+        if (session == null) return;
+        
+        mapProvider.setOnCameraMoveListener(null);
+        window.removeOnFrameMetricsAvailableListener(metricsListener);
+        metricsThread.quitSafely();
+        metricsThread = null;
+        
+        session.finish();
+        if (session.getFrameCount() > 0) {
+            Log.i(TAG, session.format());
+        }
+        session = null;
+        mainHandler.removeCallbacksAndMessages(null);
+        if (hud != null) {
+            hud.setVisibility(View.GONE);
+        }
+    }
+    
+    /**
+     * Show the frame rate, jank and marker count over the map while it moves.
+     * @param hud The view to show them in, or null to stop showing them
+     */
+    public void setHud(TextView hud) {
+        if (this.hud != null && hud == null) {
+            this.hud.setVisibility(View.GONE);
+        }
+        this.hud = hud;
+    }
+    
+    private void onCameraMove() {
+        mapProvider.getRenderLoad(renderLoad);
+        markers = renderLoad.getMarkerCount();
+        zoom = renderLoad.getZoom();
+        pendingTiles = renderLoad.getPendingTiles();
+        lastMoveNanos = System.nanoTime();
+    }
+    
+    private void onFrame(FrameMetrics frameMetrics, int dropCount) {
+        MapFrameStats.Session current = session;
+        if (current == null) return;
+        
+        long now = System.nanoTime();
+        if (now - lastMoveNanos > INTERACTION_TAIL_NANOS) return;
+        if (frameMetrics.getMetric(FrameMetrics.FIRST_DRAW_FRAME) == 1) return;
+        
+        long frameNanos = frameMetrics.getMetric(FrameMetrics.TOTAL_DURATION);
+        int frameMarkers = markers;
+        current.record(frameNanos, frameMarkers, zoom, pendingTiles);
+        if (dropCount > 0) {
+            current.recordUnreported(dropCount);
+        }
+        
+        if (hud == null) return;
+        
+        // A new interaction starts a new window rather than averaging over the pause
+        if (hudFrames == 0 || now - hudLastFrame > INTERACTION_TAIL_NANOS) {
+            hudWindowStart = now;
+            hudFrames = 0;
+            hudJanky = 0;
+        }
+        hudLastFrame = now;
+        hudFrames++;
+        if (frameNanos > frameBudgetNanos) {
+            hudJanky++;
+        }
+        long elapsed = now - hudWindowStart;
+        if (elapsed >= HUD_INTERVAL_NANOS) {
+            String text = String.format(Locale.US, "%.0f fps  %d%% janky  %d markers",
+                    (hudFrames - 1) * 1e9 / elapsed, hudJanky * 100 / hudFrames, frameMarkers);
+            hudFrames = 0;
+            hudJanky = 0;
+            mainHandler.post(() -> showHud(text));
+        }
+    }
+    
+    private void showHud(String text) {
+        if (hud == null || session == null) return;
+        
+        hud.setText(text);
+        hud.setVisibility(View.VISIBLE);
+    }
+}
@@ -0,0 +1,73 @@
+package com.antbear.javaw8;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.SavedStateHandle;
+import androidx.lifecycle.ViewModel;
+
+import com.antbear.javaw8.map.MapCameraPosition;
+import com.antbear.javaw8.map.MapSnapshot;
+import com.antbear.javaw8.map.PlaceInfo;
+import com.antbear.javaw8.map.PlaceRanker;
+import com.antbear.javaw8.map.SearchArea;
+
+import java.util.Arrays;
+
+/**
+ * Holds the map camera and current search results so they survive configuration
+ * changes (rotation, theme switches) in memory, and process death through a
+ * compact binary snapshot kept in the SavedStateHandle.
+ */
+public class MapStateViewModel extends ViewModel {
+    private static final String KEY_SNAPSHOT = "map_snapshot";
+    // Saved state travels in one Binder transaction with the rest of the activity's state,
+    // so only the places nearest the camera are kept across process death
+    private static final int MAX_SAVED_PLACES = 150;
+
+    private final SavedStateHandle savedStateHandle;
+    private MapSnapshot snapshot;
+
+    public MapStateViewModel(@NonNull SavedStateHandle savedStateHandle) {
+        this.savedStateHandle = savedStateHandle;
+    }
+
+    /**
+     * Get the last saved map state, decoding it from saved state after process death.
+     * @return The snapshot, or null if nothing has been saved yet
+     */
+    public MapSnapshot getSnapshot() {
+        if (snapshot == null) {
+            byte[] data = savedStateHandle.get(KEY_SNAPSHOT);
+            snapshot = MapSnapshot.fromByteArray(data);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Record the current camera position and rendered places. All of them are
+     * kept in memory; saved state keeps the {@link #MAX_SAVED_PLACES} nearest the camera.
+     * @param cameraPosition The current camera position (can be null)
+     * @param places The places currently shown on the map
+     * @param searchArea The area the places were searched in (can be null)
+     */
+    public void saveState(MapCameraPosition cameraPosition, PlaceInfo[] places, SearchArea searchArea) {
+        snapshot = new MapSnapshot(cameraPosition, places, searchArea);
+        PlaceInfo[] all = snapshot.getPlaces();
+        MapSnapshot saved = all.length > MAX_SAVED_PLACES
+                ? new MapSnapshot(cameraPosition, nearestPlaces(cameraPosition, all), searchArea)
+                : snapshot;
+        savedStateHandle.set(KEY_SNAPSHOT, saved.toByteArray());
+    }
+
+    private static PlaceInfo[] nearestPlaces(MapCameraPosition cameraPosition, PlaceInfo[] places) {
+        if (cameraPosition == null) {
+            return Arrays.copyOf(places, MAX_SAVED_PLACES);
+        }
+
+        PlaceRanker ranker = new PlaceRanker(cameraPosition.getLatitude(), cameraPosition.getLongitude(),
+                MAX_SAVED_PLACES, PlaceRanker.BY_DISTANCE);
+        for (PlaceInfo place : places) {
+            ranker.offer(place);
+        }
+        return ranker.toSortedArray();
+    }
+}
@@ -0,0 +1,132 @@
+package com.antbear.javaw8;
+
+import android.view.Choreographer;
+
+import com.antbear.javaw8.map.SearchMetrics;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Attaches map markers on the main thread in chunks sized to each frame's
+ * remaining budget. Driven by {@link Choreographer}, so a large result set is
+ * spread over several frames instead of stalling the UI in one long pass.
+ * Items can be submitted incrementally, e.g. as search batches arrive.
+ * Submitted lists are not copied, so lazily backed lists (such as a
+ * {@link com.antbear.javaw8.map.MappedPlaceSnapshot}) are only read as their
+ * items are attached. Must be used from the main thread.
+ */
+public class MarkerBatchScheduler<T> {
+    private static final String TAG = "MarkerBatchScheduler";
+    
+    private static final long DEFAULT_FRAME_INTERVAL_NANOS = 16_666_667L; // 60 Hz
+    private static final float BUDGET_FRACTION = 0.5f; // leave the rest of the frame for drawing
+    private static final long MIN_BUDGET_NANOS = 2_000_000L; // always make some progress
+    
+    private final Choreographer choreographer = Choreographer.getInstance();
+    private final long frameBudgetNanos;
+    private final Consumer<T> attach;
+    
+    // Submitted lists not fully attached yet; nextIndex is the next item of the first one
+    private final ArrayDeque<List<? extends T>> pending = new ArrayDeque<>();
+    // When each pending list was submitted, to time it until fully attached
+    private final ArrayDeque<Long> submittedAt = new ArrayDeque<>();
+    private int nextIndex = 0;
+    private boolean scheduled = false;
+    
+    private final Choreographer.FrameCallback frameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            scheduled = false;
+            attachWithinBudget(frameTimeNanos);
+        }
+    };
+    
+    /**
+     * Create a scheduler for a display with the given refresh rate.
+     * @param refreshRateHz Display refresh rate, or 0 to assume 60 Hz
+     * @param attach Called on the main thread for each submitted item
+     */
+    public MarkerBatchScheduler(float refreshRateHz, Consumer<T> attach) {
+        long frameInterval = refreshRateHz > 0
+                ? (long) (1_000_000_000L / refreshRateHz)
+                : DEFAULT_FRAME_INTERVAL_NANOS;
+        this.frameBudgetNanos = (long) (frameInterval * BUDGET_FRACTION);
+        this.attach = attach;
+    }
+    
+    /**
+     * Queue items to be attached after any items already pending.
+     * @param items The items to attach, in order; must not change until attached
+     */
+    public void submit(List<? extends T> items) {
+        if (items.isEmpty()) return;
+        
+        pending.add(items);
+        submittedAt.add(System.nanoTime());
+        postFrame();
+    }
+    
+    /**
+     * Drop any items that have not been attached yet.
+     */
+    public void cancel() {
+        if (scheduled) {
+            choreographer.removeFrameCallback(frameCallback);
+            scheduled = false;
+        }
+        pending.clear();
+        submittedAt.clear();
+        nextIndex = 0;
+    }
+    
+    private void attachWithinBudget(long frameTimeNanos) {
+        // Budget is measured from the vsync timestamp, so work already done this frame counts
+        long deadline = frameTimeNanos + frameBudgetNanos;
+        long minDeadline = System.nanoTime() + MIN_BUDGET_NANOS;
+        if (deadline < minDeadline) {
+            deadline = minDeadline;
+        }
+        
+        long section = Tracer.beginSection("markers.attach_frame");
+        int attachedThisFrame = 0;
+        while (!pending.isEmpty()) {
+            List<? extends T> items = pending.peekFirst();
+            attach.accept(items.get(nextIndex++));
+            attachedThisFrame++;
+            if (nextIndex == items.size()) {
+                pending.pollFirst();
+                nextIndex = 0;
+                SearchMetrics.getInstance().record(SearchMetrics.Stage.MARKER_ATTACH,
+                        System.nanoTime() - submittedAt.pollFirst());
+            }
+            if (System.nanoTime() >= deadline) break;
+        }
+        Tracer.endSection("markers.attach_frame", section);
+        
+        if (!pending.isEmpty()) {
+            // Once per frame; remaining() walks the queue, so only when tracing is compiled in
+            if (Tracer.ENABLED) {
+                Tracer.event("markers.frame", attachedThisFrame);
+                Tracer.d(TAG, "Attached %d markers this frame, %d remaining", attachedThisFrame, remaining());
+            }
+            postFrame();
+        }
+    }
+    
+    private int remaining() {
+        int remaining = -nextIndex;
+        for (List<? extends T> items : pending) {
+            remaining += items.size();
+        }
+        return remaining;
+    }
+    
+    private void postFrame() {
+        if (!scheduled) {
+            scheduled = true;
+            choreographer.postFrameCallback(frameCallback);
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package com.antbear.javaw8;
 
+import android.content.Intent;
+import android.content.pm.ApplicationInfo;
 import android.os.Bundle;
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -15,9 +18,22 @@ import androidx.annotation.Nullable;
 import androidx.appcompat.widget.SwitchCompat;
 import androidx.fragment.app.Fragment;
 
+import com.antbear.javaw8.map.AppExecutors;
+import com.antbear.javaw8.map.AppSettings;
+import com.antbear.javaw8.map.MapFrameStats;
 import com.antbear.javaw8.map.MapTogglePreference;
+import com.antbear.javaw8.map.SearchMetrics;
+import com.antbear.javaw8.map.SettingsRepository;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 
 public class NotificationsFragment extends Fragment {
+    private static final String TAG = "NotificationsFragment";
 
     // Theme related views
     private RadioGroup themeRadioGroup;
@@ -26,6 +42,12 @@ public class NotificationsFragment extends Fragment {
     // Location related views
     private SeekBar searchRadiusSeekBar;
     private TextView searchRadiusValue;
+    private SwitchCompat progressiveSearchSwitch;
+    private SwitchCompat offlineModeSwitch;
+    
+    // Diagnostics views
+    private TextView searchMetricsText;
+    private TextView mapFrameStatsText;
 
     @Nullable
     @Override
@@ -35,6 +57,7 @@ public class NotificationsFragment extends Fragment {
         // Initialize views
         initThemeControls(view);
         initLocationControls(view);
+        initDiagnostics(view);
         
         return view;
     }
@@ -83,12 +106,21 @@ public class NotificationsFragment extends Fragment {
         // Initialize location controls
         searchRadiusSeekBar = view.findViewById(R.id.search_radius_seekbar);
         searchRadiusValue = view.findViewById(R.id.search_radius_value);
+        progressiveSearchSwitch = view.findViewById(R.id.progressive_search_switch);
+        offlineModeSwitch = view.findViewById(R.id.offline_mode_switch);
+        
+        // Show the saved settings (the seek bar starts at 0 for the smallest radius)
+        SettingsRepository settingsRepository = SettingsRepository.getInstance(requireContext());
+        AppSettings settings = settingsRepository.getSnapshot();
+        searchRadiusSeekBar.setProgress(settings.getSearchRadiusKm() - AppSettings.MIN_SEARCH_RADIUS_KM);
+        progressiveSearchSwitch.setChecked(settings.isProgressiveSearch());
+        offlineModeSwitch.setChecked(settings.isOfflineMode());
         
         // Update the text when the seek bar value changes
         searchRadiusSeekBar.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
             @Override
             public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
-                // Update the displayed value (add 1 to avoid 0 km)
+                // Update the displayed value
                 updateRadiusText(progress);
             }
             
@@ -99,16 +131,111 @@ public class NotificationsFragment extends Fragment {
             
             @Override
             public void onStopTrackingTouch(SeekBar seekBar) {
-                // Could save the preference here if needed
+                // Save once the user lets go rather than on every step
+                int radiusKm = seekBar.getProgress() + AppSettings.MIN_SEARCH_RADIUS_KM;
+                settingsRepository.update(current -> current.withSearchRadiusKm(radiusKm));
             }
         });
         
+        progressiveSearchSwitch.setOnCheckedChangeListener((buttonView, isChecked) ->
+                settingsRepository.update(current -> current.withProgressiveSearch(isChecked)));
+        offlineModeSwitch.setOnCheckedChangeListener((buttonView, isChecked) ->
+                settingsRepository.update(current -> current.withOfflineMode(isChecked)));
+        
         // Set initial text
         updateRadiusText(searchRadiusSeekBar.getProgress());
     }
     
     private void updateRadiusText(int progress) {
-        // Display the radius value (add 1 to avoid 0 km)
-        searchRadiusValue.setText((progress + 1) + " km");
+        // Display the radius value (the seek bar starts at 0 for the smallest radius)
+        searchRadiusValue.setText((progress + AppSettings.MIN_SEARCH_RADIUS_KM) + " km");
+    }
+    
+    private void initDiagnostics(View view) {
+        // Search metrics are for developers; release builds don't show them
+        boolean debuggable = (requireContext().getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+        if (!debuggable) return;
+        
+        view.findViewById(R.id.diagnostics_section).setVisibility(View.VISIBLE);
+        searchMetricsText = view.findViewById(R.id.search_metrics_text);
+        view.findViewById(R.id.search_metrics_refresh).setOnClickListener(v -> showSearchMetrics());
+        view.findViewById(R.id.search_metrics_reset).setOnClickListener(v -> {
+            SearchMetrics.getInstance().reset();
+            showSearchMetrics();
+        });
+        view.findViewById(R.id.search_metrics_export).setOnClickListener(v -> exportSearchMetrics());
+        view.findViewById(R.id.trace_share).setOnClickListener(v -> shareTrace());
+        
+        mapFrameStatsText = view.findViewById(R.id.map_frame_stats_text);
+        SwitchCompat frameStatsHudSwitch = view.findViewById(R.id.frame_stats_hud_switch);
+        SettingsRepository settingsRepository = SettingsRepository.getInstance(requireContext());
+        frameStatsHudSwitch.setChecked(settingsRepository.getSnapshot().isFrameStatsHud());
+        frameStatsHudSwitch.setOnCheckedChangeListener((buttonView, isChecked) ->
+                settingsRepository.update(current -> current.withFrameStatsHud(isChecked)));
+        
+        showSearchMetrics();
+    }
+    
+    @Override
+    public void onResume() {
+        super.onResume();
+        if (searchMetricsText != null) {
+            showSearchMetrics();
+        }
+    }
+    
+    private void showSearchMetrics() {
+        searchMetricsText.setText(SearchMetrics.getInstance().formatSummary());
+        mapFrameStatsText.setText(MapFrameStats.getInstance().formatSummary());
+    }
+    
+    /**
+     * Share the trace ring buffer as text, e.g. to attach to a bug report.
+     */
+    private void shareTrace() {
+        Intent share = new Intent(Intent.ACTION_SEND)
+                .setType("text/plain")
+                .putExtra(Intent.EXTRA_SUBJECT, "Trace events")
+                .putExtra(Intent.EXTRA_TEXT, Tracer.dump());
+        startActivity(Intent.createChooser(share, null));
+    }
+    
+    /**
+     * Save the search metrics as JSON in the app's external files and offer to share them.
+     */
+    private void exportSearchMetrics() {
+        String json = SearchMetrics.getInstance().toJson();
+        File directory = requireContext().getExternalFilesDir("metrics");
+        AppExecutors.io().execute(() -> {
+            File file = null;
+            if (directory != null && (directory.isDirectory() || directory.mkdirs())) {
+                file = new File(directory, "search_metrics_" + System.currentTimeMillis() + ".json");
+                try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+                    writer.write(json);
+                } catch (IOException e) {
+                    Log.e(TAG, "Error writing search metrics: " + e.getMessage(), e);
+                    file = null;
+                }
+            }
+            
+            File saved = file;
+            AppExecutors.main().execute(() -> {
+                if (!isAdded()) return;
+                
+                if (saved != null) {
+                    Toast.makeText(requireContext(), getString(R.string.metrics_exported, saved.getPath()),
+                            Toast.LENGTH_LONG).show();
+                } else {
+                    Toast.makeText(requireContext(), R.string.metrics_export_failed, Toast.LENGTH_SHORT).show();
+                }
+                
+                // The JSON is small enough to share as text, which needs no file provider
+                Intent share = new Intent(Intent.ACTION_SEND)
+                        .setType("application/json")
+                        .putExtra(Intent.EXTRA_SUBJECT, "Search metrics")
+                        .putExtra(Intent.EXTRA_TEXT, json);
+                startActivity(Intent.createChooser(share, null));
+            });
+        });
     }
 }
@@ -8,6 +8,8 @@ import android.widget.Button;
 import android.widget.LinearLayout;
 import android.widget.TextView;
 
+import com.antbear.javaw8.map.PlaceSnippet;
+
 import org.osmdroid.views.MapView;
 import org.osmdroid.views.overlay.Marker;
 import org.osmdroid.views.overlay.infowindow.InfoWindow;
@@ -49,12 +51,12 @@ public class OsmInfoWindowAdapter extends InfoWindow {
 
             // Parse the snippet to extract different parts
             if (snippet != null) {
-                String[] lines = snippet.split("\n");
+                PlaceSnippet parts = PlaceSnippet.parse(snippet);
                 
                 // Address is the first line
                 TextView addressView = mView.findViewById(R.id.txt_address);
-                if (lines.length > 0) {
-                    addressView.setText(lines[0]);
+                if (parts.getFirstLine() != null) {
+                    addressView.setText(parts.getFirstLine());
                 } else {
                     addressView.setText("Address not available");
                 }
@@ -62,30 +64,25 @@ public class OsmInfoWindowAdapter extends InfoWindow {
                 // Phone number
                 LinearLayout phoneContainer = mView.findViewById(R.id.phone_container);
                 TextView phoneView = mView.findViewById(R.id.txt_phone);
-                boolean hasPhone = false;
+                boolean hasPhone = parts.getPhoneLine() != null;
                 
                 // Rating
                 LinearLayout ratingContainer = mView.findViewById(R.id.rating_container);
                 TextView ratingView = mView.findViewById(R.id.txt_rating);
-                boolean hasRating = false;
+                boolean hasRating = parts.getRatingLine() != null;
                 
                 // Sample data indicator
                 TextView sampleIndicator = mView.findViewById(R.id.txt_sample_indicator);
-                boolean isSampleData = false;
+                boolean isSampleData = parts.isSampleData();
                 
-                // Process the remaining lines
-                for (String line : lines) {
-                    if (line.startsWith("Phone:")) {
-                        phoneView.setText(line);
-                        hasPhone = true;
-                    } else if (line.startsWith("Rating:")) {
-                        ratingView.setText(line);
-                        hasRating = true;
-                    } else if (line.contains("(Sample Data)")) {
-                        sampleIndicator.setText("Sample data - real coffee shops may vary");
-                        sampleIndicator.setVisibility(View.VISIBLE);
-                        isSampleData = true;
-                    }
+                if (hasPhone) {
+                    phoneView.setText(parts.getPhoneLine());
+                }
+                if (hasRating) {
+                    ratingView.setText(parts.getRatingLine());
+                }
+                if (isSampleData) {
+                    sampleIndicator.setText("Sample data - real coffee shops may vary");
                 }
                 
                 // Show/hide containers based on data availability
@@ -0,0 +1,139 @@
+package com.antbear.javaw8;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.location.Location;
+
+import androidx.core.app.ActivityCompat;
+
+import com.antbear.javaw8.map.AppExecutors;
+import com.antbear.javaw8.map.LastResultsStore;
+import com.antbear.javaw8.map.MapProvider;
+import com.antbear.javaw8.map.MappedPlaceSnapshot;
+import com.google.android.gms.location.FusedLocationProviderClient;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Runs the independent parts of cold start concurrently instead of one after another:
+ * the location fix, connection warm-up, loading the last results from disk and
+ * creating the map view. Results are handed to the listener on the main thread
+ * as soon as the map is ready to display them, so cached markers can show before
+ * the location fix arrives and be refined afterwards.
+ */
+public class StartupOrchestrator {
+    /**
+     * Receives startup results on the main thread, always after the map is ready.
+     */
+    public interface Listener {
+        void onCachedResults(MappedPlaceSnapshot snapshot);
+        void onLocationAvailable(Location location);
+        void onRefinedLocation(Location location);
+    }
+    
+    private final Context context;
+    private final MapProvider mapProvider;
+    private final FusedLocationProviderClient fusedLocationClient;
+    private final LastResultsStore lastResultsStore;
+    private final Listener listener;
+    
+    private final CompletableFuture<Void> mapReady = new CompletableFuture<>();
+    private LocationPipeline locationPipeline;
+    private boolean firstMarkerReported = false;
+    private boolean cancelled = false;
+    private long startTime;
+    
+    public StartupOrchestrator(Context context, MapProvider mapProvider,
+                               FusedLocationProviderClient fusedLocationClient,
+                               LastResultsStore lastResultsStore, Listener listener) {
+        this.context = context;
+        this.mapProvider = mapProvider;
+        this.fusedLocationClient = fusedLocationClient;
+        this.lastResultsStore = lastResultsStore;
+        this.listener = listener;
+    }
+    
+    /**
+     * Kick off location, warm-up and cache loading. The map view is created by
+     * the caller in parallel and reported through {@link #onMapReady()}.
+     */
+    public void start() {
+        startTime = StartupTimer.now();
+        StartupTimer.mark("Startup orchestration started");
+        
+        mapProvider.prewarmConnections();
+        
+        lastResultsStore.loadAsync()
+                .thenCombine(mapReady, (snapshot, ignored) -> snapshot)
+                .thenAcceptAsync(snapshot -> {
+                    if (cancelled || snapshot == null || snapshot.size() == 0) return;
+                    StartupTimer.mark("Cached results loaded");
+                    listener.onCachedResults(snapshot);
+                }, AppExecutors.main());
+        
+        requestLocation();
+    }
+    
+    /**
+     * Signal that the map is ready to display markers.
+     */
+    public void onMapReady() {
+        mapReady.complete(null);
+    }
+    
+    /**
+     * Request the location fix if permission is granted and it has not been requested yet.
+     * A cheap fix is delivered first, followed by a high-accuracy one when it differs.
+     */
+    public void requestLocation() {
+        if (locationPipeline != null || !hasLocationPermission()) return;
+        
+        locationPipeline = new LocationPipeline(fusedLocationClient, new LocationPipeline.Listener() {
+            @Override
+            public void onCoarseLocation(Location location) {
+                StartupTimer.mark("Coarse location fix received");
+                mapReady.thenRunAsync(() -> {
+                    if (!cancelled) listener.onLocationAvailable(location);
+                }, AppExecutors.main());
+            }
+            
+            @Override
+            public void onRefinedLocation(Location location) {
+                StartupTimer.mark("Refined location fix received");
+                mapReady.thenRunAsync(() -> {
+                    if (!cancelled) listener.onRefinedLocation(location);
+                }, AppExecutors.main());
+            }
+        });
+        locationPipeline.start();
+    }
+    
+    /**
+     * Report that a marker has been rendered. Only the first call is recorded,
+     * as the time-to-first-marker metric.
+     */
+    public void reportFirstMarker() {
+        if (firstMarkerReported) return;
+        firstMarkerReported = true;
+        
+        StartupTimer.endSection("Time to first marker", startTime);
+    }
+    
+    /**
+     * Stop delivering results, e.g. when the hosting fragment is destroyed.
+     */
+    public void cancel() {
+        cancelled = true;
+        if (locationPipeline != null) {
+            locationPipeline.cancel();
+        }
+    }
+    
+    private boolean hasLocationPermission() {
+        return ActivityCompat.checkSelfPermission(context,
+                Manifest.permission.ACCESS_FINE_LOCATION) == PackageManager.PERMISSION_GRANTED ||
+            ActivityCompat.checkSelfPermission(context,
+                Manifest.permission.ACCESS_COARSE_LOCATION) == PackageManager.PERMISSION_GRANTED;
+    }
+}
@@ -0,0 +1,51 @@
+package com.antbear.javaw8;
+
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Lightweight startup instrumentation.
+ * Logs named milestones relative to process start and the duration of sections,
+ * noting whether each section ran on the main thread so before/after
+ * comparisons of main-thread work are visible in logcat (tag "StartupTimer").
+ */
+public final class StartupTimer {
+    private static final String TAG = "StartupTimer";
+    
+    private StartupTimer() {
+        // Static helpers only
+    }
+    
+    /**
+     * Get the current time to pass to {@link #endSection}.
+     * @return The current uptime in milliseconds
+     */
+    public static long now() {
+        return SystemClock.uptimeMillis();
+    }
+    
+    /**
+     * Log a milestone with its offset from process start.
+     * @param milestone Name of the milestone
+     */
+    public static void mark(String milestone) {
+        long sinceStart = SystemClock.uptimeMillis() - Process.getStartUptimeMillis();
+        Log.d(TAG, milestone + " at +" + sinceStart + "ms");
+    }
+    
+    /**
+     * Log the duration of a section that started at {@code startUptimeMillis}.
+     * @param section Name of the section
+     * @param startUptimeMillis Value returned by {@link #now()} when the section started
+     * @return The section duration in milliseconds
+     */
+    public static long endSection(String section, long startUptimeMillis) {
+        long duration = SystemClock.uptimeMillis() - startUptimeMillis;
+        boolean onMainThread = Looper.myLooper() == Looper.getMainLooper();
+        Log.d(TAG, section + " took " + duration + "ms on "
+                + (onMainThread ? "main thread" : "background thread"));
+        return duration;
+    }
+}
@@ -1,30 +1,33 @@
 package com.antbear.javaw8;
 
 import android.content.Context;
-import android.content.SharedPreferences;
 import android.os.Build;
-import android.preference.PreferenceManager;
 
 import androidx.appcompat.app.AppCompatDelegate;
 
+import com.antbear.javaw8.map.AppSettings;
+import com.antbear.javaw8.map.SettingsRepository;
+
 /**
  * Utility class for managing theme preferences and application
  */
 public class ThemeUtils {
-    private static final String THEME_PREF_KEY = "app_theme";
-    
     // Theme mode constants
-    public static final int MODE_SYSTEM = 0;
-    public static final int MODE_LIGHT = 1;
-    public static final int MODE_DARK = 2;
+    public static final int MODE_SYSTEM = AppSettings.THEME_SYSTEM;
+    public static final int MODE_LIGHT = AppSettings.THEME_LIGHT;
+    public static final int MODE_DARK = AppSettings.THEME_DARK;
     
     /**
-     * Apply the saved theme mode or default to system mode if not set
+     * Apply the saved theme mode or default to system mode if not set.
+     * The theme has to be known before the first view is inflated, so this
+     * is the one place on the main thread that waits for the settings to load.
      * @param context Application context
      */
     public static void applyTheme(Context context) {
-        int themeMode = getThemePreference(context);
-        applyThemeMode(themeMode);
+        SettingsRepository repository = SettingsRepository.getInstance(context);
+        repository.whenLoaded().join();
+        // The snapshot, not the settings as first loaded, so a theme picked since then sticks
+        applyThemeMode(repository.getSnapshot().getThemeMode());
     }
     
     /**
@@ -51,22 +54,20 @@ public class ThemeUtils {
     }
     
     /**
-     * Save the user's theme preference
+     * Save the user's theme preference in the background
      * @param context Application context
      * @param themeMode The theme mode to save
      */
     public static void saveThemePreference(Context context, int themeMode) {
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
-        prefs.edit().putInt(THEME_PREF_KEY, themeMode).apply();
+        SettingsRepository.getInstance(context).update(settings -> settings.withThemeMode(themeMode));
     }
     
     /**
-     * Get the user's saved theme preference
+     * Get the user's saved theme preference without waiting for the disk
      * @param context Application context
-     * @return The saved theme mode or MODE_SYSTEM if not set
+     * @return The saved theme mode, or MODE_SYSTEM if not set or not loaded yet
      */
     public static int getThemePreference(Context context) {
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
-        return prefs.getInt(THEME_PREF_KEY, MODE_SYSTEM);
+        return SettingsRepository.getInstance(context).getSnapshot().getThemeMode();
     }
 }
@@ -0,0 +1,182 @@
+package com.antbear.javaw8;
+
+import android.os.Build;
+import android.os.Trace;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Low-overhead tracing for hot paths: debug logs formatted only when
+ * tracing is on, {@link Trace} sections for systrace/Perfetto, and a
+ * fixed-size ring buffer of structured events that can be dumped into a
+ * bug report.
+ * Tracing is on in debug builds only. {@link #ENABLED} is a compile-time
+ * constant, so in release builds the calls below return at once and any
+ * code inside {@code if (Tracer.ENABLED)} is removed by the compiler.
+ * Log arguments are still boxed at the call site, so per-item paths (such
+ * as one call per marker) should wrap their calls in that check.
+ */
+public final class Tracer {
+    /** Whether tracing is compiled in. */
+    public static final boolean ENABLED = BuildConfig.DEBUG;
+    
+    private static final int CAPACITY = 2048; // a power of two
+    
+    // Ring buffer of events, one slot per index; written under the class lock
+    private static final long[] eventNanos = new long[CAPACITY];
+    private static final String[] eventNames = new String[CAPACITY];
+    private static final String[] eventThreads = new String[CAPACITY];
+    private static final long[] eventValues = new long[CAPACITY];
+    private static final String[] eventDetails = new String[CAPACITY];
+    private static long eventCount;
+    
+    private static final AtomicInteger nextCookie = new AtomicInteger();
+    
+    private Tracer() {
+        // Static helpers only
+    }
+    
+    /**
+     * Log a debug message when tracing is on.
+     */
+    public static void d(String tag, String message) {
+        if (!ENABLED) return;
+        Log.d(tag, message);
+    }
+    
+    /**
+     * Log a debug message, formatted with {@link String#format} only when tracing is on.
+     */
+    public static void d(String tag, String format, Object arg) {
+        if (!ENABLED) return;
+        Log.d(tag, String.format(Locale.US, format, arg));
+    }
+    
+    public static void d(String tag, String format, Object arg1, Object arg2) {
+        if (!ENABLED) return;
+        Log.d(tag, String.format(Locale.US, format, arg1, arg2));
+    }
+    
+    public static void d(String tag, String format, Object arg1, Object arg2, Object arg3) {
+        if (!ENABLED) return;
+        Log.d(tag, String.format(Locale.US, format, arg1, arg2, arg3));
+    }
+    
+    public static void d(String tag, String format, Object... args) {
+        if (!ENABLED) return;
+        Log.d(tag, String.format(Locale.US, format, args));
+    }
+    
+    /**
+     * Record an event in the ring buffer.
+     * @param name What happened; should be a constant so recording does not allocate
+     * @param value A number describing the event, e.g. a count or duration in microseconds
+     * @param detail Extra text, e.g. a query, or null
+     */
+    public static void event(String name, long value, String detail) {
+        if (!ENABLED) return;
+        record(name, value, detail);
+    }
+    
+    public static void event(String name, long value) {
+        if (!ENABLED) return;
+        record(name, value, null);
+    }
+    
+    /**
+     * Start a {@link Trace} section on this thread. Sections must nest and end on the same thread.
+     * @param name The section name, at most 127 characters
+     * @return The start time to pass to {@link #endSection}
+     */
+    public static long beginSection(String name) {
+        if (!ENABLED) return 0;
+        Trace.beginSection(name);
+        return System.nanoTime();
+    }
+    
+    /**
+     * End the innermost section and record it in the ring buffer with its duration in microseconds.
+     * @param name The name the section was started with
+     * @param startNanos The value returned by {@link #beginSection}
+     */
+    public static void endSection(String name, long startNanos) {
+        if (!ENABLED) return;
+        Trace.endSection();
+        record(name, (System.nanoTime() - startNanos) / 1000, null);
+    }
+    
+    /**
+     * Start a section that may end on another thread, such as a network call.
+     * Shown in system traces from Android 10; always recorded in the ring buffer,
+     * with the cookie as its value.
+     * @param name The section name
+     * @return The cookie to end the section with
+     */
+    public static int beginAsyncSection(String name) {
+        if (!ENABLED) return 0;
+        int cookie = nextCookie.incrementAndGet();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            Trace.beginAsyncSection(name, cookie);
+        }
+        record(name, cookie, "begin");
+        return cookie;
+    }
+    
+    /**
+     * End a section started with {@link #beginAsyncSection}.
+     */
+    public static void endAsyncSection(String name, int cookie) {
+        if (!ENABLED) return;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            Trace.endAsyncSection(name, cookie);
+        }
+        record(name, cookie, "end");
+    }
+    
+    private static synchronized void record(String name, long value, String detail) {
+        int slot = (int) (eventCount++ & (CAPACITY - 1));
+        eventNanos[slot] = System.nanoTime();
+        eventNames[slot] = name;
+        eventThreads[slot] = Thread.currentThread().getName();
+        eventValues[slot] = value;
+        eventDetails[slot] = detail;
+    }
+    
+    /**
+     * Format the buffered events, oldest first, with times relative to the newest.
+     * @return One event per line, or an empty string if tracing is off
+     */
+    public static synchronized String dump() {
+        if (!ENABLED || eventCount == 0) return "";
+        
+        int size = (int) Math.min(eventCount, CAPACITY);
+        int newest = (int) ((eventCount - 1) & (CAPACITY - 1));
+        StringBuilder out = new StringBuilder(size * 64);
+        out.append(String.format(Locale.US, "%d events (%d recorded), ms relative to the newest%n",
+                size, eventCount));
+        for (int i = size - 1; i >= 0; i--) {
+            int slot = (newest - i) & (CAPACITY - 1);
+            out.append(String.format(Locale.US, "%10.3f  %-16.16s  %-28s %8d",
+                    (eventNanos[slot] - eventNanos[newest]) / 1_000_000.0,
+                    eventThreads[slot], eventNames[slot], eventValues[slot]));
+            if (eventDetails[slot] != null) {
+                out.append("  ").append(eventDetails[slot]);
+            }
+            out.append('\n');
+        }
+        return out.toString();
+    }
+    
+    /**
+     * Drop the buffered events.
+     */
+    public static synchronized void clear() {
+        eventCount = 0;
+        Arrays.fill(eventNames, null);
+        Arrays.fill(eventThreads, null);
+        Arrays.fill(eventDetails, null);
+    }
+}
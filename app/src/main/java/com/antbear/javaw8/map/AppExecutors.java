@@ -0,0 +1,62 @@
+package com.antbear.javaw8.map;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Shared executors for background work.
+ * Keeps disk I/O and CPU work off the main thread without each class
+ * creating its own threads. HTTP calls are not run here: OkHttp enqueues
+ * them on its own dispatcher threads, and Overpass responses are parsed
+ * as they stream in on those threads. The search pipeline then looks up
+ * the local store and merges results on {@link #compute()}, and delivers
+ * them to the UI on {@link #main()}.
+ */
+public final class AppExecutors {
+    private static final int IO_THREADS = 4;
+    private static final int COMPUTE_THREADS =
+            Math.max(2, Runtime.getRuntime().availableProcessors() - 1);
+    
+    private static final ExecutorService ioExecutor = Executors.newFixedThreadPool(IO_THREADS);
+    private static final ExecutorService computeExecutor = Executors.newFixedThreadPool(COMPUTE_THREADS);
+    private static final Executor mainExecutor = new Executor() {
+        private final Handler handler = new Handler(Looper.getMainLooper());
+        
+        @Override
+        public void execute(Runnable command) {
+            handler.post(command);
+        }
+    };
+    
+    private AppExecutors() {
+        // Static accessors only
+    }
+    
+    /**
+     * Executor for blocking disk I/O, such as loading and saving the stores.
+     * @return The shared I/O executor
+     */
+    public static ExecutorService io() {
+        return ioExecutor;
+    }
+    
+    /**
+     * Executor for CPU-bound work such as parsing responses.
+     * @return The shared compute executor
+     */
+    public static ExecutorService compute() {
+        return computeExecutor;
+    }
+    
+    /**
+     * Executor that posts work to the main thread.
+     * @return The main thread executor
+     */
+    public static Executor main() {
+        return mainExecutor;
+    }
+}
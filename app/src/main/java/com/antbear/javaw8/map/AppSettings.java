@@ -0,0 +1,118 @@
+package com.antbear.javaw8.map;
+
+/**
+ * An immutable snapshot of the user's settings, published by
+ * {@link SettingsRepository}. Changes are made with the {@code with...}
+ * methods, which return a new snapshot, or this one if nothing changed.
+ */
+public final class AppSettings {
+    // Theme modes, as used by ThemeUtils
+    public static final int THEME_SYSTEM = 0;
+    public static final int THEME_LIGHT = 1;
+    public static final int THEME_DARK = 2;
+    
+    // Search radius limits, matching the settings seek bar
+    public static final int MIN_SEARCH_RADIUS_KM = 1;
+    public static final int MAX_SEARCH_RADIUS_KM = 11;
+    
+    /** The settings used before any are saved. */
+    public static final AppSettings DEFAULTS = new AppSettings(THEME_SYSTEM, 2, true, false,
+            20L * 1024 * 1024, 5 * 60 * 1000L, false, false);
+    
+    private final int themeMode;
+    private final int searchRadiusKm;
+    private final boolean progressiveSearch;
+    private final boolean useGoogleMaps;
+    private final long cacheWarmingDailyBytes;
+    private final long cacheWarmingMaxRunMs;
+    private final boolean offlineMode;
+    private final boolean frameStatsHud;
+    
+    AppSettings(int themeMode, int searchRadiusKm, boolean progressiveSearch, boolean useGoogleMaps,
+                long cacheWarmingDailyBytes, long cacheWarmingMaxRunMs, boolean offlineMode,
+                boolean frameStatsHud) {
+        this.themeMode = themeMode;
+        this.searchRadiusKm = Math.max(MIN_SEARCH_RADIUS_KM, Math.min(MAX_SEARCH_RADIUS_KM, searchRadiusKm));
+        this.progressiveSearch = progressiveSearch;
+        this.useGoogleMaps = useGoogleMaps;
+        this.cacheWarmingDailyBytes = Math.max(0, cacheWarmingDailyBytes);
+        this.cacheWarmingMaxRunMs = Math.max(0, cacheWarmingMaxRunMs);
+        this.offlineMode = offlineMode;
+        this.frameStatsHud = frameStatsHud;
+    }
+    
+    // Getters
+    public int getThemeMode() { return themeMode; }
+    public int getSearchRadiusKm() { return searchRadiusKm; }
+    public double getSearchRadiusMeters() { return searchRadiusKm * 1000.0; }
+    public boolean isProgressiveSearch() { return progressiveSearch; }
+    public boolean isUsingGoogleMaps() { return useGoogleMaps; }
+    public long getCacheWarmingDailyBytes() { return cacheWarmingDailyBytes; }
+    public long getCacheWarmingMaxRunMs() { return cacheWarmingMaxRunMs; }
+    public boolean isOfflineMode() { return offlineMode; }
+    public boolean isFrameStatsHud() { return frameStatsHud; }
+    
+    /**
+     * @param themeMode One of the THEME_ constants
+     */
+    public AppSettings withThemeMode(int themeMode) {
+        if (themeMode == this.themeMode) return this;
+        return new AppSettings(themeMode, searchRadiusKm, progressiveSearch, useGoogleMaps,
+                cacheWarmingDailyBytes, cacheWarmingMaxRunMs, offlineMode, frameStatsHud);
+    }
+    
+    /**
+     * @param searchRadiusKm The largest radius to search, clamped to the supported range
+     */
+    public AppSettings withSearchRadiusKm(int searchRadiusKm) {
+        AppSettings updated = new AppSettings(themeMode, searchRadiusKm, progressiveSearch, useGoogleMaps,
+                cacheWarmingDailyBytes, cacheWarmingMaxRunMs, offlineMode, frameStatsHud);
+        return updated.searchRadiusKm == this.searchRadiusKm ? this : updated;
+    }
+    
+    /**
+     * @param progressiveSearch true to search in expanding rings, false for one search over the full radius
+     */
+    public AppSettings withProgressiveSearch(boolean progressiveSearch) {
+        if (progressiveSearch == this.progressiveSearch) return this;
+        return new AppSettings(themeMode, searchRadiusKm, progressiveSearch, useGoogleMaps,
+                cacheWarmingDailyBytes, cacheWarmingMaxRunMs, offlineMode, frameStatsHud);
+    }
+    
+    /**
+     * @param useGoogleMaps true to prefer Google Maps over osmdroid
+     */
+    public AppSettings withUseGoogleMaps(boolean useGoogleMaps) {
+        if (useGoogleMaps == this.useGoogleMaps) return this;
+        return new AppSettings(themeMode, searchRadiusKm, progressiveSearch, useGoogleMaps,
+                cacheWarmingDailyBytes, cacheWarmingMaxRunMs, offlineMode, frameStatsHud);
+    }
+    
+    /**
+     * @param dailyBytes Bytes the cache warmer may download per day (0 disables it)
+     * @param maxRunMs Time after which a cache warming run stops starting new downloads
+     */
+    public AppSettings withCacheWarmingBudget(long dailyBytes, long maxRunMs) {
+        if (dailyBytes == cacheWarmingDailyBytes && maxRunMs == cacheWarmingMaxRunMs) return this;
+        return new AppSettings(themeMode, searchRadiusKm, progressiveSearch, useGoogleMaps,
+                dailyBytes, maxRunMs, offlineMode, frameStatsHud);
+    }
+    
+    /**
+     * @param offlineMode true to use only places and tiles already on the device
+     */
+    public AppSettings withOfflineMode(boolean offlineMode) {
+        if (offlineMode == this.offlineMode) return this;
+        return new AppSettings(themeMode, searchRadiusKm, progressiveSearch, useGoogleMaps,
+                cacheWarmingDailyBytes, cacheWarmingMaxRunMs, offlineMode, frameStatsHud);
+    }
+    
+    /**
+     * @param frameStatsHud true to show frame rate and marker count over the map (debuggable builds only)
+     */
+    public AppSettings withFrameStatsHud(boolean frameStatsHud) {
+        if (frameStatsHud == this.frameStatsHud) return this;
+        return new AppSettings(themeMode, searchRadiusKm, progressiveSearch, useGoogleMaps,
+                cacheWarmingDailyBytes, cacheWarmingMaxRunMs, offlineMode, frameStatsHud);
+    }
+}
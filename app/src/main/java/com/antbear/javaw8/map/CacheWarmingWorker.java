@@ -0,0 +1,204 @@
+package com.antbear.javaw8.map;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.TrafficStats;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.Constraints;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+
+/**
+ * Background job that keeps the places and base map of frequently searched
+ * areas cached, so opening the app there needs no network. Runs about twice
+ * a day, only on unmetered networks while charging. Each run refreshes the
+ * most used queries of the top {@link VisitedAreas} (a cheap diff once an
+ * area has been synced) and then prefetches the missing base tiles, within
+ * a daily byte budget and a per-run time limit.
+ */
+public class CacheWarmingWorker extends Worker {
+    private static final String TAG = "CacheWarmingWorker";
+    private static final String UNIQUE_WORK_NAME = "cache_warming";
+    private static final long RUN_INTERVAL_HOURS = 12;
+    
+    // The budget itself is a setting in SettingsRepository; this tracks how much of it was used
+    private static final String PREFS_NAME = "cache_warming";
+    private static final String KEY_BUDGET_DAY = "budget_day";
+    private static final String KEY_BYTES_USED = "bytes_used";
+    
+    private static final int MAX_AREAS = 5;
+    private static final double MIN_AREA_SCORE = 3.0;
+    private static final int MAX_QUERIES_PER_AREA = 3;
+    // Counted per Overpass refresh when the platform cannot report traffic
+    private static final long ESTIMATED_REFRESH_BYTES = 256 * 1024;
+    
+    // The refresh being waited for, cancelled if WorkManager stops the job
+    private volatile CompletableFuture<Void> currentRefresh;
+    
+    public CacheWarmingWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+    
+    /**
+     * Schedule the periodic job, keeping an existing schedule.
+     * @param context Any context
+     */
+    public static void schedule(Context context) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.UNMETERED)
+                .setRequiresCharging(true)
+                .setRequiresBatteryNotLow(true)
+                .build();
+        PeriodicWorkRequest request = new PeriodicWorkRequest.Builder(
+                CacheWarmingWorker.class, RUN_INTERVAL_HOURS, TimeUnit.HOURS)
+                .setConstraints(constraints)
+                .build();
+        WorkManager.getInstance(context).enqueueUniquePeriodicWork(
+                UNIQUE_WORK_NAME, ExistingPeriodicWorkPolicy.KEEP, request);
+    }
+    
+    /**
+     * Set how much the job may download per day and how long one run may take.
+     * @param context Any context
+     * @param dailyBytes Bytes the job may download per calendar day (0 disables it)
+     * @param maxRunMs Time after which a run stops starting new downloads
+     */
+    public static void setBudget(Context context, long dailyBytes, long maxRunMs) {
+        SettingsRepository.getInstance(context).update(
+                settings -> settings.withCacheWarmingBudget(dailyBytes, maxRunMs));
+    }
+    
+    @NonNull
+    @Override
+    public Result doWork() {
+        Context context = getApplicationContext();
+        SettingsRepository settingsRepository = SettingsRepository.getInstance(context);
+        settingsRepository.whenLoaded().join();
+        AppSettings settings = settingsRepository.getSnapshot();
+        if (settings.isOfflineMode()) {
+            Log.d(TAG, "Offline mode is on, skipping");
+            return Result.success();
+        }
+        
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        long today = TimeUnit.MILLISECONDS.toDays(System.currentTimeMillis());
+        long usedToday = prefs.getLong(KEY_BUDGET_DAY, -1) == today ? prefs.getLong(KEY_BYTES_USED, 0) : 0;
+        long byteBudget = settings.getCacheWarmingDailyBytes() - usedToday;
+        long deadline = SystemClock.elapsedRealtime() + settings.getCacheWarmingMaxRunMs();
+        if (byteBudget <= 0) {
+            Log.d(TAG, "Daily budget used up, skipping");
+            return Result.success();
+        }
+        
+        List<VisitedAreas.Area> areas;
+        try {
+            areas = VisitedAreas.getInstance(context).getFrequentAreas(MAX_AREAS, MIN_AREA_SCORE)
+                    .get(remainingMs(deadline), TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            Log.e(TAG, "Error loading visited areas: " + e.getMessage(), e);
+            return Result.retry();
+        }
+        if (areas.isEmpty()) {
+            Log.d(TAG, "No frequently searched areas yet");
+            return Result.success();
+        }
+        
+        OsmdroidProvider provider = new OsmdroidProvider();
+        provider.initialize(context);
+        TilePrefetcher tilePrefetcher = new TilePrefetcher(new OkHttpClient(), OsmdroidProvider.TILE_SOURCE);
+        
+        // Whole-app traffic where the platform reports it, so Overpass responses count exactly
+        long trafficStart = uidTrafficBytes();
+        long tileBytes = 0;
+        int refreshes = 0;
+        try {
+            for (VisitedAreas.Area area : areas) {
+                SearchArea searchArea = area.getSearchArea();
+                List<String> queries = area.getQueries();
+                for (int i = 0; i < Math.min(MAX_QUERIES_PER_AREA, queries.size()); i++) {
+                    if (isOverBudget(trafficStart, tileBytes, refreshes, byteBudget, deadline)) break;
+                    
+                    CompletableFuture<Void> refresh = provider.refreshPlaces(queries.get(i),
+                            searchArea.getLatitude(), searchArea.getLongitude(), searchArea.getRadiusMeters());
+                    currentRefresh = refresh;
+                    if (isStopped()) refresh.cancel(false);
+                    try {
+                        refresh.get(remainingMs(deadline), TimeUnit.MILLISECONDS);
+                    } catch (Exception e) {
+                        // Out of time or stopped: don't leave the download running after the job
+                        refresh.cancel(false);
+                        Log.e(TAG, "Error refreshing '" + queries.get(i) + "': " + e.getMessage());
+                    } finally {
+                        currentRefresh = null;
+                    }
+                    refreshes++;
+                }
+                
+                if (isOverBudget(trafficStart, tileBytes, refreshes, byteBudget, deadline)) break;
+                tileBytes += tilePrefetcher.prefetch(searchArea,
+                        OsmdroidProvider.DEFAULT_ZOOM - 1, OsmdroidProvider.DEFAULT_ZOOM + 1,
+                        byteBudget - bytesUsed(trafficStart, tileBytes, refreshes), deadline);
+            }
+        } finally {
+            tilePrefetcher.close();
+            
+            long used = bytesUsed(trafficStart, tileBytes, refreshes);
+            prefs.edit()
+                    .putLong(KEY_BUDGET_DAY, today)
+                    .putLong(KEY_BYTES_USED, usedToday + used)
+                    .apply();
+            Log.d(TAG, "Warmed " + areas.size() + " areas: " + refreshes + " refreshes, "
+                    + used + " bytes, " + (usedToday + used) + " bytes today");
+        }
+        return Result.success();
+    }
+    
+    @Override
+    public void onStopped() {
+        CompletableFuture<Void> refresh = currentRefresh;
+        if (refresh != null) {
+            refresh.cancel(false);
+        }
+    }
+    
+    private boolean isOverBudget(long trafficStart, long tileBytes, int refreshes, long byteBudget, long deadline) {
+        return isStopped()
+                || remainingMs(deadline) <= 0
+                || bytesUsed(trafficStart, tileBytes, refreshes) >= byteBudget;
+    }
+    
+    private static long bytesUsed(long trafficStart, long tileBytes, int refreshes) {
+        long traffic = uidTrafficBytes();
+        if (trafficStart != TrafficStats.UNSUPPORTED && traffic != TrafficStats.UNSUPPORTED) {
+            return traffic - trafficStart;
+        }
+        return tileBytes + refreshes * ESTIMATED_REFRESH_BYTES;
+    }
+    
+    private static long uidTrafficBytes() {
+        long received = TrafficStats.getUidRxBytes(Process.myUid());
+        long sent = TrafficStats.getUidTxBytes(Process.myUid());
+        if (received == TrafficStats.UNSUPPORTED || sent == TrafficStats.UNSUPPORTED) {
+            return TrafficStats.UNSUPPORTED;
+        }
+        return received + sent;
+    }
+    
+    private static long remainingMs(long deadline) {
+        return Math.max(0, deadline - SystemClock.elapsedRealtime());
+    }
+}
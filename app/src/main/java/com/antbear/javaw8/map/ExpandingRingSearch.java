@@ -0,0 +1,164 @@
+package com.antbear.javaw8.map;
+
+import android.util.Log;
+
+import com.antbear.javaw8.Tracer;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A place search that starts with a small radius and widens it until enough
+ * places are found or the maximum radius is reached. Places close to the
+ * user are delivered after the first, cheap ring instead of waiting for a
+ * query over the whole area. Each ring searches the full circle (the local
+ * store answers the inner part again from cache); places already delivered
+ * by an inner ring are not delivered again.
+ *
+ * Must be started and cancelled on the main thread, where the provider
+ * delivers its callbacks; they are always posted, so a ring never
+ * completes before {@link #start} returns.
+ */
+public class ExpandingRingSearch implements SearchHandle {
+    private static final String TAG = "ExpandingRingSearch";
+    private static final double GROWTH_FACTOR = 2.0;
+    
+    private final MapProvider mapProvider;
+    private final String query;
+    private final double latitude;
+    private final double longitude;
+    private final double maxRadius;
+    private final int targetCount;
+    private final MapProvider.OnPlacesStreamListener listener;
+    
+    private final Set<String> seenIds = new HashSet<>();
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private volatile Status status = Status.RUNNING;
+    private SearchHandle currentRing;
+    private double radius;
+    private double coveredRadius;
+    private int delivered;
+    
+    /**
+     * Start the search.
+     * @param mapProvider The provider to run each ring with
+     * @param query The search query (e.g. "coffee shop")
+     * @param latitude The latitude of the center
+     * @param longitude The longitude of the center
+     * @param initialRadius The radius of the first ring (in meters)
+     * @param maxRadius The largest radius to search (in meters)
+     * @param targetCount Stop widening once this many places were found
+     * @param listener Receives the new places of every ring, then one final outcome
+     * @return The running search
+     */
+    public static ExpandingRingSearch start(MapProvider mapProvider, String query, double latitude,
+                                            double longitude, double initialRadius, double maxRadius,
+                                            int targetCount, MapProvider.OnPlacesStreamListener listener) {
+        ExpandingRingSearch search = new ExpandingRingSearch(mapProvider, query, latitude, longitude,
+                Math.min(initialRadius, maxRadius), maxRadius, targetCount, listener);
+        search.searchRing();
+        return search;
+    }
+    
+    private ExpandingRingSearch(MapProvider mapProvider, String query, double latitude, double longitude,
+                                double initialRadius, double maxRadius, int targetCount,
+                                MapProvider.OnPlacesStreamListener listener) {
+        this.mapProvider = mapProvider;
+        this.query = query;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.radius = initialRadius;
+        this.maxRadius = maxRadius;
+        this.targetCount = targetCount;
+        this.listener = listener;
+    }
+    
+    /**
+     * Get the radius of the area fully searched so far.
+     * @return The radius of the last completed ring (in meters), or 0 before the first one completes
+     */
+    public double getCoveredRadiusMeters() {
+        return coveredRadius;
+    }
+    
+    private void searchRing() {
+        Tracer.d(TAG, "Searching ring of %d m, %d places so far", Math.round(radius), delivered);
+        currentRing = mapProvider.streamNearbyPlaces(query, latitude, longitude, radius,
+                new MapProvider.OnPlacesStreamListener() {
+                    @Override
+                    public void onPlacesBatch(PlaceInfo[] places) {
+                        if (status != Status.RUNNING) return;
+                        
+                        List<PlaceInfo> fresh = new ArrayList<>(places.length);
+                        for (PlaceInfo place : places) {
+                            // Sample places have no ID and never repeat across rings
+                            if (place.getId() == null || seenIds.add(place.getId())) {
+                                fresh.add(place);
+                            }
+                        }
+                        if (fresh.isEmpty()) return;
+                        
+                        delivered += fresh.size();
+                        listener.onPlacesBatch(fresh.toArray(new PlaceInfo[0]));
+                    }
+                    
+                    @Override
+                    public void onSearchComplete(int totalPlaces) {
+                        if (status != Status.RUNNING) return;
+                        
+                        coveredRadius = radius;
+                        if (delivered >= targetCount || radius >= maxRadius) {
+                            finish(Status.COMPLETED);
+                            listener.onSearchComplete(delivered);
+                        } else {
+                            radius = Math.min(radius * GROWTH_FACTOR, maxRadius);
+                            searchRing();
+                        }
+                    }
+                    
+                    @Override
+                    public void onSearchError(String errorMessage) {
+                        if (status != Status.RUNNING) return;
+                        
+                        // An outer ring failing still leaves the inner results valid
+                        if (delivered > 0) {
+                            Log.e(TAG, "Ring of " + Math.round(radius) + " m failed: " + errorMessage);
+                            finish(Status.COMPLETED);
+                            listener.onSearchComplete(delivered);
+                        } else {
+                            finish(Status.FAILED);
+                            listener.onSearchError(errorMessage);
+                        }
+                    }
+                });
+    }
+    
+    private void finish(Status outcome) {
+        status = outcome;
+        finished.countDown();
+    }
+    
+    @Override
+    public void cancel() {
+        if (status != Status.RUNNING) return;
+        
+        finish(Status.CANCELLED);
+        if (currentRing != null) {
+            currentRing.cancel();
+        }
+    }
+    
+    @Override
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return finished.await(timeout, unit);
+    }
+    
+    @Override
+    public Status getStatus() {
+        return status;
+    }
+}
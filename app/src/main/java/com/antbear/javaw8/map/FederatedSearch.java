@@ -0,0 +1,188 @@
+package com.antbear.javaw8.map;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.antbear.javaw8.Tracer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Queries several {@link PlaceSource}s concurrently and merges their results.
+ * Places are streamed from whichever source answers first; places already
+ * reported by another source (see {@link PlaceDeduplicator}) are dropped.
+ * The search completes when every source has finished or the deadline
+ * expires, whichever comes first, and fails only if every source failed.
+ */
+public class FederatedSearch {
+    private static final String TAG = "FederatedSearch";
+
+    // Two reports of the same shop are rarely further apart than this
+    private static final double DEDUP_DISTANCE_METERS = 50;
+
+    private final List<PlaceSource> sources;
+    private final long deadlineMs;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Create a federated search over a fixed set of sources.
+     *
+     * @param sources The sources to query, fastest expected first
+     * @param deadlineMs Time after which the search completes with the results received so far
+     */
+    public FederatedSearch(List<PlaceSource> sources, long deadlineMs) {
+        this.sources = new ArrayList<>(sources);
+        this.deadlineMs = deadlineMs;
+    }
+
+    /**
+     * Search all sources for places near a location.
+     * @param query The search query (e.g., "coffee shop")
+     * @param latitude The latitude to search around
+     * @param longitude The longitude to search around
+     * @param radius The radius to search within (in meters)
+     * @param trace Records where the search spends its time; finished when the search ends
+     * @param listener The listener for merged batches and the final outcome (main thread)
+     * @return A handle to cancel the search across all sources
+     */
+    public SearchHandle search(String query, double latitude, double longitude, double radius,
+                               SearchTrace trace, MapProvider.OnPlacesStreamListener listener) {
+        SearchTask task = new SearchTask(listener);
+        Tracer.event("search.start", Math.round(radius), query);
+        new Merge(task, trace).start(query, latitude, longitude, radius);
+        return task;
+    }
+
+    /**
+     * State of one federated search. Source callbacks all run on the same
+     * serial executor, so the fields below need no locking.
+     */
+    private class Merge {
+        private final SearchTask task;
+        private final SearchTrace trace;
+        private final SerialExecutor mergeExecutor = new SerialExecutor(AppExecutors.compute());
+        private final PlaceDeduplicator deduplicator = new PlaceDeduplicator(DEDUP_DISTANCE_METERS);
+        private final List<SearchHandle> handles = new ArrayList<>();
+        private final Runnable deadline = this::onDeadline;
+        private int pending;
+        private int failed;
+        private int duplicates;
+        private int delivered;
+        private String firstError;
+
+        Merge(SearchTask task, SearchTrace trace) {
+            this.task = task;
+            this.trace = trace;
+        }
+
+        void start(String query, double latitude, double longitude, double radius) {
+            pending = sources.size();
+            if (pending == 0) {
+                trace.finish("completed", 0);
+                task.complete();
+                return;
+            }
+
+            task.setCancelAction(() -> {
+                mainHandler.removeCallbacks(deadline);
+                cancelSources();
+                trace.finish("cancelled", delivered);
+            });
+            mainHandler.postDelayed(deadline, deadlineMs);
+
+            // Start every source before handling any callback so the handles are complete
+            mergeExecutor.execute(() -> {
+                for (PlaceSource source : sources) {
+                    handles.add(source.search(query, latitude, longitude, radius, trace, mergeExecutor,
+                            new SourceListener(source.getName())));
+                }
+            });
+        }
+
+        private void onBatch(String sourceName, PlaceInfo[] batch) {
+            List<PlaceInfo> unique = new ArrayList<>(batch.length);
+            for (PlaceInfo place : batch) {
+                if (deduplicator.add(place)) {
+                    unique.add(place);
+                } else {
+                    duplicates++;
+                }
+            }
+
+            Tracer.event("search.batch", unique.size(), sourceName);
+            Tracer.d(TAG, "%s delivered %d places, %d new", sourceName, batch.length, unique.size());
+            if (!unique.isEmpty() && task.isRunning()) {
+                trace.markFirstResults();
+                delivered += unique.size();
+            }
+            task.deliverBatch(unique.toArray(new PlaceInfo[0]));
+        }
+
+        private void onSourceFinished(String sourceName, String errorMessage) {
+            pending--;
+            if (errorMessage != null) {
+                failed++;
+                if (firstError == null) firstError = errorMessage;
+                Tracer.event("search.source_failed", failed, sourceName);
+                Tracer.d(TAG, "%s failed: %s", sourceName, errorMessage);
+            }
+
+            if (pending > 0 || !task.isRunning()) return;
+
+            mainHandler.removeCallbacks(deadline);
+            if (failed == sources.size()) {
+                trace.finish("failed", 0);
+                task.fail(firstError);
+            } else {
+                Tracer.event("search.complete", delivered);
+                Tracer.d(TAG, "All sources finished, dropped %d duplicates", duplicates);
+                trace.finish("completed", delivered);
+                task.complete();
+            }
+        }
+
+        private void onDeadline() {
+            mergeExecutor.execute(() -> {
+                if (!task.isRunning()) return;
+
+                Tracer.event("search.deadline", pending);
+                Tracer.d(TAG, "Deadline reached with %d sources pending", pending);
+                cancelSources();
+                trace.finish("deadline", delivered);
+                task.complete();
+            });
+        }
+
+        private void cancelSources() {
+            mergeExecutor.execute(() -> {
+                for (SearchHandle handle : handles) {
+                    handle.cancel();
+                }
+            });
+        }
+
+        private class SourceListener implements MapProvider.OnPlacesStreamListener {
+            private final String sourceName;
+
+            SourceListener(String sourceName) {
+                this.sourceName = sourceName;
+            }
+
+            @Override
+            public void onPlacesBatch(PlaceInfo[] places) {
+                onBatch(sourceName, places);
+            }
+
+            @Override
+            public void onSearchComplete(int totalPlaces) {
+                onSourceFinished(sourceName, null);
+            }
+
+            @Override
+            public void onSearchError(String errorMessage) {
+                onSourceFinished(sourceName, errorMessage);
+            }
+        }
+    }
+}
@@ -5,10 +5,12 @@ import android.util.Log;
 import androidx.fragment.app.Fragment;
 import androidx.fragment.app.FragmentManager;
 import androidx.fragment.app.FragmentTransaction;
+import androidx.lifecycle.LifecycleOwner;
 import com.google.android.gms.maps.CameraUpdateFactory;
 import com.google.android.gms.maps.GoogleMap;
 import com.google.android.gms.maps.OnMapReadyCallback;
 import com.google.android.gms.maps.SupportMapFragment;
+import com.google.android.gms.maps.model.CameraPosition;
 import com.google.android.gms.maps.model.LatLng;
 import com.google.android.gms.maps.model.Marker;
 import com.google.android.gms.maps.model.MarkerOptions;
@@ -17,16 +19,20 @@ import com.google.android.libraries.places.api.model.Place;
 import com.google.android.libraries.places.api.model.RectangularBounds;
 import com.google.android.libraries.places.api.model.TypeFilter;
 import com.google.android.libraries.places.api.net.FindAutocompletePredictionsRequest;
-import com.google.android.libraries.places.api.net.FetchPlaceRequest;
 import com.google.android.libraries.places.api.net.PlacesClient;
+import com.google.android.libraries.places.api.net.SearchByTextRequest;
 import com.google.android.gms.common.api.ApiException;
+import com.google.android.gms.tasks.CancellationTokenSource;
 import com.antbear.javaw8.CoffeeShopInfoWindowAdapter;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * Implementation of MapProvider using Google Maps and Places API.
@@ -34,16 +40,40 @@ import java.util.UUID;
 public class GoogleMapsProvider implements MapProvider, OnMapReadyCallback {
     private static final String TAG = "GoogleMapsProvider";
     
+    // Field mask shared by text search and detail fetches
+    private static final List<Place.Field> PLACE_FIELDS = Arrays.asList(
+            Place.Field.ID,
+            Place.Field.NAME,
+            Place.Field.LAT_LNG,
+            Place.Field.ADDRESS,
+            Place.Field.PHONE_NUMBER,
+            Place.Field.RATING);
+    private static final int MAX_RESULTS = 20;
+    
+    // Bounds for the autocomplete fallback's per-place detail requests
+    private static final int MAX_DETAIL_FETCHES = 10;
+    private static final int MAX_CONCURRENT_DETAIL_FETCHES = 3;
+    private static final long DETAILS_DEADLINE_MS = 5000;
+    
+    // Persistent place details cache
+    private static final String DETAILS_CACHE_FILE = "google_place_details.bin";
+    private static final long DETAILS_CACHE_TTL_MS = 24 * 60 * 60 * 1000L; // 1 day
+    private static final int DETAILS_CACHE_MAX_ENTRIES = 500;
+    
     private Context context;
     private SupportMapFragment mapFragment;
     private GoogleMap googleMap;
     private PlacesClient placesClient;
-    private boolean initialized = false;
+    private PlaceDetailsCache detailsCache;
+    // Places found this session, for search-as-you-type
+    private final PlaceSearchIndex searchIndex = new PlaceSearchIndex();
+    private volatile boolean initialized = false;
     
     // Listeners
     private OnMapReadyListener mapReadyListener;
     private OnMarkerClickListener markerClickListener;
     private OnInfoWindowClickListener infoWindowClickListener;
+    private OnCameraMoveListener cameraMoveListener;
     
     // Maps to keep track of markers
     private Map<String, Marker> markersById = new HashMap<>();
@@ -56,10 +86,13 @@ public class GoogleMapsProvider implements MapProvider, OnMapReadyCallback {
         try {
             // Initialize Places API
             if (!Places.isInitialized()) {
-                Places.initialize(context, getApiKey(context));
+                // Text search (one request for all places) requires the new Places API
+                Places.initializeWithNewPlacesApiEnabled(context, getApiKey(context));
                 Log.d(TAG, "Places API initialized");
             }
             placesClient = Places.createClient(context);
+            detailsCache = new PlaceDetailsCache(context, DETAILS_CACHE_FILE,
+                    DETAILS_CACHE_TTL_MS, DETAILS_CACHE_MAX_ENTRIES);
             initialized = true;
         } catch (Exception e) {
             Log.e(TAG, "Error initializing Google Maps provider: " + e.getMessage(), e);
@@ -67,6 +100,12 @@ public class GoogleMapsProvider implements MapProvider, OnMapReadyCallback {
         }
     }
     
+    @Override
+    public CompletableFuture<Void> initializeAsync(Context context, Executor executor) {
+        // SupportMapFragment does not depend on Places, so the fragment can be attached right away
+        return CompletableFuture.runAsync(() -> initialize(context), executor);
+    }
+    
     private String getApiKey(Context context) {
         // Get the API key from resources
         int resId = context.getResources().getIdentifier("maps_api_key", "string", context.getPackageName());
@@ -79,7 +118,7 @@ public class GoogleMapsProvider implements MapProvider, OnMapReadyCallback {
     }
     
     @Override
-    public Fragment createMapFragment(FragmentManager fragmentManager, int containerId) {
+    public Fragment createMapFragment(FragmentManager fragmentManager, LifecycleOwner host, int containerId) {
         // Create a new SupportMapFragment
         mapFragment = SupportMapFragment.newInstance();
         
@@ -128,6 +167,16 @@ public class GoogleMapsProvider implements MapProvider, OnMapReadyCallback {
         return markerId;
     }
     
+    @Override
+    public void clearMarkers() {
+        for (Marker marker : markersById.values()) {
+            marker.remove();
+        }
+        
+        markersById.clear();
+        markerIds.clear();
+    }
+    
     @Override
     public void moveCamera(double latitude, double longitude, float zoomLevel) {
         if (googleMap == null) {
@@ -139,6 +188,16 @@ public class GoogleMapsProvider implements MapProvider, OnMapReadyCallback {
         googleMap.moveCamera(CameraUpdateFactory.newLatLngZoom(position, zoomLevel));
     }
     
+    @Override
+    public MapCameraPosition getCameraPosition() {
+        if (googleMap == null) {
+            return null;
+        }
+        
+        CameraPosition camera = googleMap.getCameraPosition();
+        return new MapCameraPosition(camera.target.latitude, camera.target.longitude, camera.zoom);
+    }
+    
     @Override
     public void setOnMapReadyListener(OnMapReadyListener listener) {
         this.mapReadyListener = listener;
@@ -149,6 +208,26 @@ public class GoogleMapsProvider implements MapProvider, OnMapReadyCallback {
         }
     }
     
+    @Override
+    public void setOnCameraMoveListener(OnCameraMoveListener listener) {
+        this.cameraMoveListener = listener;
+        if (googleMap != null) {
+            googleMap.setOnCameraMoveListener(listener != null ? listener::onCameraMove : null);
+        }
+    }
+    
+    @Override
+    public void getRenderLoad(MapRenderLoad load) {
+        if (googleMap == null) {
+            load.set(0, 0, 0, MapRenderLoad.UNKNOWN);
+            return;
+        }
+        
+        // Markers are the only overlays; the SDK does not report its tile downloads
+        load.set(markersById.size(), markersById.size(), googleMap.getCameraPosition().zoom,
+                MapRenderLoad.UNKNOWN);
+    }
+    
     @Override
     public void onMapReady(GoogleMap map) {
         this.googleMap = map;
@@ -156,6 +235,9 @@ public class GoogleMapsProvider implements MapProvider, OnMapReadyCallback {
         
         // Configure map settings
         googleMap.getUiSettings().setZoomControlsEnabled(true);
+        if (cameraMoveListener != null) {
+            googleMap.setOnCameraMoveListener(cameraMoveListener::onCameraMove);
+        }
         googleMap.getUiSettings().setMapToolbarEnabled(true);
         
         // Set up marker click listener
@@ -202,100 +284,168 @@ public class GoogleMapsProvider implements MapProvider, OnMapReadyCallback {
     @Override
     public void searchNearbyPlaces(String query, double latitude, double longitude, double radius, 
                                  OnPlacesFoundListener listener) {
-        if (!initialized || placesClient == null) {
-            if (listener != null) {
-                listener.onPlacesError("Places API not initialized");
+        // Collect the streamed batches and deliver them in one callback
+        List<PlaceInfo> places = new ArrayList<>();
+        streamNearbyPlaces(query, latitude, longitude, radius, new OnPlacesStreamListener() {
+            @Override
+            public void onPlacesBatch(PlaceInfo[] batch) {
+                places.addAll(Arrays.asList(batch));
             }
-            return;
+            
+            @Override
+            public void onSearchComplete(int totalPlaces) {
+                if (listener == null) return;
+                
+                if (places.isEmpty()) {
+                    listener.onPlacesError("No places found matching '" + query + "'");
+                } else {
+                    listener.onPlacesFound(places.toArray(new PlaceInfo[0]));
+                }
+            }
+            
+            @Override
+            public void onSearchError(String errorMessage) {
+                if (listener != null) {
+                    listener.onPlacesError(errorMessage);
+                }
+            }
+        });
+    }
+    
+    @Override
+    public List<PlaceInfo> findCachedPlaces(String text, double latitude, double longitude, int limit) {
+        return searchIndex.search(text, latitude, longitude, Double.MAX_VALUE, limit);
+    }
+    
+    @Override
+    public SearchHandle streamNearbyPlaces(String query, double latitude, double longitude, double radius,
+                                           OnPlacesStreamListener listener) {
+        SearchTask task = new SearchTask(listener);
+        if (!initialized || placesClient == null) {
+            task.fail("Places API not initialized");
+            return task;
         }
         
-        // Calculate bounds for the search area (approximately)
-        double latDelta = radius / 111000.0; // approximate meters to degrees
-        double lngDelta = radius / (111000.0 * Math.cos(Math.toRadians(latitude)));
+        RectangularBounds bounds = boundsAround(latitude, longitude, radius);
+        CancellationTokenSource cancellationSource = new CancellationTokenSource();
+        task.setCancelAction(cancellationSource::cancel);
         
-        LatLng southwest = new LatLng(latitude - latDelta, longitude - lngDelta);
-        LatLng northeast = new LatLng(latitude + latDelta, longitude + lngDelta);
-        RectangularBounds bounds = RectangularBounds.newInstance(southwest, northeast);
+        // A single text search returns every field we need for all places at once
+        SearchByTextRequest request = SearchByTextRequest.builder(query, PLACE_FIELDS)
+                .setLocationRestriction(bounds)
+                .setMaxResultCount(MAX_RESULTS)
+                .setCancellationToken(cancellationSource.getToken())
+                .build();
+        
+        placesClient.searchByText(request)
+            .addOnSuccessListener(response -> {
+                if (task.isCancelled()) return;
+                
+                List<PlaceInfo> places = new ArrayList<>();
+                for (Place place : response.getPlaces()) {
+                    PlaceInfo placeInfo = toPlaceInfo(place);
+                    if (placeInfo != null) {
+                        places.add(placeInfo);
+                        detailsCache.put(placeInfo);
+                    }
+                }
+                searchIndex.addAll(places.toArray(new PlaceInfo[0]));
+                
+                task.deliverBatch(places.toArray(new PlaceInfo[0]));
+                task.complete();
+            })
+            .addOnFailureListener(e -> {
+                if (task.isCancelled()) return;
+                
+                // Text search needs the new Places API; fall back to autocomplete plus details
+                Log.e(TAG, "Text search failed, falling back to autocomplete: " + e.getMessage());
+                searchWithAutocomplete(task, query, latitude, longitude, bounds);
+            });
+        
+        return task;
+    }
+    
+    /**
+     * Fallback search: autocomplete predictions followed by a concurrency-limited,
+     * deadline-bounded details fetch, streaming each place as it arrives.
+     */
+    private void searchWithAutocomplete(SearchTask task, String query, double latitude, double longitude,
+                                        RectangularBounds bounds) {
+        CancellationTokenSource cancellationSource = new CancellationTokenSource();
+        task.setCancelAction(cancellationSource::cancel);
         
-        // Create a request to find places
         FindAutocompletePredictionsRequest request = FindAutocompletePredictionsRequest.builder()
                 .setLocationBias(bounds)
                 .setOrigin(new LatLng(latitude, longitude))
                 .setTypeFilter(TypeFilter.ESTABLISHMENT)
                 .setQuery(query)
+                .setCancellationToken(cancellationSource.getToken())
                 .build();
         
         placesClient.findAutocompletePredictions(request)
             .addOnSuccessListener(response -> {
-                if (response.getAutocompletePredictions().isEmpty()) {
-                    if (listener != null) {
-                        listener.onPlacesError("No places found matching '" + query + "'");
-                    }
-                    return;
-                }
+                if (task.isCancelled()) return;
                 
                 // Limit to 10 places to avoid overwhelming the map
-                int count = Math.min(10, response.getAutocompletePredictions().size());
-                PlaceInfo[] places = new PlaceInfo[count];
-                final int[] completedRequests = {0};
-                
+                int count = Math.min(MAX_DETAIL_FETCHES, response.getAutocompletePredictions().size());
+                List<String> placeIds = new ArrayList<>(count);
                 for (int i = 0; i < count; i++) {
-                    final int index = i;
-                    String placeId = response.getAutocompletePredictions().get(i).getPlaceId();
-                    fetchPlaceDetails(placeId, new FetchPlaceCallback() {
-                        @Override
-                        public void onPlaceFetched(PlaceInfo placeInfo) {
-                            places[index] = placeInfo;
-                            checkCompletion();
-                        }
-                        
-                        @Override
-                        public void onError(String errorMessage) {
-                            Log.e(TAG, "Error fetching place details: " + errorMessage);
-                            checkCompletion();
-                        }
-                        
-                        private void checkCompletion() {
-                            completedRequests[0]++;
-                            if (completedRequests[0] >= count && listener != null) {
-                                // Filter out nulls (places that failed to fetch)
-                                int validPlaces = 0;
-                                for (PlaceInfo place : places) {
-                                    if (place != null) validPlaces++;
-                                }
-                                
-                                PlaceInfo[] result = new PlaceInfo[validPlaces];
-                                int j = 0;
-                                for (PlaceInfo place : places) {
-                                    if (place != null) {
-                                        result[j++] = place;
-                                    }
-                                }
-                                
-                                listener.onPlacesFound(result);
-                            }
-                        }
-                    });
+                    placeIds.add(response.getAutocompletePredictions().get(i).getPlaceId());
                 }
+                
+                PlaceDetailsBatch batch = new PlaceDetailsBatch(new PlacesClientFetcher(placesClient, PLACE_FIELDS),
+                        detailsCache, placeIds, MAX_CONCURRENT_DETAIL_FETCHES, DETAILS_DEADLINE_MS,
+                        PlaceDetailsBatch.mainThreadScheduler(), new PlaceDetailsBatch.Listener() {
+                    @Override
+                    public void onPlaceFetched(PlaceInfo place) {
+                        searchIndex.add(place);
+                        task.deliverBatch(new PlaceInfo[] {place});
+                    }
+                    
+                    @Override
+                    public void onFinished(int fetchedCount, boolean timedOut) {
+                        Log.d(TAG, "Place details cache: " + detailsCache.getStats());
+                        task.complete();
+                    }
+                });
+                task.setCancelAction(batch::cancel);
+                batch.start();
             })
             .addOnFailureListener(e -> {
-                String errorMessage = "Error finding places";
+                if (task.isCancelled()) return;
                 
+                String errorMessage = "Error finding places";
                 if (e instanceof ApiException) {
-                    ApiException apiException = (ApiException) e;
-                    int statusCode = apiException.getStatusCode();
+                    int statusCode = ((ApiException) e).getStatusCode();
                     errorMessage = getErrorMessageForStatusCode(statusCode);
                     Log.e(TAG, "Places API error: " + statusCode + " - " + errorMessage);
                 } else {
                     Log.e(TAG, "Error finding places: " + e.getMessage(), e);
                 }
-                
-                if (listener != null) {
-                    listener.onPlacesError(errorMessage);
-                }
+                task.fail(errorMessage);
             });
     }
     
+    /**
+     * Get hit-rate statistics for the place details cache.
+     * @return The current statistics, or null if the provider is not initialized
+     */
+    public PlaceDetailsCache.Stats getDetailsCacheStats() {
+        return detailsCache != null ? detailsCache.getStats() : null;
+    }
+    
+    /**
+     * Approximate bounding box around a location.
+     */
+    private static RectangularBounds boundsAround(double latitude, double longitude, double radius) {
+        double latDelta = radius / 111000.0; // approximate meters to degrees
+        double lngDelta = radius / (111000.0 * Math.cos(Math.toRadians(latitude)));
+        
+        LatLng southwest = new LatLng(latitude - latDelta, longitude - lngDelta);
+        LatLng northeast = new LatLng(latitude + latDelta, longitude + lngDelta);
+        return RectangularBounds.newInstance(southwest, northeast);
+    }
+    
     private String getErrorMessageForStatusCode(int statusCode) {
         switch (statusCode) {
             case 7: // NETWORK_ERROR
@@ -315,60 +465,25 @@ public class GoogleMapsProvider implements MapProvider, OnMapReadyCallback {
         }
     }
     
-    private void fetchPlaceDetails(String placeId, FetchPlaceCallback callback) {
-        // Specify the fields to return
-        List<Place.Field> placeFields = Arrays.asList(
-                Place.Field.ID,
-                Place.Field.NAME,
-                Place.Field.LAT_LNG,
-                Place.Field.ADDRESS,
-                Place.Field.PHONE_NUMBER,
-                Place.Field.RATING);
-        
-        // Construct a request object
-        FetchPlaceRequest request = FetchPlaceRequest.newInstance(placeId, placeFields);
+    /**
+     * Convert a Places SDK place into a PlaceInfo.
+     * @return The converted place, or null if it has no location
+     */
+    static PlaceInfo toPlaceInfo(Place place) {
+        if (place.getLatLng() == null) {
+            return null;
+        }
         
-        placesClient.fetchPlace(request)
-            .addOnSuccessListener(response -> {
-                Place place = response.getPlace();
-                
-                if (place.getLatLng() == null) {
-                    callback.onError("Place has no location data");
-                    return;
-                }
-                
-                PlaceInfo placeInfo = new PlaceInfo(
-                        place.getId(),
-                        place.getName(),
-                        place.getLatLng().latitude,
-                        place.getLatLng().longitude,
-                        place.getAddress(),
-                        place.getPhoneNumber(),
-                        place.getRating() != null ? place.getRating().floatValue() : null,
-                        false
-                );
-                
-                callback.onPlaceFetched(placeInfo);
-            })
-            .addOnFailureListener(e -> {
-                String errorMessage = "Error fetching place details";
-                
-                if (e instanceof ApiException) {
-                    ApiException apiException = (ApiException) e;
-                    int statusCode = apiException.getStatusCode();
-                    Log.e(TAG, "Places API error fetching place: " + statusCode);
-                    errorMessage += " (" + statusCode + ")";
-                } else {
-                    Log.e(TAG, "Error fetching place details: " + e.getMessage(), e);
-                }
-                
-                callback.onError(errorMessage);
-            });
-    }
-    
-    interface FetchPlaceCallback {
-        void onPlaceFetched(PlaceInfo placeInfo);
-        void onError(String errorMessage);
+        return new PlaceInfo(
+                place.getId(),
+                place.getName(),
+                place.getLatLng().latitude,
+                place.getLatLng().longitude,
+                place.getAddress(),
+                place.getPhoneNumber(),
+                place.getRating() != null ? place.getRating().floatValue() : null,
+                false
+        );
     }
     
     @Override
@@ -395,6 +510,11 @@ public class GoogleMapsProvider implements MapProvider, OnMapReadyCallback {
         }
     }
     
+    @Override
+    public void prewarmConnections() {
+        // The Places SDK manages its own connections; nothing to warm up here
+    }
+    
     @Override
     public void onDestroy() {
         // Clean up resources
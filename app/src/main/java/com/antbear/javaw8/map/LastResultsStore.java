@@ -0,0 +1,71 @@
+package com.antbear.javaw8.map;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Persists the most recent search results to disk so they can be shown
+ * on the next cold start before a location fix or network response arrives.
+ * Uses the {@link MappedPlaceSnapshot} format, so loading maps the file
+ * instead of decoding it and places are read as their markers are drawn.
+ */
+public class LastResultsStore {
+    private static final String TAG = "LastResultsStore";
+    private static final String FILE_NAME = "last_results.places";
+    // Stream-encoded MapSnapshot written by earlier versions
+    private static final String LEGACY_FILE_NAME = "last_results.bin";
+    
+    private final File file;
+    private final File legacyFile;
+    
+    public LastResultsStore(Context context) {
+        this.file = new File(context.getFilesDir(), FILE_NAME);
+        this.legacyFile = new File(context.getFilesDir(), LEGACY_FILE_NAME);
+    }
+    
+    /**
+     * Map the last saved results on the I/O executor.
+     * @return A future with the saved snapshot, or null if none is available
+     */
+    public CompletableFuture<MappedPlaceSnapshot> loadAsync() {
+        return CompletableFuture.supplyAsync(this::load, AppExecutors.io());
+    }
+    
+    /**
+     * Save results on the I/O executor.
+     * @param snapshot The snapshot to persist
+     */
+    public void saveAsync(MapSnapshot snapshot) {
+        AppExecutors.io().execute(() -> save(snapshot));
+    }
+    
+    private MappedPlaceSnapshot load() {
+        if (legacyFile.exists() && !legacyFile.delete()) {
+            Log.e(TAG, "Error deleting old last results file");
+        }
+        if (!file.exists()) {
+            return null;
+        }
+        
+        try {
+            return MappedPlaceSnapshot.open(file);
+        } catch (IOException e) {
+            Log.e(TAG, "Error mapping last results: " + e.getMessage(), e);
+            return null;
+        }
+    }
+    
+    private synchronized void save(MapSnapshot snapshot) {
+        try {
+            // Renamed into place, so a crash never leaves a truncated file and open mappings stay valid
+            MappedPlaceSnapshot.write(file, snapshot.getCameraPosition(), snapshot.getPlaces(),
+                    snapshot.getSearchArea());
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing last results: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.antbear.javaw8.map;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-size histogram of durations in microseconds. Buckets are
+ * log-linear: four per power of two, so any reported percentile is within
+ * about 20% of the true value, from 1 µs up to several hours, in a few
+ * hundred bytes. Thread-safe.
+ */
+final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = 64 * SUB_BUCKETS;
+    
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long sumMicros;
+    private long maxMicros;
+    
+    synchronized void record(long micros) {
+        micros = Math.max(0, micros);
+        counts[bucketOf(micros)]++;
+        count++;
+        sumMicros += micros;
+        maxMicros = Math.max(maxMicros, micros);
+    }
+    
+    synchronized long getCount() {
+        return count;
+    }
+    
+    synchronized long getMeanMicros() {
+        return count == 0 ? 0 : sumMicros / count;
+    }
+    
+    synchronized long getMaxMicros() {
+        return maxMicros;
+    }
+    
+    /**
+     * Get a percentile.
+     * @param percentile The percentile, from 0 to 100
+     * @return The upper bound of the bucket holding the percentile (at most the maximum), or 0 if empty
+     */
+    synchronized long getPercentileMicros(double percentile) {
+        if (count == 0) return 0;
+        
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100.0));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(bucket), maxMicros);
+            }
+        }
+        return maxMicros;
+    }
+    
+    synchronized void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        sumMicros = 0;
+        maxMicros = 0;
+    }
+    
+    static int bucketOf(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+    
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        long lowerBound = (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+        return lowerBound + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
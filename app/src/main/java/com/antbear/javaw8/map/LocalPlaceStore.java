@@ -0,0 +1,560 @@
+package com.antbear.javaw8.map;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * On-device store of places seen in earlier searches, tagged with every
+ * category they were found under. Lets searches answer from the device
+ * while the network request is still in flight, or without a network at all.
+ * Names and addresses are kept in a {@link PlaceSearchIndex} for search-as-you-type.
+ * Entries older than the maximum age are ignored; the least recently stored
+ * entries are evicted beyond the maximum size. Also records which areas
+ * were fully synced with OSM and when, so stale areas can be refreshed with
+ * a diff instead of a full download. Loaded from and written to disk on the
+ * I/O executor. Thread-safe.
+ */
+public class LocalPlaceStore {
+    private static final String TAG = "LocalPlaceStore";
+    private static final int MAGIC = 0x4A57_4C50; // "JWLP"
+    private static final int VERSION = 3;
+    private static final double METERS_PER_DEGREE = 111320.0;
+    private static final int MAX_SYNCED_AREAS = 64;
+    
+    /**
+     * An area whose places for a category were fully downloaded at a known
+     * OSM data timestamp, so later refreshes only need what changed since.
+     */
+    public static class SyncedArea {
+        private final String category;
+        private final SearchArea area;
+        private final String osmTimestamp;
+        private final long syncedAt;
+        
+        SyncedArea(String category, SearchArea area, String osmTimestamp, long syncedAt) {
+            this.category = category;
+            this.area = area;
+            this.osmTimestamp = osmTimestamp;
+            this.syncedAt = syncedAt;
+        }
+        
+        // Getters
+        public String getCategory() { return category; }
+        public SearchArea getArea() { return area; }
+        public String getOsmTimestamp() { return osmTimestamp; }
+        public long getSyncedAt() { return syncedAt; }
+        
+        /**
+         * @return Time since the area was last synced, in milliseconds
+         */
+        public long getAgeMs() {
+            return System.currentTimeMillis() - syncedAt;
+        }
+    }
+
+    /**
+     * A place as persisted, before it is added to the table.
+     */
+    private static class Entry {
+        final String[] categories;
+        final PlaceInfo place;
+        final long storedAt;
+
+        Entry(String[] categories, PlaceInfo place, long storedAt) {
+            this.categories = categories;
+            this.place = place;
+            this.storedAt = storedAt;
+        }
+    }
+
+    private final File file;
+    private final long maxAgeMs;
+    private final int maxEntries;
+    // Oldest first, which is the eviction order
+    private final PlaceTable table = new PlaceTable();
+    // Every row before this one is deleted
+    private int evictionCursor = 0;
+    private final PlaceSearchIndex searchIndex = new PlaceSearchIndex();
+    // Oldest first
+    private final List<SyncedArea> syncedAreas = new ArrayList<>();
+    private final CompletableFuture<Void> loadComplete = new CompletableFuture<>();
+    private boolean writeScheduled = false;
+
+    /**
+     * Create the store and start loading its persisted entries in the background.
+     *
+     * @param context Context used to locate the store file
+     * @param fileName Name of the store file in the app's files directory
+     * @param maxAgeMs Age after which an entry is no longer returned
+     * @param maxEntries Maximum number of places kept
+     */
+    public LocalPlaceStore(Context context, String fileName, long maxAgeMs, int maxEntries) {
+        this(new File(context.getFilesDir(), fileName), maxAgeMs, maxEntries);
+    }
+
+    LocalPlaceStore(File file, long maxAgeMs, int maxEntries) {
+        this.file = file;
+        this.maxAgeMs = maxAgeMs;
+        this.maxEntries = maxEntries;
+
+        AppExecutors.io().execute(this::loadFromDisk);
+    }
+
+    /**
+     * @return A future completed once the persisted entries have been loaded
+     */
+    public CompletableFuture<Void> whenLoaded() {
+        return loadComplete;
+    }
+
+    /**
+     * Store or refresh places found under a category. Places already stored
+     * stay listed under the categories they were found under before.
+     * @param category The category the places were searched for (e.g. "amenity=cafe")
+     * @param places The places to store
+     */
+    public void putAll(String category, PlaceInfo[] places) {
+        if (places.length == 0) return;
+
+        long now = System.currentTimeMillis();
+        List<PlaceInfo> stored = new ArrayList<>(places.length);
+        synchronized (this) {
+            for (PlaceInfo place : places) {
+                if (place.getId() == null || place.isSampleData()) continue;
+
+                // Replaces the old row, so a refreshed place moves to the young end of the eviction order
+                table.add(place, category, now);
+                stored.add(place);
+            }
+            searchIndex.addAll(stored.toArray(new PlaceInfo[0]));
+            evictOverflow();
+        }
+        scheduleWrite();
+    }
+
+    /**
+     * Remove places by ID, e.g. user submissions the server refused.
+     * @param ids The IDs of the places to remove
+     */
+    public void removeAll(Collection<String> ids) {
+        synchronized (this) {
+            for (String id : ids) {
+                int row = table.findRow(id);
+                if (row < 0) continue;
+                table.delete(row);
+                searchIndex.remove(id);
+            }
+        }
+        scheduleWrite();
+    }
+    
+    /**
+     * Find stored places near a location.
+     *
+     * @param category Only return places stored under this category, or null for any
+     * @param latitude The latitude to search around
+     * @param longitude The longitude to search around
+     * @param radius The radius to search within (in meters)
+     * @return The matching places, in no particular order
+     */
+    public List<PlaceInfo> findNearby(String category, double latitude, double longitude, double radius) {
+        long oldest = System.currentTimeMillis() - maxAgeMs;
+
+        // Cheap bounding box check before the exact distance
+        double latDelta = radius / METERS_PER_DEGREE;
+        double lngDelta = radius / (METERS_PER_DEGREE * Math.max(0.01, Math.cos(Math.toRadians(latitude))));
+
+        // Scans the primitive columns; only matches become objects
+        List<PlaceInfo> matches = new ArrayList<>();
+        synchronized (this) {
+            for (int row = evictionCursor; row < table.getRowCount(); row++) {
+                if (table.isDeleted(row) || table.getStoredAt(row) < oldest) continue;
+
+                double placeLatitude = table.getLatitude(row);
+                double placeLongitude = table.getLongitude(row);
+                if (Math.abs(placeLatitude - latitude) > latDelta
+                        || Math.abs(placeLongitude - longitude) > lngDelta
+                        || (category != null && !table.hasCategory(row, category))) {
+                    continue;
+                }
+                if (SearchArea.distanceMeters(latitude, longitude, placeLatitude, placeLongitude) <= radius) {
+                    matches.add(table.get(row));
+                }
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Find stored places by name or address, for search-as-you-type.
+     * Takes a few milliseconds even for large stores.
+     *
+     * @param text The text typed so far
+     * @param latitude Latitude to rank nearby places first
+     * @param longitude Longitude to rank nearby places first
+     * @param maxDistanceMeters Places further away are not returned
+     * @param limit The maximum number of places to return
+     * @return The best matches, best first
+     */
+    public List<PlaceInfo> searchByName(String text, double latitude, double longitude,
+                                        double maxDistanceMeters, int limit) {
+        return searchIndex.search(text, latitude, longitude, maxDistanceMeters, limit);
+    }
+    
+    /**
+     * Find a synced area that covers a search, most recent first.
+     *
+     * @param category The category searched for
+     * @param latitude The latitude of the search center
+     * @param longitude The longitude of the search center
+     * @param radius The search radius (in meters)
+     * @return The covering area, or null if the search is not inside a synced area
+     */
+    public synchronized SyncedArea findSyncedArea(String category, double latitude, double longitude,
+                                                  double radius) {
+        for (int i = syncedAreas.size() - 1; i >= 0; i--) {
+            SyncedArea synced = syncedAreas.get(i);
+            if (synced.category.equals(category) && synced.getAgeMs() <= maxAgeMs
+                    && synced.area.covers(latitude, longitude, radius)) {
+                return synced;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Record that all places of a category in an area have just been stored.
+     *
+     * @param category The category that was downloaded
+     * @param area The area that was downloaded
+     * @param osmTimestamp OSM data timestamp of the download
+     */
+    public void recordSync(String category, SearchArea area, String osmTimestamp) {
+        synchronized (this) {
+            addSyncedArea(new SyncedArea(category, area, osmTimestamp, System.currentTimeMillis()));
+        }
+        scheduleWrite();
+    }
+    
+    /**
+     * Load a POI pack in one step: either all of its places are stored and
+     * its area is recorded as synced, or nothing changes. The oldest stored
+     * places are evicted to make room. Places already stored and not expired
+     * keep their details, as they come from a search and are at least as
+     * fresh, and are also listed under the pack's category.
+     * The area counts as synced at the pack's build time, so the first search
+     * there refreshes it with a diff; packs older than the maximum age count
+     * as half that age, so they still get a diff instead of a full download.
+     *
+     * @param pack The pack, with its header read
+     * @return The number of places added, or -1 if the pack has more places than the store can hold
+     * @throws IOException If the pack is truncated or corrupt
+     */
+    public int addPack(PoiPack pack) throws IOException {
+        // Decoded into a staging table first, so a corrupt pack leaves the store untouched
+        PlaceTable packPlaces = pack.readPlaces();
+        long now = System.currentTimeMillis();
+        
+        int added;
+        synchronized (this) {
+            if (packPlaces.size() > maxEntries) {
+                Log.d(TAG, "Pack " + pack.getRegion() + " does not fit in the store (" + packPlaces.size()
+                        + " places, " + maxEntries + " at most)");
+                return -1;
+            }
+            
+            long oldest = now - maxAgeMs;
+            int firstRow = table.getRowCount();
+            List<Integer> storedRows = new ArrayList<>();
+            for (int row = 0; row < packPlaces.getRowCount(); row++) {
+                if (packPlaces.isDeleted(row)) continue;
+                
+                // Expired places are replaced by the pack's
+                int stored = table.findRow(packPlaces.getId(row));
+                if (stored >= 0 && table.getStoredAt(stored) >= oldest) {
+                    table.addCategory(stored, pack.getCategory());
+                    storedRows.add(stored);
+                    continue;
+                }
+                table.add(packPlaces.getId(row), packPlaces.getName(row), packPlaces.getLatitude(row),
+                        packPlaces.getLongitude(row), packPlaces.getAddress(row), packPlaces.getPhoneNumber(row),
+                        packPlaces.getRating(row), false, pack.getCategory(), now);
+            }
+            added = table.getRowCount() - firstRow;
+            searchIndex.addRows(table, firstRow, table.getRowCount());
+            
+            // The pack confirms them: move them to the young end with its other places,
+            // so making room never evicts them
+            for (int row : storedRows) {
+                table.touch(row, now);
+            }
+            evictOverflow();
+            
+            long syncedAt = Math.max(pack.getCreatedAt(), now - maxAgeMs / 2);
+            addSyncedArea(new SyncedArea(pack.getCategory(), pack.getArea(), pack.getOsmTimestamp(), syncedAt));
+        }
+        scheduleWrite();
+        return added;
+    }
+    
+    private void addSyncedArea(SyncedArea area) {
+        // Areas inside the new one are now redundant
+        for (int i = syncedAreas.size() - 1; i >= 0; i--) {
+            SyncedArea synced = syncedAreas.get(i);
+            if (synced.category.equals(area.category) && area.area.covers(synced.area.getLatitude(),
+                    synced.area.getLongitude(), synced.area.getRadiusMeters())) {
+                syncedAreas.remove(i);
+            }
+        }
+        syncedAreas.add(area);
+        while (syncedAreas.size() > MAX_SYNCED_AREAS) {
+            syncedAreas.remove(0);
+        }
+    }
+    
+    /**
+     * Apply the changes to a synced area since its last sync, in one step.
+     * Stored places of the area's category that are not in {@code liveIds}
+     * are no longer listed under it, and removed unless another search found
+     * them too; the rest are marked fresh.
+     *
+     * @param synced The area that was refreshed
+     * @param changed Places created or modified since the last sync
+     * @param liveIds IDs of all places that currently match in the area
+     * @param osmTimestamp OSM data timestamp of the refresh
+     * @return The number of places dropped from the category
+     */
+    public int applyDelta(SyncedArea synced, PlaceInfo[] changed, Set<String> liveIds, String osmTimestamp) {
+        long now = System.currentTimeMillis();
+        SearchArea area = synced.area;
+        int removedCount = 0;
+        
+        synchronized (this) {
+            // Touched rows are appended, so only visit the rows that existed before
+            int rowCount = table.getRowCount();
+            for (int row = evictionCursor; row < rowCount; row++) {
+                if (table.isDeleted(row) || !table.hasCategory(row, synced.category)
+                        || SearchArea.distanceMeters(area.getLatitude(), area.getLongitude(),
+                        table.getLatitude(row), table.getLongitude(row)) > area.getRadiusMeters()) {
+                    continue;
+                }
+                
+                String id = table.getId(row);
+                if (PlaceSubmission.isSubmissionId(id)) {
+                    // Not in OSM yet, but not deleted from it either
+                    continue;
+                }
+                if (liveIds.contains(id)) {
+                    // Moves the place to the young end of the eviction order
+                    table.touch(row, now);
+                    continue;
+                }
+                if (!table.removeCategory(row, synced.category)) {
+                    table.delete(row);
+                    searchIndex.remove(id);
+                }
+                removedCount++;
+            }
+            
+            for (PlaceInfo place : changed) {
+                table.add(place, synced.category, now);
+            }
+            searchIndex.addAll(changed);
+            evictOverflow();
+
+            syncedAreas.remove(synced);
+            syncedAreas.add(new SyncedArea(synced.category, area, osmTimestamp, now));
+        }
+        scheduleWrite();
+        return removedCount;
+    }
+    
+    /**
+     * Evict the oldest places beyond the maximum size, then drop deleted rows
+     * once they make up most of the table.
+     */
+    private void evictOverflow() {
+        while (table.size() > maxEntries) {
+            while (table.isDeleted(evictionCursor)) {
+                evictionCursor++;
+            }
+            int row = evictionCursor;
+            searchIndex.remove(table.getId(row));
+            forgetSyncedAreas(row);
+            table.delete(row);
+        }
+        
+        if (table.needsCompaction()) {
+            table.compact();
+            evictionCursor = 0;
+        }
+    }
+    
+    /**
+     * An area missing one of its places is no longer complete, so it has to be
+     * downloaded in full again.
+     */
+    private void forgetSyncedAreas(int evictedRow) {
+        Iterator<SyncedArea> iterator = syncedAreas.iterator();
+        while (iterator.hasNext()) {
+            SyncedArea synced = iterator.next();
+            SearchArea area = synced.area;
+            if (table.hasCategory(evictedRow, synced.category) && SearchArea.distanceMeters(area.getLatitude(),
+                    area.getLongitude(), table.getLatitude(evictedRow), table.getLongitude(evictedRow))
+                    <= area.getRadiusMeters()) {
+                iterator.remove();
+            }
+        }
+    }
+    
+    /**
+     * Get the number of stored places.
+     * @return The number of places, including expired ones not yet evicted
+     */
+    public synchronized int size() {
+        return table.size();
+    }
+
+    private void scheduleWrite() {
+        synchronized (this) {
+            if (writeScheduled) return;
+            writeScheduled = true;
+        }
+
+        // Coalesces bursts of puts (e.g. a streamed search response) into one write. Waits
+        // for the persisted entries, so an early put cannot replace them with only its own
+        loadComplete.thenRunAsync(this::writeToDisk, AppExecutors.io());
+    }
+
+    private void loadFromDisk() {
+        try {
+            if (!file.exists()) return;
+
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                if (in.readInt() != MAGIC || in.readUnsignedByte() != VERSION) {
+                    Log.d(TAG, "Ignoring place store with unknown format");
+                    return;
+                }
+
+                int count = in.readInt();
+                List<Entry> loaded = new ArrayList<>(Math.max(0, count));
+                for (int i = 0; i < count; i++) {
+                    String[] categories = new String[in.readUnsignedByte()];
+                    for (int c = 0; c < categories.length; c++) {
+                        categories[c] = in.readUTF();
+                    }
+                    long storedAt = in.readLong();
+                    loaded.add(new Entry(categories, PlaceInfoCodec.readPlace(in), storedAt));
+                }
+            
+                int areaCount = in.readInt();
+                List<SyncedArea> loadedAreas = new ArrayList<>(Math.max(0, areaCount));
+                for (int i = 0; i < areaCount; i++) {
+                    String category = in.readUTF();
+                    SearchArea area = new SearchArea(in.readDouble(), in.readDouble(), in.readDouble());
+                    String osmTimestamp = in.readUTF();
+                    loadedAreas.add(new SyncedArea(category, area, osmTimestamp, in.readLong()));
+                }
+
+                synchronized (this) {
+                    // Places stored since startup are newer than the persisted ones, so
+                    // move them behind the persisted entries to keep the eviction order
+                    int addedRows = table.getRowCount();
+                    List<PlaceInfo> kept = new ArrayList<>(loaded.size());
+                    for (Entry entry : loaded) {
+                        // Only index persisted places that were not replaced since startup,
+                        // but keep listing replaced ones under their persisted categories
+                        int row = table.findRow(entry.place.getId());
+                        if (row < 0) {
+                            row = table.add(entry.place, null, entry.storedAt);
+                            kept.add(entry.place);
+                        }
+                        for (String category : entry.categories) {
+                            table.addCategory(row, category);
+                        }
+                    }
+                    for (int row = evictionCursor; row < addedRows; row++) {
+                        if (!table.isDeleted(row)) {
+                            table.touch(row, table.getStoredAt(row));
+                        }
+                    }
+                    searchIndex.addAll(kept.toArray(new PlaceInfo[0]));
+                    
+                    syncedAreas.addAll(0, loadedAreas);
+                    evictOverflow();
+                }
+                Log.d(TAG, "Loaded " + count + " stored places");
+            } catch (IOException e) {
+                Log.e(TAG, "Error reading place store: " + e.getMessage(), e);
+            }
+        } finally {
+            loadComplete.complete(null);
+        }
+    }
+
+    private void writeToDisk() {
+        List<Entry> snapshot;
+        List<SyncedArea> areas;
+        synchronized (this) {
+            writeScheduled = false;
+            snapshot = new ArrayList<>(table.size());
+            for (int row = evictionCursor; row < table.getRowCount(); row++) {
+                if (!table.isDeleted(row)) {
+                    snapshot.add(new Entry(table.getCategories(row), table.get(row), table.getStoredAt(row)));
+                }
+            }
+            areas = new ArrayList<>(syncedAreas);
+        }
+
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (FileOutputStream fileOut = new FileOutputStream(tempFile)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut));
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeInt(snapshot.size());
+            for (Entry entry : snapshot) {
+                out.writeByte(entry.categories.length);
+                for (String category : entry.categories) {
+                    out.writeUTF(category);
+                }
+                out.writeLong(entry.storedAt);
+                PlaceInfoCodec.writePlace(out, entry.place);
+            }
+            
+            out.writeInt(areas.size());
+            for (SyncedArea synced : areas) {
+                out.writeUTF(synced.category);
+                out.writeDouble(synced.area.getLatitude());
+                out.writeDouble(synced.area.getLongitude());
+                out.writeDouble(synced.area.getRadiusMeters());
+                out.writeUTF(synced.osmTimestamp);
+                out.writeLong(synced.syncedAt);
+            }
+            out.flush();
+            // The rename can reach the disk before the data; a crash would then leave an empty store
+            fileOut.getFD().sync();
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing place store: " + e.getMessage(), e);
+            return;
+        }
+
+        if (!tempFile.renameTo(file)) {
+            Log.e(TAG, "Error replacing place store file");
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.antbear.javaw8.map;
+
+/**
+ * Provider-agnostic camera position (center and zoom level).
+ * Used to capture and restore the visible map area across providers.
+ */
+public class MapCameraPosition {
+    private final double latitude;
+    private final double longitude;
+    private final float zoomLevel;
+
+    /**
+     * Create a new camera position.
+     *
+     * @param latitude Latitude of the camera center
+     * @param longitude Longitude of the camera center
+     * @param zoomLevel Zoom level
+     */
+    public MapCameraPosition(double latitude, double longitude, float zoomLevel) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.zoomLevel = zoomLevel;
+    }
+
+    // Getters
+    public double getLatitude() { return latitude; }
+    public double getLongitude() { return longitude; }
+    public float getZoomLevel() { return zoomLevel; }
+}
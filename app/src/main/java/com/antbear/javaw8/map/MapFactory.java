@@ -3,6 +3,11 @@ package com.antbear.javaw8.map;
 import android.content.Context;
 import android.util.Log;
 
+import com.antbear.javaw8.StartupTimer;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 /**
  * Factory class to create the map provider.
  * Currently configured to always use osmdroid.
@@ -10,6 +15,9 @@ import android.util.Log;
 public class MapFactory {
     private static final String TAG = "MapFactory";
     
+    // Single background thread for provider initialization (disk I/O, HTTP client setup)
+    private static final ExecutorService initExecutor = Executors.newSingleThreadExecutor();
+    
     /**
      * Create a map provider.
      * 
@@ -33,7 +41,27 @@ public class MapFactory {
         MapProvider provider = new OsmdroidProvider();
         
         // Initialize the provider
+        long start = StartupTimer.now();
         provider.initialize(context);
+        StartupTimer.endSection("Map provider initialization", start);
+        
+        return provider;
+    }
+    
+    /**
+     * Create a map provider and start initializing it in the background.
+     * The provider can be used immediately; its map fragment is attached
+     * once initialization completes.
+     * 
+     * @param context Application context
+     * @param useGoogleMaps Ignored parameter (kept for future compatibility)
+     * @return The osmdroid map provider, initializing asynchronously
+     */
+    public static MapProvider createMapProviderAsync(Context context, boolean useGoogleMaps) {
+        Log.d(TAG, "Creating OSM provider asynchronously (Google Maps support disabled)");
+        MapProvider provider = new OsmdroidProvider();
+        
+        provider.initializeAsync(context, initExecutor);
         
         return provider;
     }
@@ -0,0 +1,223 @@
+package com.antbear.javaw8.map;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Frame times of the map while it is being panned or zoomed, broken down by
+ * what the map was drawing: how many markers, at which zoom, and whether
+ * tiles were still loading. A session covers one visit to the map screen;
+ * its jank rate per marker count shows whether markers are what slows
+ * panning down. Everything is in memory only. Thread-safe.
+ */
+public final class MapFrameStats {
+    private static final int RECENT_SESSIONS = 10;
+    private static final long FROZEN_FRAME_NANOS = 700_000_000L;
+    
+    // Lower bounds of the bands frames are grouped in
+    private static final int[] MARKER_BANDS = {0, 25, 50, 100, 200};
+    private static final double[] ZOOM_BANDS = {0, 12, 15, 17};
+    private static final String[] TILE_BANDS = {"unknown", "none", "loading"};
+    
+    private static final MapFrameStats INSTANCE = new MapFrameStats();
+    
+    private final ArrayDeque<Session> recent = new ArrayDeque<>();
+    private Session current;
+    
+    private MapFrameStats() {
+    }
+    
+    public static MapFrameStats getInstance() {
+        return INSTANCE;
+    }
+    
+    /**
+     * Start a session, finishing the current one if there is one.
+     * @param frameBudgetNanos Frames taking longer than this are janky, e.g. one refresh interval
+     * @return The session to record frames on
+     */
+    public synchronized Session startSession(long frameBudgetNanos) {
+        if (current != null) {
+            current.finish();
+        }
+        current = new Session(frameBudgetNanos);
+        return current;
+    }
+    
+    private synchronized void onFinished(Session session) {
+        if (session == current) {
+            current = null;
+        }
+        if (session.getFrameCount() == 0) return;
+        
+        if (recent.size() == RECENT_SESSIONS) {
+            recent.pollFirst();
+        }
+        recent.addLast(session);
+    }
+    
+    /**
+     * Format the current and recent sessions, newest first, for the debug panel.
+     * @return The summary, or a note that no frames were recorded
+     */
+    public String formatSummary() {
+        List<Session> sessions = new ArrayList<>();
+        synchronized (this) {
+            if (current != null && current.getFrameCount() > 0) {
+                sessions.add(current);
+            }
+            sessions.addAll(recent);
+        }
+        if (sessions.isEmpty()) {
+            return "No map frames recorded yet; pan or zoom the map";
+        }
+        
+        StringBuilder summary = new StringBuilder();
+        for (int i = sessions.size() - 1; i >= 0; i--) {
+            if (summary.length() > 0) summary.append('\n');
+            summary.append(sessions.get(i).format());
+        }
+        return summary.toString();
+    }
+    
+    /**
+     * Frames recorded during one visit to the map.
+     */
+    public static final class Session {
+        private final long frameBudgetNanos;
+        private final long startedAt = System.currentTimeMillis();
+        private final LatencyHistogram frameTimes = new LatencyHistogram();
+        private final long[] markerFrames = new long[MARKER_BANDS.length];
+        private final long[] markerJanky = new long[MARKER_BANDS.length];
+        private final long[] zoomFrames = new long[ZOOM_BANDS.length];
+        private final long[] zoomJanky = new long[ZOOM_BANDS.length];
+        private final long[] tileFrames = new long[TILE_BANDS.length];
+        private final long[] tileJanky = new long[TILE_BANDS.length];
+        private long frames;
+        private long janky;
+        private long frozen;
+        private long unreported;
+        private boolean finished;
+        
+        private Session(long frameBudgetNanos) {
+            this.frameBudgetNanos = frameBudgetNanos;
+        }
+        
+        /**
+         * Record one frame drawn while the map was moving.
+         * @param frameNanos How long the frame took, from input to the GPU finishing
+         * @param markers The number of markers on the map
+         * @param zoom The zoom level
+         * @param pendingTiles Tiles still loading, or {@link MapRenderLoad#UNKNOWN}
+         */
+        public synchronized void record(long frameNanos, int markers, double zoom, int pendingTiles) {
+            if (finished) return;
+            
+            frameTimes.record(frameNanos / 1000);
+            boolean isJanky = frameNanos > frameBudgetNanos;
+            int jank = isJanky ? 1 : 0;
+            frames++;
+            janky += jank;
+            if (frameNanos > FROZEN_FRAME_NANOS) {
+                frozen++;
+            }
+            
+            int markerBand = band(MARKER_BANDS, markers);
+            markerFrames[markerBand]++;
+            markerJanky[markerBand] += jank;
+            int zoomBand = band(ZOOM_BANDS, zoom);
+            zoomFrames[zoomBand]++;
+            zoomJanky[zoomBand] += jank;
+            int tileBand = pendingTiles == MapRenderLoad.UNKNOWN ? 0 : pendingTiles == 0 ? 1 : 2;
+            tileFrames[tileBand]++;
+            tileJanky[tileBand] += jank;
+        }
+        
+        /**
+         * Count frames the system could not report, e.g. because the listener fell behind.
+         */
+        public synchronized void recordUnreported(int count) {
+            unreported += count;
+        }
+        
+        public synchronized long getFrameCount() {
+            return frames;
+        }
+        
+        /**
+         * @return The share of recorded frames that missed the frame budget, from 0 to 100
+         */
+        public synchronized double getJankPercent() {
+            return frames == 0 ? 0 : janky * 100.0 / frames;
+        }
+        
+        /**
+         * Stop recording and keep the session with the recent ones.
+         */
+        public void finish() {
+            synchronized (this) {
+                if (finished) return;
+                finished = true;
+            }
+            INSTANCE.onFinished(this);
+        }
+        
+        /**
+         * Format the session for the debug panel and the log.
+         */
+        public synchronized String format() {
+            StringBuilder out = new StringBuilder();
+            out.append(String.format(Locale.US, "session %tT%s: %d frames, %.1f%% janky (> %.1f ms), %d frozen",
+                    startedAt, finished ? "" : " (current)", frames, getJankPercent(),
+                    frameBudgetNanos / 1_000_000.0, frozen));
+            if (unreported > 0) {
+                out.append(String.format(Locale.US, ", %d unreported", unreported));
+            }
+            out.append(String.format(Locale.US, "%nframe ms p50 %.1f  p90 %.1f  p99 %.1f  max %.1f%n",
+                    frameTimes.getPercentileMicros(50) / 1000.0,
+                    frameTimes.getPercentileMicros(90) / 1000.0,
+                    frameTimes.getPercentileMicros(99) / 1000.0,
+                    frameTimes.getMaxMicros() / 1000.0));
+            for (int i = 0; i < MARKER_BANDS.length; i++) {
+                String label = i + 1 < MARKER_BANDS.length
+                        ? MARKER_BANDS[i] + "-" + (MARKER_BANDS[i + 1] - 1)
+                        : MARKER_BANDS[i] + "+";
+                appendBand(out, "markers " + label, markerFrames[i], markerJanky[i]);
+            }
+            for (int i = 0; i < ZOOM_BANDS.length; i++) {
+                String label = i + 1 < ZOOM_BANDS.length
+                        ? String.format(Locale.US, "%.0f-%.0f", ZOOM_BANDS[i], ZOOM_BANDS[i + 1])
+                        : String.format(Locale.US, "%.0f+", ZOOM_BANDS[i]);
+                appendBand(out, "zoom " + label, zoomFrames[i], zoomJanky[i]);
+            }
+            for (int i = 0; i < TILE_BANDS.length; i++) {
+                appendBand(out, "tiles " + TILE_BANDS[i], tileFrames[i], tileJanky[i]);
+            }
+            return out.toString();
+        }
+        
+        private static void appendBand(StringBuilder out, String label, long frames, long janky) {
+            if (frames == 0) return;
+            out.append(String.format(Locale.US, "%-18s %6d frames %5.1f%% janky%n",
+                    label, frames, janky * 100.0 / frames));
+        }
+        
+        private static int band(int[] lowerBounds, int value) {
+            int band = 0;
+            while (band + 1 < lowerBounds.length && value >= lowerBounds[band + 1]) {
+                band++;
+            }
+            return band;
+        }
+        
+        private static int band(double[] lowerBounds, double value) {
+            int band = 0;
+            while (band + 1 < lowerBounds.length && value >= lowerBounds[band + 1]) {
+                band++;
+            }
+            return band;
+        }
+    }
+}
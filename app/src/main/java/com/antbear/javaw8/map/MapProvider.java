@@ -5,6 +5,11 @@ import android.view.ViewGroup;
 import androidx.annotation.NonNull;
 import androidx.fragment.app.Fragment;
 import androidx.fragment.app.FragmentManager;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * Interface defining the contract for map providers (Google Maps, osmdroid, etc.)
@@ -17,13 +22,25 @@ public interface MapProvider {
      */
     void initialize(Context context);
     
+    /**
+     * Initialize the map provider off the main thread.
+     * {@link #createMapFragment} may be called before the returned future completes;
+     * the fragment is attached once initialization has finished.
+     * @param context The application context
+     * @param executor The executor to run initialization on
+     * @return A future that completes when the provider is initialized
+     */
+    CompletableFuture<Void> initializeAsync(Context context, Executor executor);
+    
     /**
      * Create the map fragment to be added to the UI.
      * @param fragmentManager The fragment manager to use for transactions
+     * @param host The owner of the fragment manager; an attach that has to wait
+     *             while its state is saved is committed once it starts again
      * @param containerId The ID of the container to add the fragment to
      * @return The created map fragment
      */
-    Fragment createMapFragment(FragmentManager fragmentManager, int containerId);
+    Fragment createMapFragment(FragmentManager fragmentManager, LifecycleOwner host, int containerId);
     
     /**
      * Check if the provider has been properly initialized.
@@ -41,6 +58,11 @@ public interface MapProvider {
      */
     String addMarker(double latitude, double longitude, String title, String snippet);
     
+    /**
+     * Remove all markers previously added with {@link #addMarker}.
+     */
+    void clearMarkers();
+    
     /**
      * Move the camera to a specific location.
      * @param latitude The latitude to move to
@@ -49,12 +71,31 @@ public interface MapProvider {
      */
     void moveCamera(double latitude, double longitude, float zoomLevel);
     
+    /**
+     * Get the current camera position.
+     * @return The current camera position, or null if the map is not ready
+     */
+    MapCameraPosition getCameraPosition();
+    
     /**
      * Set up a listener for map ready events.
      * @param listener The listener to set
      */
     void setOnMapReadyListener(OnMapReadyListener listener);
     
+    /**
+     * Set a listener for camera movement. Called on the main thread for every
+     * step of a pan, fling or zoom, so it must be cheap.
+     * @param listener The listener, or null to stop listening
+     */
+    void setOnCameraMoveListener(OnCameraMoveListener listener);
+    
+    /**
+     * Describe what the map is drawing right now. Must be called on the main thread.
+     * @param load Filled in with the marker and overlay counts, zoom level and pending tiles
+     */
+    void getRenderLoad(MapRenderLoad load);
+    
     /**
      * Search for points of interest near a location.
      * @param query The search query (e.g., "coffee shop")
@@ -66,6 +107,30 @@ public interface MapProvider {
     void searchNearbyPlaces(String query, double latitude, double longitude, double radius, 
                            OnPlacesFoundListener listener);
     
+    /**
+     * Search for points of interest near a location, delivering places in batches
+     * as they are parsed instead of all at once.
+     * @param query The search query (e.g., "coffee shop")
+     * @param latitude The latitude to search around
+     * @param longitude The longitude to search around
+     * @param radius The radius to search within (in meters)
+     * @param listener The listener for batches and the final outcome
+     * @return A handle to cancel, await or inspect the search
+     */
+    SearchHandle streamNearbyPlaces(String query, double latitude, double longitude, double radius,
+                                    OnPlacesStreamListener listener);
+    
+    /**
+     * Find places already cached on the device by name or address.
+     * Fast enough to call on every keystroke; never touches the network.
+     * @param text The text typed so far
+     * @param latitude The latitude to rank nearby places first (e.g. the viewport center)
+     * @param longitude The longitude to rank nearby places first
+     * @param limit The maximum number of places to return
+     * @return The best matches, best first
+     */
+    List<PlaceInfo> findCachedPlaces(String text, double latitude, double longitude, int limit);
+    
     /**
      * Set a click listener for markers.
      * @param listener The listener to set
@@ -84,6 +149,12 @@ public interface MapProvider {
      */
     void enableMyLocation(boolean hasPermission);
     
+    /**
+     * Warm up DNS and connections to the provider's search and tile endpoints
+     * so the first real request skips the handshake. Runs in the background.
+     */
+    void prewarmConnections();
+    
     /**
      * Clean up resources when the provider is no longer needed.
      */
@@ -98,14 +169,34 @@ public interface MapProvider {
         void onMapReady();
     }
     
+    /**
+     * Listener for camera movement.
+     */
+    interface OnCameraMoveListener {
+        void onCameraMove();
+    }
+    
     /**
      * Listener for place search results.
+     * Callbacks are always delivered on the main thread.
      */
     interface OnPlacesFoundListener {
         void onPlacesFound(PlaceInfo[] places);
         void onPlacesError(String errorMessage);
     }
     
+    /**
+     * Listener for streamed place search results.
+     * Callbacks are always delivered on the main thread. Zero or more
+     * {@code onPlacesBatch} calls are followed by exactly one of
+     * {@code onSearchComplete} or {@code onSearchError}, unless the search is cancelled.
+     */
+    interface OnPlacesStreamListener {
+        void onPlacesBatch(PlaceInfo[] places);
+        void onSearchComplete(int totalPlaces);
+        void onSearchError(String errorMessage);
+    }
+    
     /**
      * Listener for marker click events.
      */
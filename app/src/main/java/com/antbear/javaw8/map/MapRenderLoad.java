@@ -0,0 +1,29 @@
+package com.antbear.javaw8.map;
+
+/**
+ * What a map is drawing at one moment, to correlate frame times with.
+ * Filled in by {@link MapProvider#getRenderLoad(MapRenderLoad)}; one
+ * instance is reused across frames so sampling does not allocate.
+ */
+public final class MapRenderLoad {
+    /** Pending tile count for maps that don't report it. */
+    public static final int UNKNOWN = -1;
+    
+    private int markerCount;
+    private int overlayCount;
+    private double zoom;
+    private int pendingTiles = UNKNOWN;
+    
+    void set(int markerCount, int overlayCount, double zoom, int pendingTiles) {
+        this.markerCount = markerCount;
+        this.overlayCount = overlayCount;
+        this.zoom = zoom;
+        this.pendingTiles = pendingTiles;
+    }
+    
+    // Getters
+    public int getMarkerCount() { return markerCount; }
+    public int getOverlayCount() { return overlayCount; }
+    public double getZoom() { return zoom; }
+    public int getPendingTiles() { return pendingTiles; }
+}
@@ -0,0 +1,119 @@
+package com.antbear.javaw8.map;
+
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Immutable snapshot of the visible map state: camera position, the places
+ * currently rendered and the area they were searched in. Serializes to a small
+ * versioned binary blob so it can be stored in a saved-state Bundle and survive
+ * process death.
+ */
+public class MapSnapshot {
+    private static final String TAG = "MapSnapshot";
+    private static final int MAGIC = 0x4A57534E; // "JWSN"
+    private static final int VERSION = 2;
+
+    private final MapCameraPosition cameraPosition;
+    private final PlaceInfo[] places;
+    private final SearchArea searchArea;
+
+    /**
+     * Create a new snapshot.
+     *
+     * @param cameraPosition The camera position (can be null if unknown)
+     * @param places The rendered places (can be empty, never null)
+     * @param searchArea The area the places were searched in (can be null)
+     */
+    public MapSnapshot(MapCameraPosition cameraPosition, PlaceInfo[] places, SearchArea searchArea) {
+        this.cameraPosition = cameraPosition;
+        this.places = places != null ? places : new PlaceInfo[0];
+        this.searchArea = searchArea;
+    }
+
+    // Getters
+    public MapCameraPosition getCameraPosition() { return cameraPosition; }
+    public PlaceInfo[] getPlaces() { return places; }
+    public SearchArea getSearchArea() { return searchArea; }
+
+    /**
+     * Encode this snapshot into its binary form.
+     *
+     * @return The encoded bytes
+     */
+    public byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + places.length * 48);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+
+            out.writeBoolean(cameraPosition != null);
+            if (cameraPosition != null) {
+                out.writeDouble(cameraPosition.getLatitude());
+                out.writeDouble(cameraPosition.getLongitude());
+                out.writeFloat(cameraPosition.getZoomLevel());
+            }
+
+            out.writeBoolean(searchArea != null);
+            if (searchArea != null) {
+                out.writeDouble(searchArea.getLatitude());
+                out.writeDouble(searchArea.getLongitude());
+                out.writeDouble(searchArea.getRadiusMeters());
+            }
+
+            out.writeInt(places.length);
+            for (PlaceInfo place : places) {
+                PlaceInfoCodec.writePlace(out, place);
+            }
+        } catch (IOException e) {
+            // ByteArrayOutputStream never throws, but DataOutputStream declares it
+            Log.e(TAG, "Error encoding map snapshot: " + e.getMessage(), e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decode a snapshot from its binary form.
+     *
+     * @param data The encoded bytes
+     * @return The decoded snapshot, or null if the data is missing, from another version or corrupt
+     */
+    public static MapSnapshot fromByteArray(byte[] data) {
+        if (data == null || data.length == 0) return null;
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            if (in.readInt() != MAGIC || in.readUnsignedByte() != VERSION) {
+                Log.d(TAG, "Ignoring map snapshot with unknown format");
+                return null;
+            }
+
+            MapCameraPosition camera = null;
+            if (in.readBoolean()) {
+                camera = new MapCameraPosition(in.readDouble(), in.readDouble(), in.readFloat());
+            }
+
+            SearchArea area = null;
+            if (in.readBoolean()) {
+                area = new SearchArea(in.readDouble(), in.readDouble(), in.readDouble());
+            }
+
+            int count = in.readInt();
+            if (count < 0) return null;
+
+            PlaceInfo[] places = new PlaceInfo[count];
+            for (int i = 0; i < count; i++) {
+                places[i] = PlaceInfoCodec.readPlace(in);
+            }
+
+            return new MapSnapshot(camera, places, area);
+        } catch (IOException e) {
+            Log.e(TAG, "Error decoding map snapshot: " + e.getMessage(), e);
+            return null;
+        }
+    }
+}
@@ -23,15 +23,15 @@ public class MapTogglePreference {
     
     /**
      * Set the map provider preference.
-     * This method is kept for API compatibility but has no effect.
+     * The choice is saved, but has no effect while Google Maps is disabled.
      * 
      * @param context The application context
-     * @param useGoogleMaps Ignored parameter
+     * @param useGoogleMaps true to prefer Google Maps
      */
     public static void setUseGoogleMaps(Context context, boolean useGoogleMaps) {
-        // No-op - we always use osmdroid regardless of the setting
+        SettingsRepository.getInstance(context).update(settings -> settings.withUseGoogleMaps(useGoogleMaps));
         if (useGoogleMaps) {
-            Log.d(TAG, "Attempted to set Google Maps as provider, but Google Maps support is disabled");
+            Log.d(TAG, "Saved Google Maps as provider, but Google Maps support is disabled");
         }
     }
 }
@@ -0,0 +1,328 @@
+package com.antbear.javaw8.map;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Read-only view of a place snapshot file mapped into memory, so the last
+ * region's places can be drawn at launch without decoding the file first.
+ * Opening only checks the header; each field is read from the mapped pages
+ * when it is asked for.
+ * <p>
+ * The file has three parts, all big-endian:
+ * <ul>
+ *   <li>a fixed header with the magic, version, record count, string table
+ *       location, and the camera and search area of the snapshot;</li>
+ *   <li>fixed-size records sorted by the Z-order (Morton) code of their
+ *       coordinates, so nearby places are next to each other in the file:
+ *       latitude and longitude as 1e-7 fixed-point ints, rating (NaN for
+ *       none), flags and the string table offsets of ID, name, address and
+ *       phone number (-1 for none);</li>
+ *   <li>a string table of length-prefixed UTF-8 strings, each stored once.</li>
+ * </ul>
+ * Files are replaced by renaming, so a mapping stays valid while a newer
+ * snapshot is written.
+ */
+public final class MappedPlaceSnapshot {
+    private static final int MAGIC = 0x4A575053; // "JWPS"
+    private static final int VERSION = 1;
+    
+    private static final int HEADER_SIZE = 80;
+    private static final int OFFSET_FLAGS = 8;
+    private static final int OFFSET_COUNT = 12;
+    private static final int OFFSET_STRINGS = 16;
+    private static final int OFFSET_STRINGS_LENGTH = 20;
+    private static final int OFFSET_CAMERA = 24;
+    private static final int OFFSET_AREA = 48;
+    
+    private static final int RECORD_SIZE = 32;
+    private static final int RECORD_LATITUDE = 0;
+    private static final int RECORD_LONGITUDE = 4;
+    private static final int RECORD_RATING = 8;
+    private static final int RECORD_FLAGS = 12;
+    private static final int RECORD_ID = 16;
+    private static final int RECORD_NAME = 20;
+    private static final int RECORD_ADDRESS = 24;
+    private static final int RECORD_PHONE = 28;
+    
+    private static final int HAS_CAMERA = 1;
+    private static final int HAS_AREA = 1 << 1;
+    private static final int FLAG_SAMPLE = 1;
+    private static final int NO_STRING = -1;
+    
+    private final ByteBuffer buffer;
+    private final int count;
+    private final int stringsOffset;
+    private final int stringsLength;
+    private final MapCameraPosition cameraPosition;
+    private final SearchArea searchArea;
+    
+    private MappedPlaceSnapshot(ByteBuffer buffer) throws IOException {
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a place snapshot");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported place snapshot version " + buffer.getInt(4));
+        }
+        
+        count = buffer.getInt(OFFSET_COUNT);
+        stringsOffset = buffer.getInt(OFFSET_STRINGS);
+        stringsLength = buffer.getInt(OFFSET_STRINGS_LENGTH);
+        if (count < 0 || stringsOffset != HEADER_SIZE + (long) count * RECORD_SIZE
+                || stringsLength < 0 || (long) stringsOffset + stringsLength != buffer.capacity()) {
+            throw new IOException("Truncated place snapshot");
+        }
+        
+        int flags = buffer.getInt(OFFSET_FLAGS);
+        cameraPosition = (flags & HAS_CAMERA) == 0 ? null : new MapCameraPosition(
+                buffer.getDouble(OFFSET_CAMERA), buffer.getDouble(OFFSET_CAMERA + 8),
+                buffer.getFloat(OFFSET_CAMERA + 16));
+        searchArea = (flags & HAS_AREA) == 0 ? null : new SearchArea(
+                buffer.getDouble(OFFSET_AREA), buffer.getDouble(OFFSET_AREA + 8),
+                buffer.getDouble(OFFSET_AREA + 16));
+        this.buffer = buffer;
+    }
+    
+    /**
+     * Map a snapshot file into memory.
+     *
+     * @param file The file written by {@link #write}
+     * @return The mapped snapshot
+     * @throws IOException If the file cannot be mapped or is not a valid snapshot
+     */
+    public static MappedPlaceSnapshot open(File file) throws IOException {
+        try (RandomAccessFile input = new RandomAccessFile(file, "r");
+             FileChannel channel = input.getChannel()) {
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new MappedPlaceSnapshot(mapped);
+        }
+    }
+    
+    /**
+     * Wrap snapshot bytes already in memory, e.g. to compare with a mapped file.
+     *
+     * @param data The bytes of a snapshot file
+     * @return The snapshot
+     * @throws IOException If the bytes are not a valid snapshot
+     */
+    public static MappedPlaceSnapshot wrap(byte[] data) throws IOException {
+        return new MappedPlaceSnapshot(ByteBuffer.wrap(data));
+    }
+    
+    /**
+     * Atomically replace a snapshot file: the new contents are written to a
+     * temporary file, synced and renamed over the old one.
+     *
+     * @param file The file to write
+     * @param camera The camera position (can be null)
+     * @param places The places to store
+     * @param area The area the places were searched in (can be null)
+     * @throws IOException If the file cannot be written
+     */
+    public static void write(File file, MapCameraPosition camera, PlaceInfo[] places, SearchArea area)
+            throws IOException {
+        byte[] data = encode(camera, places, area);
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tempFile)) {
+            out.write(data);
+            out.getFD().sync();
+        }
+        if (!tempFile.renameTo(file)) {
+            throw new IOException("Cannot replace " + file);
+        }
+    }
+    
+    /**
+     * Encode places into the file format.
+     *
+     * @param camera The camera position (can be null)
+     * @param places The places to store
+     * @param area The area the places were searched in (can be null)
+     * @return The bytes of the file
+     */
+    public static byte[] encode(MapCameraPosition camera, PlaceInfo[] places, SearchArea area) {
+        Integer[] order = MortonOrder.sort(places);
+        
+        StringTableBuilder strings = new StringTableBuilder();
+        int[] stringOffsets = new int[places.length * 4];
+        for (int i = 0; i < places.length; i++) {
+            PlaceInfo place = places[order[i]];
+            stringOffsets[i * 4] = strings.add(place.getId());
+            stringOffsets[i * 4 + 1] = strings.add(place.getName());
+            stringOffsets[i * 4 + 2] = strings.add(place.getAddress());
+            stringOffsets[i * 4 + 3] = strings.add(place.getPhoneNumber());
+        }
+        
+        int stringsOffset = HEADER_SIZE + places.length * RECORD_SIZE;
+        ByteBuffer out = ByteBuffer.allocate(stringsOffset + strings.length());
+        
+        out.putInt(0, MAGIC);
+        out.putInt(4, VERSION);
+        out.putInt(OFFSET_FLAGS, (camera != null ? HAS_CAMERA : 0) | (area != null ? HAS_AREA : 0));
+        out.putInt(OFFSET_COUNT, places.length);
+        out.putInt(OFFSET_STRINGS, stringsOffset);
+        out.putInt(OFFSET_STRINGS_LENGTH, strings.length());
+        if (camera != null) {
+            out.putDouble(OFFSET_CAMERA, camera.getLatitude());
+            out.putDouble(OFFSET_CAMERA + 8, camera.getLongitude());
+            out.putFloat(OFFSET_CAMERA + 16, camera.getZoomLevel());
+        }
+        if (area != null) {
+            out.putDouble(OFFSET_AREA, area.getLatitude());
+            out.putDouble(OFFSET_AREA + 8, area.getLongitude());
+            out.putDouble(OFFSET_AREA + 16, area.getRadiusMeters());
+        }
+        
+        for (int i = 0; i < places.length; i++) {
+            PlaceInfo place = places[order[i]];
+            int record = HEADER_SIZE + i * RECORD_SIZE;
+            out.putInt(record + RECORD_LATITUDE, PlaceInfoCodec.encodeCoordinate(place.getLatitude()));
+            out.putInt(record + RECORD_LONGITUDE, PlaceInfoCodec.encodeCoordinate(place.getLongitude()));
+            out.putFloat(record + RECORD_RATING, place.getRating() != null ? place.getRating() : Float.NaN);
+            out.putInt(record + RECORD_FLAGS, place.isSampleData() ? FLAG_SAMPLE : 0);
+            out.putInt(record + RECORD_ID, stringOffsets[i * 4]);
+            out.putInt(record + RECORD_NAME, stringOffsets[i * 4 + 1]);
+            out.putInt(record + RECORD_ADDRESS, stringOffsets[i * 4 + 2]);
+            out.putInt(record + RECORD_PHONE, stringOffsets[i * 4 + 3]);
+        }
+        
+        out.position(stringsOffset);
+        strings.writeTo(out);
+        return out.array();
+    }
+    
+    // Getters
+    public MapCameraPosition getCameraPosition() { return cameraPosition; }
+    public SearchArea getSearchArea() { return searchArea; }
+    
+    /**
+     * @return The number of places
+     */
+    public int size() {
+        return count;
+    }
+    
+    // Record accessors, in spatial order
+    public double getLatitude(int index) { return PlaceInfoCodec.decodeCoordinate(buffer.getInt(record(index) + RECORD_LATITUDE)); }
+    public double getLongitude(int index) { return PlaceInfoCodec.decodeCoordinate(buffer.getInt(record(index) + RECORD_LONGITUDE)); }
+    public String getId(int index) { return string(buffer.getInt(record(index) + RECORD_ID)); }
+    public String getName(int index) { return string(buffer.getInt(record(index) + RECORD_NAME)); }
+    
+    /**
+     * Create a place object for a record.
+     * @param index The record index
+     * @return A new place with the record's values
+     */
+    public PlaceInfo get(int index) {
+        int record = record(index);
+        float rating = buffer.getFloat(record + RECORD_RATING);
+        return new PlaceInfo(string(buffer.getInt(record + RECORD_ID)), string(buffer.getInt(record + RECORD_NAME)),
+                getLatitude(index), getLongitude(index),
+                string(buffer.getInt(record + RECORD_ADDRESS)), string(buffer.getInt(record + RECORD_PHONE)),
+                Float.isNaN(rating) ? null : rating,
+                (buffer.getInt(record + RECORD_FLAGS) & FLAG_SAMPLE) != 0);
+    }
+    
+    /**
+     * View the records as places, each created when it is read.
+     * @return A read-only list backed by the mapped file
+     */
+    public List<PlaceInfo> asList() {
+        return new PlaceList();
+    }
+    
+    private int record(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Record " + index + " of " + count);
+        }
+        return HEADER_SIZE + index * RECORD_SIZE;
+    }
+    
+    private String string(int offset) {
+        if (offset == NO_STRING) return null;
+        if (offset < 0 || offset > stringsLength - 2) {
+            throw new IllegalStateException("Corrupt string offset " + offset);
+        }
+        
+        int position = stringsOffset + offset;
+        int length = buffer.getShort(position) & 0xFFFF;
+        if (offset + 2 + length > stringsLength) {
+            throw new IllegalStateException("Corrupt string length at " + offset);
+        }
+        // Absolute reads, so concurrent readers never share a buffer position
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(position + 2 + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Read-only list that creates each place from the mapped file when it is read.
+     */
+    private final class PlaceList extends AbstractList<PlaceInfo> implements RandomAccess {
+        @Override
+        public PlaceInfo get(int index) {
+            return MappedPlaceSnapshot.this.get(index);
+        }
+        
+        @Override
+        public int size() {
+            return count;
+        }
+    }
+    
+    /**
+     * Collects the distinct strings of a snapshot and assigns their offsets.
+     */
+    private static final class StringTableBuilder {
+        private final Map<String, Integer> offsets = new HashMap<>();
+        private final List<byte[]> encoded = new ArrayList<>();
+        private int length;
+        
+        int add(String value) {
+            if (value == null) return NO_STRING;
+            
+            Integer existing = offsets.get(value);
+            if (existing != null) return existing;
+            
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > 0xFFFF) {
+                // Longer than any real name or address; cut at a character boundary
+                int end = 0xFFFF;
+                while ((bytes[end] & 0xC0) == 0x80) end--;
+                bytes = Arrays.copyOf(bytes, end);
+            }
+            int offset = length;
+            offsets.put(value, offset);
+            encoded.add(bytes);
+            length += 2 + bytes.length;
+            return offset;
+        }
+        
+        int length() {
+            return length;
+        }
+        
+        void writeTo(ByteBuffer out) {
+            for (byte[] bytes : encoded) {
+                out.putShort((short) bytes.length);
+                out.put(bytes);
+            }
+        }
+    }
+}
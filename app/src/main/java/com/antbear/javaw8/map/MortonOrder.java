@@ -0,0 +1,53 @@
+package com.antbear.javaw8.map;
+
+import java.util.Arrays;
+
+/**
+ * Orders places along a Z-order (Morton) curve, so places close to each
+ * other on the map end up close to each other in a file. Coordinates are
+ * quantized to 16 bits within the bounding box of the places.
+ */
+final class MortonOrder {
+    private MortonOrder() {
+        // Static helpers only
+    }
+    
+    /**
+     * Sort places by the Z-order code of their coordinates.
+     * @param places The places to sort (not modified)
+     * @return The indices of the places, in Z-order
+     */
+    static Integer[] sort(PlaceInfo[] places) {
+        double minLat = Double.MAX_VALUE, maxLat = -Double.MAX_VALUE;
+        double minLng = Double.MAX_VALUE, maxLng = -Double.MAX_VALUE;
+        for (PlaceInfo place : places) {
+            minLat = Math.min(minLat, place.getLatitude());
+            maxLat = Math.max(maxLat, place.getLatitude());
+            minLng = Math.min(minLng, place.getLongitude());
+            maxLng = Math.max(maxLng, place.getLongitude());
+        }
+        
+        long[] keys = new long[places.length];
+        Integer[] order = new Integer[places.length];
+        for (int i = 0; i < places.length; i++) {
+            keys[i] = interleave(quantize(places[i].getLatitude(), minLat, maxLat),
+                    quantize(places[i].getLongitude(), minLng, maxLng));
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(keys[a], keys[b]));
+        return order;
+    }
+    
+    private static int quantize(double value, double min, double max) {
+        if (max <= min) return 0;
+        return (int) Math.round((value - min) / (max - min) * 0xFFFF);
+    }
+    
+    private static long interleave(int latitude, int longitude) {
+        long key = 0;
+        for (int bit = 15; bit >= 0; bit--) {
+            key = (key << 2) | (((latitude >> bit) & 1) << 1) | ((longitude >> bit) & 1);
+        }
+        return key;
+    }
+}
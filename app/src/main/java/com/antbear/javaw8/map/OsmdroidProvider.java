@@ -3,17 +3,29 @@ package com.antbear.javaw8.map;
 import android.content.Context;
 import android.graphics.drawable.Drawable;
 import android.os.AsyncTask;
-import android.preference.PreferenceManager;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 import android.view.ViewGroup;
 
+import androidx.annotation.NonNull;
 import androidx.core.content.ContextCompat;
 import androidx.fragment.app.Fragment;
 import androidx.fragment.app.FragmentManager;
 import androidx.fragment.app.FragmentTransaction;
+import androidx.lifecycle.DefaultLifecycleObserver;
+import androidx.lifecycle.LifecycleOwner;
 
+import com.antbear.javaw8.StartupTimer;
+import com.antbear.javaw8.Tracer;
+
+import org.osmdroid.api.IGeoPoint;
 import org.osmdroid.api.IMapController;
 import org.osmdroid.config.Configuration;
+import org.osmdroid.events.MapListener;
+import org.osmdroid.events.ScrollEvent;
+import org.osmdroid.events.ZoomEvent;
+import org.osmdroid.tileprovider.tilesource.OnlineTileSourceBase;
 import org.osmdroid.tileprovider.tilesource.TileSourceFactory;
 import org.osmdroid.util.GeoPoint;
 import org.osmdroid.views.MapView;
@@ -25,25 +37,29 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
+import java.net.InetAddress;
 import java.net.URL;
 import java.net.URLEncoder;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
 
 import okhttp3.Call;
 import okhttp3.Callback;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
+import okhttp3.ResponseBody;
 import okhttp3.logging.HttpLoggingInterceptor;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
 /**
  * Implementation of MapProvider using osmdroid.
  */
@@ -51,18 +67,51 @@ public class OsmdroidProvider implements MapProvider {
     private static final String TAG = "OsmdroidProvider";
     private static final String OVERPASS_API_URL = "https://overpass-api.de/api/interpreter";
     private static final String NOMINATIM_API_URL = "https://nominatim.openstreetmap.org/search";
+    private static final String OVERPASS_STATUS_URL = "https://overpass-api.de/api/status";
+    private static final String TILE_HOST = "tile.openstreetmap.org";
+    
+    // Base map shown by the map view and prefetched by the cache warmer
+    static final OnlineTileSourceBase TILE_SOURCE = TileSourceFactory.MAPNIK;
+    static final int DEFAULT_ZOOM = 14;
+    
+    // Only the best places of each source are kept and rendered
+    private static final int MAX_RESULTS = 50;
+    // Provisional rankings while a response downloads: early so the nearest results render
+    // quickly, then every BATCH_SIZE parsed places
+    private static final int FIRST_BATCH_SIZE = 10;
+    private static final int BATCH_SIZE = 50;
+    
+    // Places from earlier searches, answered on-device alongside Overpass
+    private static final String LOCAL_STORE_FILE = "osm_places.bin";
+    private static final long LOCAL_STORE_MAX_AGE_MS = 7 * 24 * 60 * 60 * 1000L; // 1 week
+    private static final int LOCAL_STORE_MAX_ENTRIES = 5000;
+    private static final long SEARCH_DEADLINE_MS = 15000;
+    private static LocalPlaceStore sharedPlaceStore;
+    // Synced areas younger than this are answered from the store alone; older ones fetch a diff
+    private static final long SYNC_FRESH_MS = 60 * 60 * 1000L; // 1 hour
     
     private Context context;
     private MapView mapView;
     private OsmMapFragment mapFragment;
-    private boolean initialized = false;
-    private OkHttpClient httpClient;
+    private Drawable markerIcon;
+    private volatile boolean initialized = false;
+    private volatile OkHttpClient httpClient;
+    private LocalPlaceStore localPlaceStore;
+    private OverpassSource overpassSource;
+    private FederatedSearch federatedSearch;
+    private volatile PlaceRanker.Scorer placeScorer = PlaceRanker.BY_DISTANCE;
+    private SettingsRepository settingsRepository;
+    private SettingsRepository.Listener settingsListener;
+    private CompletableFuture<Void> initFuture;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
     private MyLocationNewOverlay myLocationOverlay;
+    private boolean myLocationWanted = false;
     
     // Listeners
     private OnMapReadyListener mapReadyListener;
     private OnMarkerClickListener markerClickListener;
     private OnInfoWindowClickListener infoWindowClickListener;
+    private OnCameraMoveListener cameraMoveListener;
     
     // Maps to keep track of markers
     private Map<String, Marker> markersById = new HashMap<>();
@@ -73,8 +122,9 @@ public class OsmdroidProvider implements MapProvider {
         this.context = context;
         
         try {
-            // Initialize osmdroid configuration
-            Configuration.getInstance().load(context, PreferenceManager.getDefaultSharedPreferences(context));
+            // Initialize osmdroid configuration from the preferences the settings load already opened
+            settingsRepository = SettingsRepository.getInstance(context);
+            Configuration.getInstance().load(context, settingsRepository.getPreferences());
             
             // Set user agent to avoid getting banned from OSM servers
             Configuration.getInstance().setUserAgentValue(context.getPackageName());
@@ -83,10 +133,18 @@ public class OsmdroidProvider implements MapProvider {
             HttpLoggingInterceptor logging = new HttpLoggingInterceptor();
             logging.setLevel(HttpLoggingInterceptor.Level.BASIC);
             
+            // Calls run on OkHttp's own dispatcher threads, so slow responses never hold up
+            // the small I/O pool the stores read and write on
             httpClient = new OkHttpClient.Builder()
                     .addInterceptor(logging)
+                    .eventListenerFactory(SearchEventListener.FACTORY)
                     .build();
             
+            localPlaceStore = getSharedPlaceStore(context);
+            overpassSource = new OverpassSource();
+            federatedSearch = new FederatedSearch(
+                    Arrays.asList(new LocalStoreSource(), overpassSource), SEARCH_DEADLINE_MS);
+            
             initialized = true;
             Log.d(TAG, "osmdroid initialized successfully");
         } catch (Exception e) {
@@ -95,15 +153,64 @@ public class OsmdroidProvider implements MapProvider {
         }
     }
     
+    /**
+     * The place store is shared by every provider instance, including the one
+     * used by the background cache warmer, so only one instance writes its file.
+     * New POI packs are loaded into it once its entries are loaded.
+     */
+    static synchronized LocalPlaceStore getSharedPlaceStore(Context context) {
+        if (sharedPlaceStore == null) {
+            Context appContext = context.getApplicationContext();
+            LocalPlaceStore store = new LocalPlaceStore(appContext, LOCAL_STORE_FILE,
+                    LOCAL_STORE_MAX_AGE_MS, LOCAL_STORE_MAX_ENTRIES);
+            store.whenLoaded().thenRunAsync(() -> PoiPackLoader.loadNewPacks(appContext, store),
+                    AppExecutors.io());
+            sharedPlaceStore = store;
+        }
+        return sharedPlaceStore;
+    }
+    
+    @Override
+    public CompletableFuture<Void> initializeAsync(Context context, Executor executor) {
+        initFuture = CompletableFuture.runAsync(() -> {
+            long start = StartupTimer.now();
+            initialize(context);
+            StartupTimer.endSection("osmdroid initialization", start);
+        }, executor);
+        return initFuture;
+    }
+    
     @Override
-    public Fragment createMapFragment(FragmentManager fragmentManager, int containerId) {
+    public Fragment createMapFragment(FragmentManager fragmentManager, LifecycleOwner host, int containerId) {
         // Create a new fragment to host the MapView
         mapFragment = new OsmMapFragment();
         
-        // Add it to the container
-        FragmentTransaction transaction = fragmentManager.beginTransaction();
-        transaction.replace(containerId, mapFragment);
-        transaction.commit();
+        // The MapView reads the osmdroid configuration when it is created, so only
+        // attach the fragment once initialization has finished
+        if (initFuture != null && !initFuture.isDone()) {
+            OsmMapFragment pendingFragment = mapFragment;
+            initFuture.whenComplete((result, error) -> mainHandler.post(
+                    () -> attachWhenActive(fragmentManager, host, containerId, pendingFragment)));
+        } else {
+            attachMapFragment(fragmentManager, containerId, mapFragment);
+        }
+        
+        // Only keep GPS on for the location overlay while the map is actually visible
+        mapFragment.getLifecycle().addObserver(new DefaultLifecycleObserver() {
+            @Override
+            public void onResume(@NonNull LifecycleOwner owner) {
+                if (myLocationOverlay != null && myLocationWanted) {
+                    myLocationOverlay.enableMyLocation();
+                }
+            }
+            
+            @Override
+            public void onPause(@NonNull LifecycleOwner owner) {
+                if (myLocationOverlay != null) {
+                    myLocationOverlay.disableMyLocation();
+                }
+            }
+        });
         
         // Get reference to the MapView once it's created
         mapFragment.setMapReadyCallback(new OsmMapFragment.MapReadyCallback() {
@@ -122,11 +229,53 @@ public class OsmdroidProvider implements MapProvider {
         return mapFragment;
     }
     
+    /**
+     * Attach a fragment whose initialization finished after it was created.
+     * If the host saved its state in the meantime (e.g. the app went to the
+     * background), the commit waits until the host starts again, so the map
+     * still becomes ready when the user returns.
+     */
+    private void attachWhenActive(FragmentManager fragmentManager, LifecycleOwner host, int containerId,
+                                  OsmMapFragment fragment) {
+        if (fragment != mapFragment || fragmentManager.isDestroyed()) {
+            Log.d(TAG, "Skipping map fragment attach: host is no longer active");
+            return;
+        }
+        if (!fragmentManager.isStateSaved()) {
+            attachMapFragment(fragmentManager, containerId, fragment);
+            return;
+        }
+        
+        Log.d(TAG, "Host state is saved; attaching the map fragment once it starts again");
+        host.getLifecycle().addObserver(new DefaultLifecycleObserver() {
+            @Override
+            public void onStart(@NonNull LifecycleOwner owner) {
+                // Also called right away if the host saved its state before stopping
+                if (fragmentManager.isStateSaved()) return;
+                
+                owner.getLifecycle().removeObserver(this);
+                attachWhenActive(fragmentManager, owner, containerId, fragment);
+            }
+            
+            @Override
+            public void onDestroy(@NonNull LifecycleOwner owner) {
+                owner.getLifecycle().removeObserver(this);
+            }
+        });
+    }
+    
+    private void attachMapFragment(FragmentManager fragmentManager, int containerId, Fragment fragment) {
+        FragmentTransaction transaction = fragmentManager.beginTransaction();
+        transaction.replace(containerId, fragment);
+        transaction.commit();
+        StartupTimer.mark("Map fragment attached");
+    }
+    
     private void setupMap() {
         if (mapView == null) return;
         
         // Configure the map
-        mapView.setTileSource(TileSourceFactory.MAPNIK);
+        mapView.setTileSource(TILE_SOURCE);
         mapView.setMultiTouchControls(true);
         mapView.setBuiltInZoomControls(true);
         mapView.setTilesScaledToDpi(true);
@@ -134,11 +283,41 @@ public class OsmdroidProvider implements MapProvider {
         // Set up location overlay
         myLocationOverlay = new MyLocationNewOverlay(new GpsMyLocationProvider(context), mapView);
         myLocationOverlay.enableMyLocation();
+        myLocationWanted = true;
         mapView.getOverlays().add(myLocationOverlay);
         
         // Set default zoom
         IMapController mapController = mapView.getController();
-        mapController.setZoom(14.0);
+        mapController.setZoom((double) DEFAULT_ZOOM);
+        
+        // Called for every step of a pan, fling or zoom
+        mapView.addMapListener(new MapListener() {
+            @Override
+            public boolean onScroll(ScrollEvent event) {
+                if (cameraMoveListener != null) {
+                    cameraMoveListener.onCameraMove();
+                }
+                return false;
+            }
+            
+            @Override
+            public boolean onZoom(ZoomEvent event) {
+                if (cameraMoveListener != null) {
+                    cameraMoveListener.onCameraMove();
+                }
+                return false;
+            }
+        });
+        
+        // Offline mode only draws tiles that are already cached
+        if (settingsRepository != null && settingsListener == null) {
+            settingsListener = settings -> {
+                if (mapView != null) {
+                    mapView.setUseDataConnection(!settings.isOfflineMode());
+                }
+            };
+            settingsRepository.addListener(settingsListener);
+        }
         
         Log.d(TAG, "osmdroid map setup complete");
     }
@@ -166,15 +345,9 @@ public class OsmdroidProvider implements MapProvider {
         marker.setAnchor(Marker.ANCHOR_CENTER, Marker.ANCHOR_BOTTOM);
         
         // Set a coffee icon if available
-        try {
-            int coffeeIconId = context.getResources().getIdentifier(
-                    "map_marker_coffee", "drawable", context.getPackageName());
-            if (coffeeIconId != 0) {
-                Drawable icon = ContextCompat.getDrawable(context, coffeeIconId);
-                marker.setIcon(icon);
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Error setting marker icon: " + e.getMessage());
+        Drawable icon = getMarkerIcon();
+        if (icon != null) {
+            marker.setIcon(icon);
         }
         
         // Set up click listeners
@@ -218,11 +391,44 @@ public class OsmdroidProvider implements MapProvider {
         // Refresh the map
         mapView.invalidate();
         
-        Log.d(TAG, "Added marker: " + title + " with ID: " + markerId);
+        // Called once per marker, so skip even the argument boxing when tracing is compiled out
+        if (Tracer.ENABLED) {
+            Tracer.event("marker.add", markersById.size(), title);
+            Tracer.d(TAG, "Added marker: %s with ID: %s", title, markerId);
+        }
         
         return markerId;
     }
     
+    /**
+     * Resolve the coffee marker icon once instead of for every marker.
+     */
+    private Drawable getMarkerIcon() {
+        if (markerIcon == null) {
+            try {
+                int coffeeIconId = context.getResources().getIdentifier(
+                        "map_marker_coffee", "drawable", context.getPackageName());
+                if (coffeeIconId != 0) {
+                    markerIcon = ContextCompat.getDrawable(context, coffeeIconId);
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error loading marker icon: " + e.getMessage());
+            }
+        }
+        return markerIcon;
+    }
+    
+    @Override
+    public void clearMarkers() {
+        if (mapView != null) {
+            mapView.getOverlays().removeAll(markersById.values());
+            mapView.invalidate();
+        }
+        
+        markersById.clear();
+        markerIds.clear();
+    }
+    
     @Override
     public void moveCamera(double latitude, double longitude, float zoomLevel) {
         if (mapView == null) {
@@ -235,6 +441,17 @@ public class OsmdroidProvider implements MapProvider {
         mapController.setCenter(new GeoPoint(latitude, longitude));
     }
     
+    @Override
+    public MapCameraPosition getCameraPosition() {
+        if (mapView == null) {
+            return null;
+        }
+        
+        IGeoPoint center = mapView.getMapCenter();
+        return new MapCameraPosition(center.getLatitude(), center.getLongitude(),
+                (float) mapView.getZoomLevelDouble());
+    }
+    
     @Override
     public void setOnMapReadyListener(OnMapReadyListener listener) {
         this.mapReadyListener = listener;
@@ -245,189 +462,506 @@ public class OsmdroidProvider implements MapProvider {
         }
     }
     
+    @Override
+    public void setOnCameraMoveListener(OnCameraMoveListener listener) {
+        this.cameraMoveListener = listener;
+    }
+    
+    @Override
+    public void getRenderLoad(MapRenderLoad load) {
+        if (mapView == null) {
+            load.set(0, 0, 0, MapRenderLoad.UNKNOWN);
+            return;
+        }
+        
+        // osmdroid does not expose its download queue; tiles missing from the last draw are still loading
+        int pendingTiles = mapView.getOverlayManager().getTilesOverlay().getTileStates().getNotFound();
+        load.set(markersById.size(), mapView.getOverlays().size(), mapView.getZoomLevelDouble(), pendingTiles);
+    }
+    
     @Override
     public void searchNearbyPlaces(String query, double latitude, double longitude, double radius,
                                  OnPlacesFoundListener listener) {
+        // Collect the streamed batches and deliver them in one callback
+        List<PlaceInfo> places = new ArrayList<>();
+        streamNearbyPlaces(query, latitude, longitude, radius, new OnPlacesStreamListener() {
+            @Override
+            public void onPlacesBatch(PlaceInfo[] batch) {
+                places.addAll(Arrays.asList(batch));
+            }
+            
+            @Override
+            public void onSearchComplete(int totalPlaces) {
+                if (listener == null) return;
+                
+                if (places.isEmpty()) {
+                    listener.onPlacesError("No places found matching '" + query + "'");
+                } else {
+                    listener.onPlacesFound(places.toArray(new PlaceInfo[0]));
+                }
+            }
+            
+            @Override
+            public void onSearchError(String errorMessage) {
+                if (listener != null) {
+                    listener.onPlacesError(errorMessage);
+                }
+            }
+        });
+    }
+    
+    @Override
+    public List<PlaceInfo> findCachedPlaces(String text, double latitude, double longitude, int limit) {
+        if (!initialized) {
+            return new ArrayList<>();
+        }
+        return localPlaceStore.searchByName(text, latitude, longitude, Double.MAX_VALUE, limit);
+    }
+    
+    @Override
+    public SearchHandle streamNearbyPlaces(String query, double latitude, double longitude, double radius,
+                                           OnPlacesStreamListener listener) {
+        if (!initialized) {
+            SearchTask task = new SearchTask(listener);
+            task.fail("osmdroid provider not initialized");
+            return task;
+        }
+        
+        // Places seen before show up at once; Overpass fills in the rest
+        SearchTrace trace = SearchMetrics.getInstance().startTrace(query, radius);
+        return federatedSearch.search(query, latitude, longitude, radius, trace, listener);
+    }
+    
+    /**
+     * Bring the local place store up to date for a search without showing
+     * anything, e.g. to warm the cache in the background. Works without a map view.
+     *
+     * @param query The search query
+     * @param latitude The latitude of the search center
+     * @param longitude The longitude of the search center
+     * @param radius The search radius (in meters)
+     * @return A future completed once the store is up to date; cancelling it stops the download
+     */
+    public CompletableFuture<Void> refreshPlaces(String query, double latitude, double longitude, double radius) {
+        CompletableFuture<Void> refreshed = new CompletableFuture<>();
         if (!initialized) {
-            if (listener != null) {
-                listener.onPlacesError("osmdroid provider not initialized");
+            refreshed.completeExceptionally(new IllegalStateException("osmdroid provider not initialized"));
+            return refreshed;
+        }
+        
+        // Synced areas are only known once the store is loaded
+        SearchTrace trace = SearchMetrics.getInstance().startTrace(query, radius);
+        AtomicReference<SearchHandle> search = new AtomicReference<>();
+        // Cancelling the future stops the download, whether it already started or not
+        refreshed.whenComplete((ignored, error) -> {
+            if (!refreshed.isCancelled()) return;
+            
+            trace.finish("cancelled", 0);
+            SearchHandle handle = search.get();
+            if (handle != null) {
+                handle.cancel();
             }
-            return;
+        });
+        localPlaceStore.whenLoaded().thenRun(() -> {
+            if (refreshed.isDone()) return;
+            
+            search.set(overpassSource.search(query, latitude, longitude, radius,
+                    trace, AppExecutors.compute(), new OnPlacesStreamListener() {
+                        @Override
+                        public void onPlacesBatch(PlaceInfo[] places) {
+                            // Stored by the source; nothing to show
+                        }
+                        
+                        @Override
+                        public void onSearchComplete(int totalPlaces) {
+                            trace.finish("refreshed", totalPlaces);
+                            refreshed.complete(null);
+                        }
+                        
+                        @Override
+                        public void onSearchError(String errorMessage) {
+                            trace.finish("failed", 0);
+                            refreshed.completeExceptionally(new IOException(errorMessage));
+                        }
+                    }));
+            // Cancelled while the search started, when there was no handle to cancel yet
+            if (refreshed.isCancelled()) {
+                search.get().cancel();
+            }
+        });
+        return refreshed;
+    }
+    
+    /**
+     * Places previously returned by Overpass, served from the device.
+     */
+    private class LocalStoreSource implements PlaceSource {
+        @Override
+        public String getName() {
+            return "local";
         }
         
-        // We'll use Overpass API to search for POIs
-        searchWithOverpass(query, latitude, longitude, radius, listener);
+        @Override
+        public SearchHandle search(String query, double latitude, double longitude, double radius,
+                                   SearchTrace trace, Executor callbackExecutor, OnPlacesStreamListener listener) {
+            SearchTask task = new SearchTask(listener, callbackExecutor);
+            AppExecutors.compute().execute(() -> {
+                if (task.isCancelled()) return;
+                
+                // Free-text queries are matched by name, keyword queries by their tag
+                long section = Tracer.beginSection("local.lookup");
+                long lookupStart = System.nanoTime();
+                String osmTag = OverpassQueryBuilder.tagForQuery(query);
+                PlaceInfo[] places;
+                try {
+                    if ("name".equals(osmTag)) {
+                        places = localPlaceStore.searchByName(query, latitude, longitude, radius, MAX_RESULTS)
+                                .toArray(new PlaceInfo[0]);
+                    } else {
+                        PlaceRanker ranker = new PlaceRanker(latitude, longitude, MAX_RESULTS, placeScorer);
+                        for (PlaceInfo place : localPlaceStore.findNearby(osmTag, latitude, longitude, radius)) {
+                            ranker.offer(place);
+                        }
+                        places = ranker.toSortedArray();
+                    }
+                } finally {
+                    Tracer.endSection("local.lookup", section);
+                }
+                trace.recordSince(SearchMetrics.Stage.LOCAL_LOOKUP, lookupStart);
+                Tracer.event("local.found", places.length, query);
+                trace.add(places.length > 0 ? SearchMetrics.Counter.LOCAL_HIT : SearchMetrics.Counter.LOCAL_MISS, 1);
+                
+                task.deliverBatch(places);
+                task.complete();
+            });
+            return task;
+        }
     }
     
-    private void searchWithOverpass(String query, double latitude, double longitude, double radius,
-                                 OnPlacesFoundListener listener) {
-        try {
-            // Convert query to appropriate OSM tags
-            String osmTag = getOsmTagForQuery(query);
+    /**
+     * Live results from the Overpass API, recorded in the local place store
+     * and streamed as {@link ProvisionalResults} while they download.
+     * Keyword searches inside an area that was fully downloaded before only
+     * fetch what changed since then, or nothing if the area is recent.
+     */
+    private class OverpassSource implements PlaceSource {
+        @Override
+        public String getName() {
+            return "overpass";
+        }
+        
+        @Override
+        public SearchHandle search(String query, double latitude, double longitude, double radius,
+                                   SearchTrace trace, Executor callbackExecutor, OnPlacesStreamListener listener) {
+            SearchTask task = new SearchTask(listener, callbackExecutor);
+            if (settingsRepository.getSnapshot().isOfflineMode()) {
+                // The local store source answers from what is already on the device
+                task.complete();
+                return task;
+            }
+            String osmTag = OverpassQueryBuilder.tagForQuery(query);
             
-            // Build Overpass query
-            String overpassQuery = String.format(
-                    "[out:json];node[\"%s\"](around:%f,%f,%f);out;",
-                    osmTag, radius, latitude, longitude);
+            // Free-text results depend on the text, so only keyword searches are synced by area
+            boolean syncable = !"name".equals(osmTag);
+            LocalPlaceStore.SyncedArea synced = syncable
+                    ? localPlaceStore.findSyncedArea(osmTag, latitude, longitude, radius)
+                    : null;
+            if (synced != null && synced.getAgeMs() < SYNC_FRESH_MS) {
+                // The local store source already answers this search
+                Tracer.event("overpass.skip_fresh", synced.getAgeMs(), osmTag);
+                Tracer.d(TAG, "Area for %s synced %ds ago, skipping Overpass", osmTag, synced.getAgeMs() / 1000);
+                trace.add(SearchMetrics.Counter.OVERPASS_SKIPPED_FRESH, 1);
+                task.complete();
+                return task;
+            }
+            trace.add(synced != null ? SearchMetrics.Counter.OVERPASS_DIFF : SearchMetrics.Counter.OVERPASS_FULL, 1);
             
-            // Encode the query
-            String encodedQuery = URLEncoder.encode(overpassQuery, "UTF-8");
-            String url = OVERPASS_API_URL + "?data=" + encodedQuery;
+            Request request;
+            try {
+                String overpassQuery = synced != null
+                        ? OverpassQueryBuilder.forTagChanges(osmTag, synced.getArea().getLatitude(),
+                                synced.getArea().getLongitude(), synced.getArea().getRadiusMeters(),
+                                synced.getOsmTimestamp())
+                        : buildOverpassQuery(query, osmTag, latitude, longitude, radius);
+                request = buildOverpassRequest(overpassQuery, trace);
+            } catch (Exception e) {
+                Log.e(TAG, "Error building Overpass request: " + e.getMessage(), e);
+                task.fail("Error preparing search request");
+                return task;
+            }
             
-            // Build the request
-            Request request = new Request.Builder()
-                    .url(url)
-                    .header("User-Agent", context.getPackageName())
-                    .build();
+            Call call = httpClient.newCall(request);
+            task.setCancelAction(call::cancel);
             
-            // Execute the request
-            httpClient.newCall(request).enqueue(new Callback() {
+            int httpSection = Tracer.beginAsyncSection("overpass.http");
+            call.enqueue(new Callback() {
                 @Override
                 public void onFailure(Call call, IOException e) {
+                    Tracer.endAsyncSection("overpass.http", httpSection);
+                    if (task.isCancelled()) return;
                     Log.e(TAG, "Overpass API request failed: " + e.getMessage(), e);
-                    
-                    if (listener != null) {
-                        listener.onPlacesError("Network error while searching for places");
-                    }
+                    task.fail("Network error while searching for places");
                 }
                 
+                // Parsing is interleaved with the download, so provisional rankings render
+                // before the whole body has arrived
                 @Override
-                public void onResponse(Call call, Response response) throws IOException {
-                    if (!response.isSuccessful()) {
-                        Log.e(TAG, "Overpass API error: " + response.code());
-                        
-                        if (listener != null) {
-                            listener.onPlacesError("Error from Overpass API: " + response.code());
-                        }
-                        return;
-                    }
-                    
-                    try {
-                        String responseBody = response.body().string();
-                        List<PlaceInfo> places = parseOverpassResponse(responseBody);
-                        
-                        if (places.isEmpty()) {
-                            if (listener != null) {
-                                listener.onPlacesError("No places found matching '" + query + "'");
-                            }
+                public void onResponse(Call call, Response response) {
+                    long section = Tracer.beginSection("overpass.response");
+                    try (ResponseBody body = response.body()) {
+                        if (!response.isSuccessful()) {
+                            Log.e(TAG, "Overpass API error: " + response.code());
+                            task.fail("Error from Overpass API: " + response.code());
                             return;
                         }
                         
-                        // Convert to array
-                        PlaceInfo[] placeArray = places.toArray(new PlaceInfo[0]);
-                        
-                        if (listener != null) {
-                            listener.onPlacesFound(placeArray);
+                        PlaceInfo[] places;
+                        ProvisionalResults provisional = new ProvisionalResults(task);
+                        if (synced != null) {
+                            places = applyChanges(body, synced, osmTag, latitude, longitude, radius, trace, task);
+                        } else if (syncable) {
+                            places = syncArea(body, osmTag, latitude, longitude, radius, trace, task,
+                                    provisional);
+                        } else {
+                            places = rankResults(body, latitude, longitude, trace, task, provisional);
+                            localPlaceStore.putAll(osmTag, places);
                         }
+                        if (places == null) return;
+                        
+                        task.deliverBatch(provisional.notYetDelivered(places));
+                        task.complete();
                     } catch (Exception e) {
+                        if (task.isCancelled()) return;
                         Log.e(TAG, "Error parsing Overpass response: " + e.getMessage(), e);
-                        
-                        if (listener != null) {
-                            listener.onPlacesError("Error processing search results");
-                        }
+                        task.fail("Error processing search results");
+                    } finally {
+                        Tracer.endSection("overpass.response", section);
+                        Tracer.endAsyncSection("overpass.http", httpSection);
                     }
                 }
             });
-        } catch (Exception e) {
-            Log.e(TAG, "Error building Overpass request: " + e.getMessage(), e);
             
-            if (listener != null) {
-                listener.onPlacesError("Error preparing search request");
+            return task;
+        }
+        
+        /**
+         * Keep only the top places of a response. Nodes that cannot make the cut
+         * by position are skipped without reading their tags.
+         * @return The places to show, or null if the search was cancelled
+         */
+        private PlaceInfo[] rankResults(ResponseBody body, double latitude, double longitude,
+                                        SearchTrace trace, SearchTask task, ProvisionalResults provisional)
+                throws IOException {
+            PlaceRanker ranker = new PlaceRanker(latitude, longitude, MAX_RESULTS, placeScorer);
+            long parseStart = System.nanoTime();
+            OverpassParser.parse(body.charStream(), ranker::couldAccept, place -> {
+                if (task.isCancelled()) return false;
+                
+                ranker.offer(place);
+                provisional.onOffered(ranker);
+                return true;
+            });
+            trace.recordSince(SearchMetrics.Stage.PARSE, parseStart);
+            if (task.isCancelled()) return null;
+            
+            long rankStart = System.nanoTime();
+            PlaceInfo[] places = ranker.toSortedArray();
+            for (PlaceInfo place : places) {
+                place.createSnippet();
             }
+            trace.recordSince(SearchMetrics.Stage.RANK, rankStart);
+            Tracer.event("overpass.ranked", places.length);
+            Tracer.d(TAG, "Kept %d of %d parsed places", places.length, ranker.getOfferedCount());
+            return places;
         }
-    }
-    
-    private String getOsmTagForQuery(String query) {
-        // Map common search queries to OSM tags
-        query = query.toLowerCase().trim();
         
-        if (query.contains("coffee") || query.contains("cafe")) {
-            return "amenity=cafe";
-        } else if (query.contains("restaurant")) {
-            return "amenity=restaurant";
-        } else if (query.contains("bar")) {
-            return "amenity=bar";
-        } else if (query.contains("hotel")) {
-            return "tourism=hotel";
-        } else if (query.contains("park")) {
-            return "leisure=park";
-        } else if (query.contains("shop") || query.contains("store")) {
-            return "shop";
-        } else if (query.contains("gas") || query.contains("fuel")) {
-            return "amenity=fuel";
-        } else if (query.contains("school")) {
-            return "amenity=school";
-        } else if (query.contains("hospital")) {
-            return "amenity=hospital";
-        } else if (query.contains("bank")) {
-            return "amenity=bank";
+        /**
+         * Store every place of a full download and record the area as synced.
+         * @return The places to show, or null if the search was cancelled
+         */
+        private PlaceInfo[] syncArea(ResponseBody body, String osmTag, double latitude, double longitude,
+                                     double radius, SearchTrace trace, SearchTask task,
+                                     ProvisionalResults provisional) throws IOException {
+            List<PlaceInfo> all = new ArrayList<>();
+            String[] timestamp = new String[1];
+            PlaceRanker ranker = new PlaceRanker(latitude, longitude, MAX_RESULTS, placeScorer);
+            long parseStart = System.nanoTime();
+            OverpassParser.parse(body.charStream(), new OverpassParser.PlaceCallback() {
+                @Override
+                public boolean onPlace(PlaceInfo place) {
+                    if (task.isCancelled()) return false;
+                    
+                    place.createSnippet();
+                    all.add(place);
+                    ranker.offer(place);
+                    provisional.onOffered(ranker);
+                    return true;
+                }
+                
+                @Override
+                public void onDataTimestamp(String osmTimestamp) {
+                    timestamp[0] = osmTimestamp;
+                }
+            });
+            trace.recordSince(SearchMetrics.Stage.PARSE, parseStart);
+            if (task.isCancelled()) return null;
+            
+            localPlaceStore.putAll(osmTag, all.toArray(new PlaceInfo[0]));
+            if (timestamp[0] != null) {
+                localPlaceStore.recordSync(osmTag, new SearchArea(latitude, longitude, radius), timestamp[0]);
+            }
+            Tracer.event("overpass.synced", all.size(), osmTag);
+            Tracer.d(TAG, "Synced %d places for %s at %s", all.size(), osmTag, timestamp[0]);
+            long rankStart = System.nanoTime();
+            PlaceInfo[] places = ranker.toSortedArray();
+            trace.recordSince(SearchMetrics.Stage.RANK, rankStart);
+            return places;
         }
         
-        // Default to amenity for generic searches
-        return "name";
+        /**
+         * Apply a diff response to a synced area, then answer the search from the store.
+         * @return The places to show, or null if the search was cancelled
+         */
+        private PlaceInfo[] applyChanges(ResponseBody body, LocalPlaceStore.SyncedArea synced, String osmTag,
+                                         double latitude, double longitude, double radius,
+                                         SearchTrace trace, SearchTask task) throws IOException {
+            List<PlaceInfo> changed = new ArrayList<>();
+            Set<String> liveIds = new HashSet<>();
+            String[] timestamp = new String[1];
+            long parseStart = System.nanoTime();
+            OverpassParser.parse(body.charStream(), new OverpassParser.PlaceCallback() {
+                @Override
+                public boolean onPlace(PlaceInfo place) {
+                    if (task.isCancelled()) return false;
+                    
+                    place.createSnippet();
+                    changed.add(place);
+                    return true;
+                }
+                
+                @Override
+                public void onDataTimestamp(String osmTimestamp) {
+                    timestamp[0] = osmTimestamp;
+                }
+                
+                @Override
+                public void onNodeId(String id) {
+                    liveIds.add(id);
+                }
+            });
+            trace.recordSince(SearchMetrics.Stage.PARSE, parseStart);
+            if (task.isCancelled()) return null;
+            
+            // Without a timestamp the diff cannot be chained; keep the old sync point
+            String osmTimestamp = timestamp[0] != null ? timestamp[0] : synced.getOsmTimestamp();
+            int removed = localPlaceStore.applyDelta(synced, changed.toArray(new PlaceInfo[0]), liveIds,
+                    osmTimestamp);
+            Tracer.event("overpass.diff", changed.size(), osmTag);
+            Tracer.d(TAG, "Refreshed %s area: %d changed, %d removed", osmTag, changed.size(), removed);
+            
+            long rankStart = System.nanoTime();
+            PlaceRanker ranker = new PlaceRanker(latitude, longitude, MAX_RESULTS, placeScorer);
+            for (PlaceInfo place : localPlaceStore.findNearby(osmTag, latitude, longitude, radius)) {
+                ranker.offer(place);
+            }
+            PlaceInfo[] places = ranker.toSortedArray();
+            trace.recordSince(SearchMetrics.Stage.RANK, rankStart);
+            return places;
+        }
     }
     
-    private List<PlaceInfo> parseOverpassResponse(String response) throws JSONException {
-        List<PlaceInfo> places = new ArrayList<>();
+    /**
+     * Streams provisional rankings of a response while it is parsed, so the
+     * nearest places render before the whole body has arrived: the ranking
+     * after the first {@link #FIRST_BATCH_SIZE} parsed places, then after
+     * every {@link #BATCH_SIZE} more. Batches only add places to the map, so
+     * a provisional place that later drops out of the ranking stays shown;
+     * at most {@link #MAX_RESULTS} places are delivered provisionally.
+     */
+    private static final class ProvisionalResults {
+        private final SearchTask task;
+        private final Set<String> deliveredIds = new HashSet<>();
+        private int nextSnapshot = FIRST_BATCH_SIZE;
         
-        JSONObject root = new JSONObject(response);
-        JSONArray elements = root.getJSONArray("elements");
+        ProvisionalResults(SearchTask task) {
+            this.task = task;
+        }
         
-        for (int i = 0; i < elements.length(); i++) {
-            JSONObject element = elements.getJSONObject(i);
+        /**
+         * Deliver the current ranking if a snapshot is due.
+         * @param ranker The ranker a place was just offered to
+         */
+        void onOffered(PlaceRanker ranker) {
+            if (ranker.getOfferedCount() < nextSnapshot || deliveredIds.size() >= MAX_RESULTS) return;
             
-            // Skip non-node elements (we only want points, not ways or relations)
-            if (!element.getString("type").equals("node")) {
-                continue;
+            nextSnapshot = ranker.getOfferedCount() + BATCH_SIZE;
+            List<PlaceInfo> batch = new ArrayList<>();
+            for (PlaceInfo place : ranker.toSortedArray()) {
+                if (deliveredIds.size() >= MAX_RESULTS) break;
+                if (deliveredIds.add(place.getId())) {
+                    place.createSnippet();
+                    batch.add(place);
+                }
             }
+            Tracer.event("overpass.provisional", batch.size());
+            task.deliverBatch(batch.toArray(new PlaceInfo[0]));
+        }
+        
+        /**
+         * @param places The final ranking
+         * @return The places of the final ranking that no snapshot delivered
+         */
+        PlaceInfo[] notYetDelivered(PlaceInfo[] places) {
+            if (deliveredIds.isEmpty()) return places;
             
-            JSONObject tags = element.optJSONObject("tags");
-            if (tags == null) continue;
-            
-            String id = element.getString("id");
-            double lat = element.getDouble("lat");
-            double lon = element.getDouble("lon");
-            
-            // Extract name
-            String name = tags.optString("name", "Unnamed Place");
-            
-            // Extract address components
-            String street = tags.optString("addr:street", "");
-            String houseNumber = tags.optString("addr:housenumber", "");
-            String city = tags.optString("addr:city", "");
-            String address = "";
-            
-            if (!street.isEmpty()) {
-                if (!houseNumber.isEmpty()) {
-                    address = houseNumber + " " + street;
-                } else {
-                    address = street;
-                }
-                
-                if (!city.isEmpty()) {
-                    address += ", " + city;
+            List<PlaceInfo> remaining = new ArrayList<>(places.length);
+            for (PlaceInfo place : places) {
+                if (!deliveredIds.contains(place.getId())) {
+                    remaining.add(place);
                 }
             }
-            
-            // Extract phone
-            String phone = tags.optString("phone", "");
-            
-            // Create place info
-            PlaceInfo place = new PlaceInfo(
-                    id,
-                    name,
-                    lat,
-                    lon,
-                    address,
-                    phone,
-                    null, // OSM doesn't have ratings
-                    false
-            );
-            
-            places.add(place);
+            return remaining.toArray(new PlaceInfo[0]);
         }
+    }
+    
+    /**
+     * Set how places are ranked when more are found than are shown.
+     * Applies to searches started afterwards.
+     * @param scorer The scorer, e.g. {@link PlaceRanker#BY_DISTANCE}
+     */
+    public void setPlaceScorer(PlaceRanker.Scorer scorer) {
+        this.placeScorer = scorer;
+    }
+    
+    /**
+     * Build the Overpass QL query for a search around a location.
+     */
+    private String buildOverpassQuery(String query, String osmTag, double latitude, double longitude,
+                                      double radius) {
+        // Free text is filtered by name on the server instead of fetching every named node
+        String overpassQuery = "name".equals(osmTag)
+                ? OverpassQueryBuilder.forName(query, latitude, longitude, radius)
+                : null;
+        if (overpassQuery == null) {
+            overpassQuery = OverpassQueryBuilder.forTag(osmTag, latitude, longitude, radius);
+        }
+        return overpassQuery;
+    }
+    
+    /**
+     * Build the Overpass API request for a query, tagged with the trace its HTTP phases are recorded on.
+     */
+    private Request buildOverpassRequest(String overpassQuery, SearchTrace trace) throws IOException {
+        // Encode the query
+        String encodedQuery = URLEncoder.encode(overpassQuery, "UTF-8");
+        String url = OVERPASS_API_URL + "?data=" + encodedQuery;
         
-        return places;
+        // Build the request
+        return new Request.Builder()
+                .url(url)
+                .header("User-Agent", context.getPackageName())
+                .tag(SearchTrace.class, trace)
+                .build();
     }
     
     @Override
@@ -447,6 +981,7 @@ public class OsmdroidProvider implements MapProvider {
             return;
         }
         
+        myLocationWanted = hasPermission;
         if (hasPermission) {
             myLocationOverlay.enableMyLocation();
         } else {
@@ -454,6 +989,45 @@ public class OsmdroidProvider implements MapProvider {
         }
     }
     
+    @Override
+    public void prewarmConnections() {
+        Runnable warmUp = () -> {
+            // Resolve the tile host so the first tile downloads skip DNS
+            try {
+                InetAddress.getAllByName(TILE_HOST);
+            } catch (IOException e) {
+                Log.d(TAG, "Tile host pre-resolve failed: " + e.getMessage());
+            }
+            
+            if (httpClient == null) return;
+            
+            // A cheap status request leaves a pooled TLS connection for the first search
+            Request request = new Request.Builder()
+                    .url(OVERPASS_STATUS_URL)
+                    .header("User-Agent", context.getPackageName())
+                    .build();
+            
+            httpClient.newCall(request).enqueue(new Callback() {
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    Log.d(TAG, "Overpass pre-warm failed: " + e.getMessage());
+                }
+                
+                @Override
+                public void onResponse(Call call, Response response) {
+                    response.close();
+                    Log.d(TAG, "Overpass connection pre-warmed");
+                }
+            });
+        };
+        
+        if (initFuture != null) {
+            initFuture.thenRunAsync(warmUp, AppExecutors.io());
+        } else {
+            AppExecutors.io().execute(warmUp);
+        }
+    }
+    
     @Override
     public void onDestroy() {
         // Clean up resources
@@ -465,6 +1039,11 @@ public class OsmdroidProvider implements MapProvider {
             myLocationOverlay.disableMyLocation();
         }
         
+        if (settingsListener != null) {
+            settingsRepository.removeListener(settingsListener);
+            settingsListener = null;
+        }
+        
         markersById.clear();
         markerIds.clear();
         mapReadyListener = null;
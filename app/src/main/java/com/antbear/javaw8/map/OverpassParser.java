@@ -0,0 +1,233 @@
+package com.antbear.javaw8.map;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Streaming parser for Overpass API JSON responses.
+ * Reads elements one at a time from the response stream, so places can be
+ * handed out while the rest of the body is still downloading, and stops
+ * reading as soon as the callback asks it to. An optional position filter
+ * lets elements be skipped from their coordinates alone, without reading
+ * their tags or allocating a place.
+ */
+public final class OverpassParser {
+    
+    /**
+     * Receives each parsed place.
+     */
+    public interface PlaceCallback {
+        /**
+         * @param place The parsed place
+         * @return true to continue parsing, false to stop reading the response
+         */
+        boolean onPlace(PlaceInfo place);
+        
+        /**
+         * Called with the time of the OSM data the response reflects
+         * ({@code osm3s.timestamp_osm_base}), usable as a {@code newer:} filter later.
+         * @param timestamp The ISO 8601 timestamp
+         */
+        default void onDataTimestamp(String timestamp) {
+        }
+        
+        /**
+         * Called with the ID of every node in the response, including nodes
+         * output without tags ({@code out ids;}) and nodes skipped by position.
+         * @param id The node ID
+         */
+        default void onNodeId(String id) {
+        }
+    }
+    
+    /**
+     * Decides from its position whether an element is worth reading.
+     */
+    public interface PositionFilter {
+        /**
+         * @return true to read the element, false to skip it
+         */
+        boolean accept(double latitude, double longitude);
+    }
+    
+    private OverpassParser() {
+        // Static helpers only
+    }
+    
+    /**
+     * Parse an Overpass response, invoking the callback for every tagged node.
+     * 
+     * @param reader The response body
+     * @param callback Receives each place in response order
+     * @throws IOException If the stream cannot be read or is not valid JSON
+     */
+    public static void parse(Reader reader, PlaceCallback callback) throws IOException {
+        parse(reader, null, callback);
+    }
+    
+    /**
+     * Parse an Overpass response, invoking the callback for every tagged node
+     * whose position passes the filter.
+     * 
+     * @param reader The response body
+     * @param filter Skips elements by position (can be null to read every element)
+     * @param callback Receives each accepted place in response order
+     * @throws IOException If the stream cannot be read or is not valid JSON
+     */
+    public static void parse(Reader reader, PositionFilter filter, PlaceCallback callback) throws IOException {
+        JsonReader json = new JsonReader(reader);
+        json.beginObject();
+        while (json.hasNext()) {
+            String name = json.nextName();
+            if ("osm3s".equals(name)) {
+                readMetadata(json, callback);
+                continue;
+            }
+            if (!"elements".equals(name)) {
+                json.skipValue();
+                continue;
+            }
+            
+            json.beginArray();
+            while (json.hasNext()) {
+                PlaceInfo place = readElement(json, filter, callback);
+                if (place != null && !callback.onPlace(place)) {
+                    return;
+                }
+            }
+            json.endArray();
+        }
+        json.endObject();
+    }
+    
+    private static void readMetadata(JsonReader json, PlaceCallback callback) throws IOException {
+        json.beginObject();
+        while (json.hasNext()) {
+            if ("timestamp_osm_base".equals(json.nextName()) && json.peek() == JsonToken.STRING) {
+                callback.onDataTimestamp(json.nextString());
+            } else {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+    }
+    
+    private static PlaceInfo readElement(JsonReader json, PositionFilter filter, PlaceCallback callback)
+            throws IOException {
+        String type = null;
+        String id = null;
+        double lat = Double.NaN;
+        double lon = Double.NaN;
+        boolean hasTags = false;
+        boolean rejected = false;
+        String name = "Unnamed Place";
+        String street = "";
+        String houseNumber = "";
+        String city = "";
+        String phone = "";
+        
+        json.beginObject();
+        while (json.hasNext()) {
+            switch (json.nextName()) {
+                case "type":
+                    type = json.nextString();
+                    break;
+                case "id":
+                    id = json.nextString();
+                    break;
+                case "lat":
+                    lat = json.nextDouble();
+                    break;
+                case "lon":
+                    lon = json.nextDouble();
+                    break;
+                case "tags":
+                    hasTags = true;
+                    // Overpass writes coordinates before tags, so rejected nodes skip tag parsing
+                    if (filter != null && !Double.isNaN(lat) && !Double.isNaN(lon)
+                            && !filter.accept(lat, lon)) {
+                        json.skipValue();
+                        rejected = true;
+                        break;
+                    }
+                    json.beginObject();
+                    while (json.hasNext()) {
+                        String key = json.nextName();
+                        if (json.peek() != JsonToken.STRING) {
+                            json.skipValue();
+                            continue;
+                        }
+                        switch (key) {
+                            case "name":
+                                name = json.nextString();
+                                break;
+                            case "addr:street":
+                                street = json.nextString();
+                                break;
+                            case "addr:housenumber":
+                                houseNumber = json.nextString();
+                                break;
+                            case "addr:city":
+                                city = json.nextString();
+                                break;
+                            case "phone":
+                                phone = json.nextString();
+                                break;
+                            default:
+                                json.skipValue();
+                                break;
+                        }
+                    }
+                    json.endObject();
+                    break;
+                default:
+                    json.skipValue();
+                    break;
+            }
+        }
+        json.endObject();
+        
+        if ("node".equals(type) && id != null) {
+            callback.onNodeId(id);
+        }
+        
+        // Skip non-node elements (we only want points, not ways or relations)
+        if (!"node".equals(type) || !hasTags || id == null || Double.isNaN(lat) || Double.isNaN(lon)) {
+            return null;
+        }
+        if (rejected || (filter != null && !filter.accept(lat, lon))) {
+            return null;
+        }
+        
+        return new PlaceInfo(
+                id,
+                name,
+                lat,
+                lon,
+                formatAddress(street, houseNumber, city),
+                phone,
+                null, // OSM doesn't have ratings
+                false
+        );
+    }
+    
+    /**
+     * Build a display address from OSM address tags.
+     * 
+     * @return The formatted address, or an empty string if there is no street
+     */
+    static String formatAddress(String street, String houseNumber, String city) {
+        if (street.isEmpty()) {
+            return "";
+        }
+        
+        String address = houseNumber.isEmpty() ? street : houseNumber + " " + street;
+        if (!city.isEmpty()) {
+            address += ", " + city;
+        }
+        return address;
+    }
+}
@@ -0,0 +1,171 @@
+package com.antbear.javaw8.map;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Builds Overpass QL queries for place searches.
+ * Keyword searches select nodes by tag. Free-text searches are compiled into
+ * case- and diacritic-insensitive regex filters on the name and brand tags,
+ * restricted to a whitelist of POI categories, so the server does the
+ * filtering and only matching places cross the network.
+ */
+final class OverpassQueryBuilder {
+    private static final String OUTPUT_SETTINGS = "[out:json][timeout:25];";
+    
+    // Keys that mark a node as a place someone would search for
+    private static final String CATEGORY_KEYS = "^(amenity|shop|tourism|leisure|craft|office)$";
+    
+    // Accented forms matched for each base letter
+    private static final String[][] DIACRITIC_VARIANTS = {
+            {"a", "aàáâãäåā"},
+            {"c", "cçć"},
+            {"e", "eèéêëē"},
+            {"i", "iìíîïī"},
+            {"n", "nñń"},
+            {"o", "oòóôõöøō"},
+            {"s", "sšś"},
+            {"u", "uùúûüū"},
+            {"y", "yýÿ"},
+            {"z", "zžź"},
+    };
+    
+    private OverpassQueryBuilder() {
+        // Static helpers only
+    }
+    
+    /**
+     * Map a search query to the OSM tag its places carry.
+     * @param query The search query, e.g. "coffee"
+     * @return A key ("shop") or key=value pair ("amenity=cafe"), or "name" for a free-text search
+     */
+    static String tagForQuery(String query) {
+        query = query.toLowerCase().trim();
+        
+        if (query.contains("coffee") || query.contains("cafe")) {
+            return "amenity=cafe";
+        } else if (query.contains("restaurant")) {
+            return "amenity=restaurant";
+        } else if (query.contains("bar")) {
+            return "amenity=bar";
+        } else if (query.contains("hotel")) {
+            return "tourism=hotel";
+        } else if (query.contains("park")) {
+            return "leisure=park";
+        } else if (query.contains("shop") || query.contains("store")) {
+            return "shop";
+        } else if (query.contains("gas") || query.contains("fuel")) {
+            return "amenity=fuel";
+        } else if (query.contains("school")) {
+            return "amenity=school";
+        } else if (query.contains("hospital")) {
+            return "amenity=hospital";
+        } else if (query.contains("bank")) {
+            return "amenity=bank";
+        }
+        
+        // Anything else is a free-text search by name
+        return "name";
+    }
+    
+    /**
+     * Build a query for nodes with a tag around a location.
+     * @param osmTag A key ("shop") or key=value pair ("amenity=cafe")
+     * @return The Overpass QL query
+     */
+    static String forTag(String osmTag, double latitude, double longitude, double radius) {
+        return OUTPUT_SETTINGS + "node" + tagFilter(osmTag) + around(latitude, longitude, radius) + ";out;";
+    }
+    
+    /**
+     * Build a query for what changed in a tag query's results since a point in time.
+     * The response holds the nodes created or modified since then, with tags,
+     * followed by the IDs of all nodes that currently match. Stored nodes
+     * missing from the ID list were deleted or no longer match.
+     * @param osmTag A key ("shop") or key=value pair ("amenity=cafe")
+     * @param since OSM data timestamp of the last sync (ISO 8601)
+     * @return The Overpass QL query
+     */
+    static String forTagChanges(String osmTag, double latitude, double longitude, double radius,
+                                String since) {
+        String nodes = "node" + tagFilter(osmTag) + around(latitude, longitude, radius);
+        return OUTPUT_SETTINGS
+                + nodes + "(newer:" + quote(since) + ");out;"
+                + nodes + ";out ids;";
+    }
+    
+    /**
+     * Build a query for POIs whose name or brand matches free text around a location.
+     * Every word of the text must appear, in order, in the name or brand.
+     * @param text The free-text query
+     * @return The Overpass QL query, or null if the text has no searchable words
+     */
+    static String forName(String text, double latitude, double longitude, double radius) {
+        String pattern = toNamePattern(text);
+        if (pattern == null) return null;
+        
+        String filters = "~" + quote(pattern) + ",i][~" + quote(CATEGORY_KEYS) + "~\".\"]"
+                + around(latitude, longitude, radius) + ";";
+        return OUTPUT_SETTINGS + "("
+                + "node[\"name\"" + filters
+                + "node[\"brand\"" + filters
+                + ");out;";
+    }
+    
+    /**
+     * Compile free text into a POSIX regex that matches names containing its
+     * words in order, ignoring case and accents ("Café Noir" matches "cafe noir").
+     * @return The regex, or null if the text has no letters or digits
+     */
+    static String toNamePattern(String text) {
+        List<String> words = new ArrayList<>();
+        String stripped = Normalizer.normalize(text, Normalizer.Form.NFD)
+                .replaceAll("\\p{M}", "")
+                .toLowerCase(Locale.ROOT);
+        for (String word : stripped.split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        if (words.isEmpty()) return null;
+        
+        StringBuilder pattern = new StringBuilder();
+        for (String word : words) {
+            if (pattern.length() > 0) {
+                pattern.append(".*");
+            }
+            for (int i = 0; i < word.length(); i++) {
+                pattern.append(letterClass(word.charAt(i)));
+            }
+        }
+        return pattern.toString();
+    }
+    
+    private static String letterClass(char c) {
+        for (String[] variants : DIACRITIC_VARIANTS) {
+            if (variants[0].charAt(0) == c) {
+                return "[" + variants[1] + "]";
+            }
+        }
+        // Words only contain letters and digits, so nothing needs escaping
+        return String.valueOf(c);
+    }
+    
+    private static String tagFilter(String osmTag) {
+        int equals = osmTag.indexOf('=');
+        return equals < 0
+                ? "[" + quote(osmTag) + "]"
+                : "[" + quote(osmTag.substring(0, equals)) + "=" + quote(osmTag.substring(equals + 1)) + "]";
+    }
+    
+    private static String around(double latitude, double longitude, double radius) {
+        // Locale.US so the decimal separator is always a dot
+        return String.format(Locale.US, "(around:%.1f,%.7f,%.7f)", radius, latitude, longitude);
+    }
+    
+    private static String quote(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+}
@@ -0,0 +1,183 @@
+package com.antbear.javaw8.map;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Detects the same place reported by different sources.
+ * Places are bucketed in a spatial hash of roughly {@code maxDistanceMeters}
+ * sized cells, so each lookup only compares against places in the 3x3 cells
+ * around it. Two places match if they have the same ID, or are within
+ * {@code maxDistanceMeters} of each other and have similar normalized names.
+ * Not thread-safe.
+ */
+class PlaceDeduplicator {
+    private static final double METERS_PER_DEGREE = 111320.0;
+    private static final double MIN_NAME_SIMILARITY = 0.6;
+
+    private final double maxDistanceMeters;
+    private final Map<Long, List<Candidate>> cells = new HashMap<>();
+    private final Set<String> ids = new HashSet<>();
+    private double metersPerDegreeLng = Double.NaN;
+
+    private static class Candidate {
+        final PlaceInfo place;
+        final String normalizedName;
+
+        Candidate(PlaceInfo place, String normalizedName) {
+            this.place = place;
+            this.normalizedName = normalizedName;
+        }
+    }
+
+    /**
+     * @param maxDistanceMeters Maximum distance between two reports of the same place
+     */
+    PlaceDeduplicator(double maxDistanceMeters) {
+        this.maxDistanceMeters = maxDistanceMeters;
+    }
+
+    /**
+     * Record a place unless it duplicates one already recorded.
+     * @param place The place to add
+     * @return true if the place was new, false if it is a duplicate
+     */
+    boolean add(PlaceInfo place) {
+        if (place.getId() != null && ids.contains(place.getId())) {
+            return false;
+        }
+
+        // Longitude degrees shrink with latitude; a search area is small enough
+        // to use the scale at the first place for the whole grid
+        if (Double.isNaN(metersPerDegreeLng)) {
+            metersPerDegreeLng = METERS_PER_DEGREE * Math.cos(Math.toRadians(place.getLatitude()));
+        }
+
+        String normalizedName = normalizeName(place.getName());
+        long cellX = cellX(place.getLongitude());
+        long cellY = cellY(place.getLatitude());
+
+        for (long dx = -1; dx <= 1; dx++) {
+            for (long dy = -1; dy <= 1; dy++) {
+                List<Candidate> cell = cells.get(cellKey(cellX + dx, cellY + dy));
+                if (cell == null) continue;
+
+                for (Candidate candidate : cell) {
+                    if (isSamePlace(candidate, place, normalizedName)) {
+                        return false;
+                    }
+                }
+            }
+        }
+
+        if (place.getId() != null) {
+            ids.add(place.getId());
+        }
+        List<Candidate> cell = cells.get(cellKey(cellX, cellY));
+        if (cell == null) {
+            cell = new ArrayList<>(2);
+            cells.put(cellKey(cellX, cellY), cell);
+        }
+        cell.add(new Candidate(place, normalizedName));
+        return true;
+    }
+
+    private boolean isSamePlace(Candidate candidate, PlaceInfo place, String normalizedName) {
+        if (normalizedName.isEmpty() || candidate.normalizedName.isEmpty()) {
+            return false;
+        }
+
+        double distance = SearchArea.distanceMeters(candidate.place.getLatitude(),
+                candidate.place.getLongitude(), place.getLatitude(), place.getLongitude());
+        return distance <= maxDistanceMeters && isSimilarName(candidate.normalizedName, normalizedName);
+    }
+
+    /**
+     * Check whether two normalized names likely name the same place.
+     * @return true if the names are similar enough
+     */
+    static boolean isSimilarName(String a, String b) {
+        return !a.isEmpty() && !b.isEmpty() && nameSimilarity(a, b) >= MIN_NAME_SIMILARITY;
+    }
+
+    private long cellX(double longitude) {
+        return (long) Math.floor(longitude * metersPerDegreeLng / maxDistanceMeters);
+    }
+
+    private long cellY(double latitude) {
+        return (long) Math.floor(latitude * METERS_PER_DEGREE / maxDistanceMeters);
+    }
+
+    private static long cellKey(long cellX, long cellY) {
+        return (cellX << 32) ^ (cellY & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Normalize a place name for comparison: lower case, diacritics removed,
+     * and words separated by single spaces ("Café-Nero!" becomes "cafe nero").
+     * @param name The name to normalize (can be null)
+     * @return The normalized name, empty if nothing is left
+     */
+    static String normalizeName(String name) {
+        if (name == null) return "";
+
+        String decomposed = Normalizer.normalize(name, Normalizer.Form.NFD);
+        StringBuilder normalized = new StringBuilder(decomposed.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                if (pendingSpace) normalized.append(' ');
+                normalized.append(c);
+                pendingSpace = false;
+            } else if (normalized.length() > 0 && Character.getType(c) != Character.NON_SPACING_MARK
+                    && c != '\'' && c != '\u2019') {
+                // Accents and apostrophes are dropped within a word ("McDonald's" is one word)
+                pendingSpace = true;
+            }
+        }
+        return normalized.toString().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Similarity of two normalized names as the Dice coefficient of their
+     * character bigrams, spaces included. A longer name that only adds words
+     * still matches ("starbucks" and "starbucks coffee" score 0.7), but a
+     * generic word inside another name does not ("cafe" and "cafe luna"
+     * score 0.55, "bar" and "barista coffee" 0.27).
+     * @return A value between 0 (unrelated) and 1 (identical)
+     */
+    static double nameSimilarity(String a, String b) {
+        if (a.equals(b)) {
+            return 1.0;
+        }
+        if (a.length() < 2 || b.length() < 2) {
+            return 0.0;
+        }
+
+        Map<Integer, Integer> bigrams = new HashMap<>();
+        for (int i = 0; i < a.length() - 1; i++) {
+            bigrams.merge(bigram(a, i), 1, Integer::sum);
+        }
+
+        int shared = 0;
+        for (int i = 0; i < b.length() - 1; i++) {
+            Integer count = bigrams.get(bigram(b, i));
+            if (count != null && count > 0) {
+                bigrams.put(bigram(b, i), count - 1);
+                shared++;
+            }
+        }
+        return 2.0 * shared / (a.length() - 1 + b.length() - 1);
+    }
+
+    private static int bigram(String s, int index) {
+        return (s.charAt(index) << 16) | s.charAt(index + 1);
+    }
+}
@@ -0,0 +1,181 @@
+package com.antbear.javaw8.map;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fetches details for a list of Google place IDs with a bounded number of
+ * requests in flight and an overall deadline. Each place is reported as soon
+ * as it arrives; when the deadline expires, outstanding requests are cancelled
+ * and the batch finishes with whatever was fetched. Lookups go through a
+ * {@link PlaceDetailsCache}, so recently fetched places are served locally.
+ * The network and the clock are injected, so a fake client with latency
+ * can stand in for the Places SDK. Thread-safe: completions may arrive on
+ * any thread.
+ */
+class PlaceDetailsBatch {
+    private static final String TAG = "PlaceDetailsBatch";
+    
+    /**
+     * Receives fetched places and the final outcome.
+     */
+    interface Listener {
+        void onPlaceFetched(PlaceInfo place);
+        void onFinished(int fetchedCount, boolean timedOut);
+    }
+    
+    /**
+     * Fetches the details of single places, e.g. with the Places SDK.
+     */
+    interface Fetcher {
+        /**
+         * @param placeId The place ID
+         * @param callback Receives the place, or null if it could not be fetched; may run on any thread
+         */
+        void fetch(String placeId, PlaceDetailsCache.Callback callback);
+        
+        /**
+         * Abort all fetches in flight. Each reports null to its callback.
+         */
+        void cancelAll();
+    }
+    
+    /**
+     * Runs the deadline.
+     */
+    interface Scheduler {
+        /**
+         * @param action The action to run
+         * @param delayMs Time to wait before running it
+         * @return Cancels the action if it has not run yet
+         */
+        Runnable schedule(Runnable action, long delayMs);
+    }
+    
+    private final Fetcher fetcher;
+    private final PlaceDetailsCache detailsCache;
+    private final Scheduler scheduler;
+    private final int maxConcurrent;
+    private final long deadlineMs;
+    private final Listener listener;
+    
+    private final Queue<String> pendingIds = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger fetched = new AtomicInteger();
+    private final AtomicBoolean finished = new AtomicBoolean(false);
+    private volatile Runnable cancelTimeout;
+    
+    /**
+     * @param fetcher Fetches details that are not cached
+     * @param detailsCache Cache consulted before fetching
+     * @param placeIds The place IDs to fetch, in priority order
+     * @param maxConcurrent Maximum number of requests in flight at once
+     * @param deadlineMs Time after which the batch finishes regardless of outstanding requests
+     * @param scheduler Runs the deadline, e.g. {@link #mainThreadScheduler()}
+     * @param listener Receives results
+     */
+    PlaceDetailsBatch(Fetcher fetcher, PlaceDetailsCache detailsCache, List<String> placeIds,
+                      int maxConcurrent, long deadlineMs, Scheduler scheduler, Listener listener) {
+        this.fetcher = fetcher;
+        this.detailsCache = detailsCache;
+        this.scheduler = scheduler;
+        this.maxConcurrent = maxConcurrent;
+        this.deadlineMs = deadlineMs;
+        this.listener = listener;
+        this.pendingIds.addAll(placeIds);
+    }
+    
+    /**
+     * @return A scheduler that runs deadlines on the main thread
+     */
+    static Scheduler mainThreadScheduler() {
+        Handler handler = new Handler(Looper.getMainLooper());
+        return (action, delayMs) -> {
+            handler.postDelayed(action, delayMs);
+            return () -> handler.removeCallbacks(action);
+        };
+    }
+    
+    /**
+     * Start fetching.
+     */
+    void start() {
+        if (pendingIds.isEmpty()) {
+            finish(false);
+            return;
+        }
+        
+        cancelTimeout = scheduler.schedule(() -> finish(true), deadlineMs);
+        launchMore();
+    }
+    
+    /**
+     * Cancel outstanding requests without reporting completion.
+     */
+    void cancel() {
+        if (finished.compareAndSet(false, true)) {
+            stopTimeout();
+            fetcher.cancelAll();
+        }
+    }
+    
+    private void launchMore() {
+        while (!finished.get()) {
+            // Reserve a slot before taking an ID so the limit is never exceeded
+            int current = inFlight.get();
+            if (current >= maxConcurrent) return;
+            if (!inFlight.compareAndSet(current, current + 1)) continue;
+            
+            String placeId = pendingIds.poll();
+            if (placeId == null) {
+                inFlight.decrementAndGet();
+                return;
+            }
+            fetch(placeId);
+        }
+    }
+    
+    private void fetch(String placeId) {
+        detailsCache.get(placeId, fetcher::fetch, placeInfo -> {
+            if (placeInfo != null && !finished.get()) {
+                fetched.incrementAndGet();
+                listener.onPlaceFetched(placeInfo);
+            }
+            onRequestDone();
+        });
+    }
+    
+    private void onRequestDone() {
+        inFlight.decrementAndGet();
+        if (pendingIds.isEmpty() && inFlight.get() == 0) {
+            finish(false);
+        } else {
+            launchMore();
+        }
+    }
+    
+    private void finish(boolean timedOut) {
+        if (!finished.compareAndSet(false, true)) return;
+        
+        stopTimeout();
+        if (timedOut) {
+            Log.d(TAG, "Deadline reached with " + fetched.get() + " places fetched; cancelling the rest");
+            fetcher.cancelAll();
+        }
+        listener.onFinished(fetched.get(), timedOut);
+    }
+    
+    private void stopTimeout() {
+        Runnable cancel = cancelTimeout;
+        if (cancel != null) {
+            cancel.run();
+        }
+    }
+}
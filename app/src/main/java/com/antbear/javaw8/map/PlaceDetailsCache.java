@@ -0,0 +1,285 @@
+package com.antbear.javaw8.map;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Persistent cache of place details keyed by provider place ID.
+ * Entries expire after a TTL; the least recently used entries are evicted
+ * beyond a maximum size. Concurrent lookups for the same ID share a single
+ * load. The cache is loaded from and written to disk on the I/O executor.
+ * Thread-safe.
+ */
+public class PlaceDetailsCache {
+    private static final String TAG = "PlaceDetailsCache";
+    private static final int MAGIC = 0x4A57_4443; // "JWDC"
+    private static final int VERSION = 1;
+    
+    /**
+     * Loads details for a place ID that is not cached, e.g. from the network.
+     */
+    public interface Loader {
+        void load(String placeId, Callback callback);
+    }
+    
+    /**
+     * Receives the result of a lookup.
+     */
+    public interface Callback {
+        /**
+         * @param place The place details, or null if they could not be loaded
+         */
+        void onResult(PlaceInfo place);
+    }
+    
+    /**
+     * Snapshot of cache effectiveness counters.
+     */
+    public static class Stats {
+        private final long hits;
+        private final long misses;
+        private final long joinedInFlight;
+        private final int size;
+        
+        Stats(long hits, long misses, long joinedInFlight, int size) {
+            this.hits = hits;
+            this.misses = misses;
+            this.joinedInFlight = joinedInFlight;
+            this.size = size;
+        }
+        
+        // Getters
+        public long getHits() { return hits; }
+        public long getMisses() { return misses; }
+        public long getJoinedInFlight() { return joinedInFlight; }
+        public int getSize() { return size; }
+        
+        /**
+         * @return Fraction of lookups served without a new load (0 when there were no lookups)
+         */
+        public double getHitRate() {
+            long total = hits + misses + joinedInFlight;
+            return total == 0 ? 0 : (double) (hits + joinedInFlight) / total;
+        }
+        
+        @Override
+        public String toString() {
+            return String.format(java.util.Locale.US, "hits=%d misses=%d joined=%d size=%d hitRate=%.2f",
+                    hits, misses, joinedInFlight, size, getHitRate());
+        }
+    }
+    
+    private static class Entry {
+        final PlaceInfo place;
+        final long fetchedAt;
+        
+        Entry(PlaceInfo place, long fetchedAt) {
+            this.place = place;
+            this.fetchedAt = fetchedAt;
+        }
+    }
+    
+    private final File file;
+    private final long ttlMs;
+    private final int maxEntries;
+    
+    private final LinkedHashMap<String, Entry> entries;
+    private final Map<String, List<Callback>> inFlight = new HashMap<>();
+    private long hits;
+    private long misses;
+    private long joinedInFlight;
+    private final CompletableFuture<Void> loadComplete = new CompletableFuture<>();
+    private boolean writeScheduled = false;
+    
+    /**
+     * Create the cache and start loading its persisted entries in the background.
+     * 
+     * @param context Context used to locate the cache file
+     * @param fileName Name of the cache file in the app's files directory
+     * @param ttlMs Time after which an entry is treated as missing
+     * @param maxEntries Maximum number of entries kept
+     */
+    public PlaceDetailsCache(Context context, String fileName, long ttlMs, int maxEntries) {
+        this(new File(context.getFilesDir(), fileName), ttlMs, maxEntries);
+    }
+    
+    PlaceDetailsCache(File file, long ttlMs, int maxEntries) {
+        this.file = file;
+        this.ttlMs = ttlMs;
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > PlaceDetailsCache.this.maxEntries;
+            }
+        };
+        
+        AppExecutors.io().execute(this::loadFromDisk);
+    }
+    
+    /**
+     * Look up a place, loading it with {@code loader} on a miss.
+     * The callback runs synchronously on a hit, otherwise on the loader's thread.
+     * 
+     * @param placeId The place ID
+     * @param loader Used to load the details when they are not cached
+     * @param callback Receives the details, or null if loading failed
+     */
+    public void get(String placeId, Loader loader, Callback callback) {
+        PlaceInfo cached;
+        synchronized (this) {
+            cached = getFresh(placeId);
+            if (cached != null) {
+                hits++;
+            } else if (inFlight.containsKey(placeId)) {
+                joinedInFlight++;
+                inFlight.get(placeId).add(callback);
+                return;
+            } else {
+                misses++;
+                List<Callback> waiters = new ArrayList<>();
+                waiters.add(callback);
+                inFlight.put(placeId, waiters);
+            }
+        }
+        
+        if (cached != null) {
+            callback.onResult(cached);
+            return;
+        }
+        
+        loader.load(placeId, place -> {
+            List<Callback> waiters;
+            synchronized (this) {
+                waiters = inFlight.remove(placeId);
+            }
+            if (place != null) {
+                put(place);
+            }
+            if (waiters != null) {
+                for (Callback waiter : waiters) {
+                    waiter.onResult(place);
+                }
+            }
+        });
+    }
+    
+    /**
+     * Store or refresh details, e.g. from a search response that already contained them.
+     * @param place The place to cache
+     */
+    public void put(PlaceInfo place) {
+        if (place.getId() == null) return;
+        
+        synchronized (this) {
+            entries.put(place.getId(), new Entry(place, System.currentTimeMillis()));
+        }
+        scheduleWrite();
+    }
+    
+    /**
+     * Get the current cache statistics.
+     * @return A snapshot of the counters
+     */
+    public synchronized Stats getStats() {
+        return new Stats(hits, misses, joinedInFlight, entries.size());
+    }
+    
+    private PlaceInfo getFresh(String placeId) {
+        Entry entry = entries.get(placeId);
+        if (entry == null) return null;
+        
+        if (System.currentTimeMillis() - entry.fetchedAt > ttlMs) {
+            entries.remove(placeId);
+            return null;
+        }
+        return entry.place;
+    }
+    
+    private void scheduleWrite() {
+        synchronized (this) {
+            if (writeScheduled) return;
+            writeScheduled = true;
+        }
+        
+        // Coalesces bursts of puts (e.g. a whole search response) into one write. Waits
+        // for the persisted entries, so an early put cannot replace them with only its own
+        loadComplete.thenRunAsync(this::writeToDisk, AppExecutors.io());
+    }
+    
+    private void loadFromDisk() {
+        try {
+            if (!file.exists()) return;
+            
+            long now = System.currentTimeMillis();
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                if (in.readInt() != MAGIC || in.readUnsignedByte() != VERSION) {
+                    Log.d(TAG, "Ignoring details cache with unknown format");
+                    return;
+                }
+                
+                int count = in.readInt();
+                synchronized (this) {
+                    for (int i = 0; i < count; i++) {
+                        long fetchedAt = in.readLong();
+                        PlaceInfo place = PlaceInfoCodec.readPlace(in);
+                        // Entries added since startup are newer than the persisted ones
+                        if (now - fetchedAt <= ttlMs && !entries.containsKey(place.getId())) {
+                            entries.put(place.getId(), new Entry(place, fetchedAt));
+                        }
+                    }
+                }
+                Log.d(TAG, "Loaded " + count + " cached place details");
+            } catch (IOException e) {
+                Log.e(TAG, "Error reading details cache: " + e.getMessage(), e);
+            }
+        } finally {
+            loadComplete.complete(null);
+        }
+    }
+    
+    private void writeToDisk() {
+        List<Map.Entry<String, Entry>> snapshot;
+        synchronized (this) {
+            writeScheduled = false;
+            snapshot = new ArrayList<>(entries.entrySet());
+        }
+        
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (FileOutputStream fileOut = new FileOutputStream(tempFile)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut));
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeInt(snapshot.size());
+            for (Map.Entry<String, Entry> item : snapshot) {
+                out.writeLong(item.getValue().fetchedAt);
+                PlaceInfoCodec.writePlace(out, item.getValue().place);
+            }
+            out.flush();
+            // On disk before the rename, so a crash cannot leave a truncated cache in place
+            fileOut.getFD().sync();
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing details cache: " + e.getMessage(), e);
+            return;
+        }
+        
+        if (!tempFile.renameTo(file)) {
+            Log.e(TAG, "Error replacing details cache file");
+        }
+    }
+}
@@ -13,6 +13,7 @@ public class PlaceInfo {
     private String phoneNumber;
     private Float rating;
     private boolean isSampleData;
+    private volatile String snippet; // cached result of createSnippet()
 
     /**
      * Create a new PlaceInfo object.
@@ -50,10 +51,21 @@ public class PlaceInfo {
 
     /**
      * Create a snippet string for display in an info window.
+     * The result is cached, so calling this off the main thread ahead of
+     * marker creation moves the formatting cost off the UI thread.
      * 
      * @return Formatted string with place details
      */
     public String createSnippet() {
+        String cached = this.snippet;
+        if (cached == null) {
+            cached = buildSnippet();
+            this.snippet = cached;
+        }
+        return cached;
+    }
+    
+    private String buildSnippet() {
         StringBuilder snippet = new StringBuilder();
         
         // Add address if available
@@ -0,0 +1,76 @@
+package com.antbear.javaw8.map;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Compact binary encoding for PlaceInfo objects.
+ * Coordinates are stored as fixed-point integers (1e-7 degrees, ~1 cm precision)
+ * and optional fields are prefixed with a flags byte instead of per-field markers.
+ */
+public final class PlaceInfoCodec {
+    private static final double COORDINATE_SCALE = 1e7;
+
+    private static final int FLAG_ADDRESS = 1;
+    private static final int FLAG_PHONE = 1 << 1;
+    private static final int FLAG_RATING = 1 << 2;
+    private static final int FLAG_SAMPLE = 1 << 3;
+
+    private PlaceInfoCodec() {
+        // Static helpers only
+    }
+
+    /**
+     * Write a single place to the stream.
+     *
+     * @param out The stream to write to
+     * @param place The place to encode
+     * @throws IOException If the stream cannot be written
+     */
+    public static void writePlace(DataOutputStream out, PlaceInfo place) throws IOException {
+        int flags = 0;
+        if (place.getAddress() != null && !place.getAddress().isEmpty()) flags |= FLAG_ADDRESS;
+        if (place.getPhoneNumber() != null && !place.getPhoneNumber().isEmpty()) flags |= FLAG_PHONE;
+        if (place.getRating() != null) flags |= FLAG_RATING;
+        if (place.isSampleData()) flags |= FLAG_SAMPLE;
+
+        out.writeByte(flags);
+        out.writeUTF(place.getId() != null ? place.getId() : "");
+        out.writeUTF(place.getName() != null ? place.getName() : "");
+        out.writeInt(encodeCoordinate(place.getLatitude()));
+        out.writeInt(encodeCoordinate(place.getLongitude()));
+        if ((flags & FLAG_ADDRESS) != 0) out.writeUTF(place.getAddress());
+        if ((flags & FLAG_PHONE) != 0) out.writeUTF(place.getPhoneNumber());
+        if ((flags & FLAG_RATING) != 0) out.writeFloat(place.getRating());
+    }
+
+    /**
+     * Read a single place from the stream.
+     *
+     * @param in The stream to read from
+     * @return The decoded place
+     * @throws IOException If the stream is truncated or malformed
+     */
+    public static PlaceInfo readPlace(DataInputStream in) throws IOException {
+        int flags = in.readUnsignedByte();
+        String id = in.readUTF();
+        String name = in.readUTF();
+        double latitude = decodeCoordinate(in.readInt());
+        double longitude = decodeCoordinate(in.readInt());
+        String address = (flags & FLAG_ADDRESS) != 0 ? in.readUTF() : "";
+        String phone = (flags & FLAG_PHONE) != 0 ? in.readUTF() : "";
+        Float rating = (flags & FLAG_RATING) != 0 ? in.readFloat() : null;
+
+        return new PlaceInfo(id, name, latitude, longitude, address, phone, rating,
+                (flags & FLAG_SAMPLE) != 0);
+    }
+
+    static int encodeCoordinate(double degrees) {
+        return (int) Math.round(degrees * COORDINATE_SCALE);
+    }
+
+    static double decodeCoordinate(int fixedPoint) {
+        return fixedPoint / COORDINATE_SCALE;
+    }
+}
@@ -0,0 +1,171 @@
+package com.antbear.javaw8.map;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps the K best places seen so far around a search center.
+ * Places are ranked by a {@link Scorer} (lower cost is better) in a bounded
+ * heap whose root is the worst place kept, so each offer costs O(log K) and
+ * memory stays O(K) no matter how many places are offered. Distances use an
+ * equirectangular approximation, which is accurate to well under 1% at
+ * search radii. Not thread-safe.
+ */
+public class PlaceRanker {
+    private static final double EARTH_RADIUS_METERS = 6371000.0;
+    
+    /**
+     * Computes the ranking cost of a place; lower is better.
+     */
+    public interface Scorer {
+        /**
+         * @param place The place to score
+         * @param distanceMeters Approximate distance from the search center
+         * @return The cost of the place
+         */
+        double cost(PlaceInfo place, double distanceMeters);
+        
+        /**
+         * @return The largest amount the cost can be below the distance, used to skip
+         *         places early (0 for purely distance-based scorers)
+         */
+        default double maxBonusMeters() {
+            return 0;
+        }
+    }
+    
+    /**
+     * Ranks purely by distance.
+     */
+    public static final Scorer BY_DISTANCE = (place, distanceMeters) -> distanceMeters;
+    
+    /**
+     * Ranks by distance, treating each rating star above or below 3 as
+     * {@code metersPerStar} closer or further away. Unrated places count as 3 stars.
+     * @param metersPerStar Distance one rating star is worth
+     * @return The scorer
+     */
+    public static Scorer byDistanceAndRating(double metersPerStar) {
+        return new Scorer() {
+            @Override
+            public double cost(PlaceInfo place, double distanceMeters) {
+                Float rating = place.getRating();
+                double stars = rating != null ? rating - 3.0 : 0.0;
+                return distanceMeters - stars * metersPerStar;
+            }
+            
+            @Override
+            public double maxBonusMeters() {
+                return 2 * metersPerStar;
+            }
+        };
+    }
+    
+    private static class Ranked {
+        final PlaceInfo place;
+        final double cost;
+        
+        Ranked(PlaceInfo place, double cost) {
+            this.place = place;
+            this.cost = cost;
+        }
+    }
+    
+    private final double centerLatitude;
+    private final double centerLongitude;
+    private final double cosCenterLatitude;
+    private final int maxPlaces;
+    private final Scorer scorer;
+    private final PriorityQueue<Ranked> heap;
+    private int offered;
+    
+    /**
+     * Create a ranker for a search around a location.
+     *
+     * @param latitude Latitude of the search center
+     * @param longitude Longitude of the search center
+     * @param maxPlaces The number of places to keep (K)
+     * @param scorer How to rank the places
+     */
+    public PlaceRanker(double latitude, double longitude, int maxPlaces, Scorer scorer) {
+        this.centerLatitude = latitude;
+        this.centerLongitude = longitude;
+        this.cosCenterLatitude = Math.cos(Math.toRadians(latitude));
+        this.maxPlaces = maxPlaces;
+        this.scorer = scorer;
+        // Worst place at the root so it can be replaced cheaply
+        this.heap = new PriorityQueue<>(maxPlaces + 1,
+                (a, b) -> Double.compare(b.cost, a.cost));
+    }
+    
+    /**
+     * Approximate distance from the search center (equirectangular projection).
+     * @return Distance in meters
+     */
+    public double distanceTo(double latitude, double longitude) {
+        double x = Math.toRadians(longitude - centerLongitude) * cosCenterLatitude;
+        double y = Math.toRadians(latitude - centerLatitude);
+        return EARTH_RADIUS_METERS * Math.sqrt(x * x + y * y);
+    }
+    
+    /**
+     * Check whether a place at a position could still enter the top K, whatever
+     * its other attributes. Lets callers skip reading places that would be
+     * rejected anyway.
+     * @param latitude Latitude of the candidate
+     * @param longitude Longitude of the candidate
+     * @return false if the place can be skipped
+     */
+    public boolean couldAccept(double latitude, double longitude) {
+        if (heap.size() < maxPlaces) return true;
+        
+        double bestCost = distanceTo(latitude, longitude) - scorer.maxBonusMeters();
+        return bestCost < heap.peek().cost;
+    }
+    
+    /**
+     * Offer a place for ranking.
+     * @param place The place to offer
+     * @return true if the place is currently among the K best
+     */
+    public boolean offer(PlaceInfo place) {
+        offered++;
+        double distance = distanceTo(place.getLatitude(), place.getLongitude());
+        double cost = scorer.cost(place, distance);
+        
+        if (heap.size() < maxPlaces) {
+            heap.add(new Ranked(place, cost));
+            return true;
+        }
+        if (cost >= heap.peek().cost) {
+            return false;
+        }
+        heap.poll();
+        heap.add(new Ranked(place, cost));
+        return true;
+    }
+    
+    /**
+     * Get the number of places offered so far, including rejected ones.
+     * @return The number of offers
+     */
+    public int getOfferedCount() {
+        return offered;
+    }
+    
+    /**
+     * Get the places kept, best first.
+     * @return The top K places (fewer if fewer were offered)
+     */
+    public PlaceInfo[] toSortedArray() {
+        Ranked[] ranked = heap.toArray(new Ranked[0]);
+        Arrays.sort(ranked, Comparator.comparingDouble(r -> r.cost));
+        
+        PlaceInfo[] places = new PlaceInfo[ranked.length];
+        for (int i = 0; i < ranked.length; i++) {
+            places[i] = ranked[i].place;
+        }
+        return places;
+    }
+}
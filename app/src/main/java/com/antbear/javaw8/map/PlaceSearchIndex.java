@@ -0,0 +1,307 @@
+package com.antbear.javaw8.map;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * In-memory text index over place names and addresses for search-as-you-type.
+ * Every word is indexed under each of its prefixes (edge n-grams) up to
+ * {@link #MAX_PREFIX_LENGTH} characters, after accent folding, so a query
+ * word is answered by one posting-list lookup; multi-word queries intersect
+ * the lists. Matches are ranked by how well they match (name before address,
+ * name start first) and then by distance from a given center.
+ * Places are kept in a {@link PlaceTable}, one row per document, and only
+ * the matches returned become {@link PlaceInfo} objects. Places can be added
+ * or replaced at any time. Thread-safe.
+ */
+public class PlaceSearchIndex {
+    static final int MAX_PREFIX_LENGTH = 8;
+    
+    private static final int SCORE_ADDRESS_WORD = 1;
+    private static final int SCORE_NAME_WORD = 2;
+    private static final int SCORE_NAME_START = 1;
+    
+    private static final double EARTH_RADIUS_METERS = 6371000.0;
+    
+    /**
+     * Growable list of document IDs, kept in ascending order by construction.
+     */
+    private static class IntList {
+        int[] values = new int[4];
+        int size;
+        
+        void add(int value) {
+            // Words repeated in a document would add the same ID twice in a row
+            if (size > 0 && values[size - 1] == value) return;
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+    
+    private final Map<String, IntList> postings = new HashMap<>();
+    // Document IDs are table rows; replaced and removed places are deleted rows
+    private PlaceTable places = new PlaceTable();
+    // Folded text with a leading space, so " " + word finds word starts
+    private String[] foldedNames = new String[64];
+    private String[] foldedAddresses = new String[64];
+    
+    /**
+     * Add a place, replacing any earlier version with the same ID.
+     * @param place The place to index
+     */
+    public synchronized void add(PlaceInfo place) {
+        // Deletes the row of any earlier version
+        indexDoc(places.add(place), place.getName(), place.getAddress());
+    }
+    
+    /**
+     * Add the live rows of a table, e.g. places bulk loaded into it, without
+     * creating place objects for them.
+     *
+     * @param source The table holding the places
+     * @param fromRow The first row to add
+     * @param toRow The row after the last one to add
+     */
+    public synchronized void addRows(PlaceTable source, int fromRow, int toRow) {
+        for (int row = fromRow; row < toRow; row++) {
+            if (source.isDeleted(row)) continue;
+            
+            int doc = places.add(source.getId(row), source.getName(row), source.getLatitude(row),
+                    source.getLongitude(row), source.getAddress(row), source.getPhoneNumber(row),
+                    source.getRating(row), source.isSampleData(row), null, 0);
+            indexDoc(doc, source.getName(row), source.getAddress(row));
+        }
+        compactIfNeeded();
+    }
+
+    /**
+     * Add several places at once.
+     * @param newPlaces The places to index
+     */
+    public synchronized void addAll(PlaceInfo[] newPlaces) {
+        for (PlaceInfo place : newPlaces) {
+            add(place);
+        }
+        compactIfNeeded();
+    }
+    
+    /**
+     * Remove a place from the index.
+     * @param placeId The ID of the place to remove
+     */
+    public synchronized void remove(String placeId) {
+        int doc = places.findRow(placeId);
+        if (doc >= 0) {
+            places.delete(doc);
+            compactIfNeeded();
+        }
+    }
+    
+    /**
+     * Get the number of indexed places.
+     * @return The number of places
+     */
+    public synchronized int size() {
+        return places.size();
+    }
+    
+    /**
+     * Find places whose name or address contains words starting with every
+     * word of the query. The last word may be incomplete, as while typing.
+     *
+     * @param text The query text
+     * @param latitude Latitude to rank nearby places first (e.g. the viewport center)
+     * @param longitude Longitude to rank nearby places first
+     * @param maxDistanceMeters Places further away are not returned
+     * @param limit The maximum number of places to return
+     * @return The best matches, best first
+     */
+    public synchronized List<PlaceInfo> search(String text, double latitude, double longitude,
+                                               double maxDistanceMeters, int limit) {
+        String[] words = splitWords(fold(text));
+        if (words.length == 0 || limit <= 0) return new ArrayList<>();
+        
+        // Intersect starting from the rarest word to keep the candidate set small
+        IntList[] lists = new IntList[words.length];
+        for (int i = 0; i < words.length; i++) {
+            String key = words[i].length() > MAX_PREFIX_LENGTH
+                    ? words[i].substring(0, MAX_PREFIX_LENGTH) : words[i];
+            lists[i] = postings.get(key);
+            if (lists[i] == null) return new ArrayList<>();
+        }
+        int[] candidates = intersect(lists);
+        
+        String[] wordStarts = new String[words.length];
+        for (int i = 0; i < words.length; i++) {
+            wordStarts[i] = " " + words[i];
+        }
+        
+        double cosLatitude = Math.cos(Math.toRadians(latitude));
+        // Worst match at the root: lowest score, then furthest away
+        Comparator<double[]> worstFirst = (a, b) -> {
+            int byScore = Double.compare(a[1], b[1]);
+            return byScore != 0 ? byScore : Double.compare(b[2], a[2]);
+        };
+        PriorityQueue<double[]> best = new PriorityQueue<>(limit + 1, worstFirst);
+        
+        for (int doc : candidates) {
+            if (places.isDeleted(doc)) continue;
+            
+            int score = score(doc, wordStarts);
+            if (score == 0) continue;
+            
+            double x = Math.toRadians(places.getLongitude(doc) - longitude) * cosLatitude;
+            double y = Math.toRadians(places.getLatitude(doc) - latitude);
+            double distance = EARTH_RADIUS_METERS * Math.sqrt(x * x + y * y);
+            if (distance > maxDistanceMeters) continue;
+            
+            if (best.size() == limit) {
+                double[] worst = best.peek();
+                if (score < worst[1] || (score == worst[1] && distance >= worst[2])) continue;
+                best.poll();
+            }
+            best.add(new double[] {doc, score, distance});
+        }
+        
+        PlaceInfo[] results = new PlaceInfo[best.size()];
+        for (int i = results.length - 1; i >= 0; i--) {
+            results[i] = places.get((int) best.poll()[0]);
+        }
+        return new ArrayList<>(Arrays.asList(results));
+    }
+    
+    private void indexDoc(int doc, String name, String address) {
+        if (doc == foldedNames.length) {
+            int capacity = doc * 2;
+            foldedNames = Arrays.copyOf(foldedNames, capacity);
+            foldedAddresses = Arrays.copyOf(foldedAddresses, capacity);
+        }
+        
+        foldedNames[doc] = " " + fold(name);
+        foldedAddresses[doc] = " " + fold(address);
+        
+        indexWords(doc, foldedNames[doc].substring(1));
+        indexWords(doc, foldedAddresses[doc].substring(1));
+    }
+    
+    /**
+     * Score a candidate, verifying words longer than the indexed prefixes.
+     * @return The match score, or 0 if some query word does not actually match
+     */
+    private int score(int doc, String[] wordStarts) {
+        String name = foldedNames[doc];
+        String address = foldedAddresses[doc];
+        
+        int score = name.startsWith(wordStarts[0]) ? SCORE_NAME_START : 0;
+        for (String wordStart : wordStarts) {
+            if (name.contains(wordStart)) {
+                score += SCORE_NAME_WORD;
+            } else if (address.contains(wordStart)) {
+                score += SCORE_ADDRESS_WORD;
+            } else {
+                return 0;
+            }
+        }
+        return score;
+    }
+    
+    private void indexWords(int doc, String folded) {
+        for (String word : splitWords(folded)) {
+            int maxLength = Math.min(word.length(), MAX_PREFIX_LENGTH);
+            for (int length = 1; length <= maxLength; length++) {
+                String prefix = word.substring(0, length);
+                IntList list = postings.get(prefix);
+                if (list == null) {
+                    list = new IntList();
+                    postings.put(prefix, list);
+                }
+                list.add(doc);
+            }
+        }
+    }
+    
+    /**
+     * Rebuild the posting lists once most of them point at removed documents.
+     */
+    private void compactIfNeeded() {
+        if (!places.needsCompaction()) return;
+        
+        PlaceInfo[] live = new PlaceInfo[places.size()];
+        int next = 0;
+        for (int doc = 0; doc < places.getRowCount(); doc++) {
+            if (!places.isDeleted(doc)) {
+                live[next++] = places.get(doc);
+            }
+        }
+        
+        postings.clear();
+        places = new PlaceTable(live.length);
+        Arrays.fill(foldedNames, null);
+        Arrays.fill(foldedAddresses, null);
+        for (PlaceInfo place : live) {
+            add(place);
+        }
+    }
+    
+    private static int[] intersect(IntList[] lists) {
+        IntList[] sorted = lists.clone();
+        Arrays.sort(sorted, (a, b) -> Integer.compare(a.size, b.size));
+        
+        int[] result = Arrays.copyOf(sorted[0].values, sorted[0].size);
+        int resultSize = result.length;
+        for (int i = 1; i < sorted.length && resultSize > 0; i++) {
+            IntList other = sorted[i];
+            int kept = 0;
+            int j = 0;
+            for (int k = 0; k < resultSize; k++) {
+                while (j < other.size && other.values[j] < result[k]) j++;
+                if (j < other.size && other.values[j] == result[k]) {
+                    result[kept++] = result[k];
+                }
+            }
+            resultSize = kept;
+        }
+        return Arrays.copyOf(result, resultSize);
+    }
+    
+    /**
+     * Fold text for matching: diacritics removed, lower case, and every run of
+     * characters other than letters and digits replaced by a single space.
+     * @param text The text to fold (can be null)
+     * @return The folded text, without leading or trailing spaces
+     */
+    static String fold(String text) {
+        if (text == null || text.isEmpty()) return "";
+        
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder folded = new StringBuilder(decomposed.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) continue;
+            
+            if (Character.isLetterOrDigit(c)) {
+                if (pendingSpace && folded.length() > 0) {
+                    folded.append(' ');
+                }
+                pendingSpace = false;
+                folded.append(Character.toLowerCase(c));
+            } else {
+                pendingSpace = true;
+            }
+        }
+        return folded.toString();
+    }
+    
+    private static String[] splitWords(String folded) {
+        return folded.isEmpty() ? new String[0] : folded.split(" ");
+    }
+}
@@ -0,0 +1,74 @@
+package com.antbear.javaw8.map;
+
+/**
+ * The parts of a snippet made by {@link PlaceInfo#createSnippet()}, read
+ * back for display in an info window. The snippet is scanned once, line by
+ * line, without splitting it into an array of strings.
+ */
+public final class PlaceSnippet {
+    private static final String PHONE_PREFIX = "Phone:";
+    private static final String RATING_PREFIX = "Rating:";
+    private static final String SAMPLE_MARKER = "(Sample Data)";
+    
+    private final String firstLine;
+    private final String phoneLine;
+    private final String ratingLine;
+    private final boolean sampleData;
+    
+    private PlaceSnippet(String firstLine, String phoneLine, String ratingLine, boolean sampleData) {
+        this.firstLine = firstLine;
+        this.phoneLine = phoneLine;
+        this.ratingLine = ratingLine;
+        this.sampleData = sampleData;
+    }
+    
+    /**
+     * Parse a snippet.
+     * @param snippet The snippet, one detail per line
+     * @return The parsed parts
+     */
+    public static PlaceSnippet parse(String snippet) {
+        String firstLine = null;
+        String phoneLine = null;
+        String ratingLine = null;
+        boolean sampleData = false;
+        
+        int start = 0;
+        int length = snippet.length();
+        while (start < length) {
+            int end = snippet.indexOf('\n', start);
+            if (end < 0) end = length;
+            
+            if (firstLine == null) {
+                firstLine = snippet.substring(start, end);
+            }
+            if (snippet.startsWith(PHONE_PREFIX, start)) {
+                phoneLine = snippet.substring(start, end);
+            } else if (snippet.startsWith(RATING_PREFIX, start)) {
+                ratingLine = snippet.substring(start, end);
+            } else if (!sampleData) {
+                int marker = snippet.indexOf(SAMPLE_MARKER, start);
+                sampleData = marker >= 0 && marker + SAMPLE_MARKER.length() <= end;
+            }
+            start = end + 1;
+        }
+        return new PlaceSnippet(firstLine, phoneLine, ratingLine, sampleData);
+    }
+    
+    /**
+     * @return The first line, usually the address, or null if the snippet is empty
+     */
+    public String getFirstLine() { return firstLine; }
+    
+    /**
+     * @return The phone line including its "Phone:" label, or null if there is none
+     */
+    public String getPhoneLine() { return phoneLine; }
+    
+    /**
+     * @return The rating line including its "Rating:" label, or null if there is none
+     */
+    public String getRatingLine() { return ratingLine; }
+    
+    public boolean isSampleData() { return sampleData; }
+}
@@ -0,0 +1,30 @@
+package com.antbear.javaw8.map;
+
+import java.util.concurrent.Executor;
+
+/**
+ * A single origin of place search results, such as a network backend or an
+ * on-device store. Several sources are queried together by {@link FederatedSearch}.
+ */
+public interface PlaceSource {
+    
+    /**
+     * Get a short name for this source, used in logs.
+     * @return The source name
+     */
+    String getName();
+    
+    /**
+     * Search this source for places near a location.
+     * @param query The search query (e.g., "coffee shop")
+     * @param latitude The latitude to search around
+     * @param longitude The longitude to search around
+     * @param radius The radius to search within (in meters)
+     * @param trace Records where the search spends its time
+     * @param callbackExecutor Executor the listener must be called on, in order
+     * @param listener The listener for batches and the final outcome
+     * @return A handle to cancel the search
+     */
+    SearchHandle search(String query, double latitude, double longitude, double radius, SearchTrace trace,
+                        Executor callbackExecutor, MapProvider.OnPlacesStreamListener listener);
+}
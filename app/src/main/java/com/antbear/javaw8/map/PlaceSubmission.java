@@ -0,0 +1,93 @@
+package com.antbear.javaw8.map;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * A place submitted by the user, waiting in the {@link SubmissionQueue}
+ * to be uploaded. Shown on the map as a place with a {@code submission/} ID.
+ */
+public class PlaceSubmission {
+    /** Prefix of the place IDs of submissions, so they are never taken for OSM places. */
+    static final String ID_PREFIX = "submission/";
+    
+    private final String id;
+    private final String name;
+    private final String address;
+    private final String phoneNumber;
+    private final float rating;
+    private final double latitude;
+    private final double longitude;
+    private final long createdAt;
+    
+    /**
+     * Create a new submission with a random ID.
+     *
+     * @param name Name of the place
+     * @param address Address (can be empty)
+     * @param phoneNumber Phone number (can be empty)
+     * @param rating Rating from 0.5 to 5, or 0 for none
+     * @param latitude Latitude of the place
+     * @param longitude Longitude of the place
+     */
+    public PlaceSubmission(String name, String address, String phoneNumber, float rating,
+                           double latitude, double longitude) {
+        this(UUID.randomUUID().toString(), name, address, phoneNumber, rating, latitude, longitude,
+                System.currentTimeMillis());
+    }
+    
+    private PlaceSubmission(String id, String name, String address, String phoneNumber, float rating,
+                            double latitude, double longitude, long createdAt) {
+        this.id = id;
+        this.name = name;
+        this.address = address;
+        this.phoneNumber = phoneNumber;
+        this.rating = rating;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.createdAt = createdAt;
+    }
+    
+    // Getters
+    public String getId() { return id; }
+    public String getName() { return name; }
+    public String getAddress() { return address; }
+    public String getPhoneNumber() { return phoneNumber; }
+    public float getRating() { return rating; }
+    public double getLatitude() { return latitude; }
+    public double getLongitude() { return longitude; }
+    public long getCreatedAt() { return createdAt; }
+    
+    /**
+     * @return The submission as a place to show on the map
+     */
+    public PlaceInfo toPlace() {
+        return new PlaceInfo(ID_PREFIX + id, name, latitude, longitude, address, phoneNumber,
+                rating > 0 ? rating : null, false);
+    }
+    
+    /**
+     * @return true if a place ID belongs to a submission rather than an OSM place
+     */
+    static boolean isSubmissionId(String placeId) {
+        return placeId != null && placeId.startsWith(ID_PREFIX);
+    }
+    
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeUTF(id);
+        out.writeUTF(name);
+        out.writeUTF(address);
+        out.writeUTF(phoneNumber);
+        out.writeFloat(rating);
+        out.writeDouble(latitude);
+        out.writeDouble(longitude);
+        out.writeLong(createdAt);
+    }
+    
+    static PlaceSubmission readFrom(DataInputStream in) throws IOException {
+        return new PlaceSubmission(in.readUTF(), in.readUTF(), in.readUTF(), in.readUTF(), in.readFloat(),
+                in.readDouble(), in.readDouble(), in.readLong());
+    }
+}
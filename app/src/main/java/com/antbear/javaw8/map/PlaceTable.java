@@ -0,0 +1,457 @@
+package com.antbear.javaw8.map;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Columnar storage for large numbers of places.
+ * Each field is a parallel primitive array indexed by row: coordinates as
+ * fixed-point ints (as in {@link PlaceInfoCodec}), ratings as floats with NaN
+ * for "no rating", and flags in bitsets. Strings are interned through a
+ * {@link StringDictionary}, so repeated names (chains) and categories are
+ * stored once, and numeric IDs such as OSM node IDs are kept as longs.
+ * {@link PlaceInfo} objects are only created for the rows a caller asks for.
+ * <p>
+ * Rows are appended in insertion order. Adding a place with the ID of an
+ * existing row replaces that row, and the new row keeps the categories of
+ * the old one, so a place found by several searches stays listed under each
+ * of them. Deleted rows leave gaps until {@link #compact()}, which renumbers
+ * the rows. Not thread-safe.
+ */
+public final class PlaceTable {
+    private static final int NO_STRING = -1;
+    private static final long NO_NUMBER = -1;
+    private static final int MIN_COMPACT_ROWS = 1024;
+    // A row's categories are stored as one dictionary string, joined by this
+    private static final char CATEGORY_SEPARATOR = '\n';
+    
+    private StringDictionary strings;
+    // An ID is its prefix (a dictionary code) followed by its number, if it has one
+    private int[] idPrefixes;
+    private long[] idNumbers;
+    private int[] names;
+    private int[] addresses;
+    private int[] phoneNumbers;
+    // The set of categories of each row, as one dictionary code
+    private int[] categories;
+    private int[] latitudes;
+    private int[] longitudes;
+    private float[] ratings;
+    private long[] storedAt;
+    private BitSet sampleData = new BitSet();
+    private BitSet deleted = new BitSet();
+    // Open-addressing index from ID to row + 1; slots of deleted rows are skipped over
+    private int[] idSlots;
+    private int rowCount;
+    private int deletedCount;
+    
+    /**
+     * Create an empty table.
+     */
+    public PlaceTable() {
+        this(64);
+    }
+    
+    /**
+     * Create an empty table sized for a number of places.
+     * @param expectedPlaces The number of places expected
+     */
+    public PlaceTable(int expectedPlaces) {
+        int capacity = Math.max(4, expectedPlaces);
+        strings = new StringDictionary(capacity);
+        idPrefixes = new int[capacity];
+        idNumbers = new long[capacity];
+        names = new int[capacity];
+        addresses = new int[capacity];
+        phoneNumbers = new int[capacity];
+        categories = new int[capacity];
+        latitudes = new int[capacity];
+        longitudes = new int[capacity];
+        ratings = new float[capacity];
+        storedAt = new long[capacity];
+        idSlots = new int[StringDictionary.tableSizeFor(capacity)];
+    }
+    
+    /**
+     * Add a place, replacing any row with the same ID.
+     * @param place The place to add
+     * @return The row of the place
+     */
+    public int add(PlaceInfo place) {
+        return add(place, null, 0);
+    }
+    
+    /**
+     * Add a place with a category it was found under, replacing any row with
+     * the same ID. The place keeps the categories of the replaced row.
+     *
+     * @param place The place to add
+     * @param category The category (can be null)
+     * @param time When the place was stored
+     * @return The row of the place
+     */
+    public int add(PlaceInfo place, String category, long time) {
+        return add(place.getId(), place.getName(), place.getLatitude(), place.getLongitude(),
+                place.getAddress(), place.getPhoneNumber(),
+                place.getRating() != null ? place.getRating() : Float.NaN, place.isSampleData(), category, time);
+    }
+    
+    /**
+     * Add a place from its field values, replacing any row with the same ID.
+     * The place keeps the categories of the replaced row. Used by bulk
+     * loaders, so no place object is needed per row.
+     *
+     * @param id The place ID (can be null)
+     * @param name The name (can be null)
+     * @param latitude The latitude
+     * @param longitude The longitude
+     * @param address The address (can be null)
+     * @param phoneNumber The phone number (can be null)
+     * @param rating The rating, or NaN for none
+     * @param isSampleData Whether the place is sample data
+     * @param category The category (can be null)
+     * @param time When the place was stored
+     * @return The row of the place
+     */
+    public int add(String id, String name, double latitude, double longitude, String address,
+                   String phoneNumber, float rating, boolean isSampleData, String category, long time) {
+        int row = appendRow();
+        if (id == null) {
+            idPrefixes[row] = NO_STRING;
+            idNumbers[row] = NO_NUMBER;
+        } else {
+            int split = numberStart(id);
+            idPrefixes[row] = strings.intern(id.substring(0, split));
+            idNumbers[row] = split < id.length() ? Long.parseLong(id.substring(split)) : NO_NUMBER;
+        }
+        names[row] = intern(name);
+        addresses[row] = intern(address);
+        phoneNumbers[row] = intern(phoneNumber);
+        categories[row] = intern(category);
+        latitudes[row] = PlaceInfoCodec.encodeCoordinate(latitude);
+        longitudes[row] = PlaceInfoCodec.encodeCoordinate(longitude);
+        ratings[row] = rating;
+        storedAt[row] = time;
+        sampleData.set(row, isSampleData);
+        
+        indexId(row);
+        return row;
+    }
+    
+    /**
+     * Move a row to the end of the insertion order with a new store time,
+     * as if its place had just been added again.
+     * @param row The row to move
+     * @param time The new store time
+     * @return The new row of the place
+     */
+    public int touch(int row, long time) {
+        int moved = appendRow();
+        idPrefixes[moved] = idPrefixes[row];
+        idNumbers[moved] = idNumbers[row];
+        names[moved] = names[row];
+        addresses[moved] = addresses[row];
+        phoneNumbers[moved] = phoneNumbers[row];
+        categories[moved] = categories[row];
+        latitudes[moved] = latitudes[row];
+        longitudes[moved] = longitudes[row];
+        ratings[moved] = ratings[row];
+        storedAt[moved] = time;
+        sampleData.set(moved, sampleData.get(row));
+        
+        indexId(moved);
+        delete(row);
+        return moved;
+    }
+    
+    /**
+     * Delete a row. Its number stays unused until {@link #compact()}.
+     * @param row The row to delete
+     */
+    public void delete(int row) {
+        if (!deleted.get(row)) {
+            deleted.set(row);
+            deletedCount++;
+        }
+    }
+    
+    /**
+     * Find the live row of a place.
+     * @param id The place ID
+     * @return The row, or -1 if no live row has this ID
+     */
+    public int findRow(String id) {
+        int split = numberStart(id);
+        int prefix = strings.find(id.substring(0, split));
+        if (prefix < 0) return -1;
+        long number = split < id.length() ? Long.parseLong(id.substring(split)) : NO_NUMBER;
+        
+        int mask = idSlots.length - 1;
+        int slot = StringDictionary.mix(idHash(prefix, number)) & mask;
+        while (idSlots[slot] != 0) {
+            int row = idSlots[slot] - 1;
+            if (!deleted.get(row) && idPrefixes[row] == prefix && idNumbers[row] == number) {
+                return row;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+    
+    // Row accessors
+    public boolean isDeleted(int row) { return deleted.get(row); }
+    public double getLatitude(int row) { return PlaceInfoCodec.decodeCoordinate(latitudes[row]); }
+    public double getLongitude(int row) { return PlaceInfoCodec.decodeCoordinate(longitudes[row]); }
+    public String getName(int row) { return string(names[row]); }
+    public String getAddress(int row) { return string(addresses[row]); }
+    public String getPhoneNumber(int row) { return string(phoneNumbers[row]); }
+    public float getRating(int row) { return ratings[row]; } // NaN for no rating
+    public boolean isSampleData(int row) { return sampleData.get(row); }
+    public long getStoredAt(int row) { return storedAt[row]; }
+    
+    /**
+     * Check whether a row was found under a category.
+     * @param row The row
+     * @param category The category
+     * @return true if the category is one of the row's
+     */
+    public boolean hasCategory(int row, String category) {
+        return categories[row] != NO_STRING && indexOfCategory(strings.get(categories[row]), category) >= 0;
+    }
+    
+    /**
+     * @return The categories of a row, in no particular order (empty if it has none)
+     */
+    public String[] getCategories(int row) {
+        if (categories[row] == NO_STRING) return new String[0];
+        return strings.get(categories[row]).split(String.valueOf(CATEGORY_SEPARATOR));
+    }
+    
+    /**
+     * List a row under one more category.
+     * @param row The row
+     * @param category The category to add (ignored if null or already listed)
+     */
+    public void addCategory(int row, String category) {
+        categories[row] = unionCategories(categories[row], category);
+    }
+    
+    /**
+     * Stop listing a row under a category. The row itself is kept.
+     * @param row The row
+     * @param category The category to remove
+     * @return true if the row is still listed under another category
+     */
+    public boolean removeCategory(int row, String category) {
+        if (categories[row] == NO_STRING) return false;
+        
+        String joined = strings.get(categories[row]);
+        int start = indexOfCategory(joined, category);
+        if (start >= 0) {
+            int end = start + category.length();
+            String remaining;
+            if (end < joined.length()) {
+                remaining = joined.substring(0, start) + joined.substring(end + 1);
+            } else {
+                remaining = start > 0 ? joined.substring(0, start - 1) : "";
+            }
+            categories[row] = remaining.isEmpty() ? NO_STRING : strings.intern(remaining);
+        }
+        return categories[row] != NO_STRING;
+    }
+    
+    /**
+     * @return The ID of a row, or null if its place has none
+     */
+    public String getId(int row) {
+        if (idPrefixes[row] == NO_STRING) return null;
+        String prefix = strings.get(idPrefixes[row]);
+        return idNumbers[row] == NO_NUMBER ? prefix : prefix + idNumbers[row];
+    }
+    
+    /**
+     * Create a place object for a row.
+     * @param row The row
+     * @return A new place with the row's values
+     */
+    public PlaceInfo get(int row) {
+        return new PlaceInfo(getId(row), getName(row), getLatitude(row), getLongitude(row),
+                getAddress(row), getPhoneNumber(row),
+                Float.isNaN(ratings[row]) ? null : ratings[row], sampleData.get(row));
+    }
+    
+    /**
+     * @return The number of rows, including deleted ones
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+    
+    /**
+     * @return The number of live places
+     */
+    public int size() {
+        return rowCount - deletedCount;
+    }
+    
+    /**
+     * @return true once most rows are deleted and compacting would pay off
+     */
+    public boolean needsCompaction() {
+        return rowCount >= MIN_COMPACT_ROWS && deletedCount * 2 >= rowCount;
+    }
+    
+    /**
+     * Drop deleted rows and strings no longer used. Live rows keep their
+     * order but get new row numbers.
+     */
+    public void compact() {
+        StringDictionary oldStrings = strings;
+        strings = new StringDictionary(Math.max(16, oldStrings.size() / 2));
+        
+        int live = 0;
+        for (int row = 0; row < rowCount; row++) {
+            if (deleted.get(row)) continue;
+            
+            idPrefixes[live] = reintern(oldStrings, idPrefixes[row]);
+            idNumbers[live] = idNumbers[row];
+            names[live] = reintern(oldStrings, names[row]);
+            addresses[live] = reintern(oldStrings, addresses[row]);
+            phoneNumbers[live] = reintern(oldStrings, phoneNumbers[row]);
+            categories[live] = reintern(oldStrings, categories[row]);
+            latitudes[live] = latitudes[row];
+            longitudes[live] = longitudes[row];
+            ratings[live] = ratings[row];
+            storedAt[live] = storedAt[row];
+            sampleData.set(live, sampleData.get(row));
+            live++;
+        }
+        sampleData.clear(live, rowCount);
+        deleted = new BitSet();
+        rowCount = live;
+        deletedCount = 0;
+        rebuildIdIndex(StringDictionary.tableSizeFor(Math.max(4, live)));
+    }
+    
+    private int appendRow() {
+        if (rowCount == idPrefixes.length) {
+            int capacity = rowCount * 2;
+            idPrefixes = Arrays.copyOf(idPrefixes, capacity);
+            idNumbers = Arrays.copyOf(idNumbers, capacity);
+            names = Arrays.copyOf(names, capacity);
+            addresses = Arrays.copyOf(addresses, capacity);
+            phoneNumbers = Arrays.copyOf(phoneNumbers, capacity);
+            categories = Arrays.copyOf(categories, capacity);
+            latitudes = Arrays.copyOf(latitudes, capacity);
+            longitudes = Arrays.copyOf(longitudes, capacity);
+            ratings = Arrays.copyOf(ratings, capacity);
+            storedAt = Arrays.copyOf(storedAt, capacity);
+        }
+        return rowCount++;
+    }
+    
+    /**
+     * Point the row's ID at it, deleting any older live row with the same ID.
+     */
+    private void indexId(int row) {
+        if (idPrefixes[row] == NO_STRING) return;
+        
+        int mask = idSlots.length - 1;
+        int slot = StringDictionary.mix(idHash(idPrefixes[row], idNumbers[row])) & mask;
+        while (idSlots[slot] != 0) {
+            int other = idSlots[slot] - 1;
+            if (other != row && idPrefixes[other] == idPrefixes[row] && idNumbers[other] == idNumbers[row]) {
+                // Reuse the slot of the replaced row, and keep what it was found under
+                if (categories[other] != categories[row]) {
+                    for (String category : getCategories(other)) {
+                        addCategory(row, category);
+                    }
+                }
+                delete(other);
+                idSlots[slot] = row + 1;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        idSlots[slot] = row + 1;
+        
+        // Slots are only freed by compaction, so count every row ever indexed
+        if (rowCount * 2 > idSlots.length) {
+            rebuildIdIndex(idSlots.length * 2);
+        }
+    }
+    
+    private void rebuildIdIndex(int tableSize) {
+        idSlots = new int[tableSize];
+        int mask = tableSize - 1;
+        for (int row = 0; row < rowCount; row++) {
+            if (deleted.get(row) || idPrefixes[row] == NO_STRING) continue;
+            
+            int slot = StringDictionary.mix(idHash(idPrefixes[row], idNumbers[row])) & mask;
+            while (idSlots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            idSlots[slot] = row + 1;
+        }
+    }
+    
+    private int unionCategories(int code, String category) {
+        if (category == null) return code;
+        if (code == NO_STRING) return strings.intern(category);
+        
+        String joined = strings.get(code);
+        if (indexOfCategory(joined, category) >= 0) return code;
+        return strings.intern(joined + CATEGORY_SEPARATOR + category);
+    }
+    
+    /**
+     * Find a whole category in a joined category set.
+     * @return The index the category starts at, or -1 if it is not in the set
+     */
+    private static int indexOfCategory(String joined, String category) {
+        int start = joined.indexOf(category);
+        while (start >= 0) {
+            int end = start + category.length();
+            if ((start == 0 || joined.charAt(start - 1) == CATEGORY_SEPARATOR)
+                    && (end == joined.length() || joined.charAt(end) == CATEGORY_SEPARATOR)) {
+                return start;
+            }
+            start = joined.indexOf(category, start + 1);
+        }
+        return -1;
+    }
+    
+    private int intern(String value) {
+        return value != null ? strings.intern(value) : NO_STRING;
+    }
+    
+    private String string(int code) {
+        return code != NO_STRING ? strings.get(code) : null;
+    }
+    
+    private int reintern(StringDictionary oldStrings, int code) {
+        return code != NO_STRING ? strings.intern(oldStrings.get(code)) : NO_STRING;
+    }
+    
+    private static int idHash(int prefix, long number) {
+        return 31 * prefix + Long.hashCode(number);
+    }
+    
+    /**
+     * Find where the trailing number of an ID starts, e.g. 0 for "123" and 5
+     * for "node/123". Numbers with a leading zero or too many digits to fit
+     * a long are kept as part of the prefix.
+     * @return The index of the first digit, or the length if there is no number
+     */
+    static int numberStart(String id) {
+        int start = id.length();
+        while (start > 0 && Character.isDigit(id.charAt(start - 1)) && id.charAt(start - 1) < 128) {
+            start--;
+        }
+        int digits = id.length() - start;
+        if (digits == 0 || digits > 18 || (digits > 1 && id.charAt(start) == '0')) {
+            return id.length();
+        }
+        return start;
+    }
+}
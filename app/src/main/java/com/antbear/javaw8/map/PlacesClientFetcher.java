@@ -0,0 +1,57 @@
+package com.antbear.javaw8.map;
+
+import android.util.Log;
+
+import com.google.android.gms.common.api.ApiException;
+import com.google.android.gms.tasks.CancellationTokenSource;
+import com.google.android.libraries.places.api.model.Place;
+import com.google.android.libraries.places.api.net.FetchPlaceRequest;
+import com.google.android.libraries.places.api.net.PlacesClient;
+
+import java.util.List;
+
+/**
+ * Fetches place details with the Places SDK for a {@link PlaceDetailsBatch}.
+ * All requests share one cancellation token, so a batch can abort them at once.
+ */
+class PlacesClientFetcher implements PlaceDetailsBatch.Fetcher {
+    private static final String TAG = "PlacesClientFetcher";
+    
+    private final PlacesClient placesClient;
+    private final List<Place.Field> placeFields;
+    private final CancellationTokenSource cancellationSource = new CancellationTokenSource();
+    
+    /**
+     * @param placesClient The client to fetch details with
+     * @param placeFields The fields to request for each place
+     */
+    PlacesClientFetcher(PlacesClient placesClient, List<Place.Field> placeFields) {
+        this.placesClient = placesClient;
+        this.placeFields = placeFields;
+    }
+    
+    @Override
+    public void fetch(String placeId, PlaceDetailsCache.Callback callback) {
+        FetchPlaceRequest request = FetchPlaceRequest.builder(placeId, placeFields)
+                .setCancellationToken(cancellationSource.getToken())
+                .build();
+        
+        placesClient.fetchPlace(request)
+            .addOnSuccessListener(response -> callback.onResult(GoogleMapsProvider.toPlaceInfo(response.getPlace())))
+            .addOnFailureListener(e -> {
+                if (e instanceof ApiException) {
+                    Log.e(TAG, "Places API error fetching place: " + ((ApiException) e).getStatusCode());
+                } else {
+                    Log.e(TAG, "Error fetching place details: " + e.getMessage(), e);
+                }
+                callback.onResult(null);
+            })
+            // Neither listener above runs for a cancelled task; the cache still waits for a result
+            .addOnCanceledListener(() -> callback.onResult(null));
+    }
+    
+    @Override
+    public void cancelAll() {
+        cancellationSource.cancel();
+    }
+}
@@ -0,0 +1,387 @@
+package com.antbear.javaw8.map;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A POI pack: every place of one category in a region, as downloaded from
+ * OSM at a known data timestamp. Packs ship in the app's assets or are
+ * sideloaded, so a new install starts with a full cache instead of
+ * downloading it from Overpass, and the region counts as synced: the first
+ * search there only fetches what changed since the pack was built.
+ * <p>
+ * After a magic number and version byte, the pack is gzip-compressed:
+ * <ul>
+ *   <li>a header with the region name, category, OSM data timestamp, build
+ *       time, the area the pack is complete for and the place count;</li>
+ *   <li>a table of the distinct strings (names, addresses, phone numbers
+ *       and ID prefixes), each stored once as a varint length and UTF-8;</li>
+ *   <li>the places in Z-order, so consecutive places are close together:
+ *       a flags byte, coordinates as varint deltas from the previous place
+ *       in 1e-7 degrees, and varint string table indices.</li>
+ * </ul>
+ * Opening a pack reads the header and string table; {@link #readPlaces()}
+ * then streams the places into a {@link PlaceTable} without creating a
+ * place object per entry. Decompressed data is parsed from a reused byte
+ * array rather than through a {@link DataInputStream}, whose per-byte reads
+ * cost more than the decompression. Packs are built by the JVM tool in
+ * {@code poipack-tool}.
+ */
+public final class PoiPack implements Closeable {
+    private static final int MAGIC = 0x4A57504B; // "JWPK"
+    private static final int VERSION = 1;
+    
+    private static final int FLAG_ADDRESS = 1;
+    private static final int FLAG_PHONE = 1 << 1;
+    private static final int FLAG_RATING = 1 << 2;
+    private static final int FLAG_ID_NUMBER = 1 << 3;
+    
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Limits that keep a corrupt header from allocating more than the pack can hold
+    private static final int MAX_STRING_LENGTH = 4096;
+    private static final int MAX_PREALLOCATED = 64 * 1024;
+    
+    private final PackInput in;
+    private final String region;
+    private final String category;
+    private final String osmTimestamp;
+    private final long createdAt;
+    private final SearchArea area;
+    private final int placeCount;
+    private final String[] strings;
+    private boolean placesRead = false;
+    
+    private PoiPack(PackInput in) throws IOException {
+        this.in = in;
+        region = in.readString();
+        category = in.readString();
+        osmTimestamp = in.readString();
+        createdAt = in.readLong();
+        area = new SearchArea(in.readDouble(), in.readDouble(), in.readDouble());
+        placeCount = in.readInt();
+        if (placeCount < 0) {
+            throw new IOException("Invalid place count " + placeCount);
+        }
+        
+        // Each place adds at most four strings, and the table has one more
+        int stringCount = in.readInt();
+        if (stringCount < 0 || stringCount > placeCount * 4L + 1) {
+            throw new IOException("Invalid string count " + stringCount);
+        }
+        // Grown as strings arrive, so a truncated pack fails with EOF before using much memory
+        String[] table = new String[Math.min(stringCount, MAX_PREALLOCATED)];
+        for (int i = 0; i < stringCount; i++) {
+            if (i == table.length) {
+                table = Arrays.copyOf(table, (int) Math.min(stringCount, table.length * 2L));
+            }
+            table[i] = in.readString();
+        }
+        strings = table;
+    }
+    
+    /**
+     * Open a pack and read its header.
+     *
+     * @param input The pack contents; closed with the pack
+     * @return The pack, ready for {@link #readPlaces()}
+     * @throws IOException If the stream is not a valid pack
+     */
+    public static PoiPack open(InputStream input) throws IOException {
+        DataInputStream header = new DataInputStream(new BufferedInputStream(input));
+        try {
+            if (header.readInt() != MAGIC) {
+                throw new IOException("Not a POI pack");
+            }
+            int version = header.readUnsignedByte();
+            if (version != VERSION) {
+                throw new IOException("Unsupported POI pack version " + version);
+            }
+            return new PoiPack(new PackInput(new GZIPInputStream(header, BUFFER_SIZE)));
+        } catch (IOException e) {
+            header.close();
+            throw e;
+        }
+    }
+    
+    // Getters
+    public String getRegion() { return region; }
+    public String getCategory() { return category; }
+    public String getOsmTimestamp() { return osmTimestamp; }
+    public long getCreatedAt() { return createdAt; }
+    public SearchArea getArea() { return area; }
+    public int getPlaceCount() { return placeCount; }
+    
+    /**
+     * Read all places of the pack. Can only be called once.
+     *
+     * @return A table with one row per place, stored under the pack's category at its build time
+     * @throws IOException If the pack is truncated or corrupt
+     */
+    public PlaceTable readPlaces() throws IOException {
+        if (placesRead) {
+            throw new IllegalStateException("Places already read");
+        }
+        placesRead = true;
+        
+        PlaceTable table = new PlaceTable(Math.min(placeCount, MAX_PREALLOCATED));
+        int latitude = 0;
+        int longitude = 0;
+        for (int i = 0; i < placeCount; i++) {
+            int flags = in.readByte();
+            latitude += decodeZigZag(in.readVarInt());
+            longitude += decodeZigZag(in.readVarInt());
+            
+            String idPrefix = string(in.readVarInt());
+            String id = (flags & FLAG_ID_NUMBER) != 0 ? idPrefix + in.readVarLong() : idPrefix;
+            String name = string(in.readVarInt());
+            String address = (flags & FLAG_ADDRESS) != 0 ? string(in.readVarInt()) : "";
+            String phone = (flags & FLAG_PHONE) != 0 ? string(in.readVarInt()) : "";
+            float rating = (flags & FLAG_RATING) != 0 ? Float.intBitsToFloat(in.readInt()) : Float.NaN;
+            
+            table.add(id, name, PlaceInfoCodec.decodeCoordinate(latitude),
+                    PlaceInfoCodec.decodeCoordinate(longitude), address, phone, rating, false,
+                    category, createdAt);
+        }
+        return table;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+    
+    /**
+     * Write a pack.
+     *
+     * @param output The stream to write to; not closed
+     * @param region Name of the region, for logs and tools
+     * @param category The category of all places (e.g. "amenity=cafe")
+     * @param osmTimestamp OSM data timestamp of the places, usable as a {@code newer:} filter
+     * @param createdAt When the pack was built
+     * @param area The area within which the pack holds every place of the category
+     * @param places The places, all with an ID, in any order
+     * @throws IOException If the stream cannot be written
+     */
+    public static void write(OutputStream output, String region, String category, String osmTimestamp,
+                             long createdAt, SearchArea area, PlaceInfo[] places) throws IOException {
+        DataOutputStream header = new DataOutputStream(output);
+        header.writeInt(MAGIC);
+        header.writeByte(VERSION);
+        header.flush();
+        
+        GZIPOutputStream compressed = new GZIPOutputStream(output, BUFFER_SIZE);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(compressed, BUFFER_SIZE));
+        writeString(out, region);
+        writeString(out, category);
+        writeString(out, osmTimestamp);
+        out.writeLong(createdAt);
+        out.writeDouble(area.getLatitude());
+        out.writeDouble(area.getLongitude());
+        out.writeDouble(area.getRadiusMeters());
+        out.writeInt(places.length);
+        
+        Integer[] order = MortonOrder.sort(places);
+        Map<String, Integer> stringIndices = new HashMap<>();
+        String[] stringTable = new String[places.length * 4 + 1];
+        for (PlaceInfo place : places) {
+            String id = place.getId();
+            addString(stringIndices, stringTable, id.substring(0, PlaceTable.numberStart(id)));
+            addString(stringIndices, stringTable, place.getName() != null ? place.getName() : "");
+            if (hasText(place.getAddress())) addString(stringIndices, stringTable, place.getAddress());
+            if (hasText(place.getPhoneNumber())) addString(stringIndices, stringTable, place.getPhoneNumber());
+        }
+        out.writeInt(stringIndices.size());
+        for (int i = 0; i < stringIndices.size(); i++) {
+            writeString(out, stringTable[i]);
+        }
+        
+        int previousLatitude = 0;
+        int previousLongitude = 0;
+        for (Integer index : order) {
+            PlaceInfo place = places[index];
+            String id = place.getId();
+            int split = PlaceTable.numberStart(id);
+            
+            int flags = 0;
+            if (split < id.length()) flags |= FLAG_ID_NUMBER;
+            if (hasText(place.getAddress())) flags |= FLAG_ADDRESS;
+            if (hasText(place.getPhoneNumber())) flags |= FLAG_PHONE;
+            if (place.getRating() != null) flags |= FLAG_RATING;
+            out.writeByte(flags);
+            
+            int latitude = PlaceInfoCodec.encodeCoordinate(place.getLatitude());
+            int longitude = PlaceInfoCodec.encodeCoordinate(place.getLongitude());
+            writeVarInt(out, encodeZigZag(latitude - previousLatitude));
+            writeVarInt(out, encodeZigZag(longitude - previousLongitude));
+            previousLatitude = latitude;
+            previousLongitude = longitude;
+            
+            writeVarInt(out, stringIndices.get(id.substring(0, split)));
+            if ((flags & FLAG_ID_NUMBER) != 0) writeVarLong(out, Long.parseLong(id.substring(split)));
+            writeVarInt(out, stringIndices.get(place.getName() != null ? place.getName() : ""));
+            if ((flags & FLAG_ADDRESS) != 0) writeVarInt(out, stringIndices.get(place.getAddress()));
+            if ((flags & FLAG_PHONE) != 0) writeVarInt(out, stringIndices.get(place.getPhoneNumber()));
+            if ((flags & FLAG_RATING) != 0) out.writeFloat(place.getRating());
+        }
+        out.flush();
+        compressed.finish();
+    }
+    
+    private String string(int index) throws IOException {
+        if (index < 0 || index >= strings.length) {
+            throw new IOException("Invalid string index " + index);
+        }
+        return strings[index];
+    }
+    
+    private static boolean hasText(String value) {
+        return value != null && !value.isEmpty();
+    }
+    
+    private static void addString(Map<String, Integer> indices, String[] table, String value) {
+        if (!indices.containsKey(value)) {
+            table[indices.size()] = value;
+            indices.put(value, indices.size());
+        }
+    }
+    
+    private static int encodeZigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+    
+    private static int decodeZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+    
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+    
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+    
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_STRING_LENGTH) {
+            throw new IOException("String too long for a POI pack: " + bytes.length + " bytes");
+        }
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+    
+    /**
+     * Parses the decompressed pack from a byte array refilled from the stream.
+     */
+    private static final class PackInput implements Closeable {
+        private final InputStream in;
+        private byte[] buffer = new byte[BUFFER_SIZE];
+        private int position;
+        private int limit;
+        
+        PackInput(InputStream in) {
+            this.in = in;
+        }
+        
+        int readByte() throws IOException {
+            if (position == limit) {
+                require(1);
+            }
+            return buffer[position++] & 0xFF;
+        }
+        
+        int readInt() throws IOException {
+            require(4);
+            int value = ((buffer[position] & 0xFF) << 24) | ((buffer[position + 1] & 0xFF) << 16)
+                    | ((buffer[position + 2] & 0xFF) << 8) | (buffer[position + 3] & 0xFF);
+            position += 4;
+            return value;
+        }
+        
+        long readLong() throws IOException {
+            return ((long) readInt() << 32) | (readInt() & 0xFFFFFFFFL);
+        }
+        
+        double readDouble() throws IOException {
+            return Double.longBitsToDouble(readLong());
+        }
+        
+        int readVarInt() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new IOException("Malformed varint");
+        }
+        
+        long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 70; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new IOException("Malformed varint");
+        }
+        
+        String readString() throws IOException {
+            int length = readVarInt();
+            if (length < 0 || length > MAX_STRING_LENGTH) {
+                throw new IOException("Invalid string length " + length);
+            }
+            require(length);
+            String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+        
+        /**
+         * Make sure the buffer holds at least {@code count} unread bytes.
+         */
+        private void require(int count) throws IOException {
+            if (limit - position >= count) return;
+            
+            if (count > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(count, buffer.length * 2));
+            }
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+            while (limit < count) {
+                int read = in.read(buffer, limit, buffer.length - limit);
+                if (read < 0) {
+                    throw new EOFException("Truncated POI pack");
+                }
+                limit += read;
+            }
+        }
+        
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.antbear.javaw8.map;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Loads POI packs into the place store: packs shipped in the app's assets
+ * under {@code poi_packs/}, and packs sideloaded into the app's external
+ * files directory under {@code poi_packs/} (e.g. with adb or a device
+ * management tool). Each pack is loaded once; a rebuilt pack with the same
+ * file name is loaded again. Blocking; call from a background thread.
+ */
+final class PoiPackLoader {
+    private static final String TAG = "PoiPackLoader";
+    private static final String PACK_DIR = "poi_packs";
+    private static final String PACK_SUFFIX = ".pack";
+    // File name -> build time of the pack last loaded from it
+    private static final String PREFS_NAME = "poi_packs";
+    
+    private PoiPackLoader() {
+        // Static helpers only
+    }
+    
+    /**
+     * Load the bundled and sideloaded packs not loaded yet.
+     * @param context Any context
+     * @param store The store to load into, already loaded from disk
+     */
+    static void loadNewPacks(Context context, LocalPlaceStore store) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        
+        try {
+            String[] assetNames = context.getAssets().list(PACK_DIR);
+            if (assetNames != null) {
+                for (String name : assetNames) {
+                    if (!name.endsWith(PACK_SUFFIX)) continue;
+                    load("asset:" + name, context.getAssets().open(PACK_DIR + "/" + name), store, prefs);
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error listing bundled POI packs: " + e.getMessage(), e);
+        }
+        
+        File sideloadDir = context.getExternalFilesDir(PACK_DIR);
+        File[] files = sideloadDir != null ? sideloadDir.listFiles() : null;
+        if (files != null) {
+            for (File file : files) {
+                if (!file.getName().endsWith(PACK_SUFFIX)) continue;
+                try {
+                    load("file:" + file.getName(), new FileInputStream(file), store, prefs);
+                } catch (IOException e) {
+                    Log.e(TAG, "Error opening POI pack " + file + ": " + e.getMessage(), e);
+                }
+            }
+        }
+    }
+    
+    private static void load(String key, InputStream input, LocalPlaceStore store, SharedPreferences prefs) {
+        long start = System.nanoTime();
+        try (PoiPack pack = PoiPack.open(input)) {
+            if (prefs.getLong(key, Long.MIN_VALUE) >= pack.getCreatedAt()) return;
+            
+            int added = store.addPack(pack);
+            if (added < 0) {
+                // Not recorded, so it is tried again if the store is made larger
+                Log.e(TAG, "POI pack " + key + " has more places than the store can hold");
+                return;
+            }
+            prefs.edit().putLong(key, pack.getCreatedAt()).apply();
+            Log.d(TAG, "Loaded POI pack " + pack.getRegion() + " (" + pack.getCategory() + "): " + added
+                    + " of " + pack.getPlaceCount() + " places in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms");
+        } catch (IOException e) {
+            Log.e(TAG, "Error loading POI pack " + key + ": " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.antbear.javaw8.map;
+
+/**
+ * Circular area covered by a completed or in-flight place search.
+ * Used to decide whether a new position needs a fresh search or is
+ * already served by the results on the map.
+ */
+public class SearchArea {
+    private static final double EARTH_RADIUS_METERS = 6371000.0;
+    
+    private final double latitude;
+    private final double longitude;
+    private final double radiusMeters;
+    
+    /**
+     * Create a new search area.
+     * 
+     * @param latitude Latitude of the search center
+     * @param longitude Longitude of the search center
+     * @param radiusMeters Search radius in meters
+     */
+    public SearchArea(double latitude, double longitude, double radiusMeters) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.radiusMeters = radiusMeters;
+    }
+    
+    // Getters
+    public double getLatitude() { return latitude; }
+    public double getLongitude() { return longitude; }
+    public double getRadiusMeters() { return radiusMeters; }
+    
+    /**
+     * Check whether a neighborhood around a position lies entirely inside this area.
+     * 
+     * @param latitude Latitude of the position
+     * @param longitude Longitude of the position
+     * @param neighborhoodMeters Radius around the position that must be covered
+     * @return true if the whole neighborhood is inside the searched area
+     */
+    public boolean covers(double latitude, double longitude, double neighborhoodMeters) {
+        return distanceMeters(this.latitude, this.longitude, latitude, longitude)
+                + neighborhoodMeters <= radiusMeters;
+    }
+    
+    /**
+     * Great-circle distance between two positions (haversine formula).
+     * 
+     * @return Distance in meters
+     */
+    public static double distanceMeters(double lat1, double lng1, double lat2, double lng2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLng = Math.toRadians(lng2 - lng1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLng / 2) * Math.sin(dLng / 2);
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1.0, Math.sqrt(a)));
+    }
+}
@@ -0,0 +1,134 @@
+package com.antbear.javaw8.map;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.HttpUrl;
+import okhttp3.Protocol;
+
+/**
+ * Times the phases of an HTTP call that belongs to a search: waiting for a
+ * dispatcher thread, DNS, connect, TLS, time to first byte and the body
+ * download, plus the bytes transferred. Calls are matched to their search
+ * by a {@link SearchTrace} request tag; other calls are not timed. Each
+ * call gets its own listener, and OkHttp calls it on one thread at a time.
+ */
+final class SearchEventListener extends EventListener {
+    static final Factory FACTORY = call -> {
+        SearchTrace trace = call.request().tag(SearchTrace.class);
+        return trace != null ? new SearchEventListener(trace) : EventListener.NONE;
+    };
+    
+    private final SearchTrace trace;
+    private long callStart;
+    private boolean queueRecorded;
+    private long dnsStart;
+    private long connectStart;
+    private long secureConnectStart;
+    private long requestStart;
+    private long bodyStart;
+    
+    private SearchEventListener(SearchTrace trace) {
+        this.trace = trace;
+    }
+    
+    @Override
+    public void callStart(Call call) {
+        // Called on enqueue; the next event comes from the dispatcher thread
+        callStart = System.nanoTime();
+    }
+    
+    @Override
+    public void proxySelectStart(Call call, HttpUrl url) {
+        endQueue();
+    }
+    
+    @Override
+    public void connectionAcquired(Call call, Connection connection) {
+        // A pooled connection skips proxy selection
+        endQueue();
+    }
+    
+    private void endQueue() {
+        if (queueRecorded) return;
+        queueRecorded = true;
+        trace.recordSince(SearchMetrics.Stage.HTTP_QUEUE, callStart);
+    }
+    
+    @Override
+    public void dnsStart(Call call, String domainName) {
+        dnsStart = System.nanoTime();
+    }
+    
+    @Override
+    public void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList) {
+        trace.recordSince(SearchMetrics.Stage.HTTP_DNS, dnsStart);
+    }
+    
+    @Override
+    public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+        connectStart = System.nanoTime();
+    }
+    
+    @Override
+    public void secureConnectStart(Call call) {
+        secureConnectStart = System.nanoTime();
+    }
+    
+    @Override
+    public void secureConnectEnd(Call call, Handshake handshake) {
+        trace.recordSince(SearchMetrics.Stage.HTTP_TLS, secureConnectStart);
+    }
+    
+    @Override
+    public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+        // Includes the TLS handshake
+        trace.recordSince(SearchMetrics.Stage.HTTP_CONNECT, connectStart);
+    }
+    
+    @Override
+    public void connectFailed(Call call, InetSocketAddress inetSocketAddress, Proxy proxy,
+                              Protocol protocol, IOException ioe) {
+        trace.recordSince(SearchMetrics.Stage.HTTP_CONNECT, connectStart);
+    }
+    
+    @Override
+    public void requestHeadersStart(Call call) {
+        requestStart = System.nanoTime();
+    }
+    
+    @Override
+    public void requestBodyEnd(Call call, long byteCount) {
+        trace.add(SearchMetrics.Counter.BYTES_SENT, byteCount);
+    }
+    
+    @Override
+    public void responseHeadersStart(Call call) {
+        trace.recordSince(SearchMetrics.Stage.HTTP_TTFB, requestStart);
+    }
+    
+    @Override
+    public void responseBodyStart(Call call) {
+        bodyStart = System.nanoTime();
+    }
+    
+    @Override
+    public void responseBodyEnd(Call call, long byteCount) {
+        trace.recordSince(SearchMetrics.Stage.HTTP_BODY, bodyStart);
+        trace.add(SearchMetrics.Counter.BYTES_RECEIVED, byteCount);
+    }
+    
+    @Override
+    public void callFailed(Call call, IOException ioe) {
+        // A newer search cancelling this one is not a failure
+        if (call.isCanceled()) return;
+        trace.add(SearchMetrics.Counter.HTTP_FAILURES, 1);
+    }
+}
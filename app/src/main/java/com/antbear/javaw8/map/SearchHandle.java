@@ -0,0 +1,43 @@
+package com.antbear.javaw8.map;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Handle to an in-flight place search started with
+ * {@link MapProvider#streamNearbyPlaces}. Allows the caller to cancel the
+ * search, wait for it to finish, or check its status.
+ */
+public interface SearchHandle {
+    
+    /**
+     * Search lifecycle states.
+     */
+    enum Status {
+        RUNNING,
+        COMPLETED,
+        FAILED,
+        CANCELLED
+    }
+    
+    /**
+     * Cancel the search. No further callbacks are delivered after this returns,
+     * including the completion or error of a search that already finished;
+     * its status stays as it was.
+     */
+    void cancel();
+    
+    /**
+     * Block until the search finishes. Must not be called on the main thread.
+     * @param timeout The maximum time to wait
+     * @param unit The unit of the timeout
+     * @return true if the search finished, false if the timeout elapsed first
+     * @throws InterruptedException If the waiting thread is interrupted
+     */
+    boolean await(long timeout, TimeUnit unit) throws InterruptedException;
+    
+    /**
+     * Get the current status of the search.
+     * @return The current status
+     */
+    Status getStatus();
+}
@@ -0,0 +1,225 @@
+package com.antbear.javaw8.map;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Where search time goes, per stage of the pipeline: from the location fix
+ * through the HTTP exchange and parsing to attaching markers. Each stage
+ * keeps a {@link LatencyHistogram}, counters track cache hits and bytes
+ * transferred, and the last few searches are kept with their own stage
+ * timings. Everything is in memory only and resets with the process; see
+ * {@link #toJson()} to take it elsewhere. Thread-safe.
+ */
+public final class SearchMetrics {
+    private static final int RECENT_SEARCHES = 50;
+    private static final SearchMetrics INSTANCE = new SearchMetrics();
+    
+    /**
+     * Timed stages. Parsing streams from the response, so PARSE overlaps HTTP_BODY.
+     */
+    public enum Stage {
+        LOCATION_COARSE("location.coarse"),
+        LOCATION_REFINED("location.refined"),
+        LOCAL_LOOKUP("local.lookup"),
+        HTTP_QUEUE("http.queue"),
+        HTTP_DNS("http.dns"),
+        HTTP_CONNECT("http.connect"),
+        HTTP_TLS("http.tls"),
+        HTTP_TTFB("http.ttfb"),
+        HTTP_BODY("http.body"),
+        PARSE("parse"),
+        RANK("rank"),
+        FIRST_RESULTS("search.first_results"),
+        TOTAL("search.total"),
+        MARKER_ATTACH("markers.attach");
+        
+        private final String key;
+        
+        Stage(String key) {
+            this.key = key;
+        }
+        
+        public String getKey() { return key; }
+    }
+    
+    /**
+     * Counted events.
+     */
+    public enum Counter {
+        SEARCHES("searches"),
+        LOCAL_HIT("cache.local.hit"),
+        LOCAL_MISS("cache.local.miss"),
+        OVERPASS_SKIPPED_FRESH("cache.overpass.fresh"),
+        OVERPASS_DIFF("cache.overpass.diff"),
+        OVERPASS_FULL("cache.overpass.full"),
+        HTTP_FAILURES("http.failures"),
+        BYTES_SENT("http.bytes_sent"),
+        BYTES_RECEIVED("http.bytes_received");
+        
+        private final String key;
+        
+        Counter(String key) {
+            this.key = key;
+        }
+        
+        public String getKey() { return key; }
+    }
+    
+    private final Map<Stage, LatencyHistogram> histograms = new EnumMap<>(Stage.class);
+    private final Map<Counter, AtomicLong> counters = new EnumMap<>(Counter.class);
+    private final ArrayDeque<SearchTrace> recent = new ArrayDeque<>();
+    private volatile long since = System.currentTimeMillis();
+    
+    private SearchMetrics() {
+        for (Stage stage : Stage.values()) {
+            histograms.put(stage, new LatencyHistogram());
+        }
+        for (Counter counter : Counter.values()) {
+            counters.put(counter, new AtomicLong());
+        }
+    }
+    
+    public static SearchMetrics getInstance() {
+        return INSTANCE;
+    }
+    
+    /**
+     * Start timing a search. Finish it with {@link SearchTrace#finish}.
+     * @param query The search query
+     * @param radius The search radius (in meters)
+     * @return The trace to record the search's stages on
+     */
+    public SearchTrace startTrace(String query, double radius) {
+        add(Counter.SEARCHES, 1);
+        return new SearchTrace(this, query, radius);
+    }
+    
+    /**
+     * Record a stage that is not part of one search, such as a location fix.
+     * @param stage The stage
+     * @param durationNanos How long it took
+     */
+    public void record(Stage stage, long durationNanos) {
+        histograms.get(stage).record(durationNanos / 1000);
+    }
+    
+    public void add(Counter counter, long amount) {
+        counters.get(counter).addAndGet(amount);
+    }
+    
+    public long getCount(Counter counter) {
+        return counters.get(counter).get();
+    }
+    
+    void addRecent(SearchTrace trace) {
+        synchronized (recent) {
+            if (recent.size() == RECENT_SEARCHES) {
+                recent.pollFirst();
+            }
+            recent.addLast(trace);
+        }
+    }
+    
+    /**
+     * Forget everything recorded so far.
+     */
+    public void reset() {
+        for (LatencyHistogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+        for (AtomicLong counter : counters.values()) {
+            counter.set(0);
+        }
+        synchronized (recent) {
+            recent.clear();
+        }
+        since = System.currentTimeMillis();
+    }
+    
+    /**
+     * Format the stage percentiles and counters as a fixed-width table for the debug panel.
+     * @return The summary, one stage or counter per line
+     */
+    public String formatSummary() {
+        StringBuilder summary = new StringBuilder();
+        summary.append(String.format(Locale.US, "%-22s %5s %7s %7s %7s %7s%n",
+                "stage (ms)", "n", "p50", "p90", "p99", "max"));
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram histogram = histograms.get(stage);
+            if (histogram.getCount() == 0) continue;
+            
+            summary.append(String.format(Locale.US, "%-22s %5d %7.1f %7.1f %7.1f %7.1f%n",
+                    stage.getKey(), histogram.getCount(),
+                    histogram.getPercentileMicros(50) / 1000.0,
+                    histogram.getPercentileMicros(90) / 1000.0,
+                    histogram.getPercentileMicros(99) / 1000.0,
+                    histogram.getMaxMicros() / 1000.0));
+        }
+        summary.append('\n');
+        for (Counter counter : Counter.values()) {
+            summary.append(String.format(Locale.US, "%-22s %d%n", counter.getKey(), getCount(counter)));
+        }
+        return summary.toString();
+    }
+    
+    /**
+     * Export everything recorded as JSON: per-stage histograms summarized
+     * as percentiles (in microseconds), the counters, and the recent searches.
+     * @return The JSON document
+     */
+    public String toJson() {
+        List<SearchTrace> searches;
+        synchronized (recent) {
+            searches = new ArrayList<>(recent);
+        }
+        
+        StringWriter out = new StringWriter();
+        try (JsonWriter writer = new JsonWriter(out)) {
+            writer.setIndent("  ");
+            writer.beginObject();
+            writer.name("since").value(since);
+            writer.name("exportedAt").value(System.currentTimeMillis());
+            
+            writer.name("stages").beginObject();
+            for (Stage stage : Stage.values()) {
+                LatencyHistogram histogram = histograms.get(stage);
+                writer.name(stage.getKey()).beginObject()
+                        .name("count").value(histogram.getCount())
+                        .name("meanUs").value(histogram.getMeanMicros())
+                        .name("p50Us").value(histogram.getPercentileMicros(50))
+                        .name("p90Us").value(histogram.getPercentileMicros(90))
+                        .name("p99Us").value(histogram.getPercentileMicros(99))
+                        .name("maxUs").value(histogram.getMaxMicros())
+                        .endObject();
+            }
+            writer.endObject();
+            
+            writer.name("counters").beginObject();
+            for (Counter counter : Counter.values()) {
+                writer.name(counter.getKey()).value(getCount(counter));
+            }
+            writer.endObject();
+            
+            writer.name("recentSearches").beginArray();
+            for (SearchTrace trace : searches) {
+                trace.writeJson(writer);
+            }
+            writer.endArray();
+            writer.endObject();
+        } catch (IOException e) {
+            // Not thrown by a StringWriter
+            throw new IllegalStateException(e);
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,122 @@
+package com.antbear.javaw8.map;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Default {@link SearchHandle} used by the providers.
+ * Thread-safe: batches, completion and errors may be reported from any
+ * thread and are forwarded to the listener on the main thread (or the
+ * executor given at construction), in order, unless the search has been
+ * cancelled in the meantime. Cancelling also drops the completion or error
+ * callback of a search that finished but was not reported yet.
+ */
+class SearchTask implements SearchHandle {
+    private final MapProvider.OnPlacesStreamListener listener;
+    private final Executor callbackExecutor;
+    private final AtomicReference<Status> status = new AtomicReference<>(Status.RUNNING);
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private final AtomicInteger deliveredCount = new AtomicInteger();
+    // Set by cancel() even after the search finished, so callbacks already posted are dropped
+    private volatile boolean cancelRequested;
+    private volatile Runnable cancelAction;
+    
+    SearchTask(MapProvider.OnPlacesStreamListener listener) {
+        this(listener, AppExecutors.main());
+    }
+    
+    /**
+     * @param callbackExecutor Executor the listener is called on; must run tasks in submission order
+     */
+    SearchTask(MapProvider.OnPlacesStreamListener listener, Executor callbackExecutor) {
+        this.listener = listener;
+        this.callbackExecutor = callbackExecutor;
+    }
+    
+    /**
+     * Set the action that aborts the underlying work (e.g. cancelling an HTTP call).
+     * Runs immediately if the search was already cancelled.
+     */
+    void setCancelAction(Runnable action) {
+        cancelAction = action;
+        if (status.get() == Status.CANCELLED) {
+            action.run();
+        }
+    }
+    
+    boolean isCancelled() {
+        return status.get() == Status.CANCELLED;
+    }
+    
+    boolean isRunning() {
+        return status.get() == Status.RUNNING;
+    }
+    
+    /**
+     * Forward a batch of places to the listener.
+     */
+    void deliverBatch(PlaceInfo[] batch) {
+        if (!isRunning() || batch.length == 0) return;
+        
+        deliveredCount.addAndGet(batch.length);
+        callbackExecutor.execute(() -> {
+            if (!cancelRequested) {
+                listener.onPlacesBatch(batch);
+            }
+        });
+    }
+    
+    /**
+     * Mark the search as completed and notify the listener.
+     */
+    void complete() {
+        if (!status.compareAndSet(Status.RUNNING, Status.COMPLETED)) return;
+        
+        finished.countDown();
+        int total = deliveredCount.get();
+        callbackExecutor.execute(() -> {
+            if (!cancelRequested) {
+                listener.onSearchComplete(total);
+            }
+        });
+    }
+    
+    /**
+     * Mark the search as failed and notify the listener.
+     */
+    void fail(String errorMessage) {
+        if (!status.compareAndSet(Status.RUNNING, Status.FAILED)) return;
+        
+        finished.countDown();
+        callbackExecutor.execute(() -> {
+            if (!cancelRequested) {
+                listener.onSearchError(errorMessage);
+            }
+        });
+    }
+    
+    @Override
+    public void cancel() {
+        cancelRequested = true;
+        if (!status.compareAndSet(Status.RUNNING, Status.CANCELLED)) return;
+        
+        finished.countDown();
+        Runnable action = cancelAction;
+        if (action != null) {
+            action.run();
+        }
+    }
+    
+    @Override
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return finished.await(timeout, unit);
+    }
+    
+    @Override
+    public Status getStatus() {
+        return status.get();
+    }
+}
@@ -0,0 +1,105 @@
+package com.antbear.javaw8.map;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * The stage timings of one search. Stages are recorded in the shared
+ * {@link SearchMetrics} histograms as they happen, and kept here so the
+ * search can be exported as a whole. A stage that runs more than once
+ * (e.g. one HTTP exchange per source) adds up. Thread-safe.
+ */
+public final class SearchTrace {
+    private final SearchMetrics metrics;
+    private final String query;
+    private final double radius;
+    private final long startedAt = System.currentTimeMillis();
+    private final long startNanos = System.nanoTime();
+    private final Map<SearchMetrics.Stage, Long> stageNanos = new EnumMap<>(SearchMetrics.Stage.class);
+    private long bytesReceived;
+    private int places;
+    private String outcome;
+    
+    SearchTrace(SearchMetrics metrics, String query, double radius) {
+        this.metrics = metrics;
+        this.query = query;
+        this.radius = radius;
+    }
+    
+    /**
+     * Record a stage of this search.
+     * @param stage The stage
+     * @param durationNanos How long it took
+     */
+    public void record(SearchMetrics.Stage stage, long durationNanos) {
+        metrics.record(stage, durationNanos);
+        synchronized (this) {
+            Long previous = stageNanos.get(stage);
+            stageNanos.put(stage, previous != null ? previous + durationNanos : durationNanos);
+        }
+    }
+    
+    /**
+     * Record a stage that started at the given time and ends now.
+     * @param stage The stage
+     * @param startNanos The {@link System#nanoTime()} the stage started at
+     */
+    public void recordSince(SearchMetrics.Stage stage, long startNanos) {
+        record(stage, System.nanoTime() - startNanos);
+    }
+    
+    /**
+     * Count an event of this search.
+     */
+    public void add(SearchMetrics.Counter counter, long amount) {
+        metrics.add(counter, amount);
+        if (counter == SearchMetrics.Counter.BYTES_RECEIVED) {
+            synchronized (this) {
+                bytesReceived += amount;
+            }
+        }
+    }
+    
+    /**
+     * Record the time to the first results, if none were recorded yet.
+     */
+    synchronized void markFirstResults() {
+        if (!stageNanos.containsKey(SearchMetrics.Stage.FIRST_RESULTS)) {
+            record(SearchMetrics.Stage.FIRST_RESULTS, System.nanoTime() - startNanos);
+        }
+    }
+    
+    /**
+     * Record the total time and keep the search with the recent ones.
+     * @param outcome How the search ended, e.g. "completed"
+     * @param places The number of places delivered
+     */
+    void finish(String outcome, int places) {
+        synchronized (this) {
+            if (this.outcome != null) return;
+            this.outcome = outcome;
+            this.places = places;
+        }
+        recordSince(SearchMetrics.Stage.TOTAL, startNanos);
+        metrics.addRecent(this);
+    }
+    
+    synchronized void writeJson(JsonWriter writer) throws IOException {
+        writer.beginObject()
+                .name("query").value(query)
+                .name("radiusMeters").value(Math.round(radius))
+                .name("startedAt").value(startedAt)
+                .name("outcome").value(outcome)
+                .name("places").value(places)
+                .name("bytesReceived").value(bytesReceived);
+        writer.name("stagesUs").beginObject();
+        for (Map.Entry<SearchMetrics.Stage, Long> entry : stageNanos.entrySet()) {
+            writer.name(entry.getKey().getKey()).value(entry.getValue() / 1000);
+        }
+        writer.endObject();
+        writer.endObject();
+    }
+}
@@ -0,0 +1,40 @@
+package com.antbear.javaw8.map;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs tasks one at a time, in submission order, on a shared backing executor.
+ * Lets callbacks from several threads be handled without extra locking and
+ * without dedicating a thread to them.
+ */
+class SerialExecutor implements Executor {
+    private final Executor backingExecutor;
+    private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+    private Runnable active;
+    
+    SerialExecutor(Executor backingExecutor) {
+        this.backingExecutor = backingExecutor;
+    }
+    
+    @Override
+    public synchronized void execute(Runnable command) {
+        tasks.add(() -> {
+            try {
+                command.run();
+            } finally {
+                scheduleNext();
+            }
+        });
+        if (active == null) {
+            scheduleNext();
+        }
+    }
+    
+    private synchronized void scheduleNext() {
+        active = tasks.poll();
+        if (active != null) {
+            backingExecutor.execute(active);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.antbear.javaw8.map;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import com.antbear.javaw8.StartupTimer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.UnaryOperator;
+
+/**
+ * Holds the user's settings as an immutable {@link AppSettings} snapshot.
+ * The preferences are read once on the I/O executor; afterwards reads are
+ * plain field reads, changes are written to disk on a background thread,
+ * and listeners are told about every change on the main thread.
+ */
+public class SettingsRepository {
+    private static final String TAG = "SettingsRepository";
+    
+    private static final String KEY_THEME = "app_theme";
+    private static final String KEY_SEARCH_RADIUS_KM = "search_radius_km";
+    private static final String KEY_PROGRESSIVE_SEARCH = "progressive_search";
+    private static final String KEY_USE_GOOGLE_MAPS = "use_google_maps";
+    private static final String KEY_OFFLINE_MODE = "offline_mode";
+    private static final String KEY_FRAME_STATS_HUD = "frame_stats_hud";
+    
+    // The cache warming budget keeps the file and keys the worker has always used
+    private static final String CACHE_WARMING_PREFS_NAME = "cache_warming";
+    private static final String KEY_DAILY_BYTE_BUDGET = "daily_byte_budget";
+    private static final String KEY_MAX_RUN_MS = "max_run_ms";
+    
+    /**
+     * Receives the settings once they are loaded and after every change.
+     * Called on the main thread.
+     */
+    public interface Listener {
+        void onSettingsChanged(AppSettings settings);
+    }
+    
+    private static SettingsRepository instance;
+    
+    private final Context context;
+    private final CompletableFuture<Void> loaded;
+    // Writes run in order, so the last change always wins on disk
+    private final Executor writeExecutor = new SerialExecutor(AppExecutors.io());
+    // Only touched on the main thread
+    private final List<Listener> listeners = new ArrayList<>();
+    private volatile AppSettings snapshot = AppSettings.DEFAULTS;
+    private SharedPreferences prefs;
+    private SharedPreferences cacheWarmingPrefs;
+    
+    /**
+     * Get the shared repository, starting to load the settings on first use.
+     * @param context Any context
+     * @return The repository
+     */
+    public static synchronized SettingsRepository getInstance(Context context) {
+        if (instance == null) {
+            instance = new SettingsRepository(context.getApplicationContext());
+        }
+        return instance;
+    }
+    
+    private SettingsRepository(Context context) {
+        this.context = context;
+        this.loaded = CompletableFuture.runAsync(this::load, AppExecutors.io());
+    }
+    
+    /**
+     * Get the current settings without waiting. Until the saved settings
+     * are loaded this is {@link AppSettings#DEFAULTS}.
+     * @return The current snapshot
+     */
+    public AppSettings getSnapshot() {
+        return snapshot;
+    }
+    
+    /**
+     * Wait with this, then read {@link #getSnapshot()}: the settings may have
+     * changed since they were loaded.
+     * @return A future completed once the saved settings are loaded
+     */
+    public CompletableFuture<Void> whenLoaded() {
+        return loaded;
+    }
+    
+    /**
+     * Get the default shared preferences, which the settings load opens off the
+     * main thread. Waits for the load, so only call this on a background thread.
+     * @return The preferences
+     */
+    SharedPreferences getPreferences() {
+        loaded.join();
+        return prefs;
+    }
+    
+    /**
+     * Change settings. The change is applied to the snapshot loaded from
+     * disk, on the main thread, so concurrent changes never overwrite each other.
+     * @param change Returns the new settings given the current ones
+     */
+    public void update(UnaryOperator<AppSettings> change) {
+        loaded.thenAcceptAsync(ignored -> {
+            AppSettings old = snapshot;
+            AppSettings updated = change.apply(old);
+            if (updated == old) return;
+            
+            snapshot = updated;
+            writeExecutor.execute(() -> write(old, updated));
+            for (Listener listener : new ArrayList<>(listeners)) {
+                listener.onSettingsChanged(updated);
+            }
+        }, AppExecutors.main()).exceptionally(error -> {
+            Log.e(TAG, "Error updating settings: " + error.getMessage(), error);
+            return null;
+        });
+    }
+    
+    /**
+     * Start receiving the settings: once as soon as they are loaded, then on
+     * every change. Must be called on the main thread.
+     * @param listener The listener
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+        loaded.thenAcceptAsync(ignored -> {
+            // Removed again before the load finished
+            if (listeners.contains(listener)) {
+                listener.onSettingsChanged(snapshot);
+            }
+        }, AppExecutors.main());
+    }
+    
+    /**
+     * Stop receiving changes. Must be called on the main thread.
+     * @param listener The listener
+     */
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+    
+    private void load() {
+        long start = StartupTimer.now();
+        prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        cacheWarmingPrefs = context.getSharedPreferences(CACHE_WARMING_PREFS_NAME, Context.MODE_PRIVATE);
+        
+        AppSettings defaults = AppSettings.DEFAULTS;
+        AppSettings settings = new AppSettings(
+                prefs.getInt(KEY_THEME, defaults.getThemeMode()),
+                prefs.getInt(KEY_SEARCH_RADIUS_KM, defaults.getSearchRadiusKm()),
+                prefs.getBoolean(KEY_PROGRESSIVE_SEARCH, defaults.isProgressiveSearch()),
+                prefs.getBoolean(KEY_USE_GOOGLE_MAPS, defaults.isUsingGoogleMaps()),
+                cacheWarmingPrefs.getLong(KEY_DAILY_BYTE_BUDGET, defaults.getCacheWarmingDailyBytes()),
+                cacheWarmingPrefs.getLong(KEY_MAX_RUN_MS, defaults.getCacheWarmingMaxRunMs()),
+                prefs.getBoolean(KEY_OFFLINE_MODE, defaults.isOfflineMode()),
+                prefs.getBoolean(KEY_FRAME_STATS_HUD, defaults.isFrameStatsHud()));
+        snapshot = settings;
+        StartupTimer.endSection("Settings load", start);
+    }
+    
+    private void write(AppSettings old, AppSettings updated) {
+        // commit() on this thread rather than apply(), which can block the main thread in onPause
+        SharedPreferences.Editor editor = prefs.edit();
+        if (updated.getThemeMode() != old.getThemeMode()) {
+            editor.putInt(KEY_THEME, updated.getThemeMode());
+        }
+        if (updated.getSearchRadiusKm() != old.getSearchRadiusKm()) {
+            editor.putInt(KEY_SEARCH_RADIUS_KM, updated.getSearchRadiusKm());
+        }
+        if (updated.isProgressiveSearch() != old.isProgressiveSearch()) {
+            editor.putBoolean(KEY_PROGRESSIVE_SEARCH, updated.isProgressiveSearch());
+        }
+        if (updated.isUsingGoogleMaps() != old.isUsingGoogleMaps()) {
+            editor.putBoolean(KEY_USE_GOOGLE_MAPS, updated.isUsingGoogleMaps());
+        }
+        if (updated.isOfflineMode() != old.isOfflineMode()) {
+            editor.putBoolean(KEY_OFFLINE_MODE, updated.isOfflineMode());
+        }
+        if (updated.isFrameStatsHud() != old.isFrameStatsHud()) {
+            editor.putBoolean(KEY_FRAME_STATS_HUD, updated.isFrameStatsHud());
+        }
+        if (!editor.commit()) {
+            Log.e(TAG, "Error saving settings");
+        }
+        
+        if (updated.getCacheWarmingDailyBytes() != old.getCacheWarmingDailyBytes()
+                || updated.getCacheWarmingMaxRunMs() != old.getCacheWarmingMaxRunMs()) {
+            boolean saved = cacheWarmingPrefs.edit()
+                    .putLong(KEY_DAILY_BYTE_BUDGET, updated.getCacheWarmingDailyBytes())
+                    .putLong(KEY_MAX_RUN_MS, updated.getCacheWarmingMaxRunMs())
+                    .commit();
+            if (!saved) {
+                Log.e(TAG, "Error saving the cache warming budget");
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.antbear.javaw8.map;
+
+import java.util.Arrays;
+
+/**
+ * Interns strings to dense int codes, so columns can store a 4-byte code
+ * instead of a reference to their own copy of a repeated string. Uses open
+ * addressing over an int array instead of a HashMap, so there is no entry
+ * object or boxed Integer per string. Codes are never reused. Not thread-safe.
+ */
+final class StringDictionary {
+    private String[] strings;
+    // code + 1 per slot, 0 when empty
+    private int[] slots;
+    private int size;
+    
+    StringDictionary() {
+        this(16);
+    }
+    
+    StringDictionary(int expectedSize) {
+        strings = new String[Math.max(4, expectedSize)];
+        slots = new int[tableSizeFor(expectedSize)];
+    }
+    
+    /**
+     * Get the code of a string, adding it if it is new.
+     * @param value The string (not null)
+     * @return Its code
+     */
+    int intern(String value) {
+        int slot = findSlot(value);
+        if (slots[slot] != 0) {
+            return slots[slot] - 1;
+        }
+        
+        if (size == strings.length) {
+            strings = Arrays.copyOf(strings, size * 2);
+        }
+        int code = size++;
+        strings[code] = value;
+        slots[slot] = code + 1;
+        
+        // Keep the table at most half full so probe sequences stay short
+        if (size * 2 > slots.length) {
+            rehash(slots.length * 2);
+        }
+        return code;
+    }
+    
+    /**
+     * Get the code of a string without adding it.
+     * @return Its code, or -1 if the string was never interned
+     */
+    int find(String value) {
+        return slots[findSlot(value)] - 1;
+    }
+    
+    String get(int code) {
+        return strings[code];
+    }
+    
+    int size() {
+        return size;
+    }
+    
+    private int findSlot(String value) {
+        int mask = slots.length - 1;
+        int slot = mix(value.hashCode()) & mask;
+        while (slots[slot] != 0 && !strings[slots[slot] - 1].equals(value)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+    
+    private void rehash(int tableSize) {
+        slots = new int[tableSize];
+        int mask = tableSize - 1;
+        for (int code = 0; code < size; code++) {
+            int slot = mix(strings[code].hashCode()) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = code + 1;
+        }
+    }
+    
+    static int mix(int hash) {
+        // Spread similar hashes (e.g. consecutive numbers) across the table
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+    
+    static int tableSizeFor(int expectedSize) {
+        int tableSize = 8;
+        while (tableSize < expectedSize * 2) {
+            tableSize <<= 1;
+        }
+        return tableSize;
+    }
+}
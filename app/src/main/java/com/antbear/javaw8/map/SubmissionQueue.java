@@ -0,0 +1,363 @@
+package com.antbear.javaw8.map;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.CRC32;
+
+/**
+ * Durable queue of place submissions waiting to be uploaded.
+ * <p>
+ * The queue is an append-only log. Each submission and each upload result
+ * is one record: a type byte, a length, the payload and a CRC32. Every
+ * record is synced before {@link #submit} completes, so a submission
+ * survives process death. A torn record at the end of the log, left by a
+ * crash during a write, is dropped on load. Once most records describe
+ * finished submissions, the log is rewritten with only the pending ones.
+ * <p>
+ * Pending submissions are added to the local place store, so they show on
+ * the map right away and after restarts, and are uploaded by
+ * {@link SubmissionUploadWorker}. Before a submission is queued, it is
+ * checked against the known places around it, so the same shop is not
+ * submitted twice. Thread-safe.
+ */
+public class SubmissionQueue {
+    private static final String TAG = "SubmissionQueue";
+    private static final String FILE_NAME = "submissions.log";
+    private static final int MAGIC = 0x4A57_5351; // "JWSQ"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 5;
+    
+    private static final int RECORD_SUBMITTED = 1;
+    private static final int RECORD_UPLOADED = 2;
+    private static final int RECORD_REJECTED = 3;
+    // Type, length and CRC around each payload
+    private static final int RECORD_OVERHEAD = 9;
+    private static final int COMPACT_MIN_FINISHED = 64;
+    
+    /** Category the submitted places are stored under, as found by coffee searches. */
+    static final String CATEGORY = "amenity=cafe";
+    private static final double DUPLICATE_RADIUS_METERS = 75;
+    
+    /**
+     * The outcome of a submission: either queued, or a duplicate of a known place.
+     */
+    public static class Result {
+        private final PlaceSubmission submission;
+        private final PlaceInfo duplicate;
+        
+        private Result(PlaceSubmission submission, PlaceInfo duplicate) {
+            this.submission = submission;
+            this.duplicate = duplicate;
+        }
+        
+        /**
+         * @return The queued submission, or null if it was a duplicate
+         */
+        public PlaceSubmission getSubmission() { return submission; }
+        
+        /**
+         * @return The known place the submission duplicates, or null if it was queued
+         */
+        public PlaceInfo getDuplicate() { return duplicate; }
+        
+        public boolean isDuplicate() { return duplicate != null; }
+    }
+    
+    private static SubmissionQueue instance;
+    
+    private final File file;
+    private final LocalPlaceStore placeStore;
+    private final Runnable uploadScheduler;
+    // Oldest first, which is the upload order
+    private final LinkedHashMap<String, PlaceSubmission> pending = new LinkedHashMap<>();
+    private int finishedRecords = 0;
+    private final CompletableFuture<Void> loadComplete = new CompletableFuture<>();
+    
+    /**
+     * Get the shared instance, loading it from disk on first use.
+     * @param context Any context; the application context is kept
+     * @return The shared instance
+     */
+    public static synchronized SubmissionQueue getInstance(Context context) {
+        if (instance == null) {
+            instance = new SubmissionQueue(context.getApplicationContext());
+        }
+        return instance;
+    }
+    
+    private SubmissionQueue(Context context) {
+        this(new File(context.getFilesDir(), FILE_NAME), OsmdroidProvider.getSharedPlaceStore(context),
+                () -> SubmissionUploadWorker.schedule(context));
+    }
+    
+    /**
+     * @param file The log to load from and append to
+     * @param placeStore The store pending submissions are shown from
+     * @param uploadScheduler Schedules an upload when submissions are pending
+     */
+    SubmissionQueue(File file, LocalPlaceStore placeStore, Runnable uploadScheduler) {
+        this.file = file;
+        this.placeStore = placeStore;
+        this.uploadScheduler = uploadScheduler;
+        AppExecutors.io().execute(this::loadFromDisk);
+    }
+    
+    /**
+     * Queue a place for upload, unless a place with the same name is already
+     * known close by. Queued places are shown on the map immediately.
+     *
+     * @param submission The place to submit
+     * @return A future with the result, failing if the queue cannot be written
+     */
+    public CompletableFuture<Result> submit(PlaceSubmission submission) {
+        // Both must be loaded for the duplicate check to see every known place
+        return CompletableFuture.allOf(loadComplete, placeStore.whenLoaded())
+                .thenApplyAsync(ignored -> {
+                    // Held until the place is stored, so a double tap finds the first submission
+                    synchronized (this) {
+                        PlaceInfo duplicate = findDuplicate(submission);
+                        if (duplicate != null) {
+                            Log.d(TAG, "'" + submission.getName() + "' duplicates " + duplicate.getId());
+                            return new Result(null, duplicate);
+                        }
+                        
+                        try {
+                            append(RECORD_SUBMITTED, submission);
+                        } catch (IOException e) {
+                            Log.e(TAG, "Error queueing submission: " + e.getMessage(), e);
+                            throw new IllegalStateException("Could not save the submission", e);
+                        }
+                        pending.put(submission.getId(), submission);
+                        placeStore.putAll(CATEGORY, new PlaceInfo[] { submission.toPlace() });
+                    }
+                    
+                    uploadScheduler.run();
+                    return new Result(submission, null);
+                }, AppExecutors.io());
+    }
+    
+    /**
+     * @return The number of submissions not uploaded yet
+     */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+    
+    /**
+     * Get the oldest pending submissions, once loaded from disk.
+     * @param max The maximum number to return
+     * @return The submissions, oldest first
+     */
+    List<PlaceSubmission> nextBatch(int max) {
+        loadComplete.join();
+        synchronized (this) {
+            List<PlaceSubmission> batch = new ArrayList<>(Math.min(max, pending.size()));
+            for (PlaceSubmission submission : pending.values()) {
+                if (batch.size() == max) break;
+                batch.add(submission);
+            }
+            return batch;
+        }
+    }
+    
+    /**
+     * Record that submissions were accepted by the server.
+     * @param submissions The uploaded submissions
+     * @throws IOException If the log cannot be written; they are uploaded again later
+     */
+    void markUploaded(Collection<PlaceSubmission> submissions) throws IOException {
+        finish(RECORD_UPLOADED, submissions);
+    }
+    
+    /**
+     * Record that submissions were refused by the server and must not be retried.
+     * @param submissions The refused submissions
+     * @throws IOException If the log cannot be written
+     */
+    void markRejected(Collection<PlaceSubmission> submissions) throws IOException {
+        finish(RECORD_REJECTED, submissions);
+        
+        List<String> ids = new ArrayList<>(submissions.size());
+        for (PlaceSubmission submission : submissions) {
+            ids.add(PlaceSubmission.ID_PREFIX + submission.getId());
+        }
+        placeStore.removeAll(ids);
+    }
+    
+    private PlaceInfo findDuplicate(PlaceSubmission submission) {
+        String name = PlaceDeduplicator.normalizeName(submission.getName());
+        if (name.isEmpty()) return null;
+        
+        // The same rule that merges the reports of different search sources
+        List<PlaceInfo> nearby = placeStore.findNearby(null, submission.getLatitude(),
+                submission.getLongitude(), DUPLICATE_RADIUS_METERS);
+        for (PlaceInfo place : nearby) {
+            if (PlaceDeduplicator.isSimilarName(name, PlaceDeduplicator.normalizeName(place.getName()))) {
+                return place;
+            }
+        }
+        return null;
+    }
+    
+    private synchronized void finish(int recordType, Collection<PlaceSubmission> submissions) throws IOException {
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        for (PlaceSubmission submission : submissions) {
+            if (!pending.containsKey(submission.getId())) continue;
+            records.write(encodeRecord(recordType, out -> out.writeUTF(submission.getId())));
+        }
+        appendAndSync(records.toByteArray());
+        
+        for (PlaceSubmission submission : submissions) {
+            if (pending.remove(submission.getId()) != null) {
+                finishedRecords += 2;
+            }
+        }
+        if (finishedRecords >= COMPACT_MIN_FINISHED && finishedRecords > pending.size()) {
+            compact();
+        }
+    }
+    
+    private void append(int recordType, PlaceSubmission submission) throws IOException {
+        appendAndSync(encodeRecord(recordType, submission::writeTo));
+    }
+    
+    private void appendAndSync(byte[] records) throws IOException {
+        boolean isNew = !file.exists() || file.length() == 0;
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            if (isNew) {
+                out.write(header());
+            }
+            out.write(records);
+            out.getFD().sync();
+        }
+    }
+    
+    /**
+     * Rewrite the log with only the pending submissions.
+     */
+    private void compact() throws IOException {
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tempFile)) {
+            out.write(header());
+            for (PlaceSubmission submission : pending.values()) {
+                out.write(encodeRecord(RECORD_SUBMITTED, submission::writeTo));
+            }
+            out.getFD().sync();
+        }
+        if (!tempFile.renameTo(file)) {
+            throw new IOException("Error replacing submission log");
+        }
+        finishedRecords = 0;
+        Log.d(TAG, "Compacted submission log to " + pending.size() + " pending submissions");
+    }
+    
+    private void loadFromDisk() {
+        List<PlaceInfo> places = new ArrayList<>();
+        try {
+            if (!file.exists()) return;
+            
+            byte[] data = new byte[(int) file.length()];
+            try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+                in.readFully(data);
+            }
+            
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            if (data.length < HEADER_SIZE || buffer.getInt(0) != MAGIC || data[4] != VERSION) {
+                Log.e(TAG, "Ignoring submission log with unknown format");
+                return;
+            }
+            
+            int validLength = HEADER_SIZE;
+            synchronized (this) {
+                while (validLength + RECORD_OVERHEAD <= data.length) {
+                    int type = data[validLength];
+                    int length = buffer.getInt(validLength + 1);
+                    if (length < 0 || length > data.length - validLength - RECORD_OVERHEAD) break;
+                    
+                    CRC32 crc = new CRC32();
+                    crc.update(data, validLength, 5 + length);
+                    if ((int) crc.getValue() != buffer.getInt(validLength + 5 + length)) break;
+                    
+                    DataInputStream payload = new DataInputStream(
+                            new ByteArrayInputStream(data, validLength + 5, length));
+                    if (type == RECORD_SUBMITTED) {
+                        PlaceSubmission submission = PlaceSubmission.readFrom(payload);
+                        pending.put(submission.getId(), submission);
+                    } else if (type == RECORD_UPLOADED || type == RECORD_REJECTED) {
+                        pending.remove(payload.readUTF());
+                        finishedRecords += 2;
+                    }
+                    validLength += RECORD_OVERHEAD + length;
+                }
+                for (PlaceSubmission submission : pending.values()) {
+                    places.add(submission.toPlace());
+                }
+            }
+            
+            if (validLength < data.length) {
+                // A torn write at the end; drop it so later records are appended after valid ones
+                Log.e(TAG, "Dropping " + (data.length - validLength) + " bytes of incomplete records");
+                try (RandomAccessFile truncate = new RandomAccessFile(file, "rw")) {
+                    truncate.setLength(validLength);
+                }
+            }
+            Log.d(TAG, "Loaded " + places.size() + " pending submissions");
+        } catch (IOException e) {
+            Log.e(TAG, "Error reading submission log: " + e.getMessage(), e);
+        } finally {
+            loadComplete.complete(null);
+        }
+        
+        if (!places.isEmpty()) {
+            // Stored places expire; keep pending ones on the map until they are uploaded
+            placeStore.whenLoaded().thenRunAsync(() -> placeStore.putAll(CATEGORY,
+                    places.toArray(new PlaceInfo[0])), AppExecutors.io());
+            uploadScheduler.run();
+        }
+    }
+    
+    private interface PayloadWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+    
+    private static byte[] encodeRecord(int type, PayloadWriter payloadWriter) throws IOException {
+        ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream();
+        payloadWriter.write(new DataOutputStream(payloadBytes));
+        byte[] payload = payloadBytes.toByteArray();
+        
+        ByteArrayOutputStream record = new ByteArrayOutputStream(RECORD_OVERHEAD + payload.length);
+        DataOutputStream out = new DataOutputStream(record);
+        out.writeByte(type);
+        out.writeInt(payload.length);
+        out.write(payload);
+        
+        CRC32 crc = new CRC32();
+        crc.update(record.toByteArray(), 0, record.size());
+        out.writeInt((int) crc.getValue());
+        return record.toByteArray();
+    }
+    
+    private static byte[] header() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(HEADER_SIZE);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        return bytes.toByteArray();
+    }
+}
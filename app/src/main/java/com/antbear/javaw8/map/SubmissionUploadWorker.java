@@ -0,0 +1,69 @@
+package com.antbear.javaw8.map;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.BackoffPolicy;
+import androidx.work.Constraints;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.antbear.javaw8.BuildConfig;
+
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+
+/**
+ * Uploads queued {@link PlaceSubmission}s with a {@link SubmissionUploader}
+ * once the device is online, retrying with exponential backoff after
+ * network or server errors. Nothing is uploaded in builds without a
+ * submission endpoint.
+ */
+public class SubmissionUploadWorker extends Worker {
+    private static final String TAG = "SubmissionUploadWorker";
+    private static final String UNIQUE_WORK_NAME = "submission_upload";
+    private static final long INITIAL_BACKOFF_SECONDS = 30;
+    
+    public SubmissionUploadWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+    
+    /**
+     * Schedule an upload for when the device is online. A run that is
+     * already queued or running is kept, with this one appended after it.
+     * @param context Any context
+     */
+    public static void schedule(Context context) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .build();
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(SubmissionUploadWorker.class)
+                .setConstraints(constraints)
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, INITIAL_BACKOFF_SECONDS, TimeUnit.SECONDS)
+                .build();
+        WorkManager.getInstance(context).enqueueUniqueWork(
+                UNIQUE_WORK_NAME, ExistingWorkPolicy.APPEND_OR_REPLACE, request);
+    }
+    
+    @NonNull
+    @Override
+    public Result doWork() {
+        if (BuildConfig.SUBMISSION_ENDPOINT.isEmpty()) {
+            // Kept in the queue for a build that has an endpoint
+            Log.d(TAG, "No submission endpoint configured, holding uploads");
+            return Result.success();
+        }
+        
+        Context context = getApplicationContext();
+        SubmissionUploader uploader = new SubmissionUploader(new OkHttpClient(),
+                BuildConfig.SUBMISSION_ENDPOINT, context.getPackageName());
+        return uploader.uploadAll(SubmissionQueue.getInstance(context), this::isStopped)
+                ? Result.success() : Result.retry();
+    }
+}
@@ -0,0 +1,120 @@
+package com.antbear.javaw8.map;
+
+import android.util.Log;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+/**
+ * POSTs the pending submissions of a {@link SubmissionQueue} to the server
+ * as JSON batches, for {@link SubmissionUploadWorker}. Accepted batches are
+ * marked uploaded, batches the server refuses outright are dropped, and
+ * network or server errors stop the upload so it can be retried. Blocking;
+ * call from a background thread.
+ */
+final class SubmissionUploader {
+    private static final String TAG = "SubmissionUploader";
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+    private static final int BATCH_SIZE = 20;
+    
+    private final OkHttpClient httpClient;
+    private final String endpoint;
+    private final String userAgent;
+    
+    /**
+     * @param httpClient The client to upload with
+     * @param endpoint The URL submissions are POSTed to
+     * @param userAgent The User-Agent header of each request
+     */
+    SubmissionUploader(OkHttpClient httpClient, String endpoint, String userAgent) {
+        this.httpClient = httpClient;
+        this.endpoint = endpoint;
+        this.userAgent = userAgent;
+    }
+    
+    /**
+     * Upload batches until the queue is empty, an attempt fails, or the caller stops.
+     *
+     * @param queue The queue to upload from
+     * @param isStopped Checked before each batch
+     * @return false if an upload should be retried later
+     */
+    boolean uploadAll(SubmissionQueue queue, BooleanSupplier isStopped) {
+        int uploaded = 0;
+        while (!isStopped.getAsBoolean()) {
+            List<PlaceSubmission> batch;
+            try {
+                batch = queue.nextBatch(BATCH_SIZE);
+            } catch (Exception e) {
+                Log.e(TAG, "Error reading the submission queue: " + e.getMessage(), e);
+                return false;
+            }
+            if (batch.isEmpty()) break;
+            
+            Request request = new Request.Builder()
+                    .url(endpoint)
+                    .header("User-Agent", userAgent)
+                    .post(RequestBody.create(toJson(batch), JSON))
+                    .build();
+            try (Response response = httpClient.newCall(request).execute()) {
+                int code = response.code();
+                if (response.isSuccessful()) {
+                    queue.markUploaded(batch);
+                    uploaded += batch.size();
+                } else if (code >= 400 && code < 500 && code != 408 && code != 429) {
+                    // Resending the same batch would fail the same way
+                    Log.e(TAG, "Server rejected " + batch.size() + " submissions: HTTP " + code);
+                    queue.markRejected(batch);
+                } else {
+                    Log.d(TAG, "Upload failed with HTTP " + code + ", retrying later");
+                    return false;
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Upload failed: " + e.getMessage());
+                return false;
+            }
+        }
+        
+        Log.d(TAG, "Uploaded " + uploaded + " submissions, " + queue.getPendingCount() + " pending");
+        return true;
+    }
+    
+    private static String toJson(List<PlaceSubmission> batch) {
+        StringWriter out = new StringWriter();
+        try (JsonWriter writer = new JsonWriter(out)) {
+            writer.beginObject().name("submissions").beginArray();
+            for (PlaceSubmission submission : batch) {
+                writer.beginObject()
+                        .name("id").value(submission.getId())
+                        .name("name").value(submission.getName())
+                        .name("address").value(submission.getAddress())
+                        .name("phone").value(submission.getPhoneNumber())
+                        .name("rating");
+                if (submission.getRating() > 0) {
+                    writer.value(submission.getRating());
+                } else {
+                    writer.nullValue();
+                }
+                writer.name("lat").value(submission.getLatitude())
+                        .name("lon").value(submission.getLongitude())
+                        .name("createdAt").value(submission.getCreatedAt())
+                        .endObject();
+            }
+            writer.endArray().endObject();
+        } catch (IOException e) {
+            // Not thrown by a StringWriter
+            throw new IllegalStateException(e);
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,140 @@
+package com.antbear.javaw8.map;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.osmdroid.config.Configuration;
+import org.osmdroid.tileprovider.modules.SqlTileWriter;
+import org.osmdroid.tileprovider.tilesource.OnlineTileSourceBase;
+import org.osmdroid.util.MapTileIndex;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Downloads the base map tiles covering an area into osmdroid's tile cache,
+ * so the map shows them without network access later. Tiles already cached
+ * are skipped. Only used with tile sources whose usage policy allows bulk
+ * downloads. Blocking; call from a background thread.
+ */
+final class TilePrefetcher {
+    private static final String TAG = "TilePrefetcher";
+    
+    // Matches osmdroid's default maximum age of cached tiles
+    private static final long TILE_EXPIRATION_MS = 7 * 24 * 60 * 60 * 1000L; // 1 week
+    
+    private final OkHttpClient httpClient;
+    private final OnlineTileSourceBase tileSource;
+    private final SqlTileWriter tileWriter = new SqlTileWriter();
+    
+    TilePrefetcher(OkHttpClient httpClient, OnlineTileSourceBase tileSource) {
+        this.httpClient = httpClient;
+        this.tileSource = tileSource;
+    }
+    
+    /**
+     * @return true if the tile source's usage policy allows prefetching
+     */
+    boolean isAllowed() {
+        return tileSource.getTileSourcePolicy().acceptsBulkDownload();
+    }
+    
+    /**
+     * Download the missing tiles covering an area, stopping at the first limit reached.
+     *
+     * @param area The area to cover
+     * @param minZoom The lowest zoom level to fetch
+     * @param maxZoom The highest zoom level to fetch
+     * @param maxBytes The number of bytes that may be downloaded
+     * @param deadline {@link SystemClock#elapsedRealtime()} after which no new tile is requested
+     * @return The number of bytes downloaded
+     */
+    long prefetch(SearchArea area, int minZoom, int maxZoom, long maxBytes, long deadline) {
+        if (!isAllowed()) {
+            Log.d(TAG, "Tile source " + tileSource.name() + " does not allow prefetching");
+            return 0;
+        }
+        
+        double latitudeDelta = area.getRadiusMeters() / 111320.0;
+        double longitudeDelta = latitudeDelta / Math.max(0.01, Math.cos(Math.toRadians(area.getLatitude())));
+        
+        long bytes = 0;
+        int downloaded = 0;
+        for (int zoom = minZoom; zoom <= maxZoom; zoom++) {
+            int minX = tileX(area.getLongitude() - longitudeDelta, zoom);
+            int maxX = tileX(area.getLongitude() + longitudeDelta, zoom);
+            // Tile rows grow southwards
+            int minY = tileY(area.getLatitude() + latitudeDelta, zoom);
+            int maxY = tileY(area.getLatitude() - latitudeDelta, zoom);
+            
+            for (int x = minX; x <= maxX; x++) {
+                for (int y = minY; y <= maxY; y++) {
+                    if (bytes >= maxBytes || SystemClock.elapsedRealtime() >= deadline) {
+                        Log.d(TAG, "Prefetch budget reached after " + downloaded + " tiles");
+                        return bytes;
+                    }
+                    
+                    long tileIndex = MapTileIndex.getTileIndex(zoom, x, y);
+                    if (tileWriter.exists(tileSource, tileIndex)) continue;
+                    
+                    try {
+                        bytes += download(tileIndex);
+                        downloaded++;
+                    } catch (IOException e) {
+                        Log.e(TAG, "Error prefetching tile " + MapTileIndex.toString(tileIndex) + ": "
+                                + e.getMessage());
+                        return bytes;
+                    }
+                }
+            }
+        }
+        
+        Log.d(TAG, "Prefetched " + downloaded + " tiles (" + bytes + " bytes)");
+        return bytes;
+    }
+    
+    private long download(long tileIndex) throws IOException {
+        Request request = new Request.Builder()
+                .url(tileSource.getTileURLString(tileIndex))
+                .header("User-Agent", Configuration.getInstance().getUserAgentValue())
+                .build();
+        
+        try (Response response = httpClient.newCall(request).execute()) {
+            ResponseBody body = response.body();
+            if (!response.isSuccessful() || body == null) {
+                throw new IOException("HTTP " + response.code());
+            }
+            
+            byte[] data = body.bytes();
+            tileWriter.saveFile(tileSource, tileIndex, new ByteArrayInputStream(data),
+                    System.currentTimeMillis() + TILE_EXPIRATION_MS);
+            return data.length;
+        }
+    }
+    
+    /**
+     * Release the tile cache database.
+     */
+    void close() {
+        tileWriter.onDetach();
+    }
+    
+    private static int tileX(double longitude, int zoom) {
+        int tiles = 1 << zoom;
+        int x = (int) Math.floor((longitude + 180.0) / 360.0 * tiles);
+        return Math.max(0, Math.min(tiles - 1, x));
+    }
+    
+    private static int tileY(double latitude, int zoom) {
+        int tiles = 1 << zoom;
+        double latitudeRadians = Math.toRadians(latitude);
+        double mercator = Math.log(Math.tan(latitudeRadians) + 1 / Math.cos(latitudeRadians));
+        int y = (int) Math.floor((1 - mercator / Math.PI) / 2 * tiles);
+        return Math.max(0, Math.min(tiles - 1, y));
+    }
+}
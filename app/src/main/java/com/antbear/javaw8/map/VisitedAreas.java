@@ -0,0 +1,314 @@
+package com.antbear.javaw8.map;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Learns where the user searches most often, so those areas can be kept
+ * cached. Search centers are grouped into cells of roughly 1 km; each cell
+ * keeps a visit score that halves every two weeks without visits, the
+ * average search center and radius, and how often each query was used
+ * there. Loaded from and written to disk on the I/O executor. Thread-safe.
+ */
+public class VisitedAreas {
+    private static final String TAG = "VisitedAreas";
+    private static final String FILE_NAME = "visited_areas.bin";
+    private static final int MAGIC = 0x4A57_5641; // "JWVA"
+    private static final int VERSION = 1;
+    
+    private static final double CELL_DEGREES = 0.01; // about 1.1 km of latitude
+    private static final long HALF_LIFE_MS = 14 * 24 * 60 * 60 * 1000L; // 2 weeks
+    private static final int MAX_CELLS = 100;
+    private static final int MAX_QUERIES_PER_CELL = 8;
+    
+    /**
+     * A frequently searched area and the queries used there, most used first.
+     */
+    public static class Area {
+        private final SearchArea searchArea;
+        private final double score;
+        private final List<String> queries;
+        
+        Area(SearchArea searchArea, double score, List<String> queries) {
+            this.searchArea = searchArea;
+            this.score = score;
+            this.queries = queries;
+        }
+        
+        // Getters
+        public SearchArea getSearchArea() { return searchArea; }
+        public double getScore() { return score; }
+        public List<String> getQueries() { return queries; }
+    }
+    
+    private static class Cell {
+        double score;
+        long updatedAt;
+        double latitudeSum;
+        double longitudeSum;
+        double radiusSum;
+        int searches;
+        final Map<String, Integer> queryCounts = new HashMap<>();
+        
+        /**
+         * @return The score decayed to the given time
+         */
+        double scoreAt(long now) {
+            return score * Math.pow(0.5, (double) (now - updatedAt) / HALF_LIFE_MS);
+        }
+        
+        Cell copy() {
+            Cell copy = new Cell();
+            copy.score = score;
+            copy.updatedAt = updatedAt;
+            copy.latitudeSum = latitudeSum;
+            copy.longitudeSum = longitudeSum;
+            copy.radiusSum = radiusSum;
+            copy.searches = searches;
+            copy.queryCounts.putAll(queryCounts);
+            return copy;
+        }
+    }
+    
+    private static VisitedAreas instance;
+    
+    private final File file;
+    private final Map<Long, Cell> cells = new HashMap<>();
+    private final CompletableFuture<Void> loadComplete = new CompletableFuture<>();
+    private boolean writeScheduled = false;
+    
+    /**
+     * Get the shared instance, loading it from disk on first use.
+     * @param context Any context; the application context is kept
+     * @return The shared instance
+     */
+    public static synchronized VisitedAreas getInstance(Context context) {
+        if (instance == null) {
+            instance = new VisitedAreas(context.getApplicationContext());
+        }
+        return instance;
+    }
+    
+    private VisitedAreas(Context context) {
+        this.file = new File(context.getFilesDir(), FILE_NAME);
+        AppExecutors.io().execute(this::loadFromDisk);
+    }
+    
+    /**
+     * Record a search.
+     *
+     * @param query The search query
+     * @param latitude The latitude of the search center
+     * @param longitude The longitude of the search center
+     * @param radius The search radius (in meters)
+     */
+    public void recordSearch(String query, double latitude, double longitude, double radius) {
+        long now = System.currentTimeMillis();
+        String normalizedQuery = query.toLowerCase().trim();
+        
+        synchronized (this) {
+            long key = cellKey(latitude, longitude);
+            Cell cell = cells.get(key);
+            if (cell == null) {
+                if (cells.size() >= MAX_CELLS) {
+                    evictWeakestCell(now);
+                }
+                cell = new Cell();
+                cells.put(key, cell);
+            }
+            
+            cell.score = cell.scoreAt(now) + 1;
+            cell.updatedAt = now;
+            cell.latitudeSum += latitude;
+            cell.longitudeSum += longitude;
+            cell.radiusSum += radius;
+            cell.searches++;
+            if (!normalizedQuery.isEmpty()) {
+                Integer count = cell.queryCounts.get(normalizedQuery);
+                cell.queryCounts.put(normalizedQuery, count == null ? 1 : count + 1);
+                trimQueries(cell, normalizedQuery);
+            }
+        }
+        scheduleWrite();
+    }
+    
+    /**
+     * Get the most frequently searched areas, once loaded from disk.
+     *
+     * @param maxAreas The maximum number of areas to return
+     * @param minScore Areas scoring lower are left out (one recent search scores 1)
+     * @return A future with the areas, highest score first
+     */
+    public CompletableFuture<List<Area>> getFrequentAreas(int maxAreas, double minScore) {
+        return loadComplete.thenApply(ignored -> frequentAreas(maxAreas, minScore));
+    }
+    
+    private synchronized List<Area> frequentAreas(int maxAreas, double minScore) {
+        long now = System.currentTimeMillis();
+        List<Area> areas = new ArrayList<>();
+        for (Cell cell : cells.values()) {
+            double score = cell.scoreAt(now);
+            if (score < minScore) continue;
+            
+            List<Map.Entry<String, Integer>> queries = new ArrayList<>(cell.queryCounts.entrySet());
+            Collections.sort(queries, (a, b) -> Integer.compare(b.getValue(), a.getValue()));
+            List<String> queryNames = new ArrayList<>(queries.size());
+            for (Map.Entry<String, Integer> query : queries) {
+                queryNames.add(query.getKey());
+            }
+            
+            SearchArea searchArea = new SearchArea(cell.latitudeSum / cell.searches,
+                    cell.longitudeSum / cell.searches, cell.radiusSum / cell.searches);
+            areas.add(new Area(searchArea, score, queryNames));
+        }
+        
+        Collections.sort(areas, (a, b) -> Double.compare(b.score, a.score));
+        return areas.size() > maxAreas ? new ArrayList<>(areas.subList(0, maxAreas)) : areas;
+    }
+    
+    private void evictWeakestCell(long now) {
+        Long weakest = null;
+        double weakestScore = Double.MAX_VALUE;
+        for (Map.Entry<Long, Cell> entry : cells.entrySet()) {
+            double score = entry.getValue().scoreAt(now);
+            if (score < weakestScore) {
+                weakestScore = score;
+                weakest = entry.getKey();
+            }
+        }
+        cells.remove(weakest);
+    }
+    
+    private static void trimQueries(Cell cell, String newestQuery) {
+        while (cell.queryCounts.size() > MAX_QUERIES_PER_CELL) {
+            String rarest = null;
+            int rarestCount = Integer.MAX_VALUE;
+            for (Map.Entry<String, Integer> entry : cell.queryCounts.entrySet()) {
+                // The newest query always starts rarest, so never drop it
+                if (entry.getValue() < rarestCount && !entry.getKey().equals(newestQuery)) {
+                    rarestCount = entry.getValue();
+                    rarest = entry.getKey();
+                }
+            }
+            cell.queryCounts.remove(rarest);
+        }
+    }
+    
+    private static long cellKey(double latitude, double longitude) {
+        long row = (long) Math.floor((latitude + 90) / CELL_DEGREES);
+        long column = (long) Math.floor((longitude + 180) / CELL_DEGREES);
+        return row * 100_000L + column;
+    }
+    
+    private void scheduleWrite() {
+        synchronized (this) {
+            if (writeScheduled) return;
+            writeScheduled = true;
+        }
+        
+        AppExecutors.io().execute(this::writeToDisk);
+    }
+    
+    private void loadFromDisk() {
+        try {
+            if (!file.exists()) return;
+            
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                if (in.readInt() != MAGIC || in.readUnsignedByte() != VERSION) {
+                    Log.d(TAG, "Ignoring visited areas with unknown format");
+                    return;
+                }
+                
+                int count = in.readInt();
+                Map<Long, Cell> loadedCells = new HashMap<>();
+                for (int i = 0; i < count; i++) {
+                    long key = in.readLong();
+                    Cell cell = new Cell();
+                    cell.score = in.readDouble();
+                    cell.updatedAt = in.readLong();
+                    cell.latitudeSum = in.readDouble();
+                    cell.longitudeSum = in.readDouble();
+                    cell.radiusSum = in.readDouble();
+                    cell.searches = in.readInt();
+                    int queryCount = in.readInt();
+                    for (int q = 0; q < queryCount; q++) {
+                        cell.queryCounts.put(in.readUTF(), in.readInt());
+                    }
+                    loadedCells.put(key, cell);
+                }
+                
+                synchronized (this) {
+                    // Cells recorded since startup are newer than the persisted ones
+                    for (Map.Entry<Long, Cell> entry : loadedCells.entrySet()) {
+                        if (!cells.containsKey(entry.getKey()) && cells.size() < MAX_CELLS) {
+                            cells.put(entry.getKey(), entry.getValue());
+                        }
+                    }
+                }
+                Log.d(TAG, "Loaded " + count + " visited areas");
+            } catch (IOException e) {
+                Log.e(TAG, "Error reading visited areas: " + e.getMessage(), e);
+            }
+        } finally {
+            loadComplete.complete(null);
+        }
+    }
+    
+    private void writeToDisk() {
+        Map<Long, Cell> snapshot = new HashMap<>();
+        synchronized (this) {
+            writeScheduled = false;
+            for (Map.Entry<Long, Cell> entry : cells.entrySet()) {
+                snapshot.put(entry.getKey(), entry.getValue().copy());
+            }
+        }
+        
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (FileOutputStream fileOut = new FileOutputStream(tempFile)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut));
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeInt(snapshot.size());
+            for (Map.Entry<Long, Cell> entry : snapshot.entrySet()) {
+                Cell cell = entry.getValue();
+                out.writeLong(entry.getKey());
+                out.writeDouble(cell.score);
+                out.writeLong(cell.updatedAt);
+                out.writeDouble(cell.latitudeSum);
+                out.writeDouble(cell.longitudeSum);
+                out.writeDouble(cell.radiusSum);
+                out.writeInt(cell.searches);
+                out.writeInt(cell.queryCounts.size());
+                for (Map.Entry<String, Integer> query : cell.queryCounts.entrySet()) {
+                    out.writeUTF(query.getKey());
+                    out.writeInt(query.getValue());
+                }
+            }
+            out.flush();
+            // Synced first, as a rename alone does not make the new contents durable
+            fileOut.getFD().sync();
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing visited areas: " + e.getMessage(), e);
+            return;
+        }
+        
+        if (!tempFile.renameTo(file)) {
+            Log.e(TAG, "Error replacing visited areas file");
+        }
+    }
+}
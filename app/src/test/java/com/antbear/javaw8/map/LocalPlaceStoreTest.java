@@ -0,0 +1,124 @@
+package com.antbear.javaw8.map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Places found by several searches stay listed under each of their categories.
+ */
+public class LocalPlaceStoreTest {
+    private static final String CAFE = "amenity=cafe";
+    private static final double LAT = 48.8566;
+    private static final double LNG = 2.3522;
+    private static final double RADIUS = 1000;
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private LocalPlaceStore store;
+    
+    @Before
+    public void setUp() throws Exception {
+        store = new LocalPlaceStore(new File(folder.getRoot(), "places.bin"), 24 * 60 * 60 * 1000L, 100);
+        store.whenLoaded().get();
+    }
+    
+    @Test
+    public void freeTextSearchKeepsKeywordCategory() {
+        PlaceInfo cafe = place("1001", "Café de Flore");
+        store.putAll(CAFE, new PlaceInfo[] { cafe, place("1002", "Les Deux Magots") });
+        store.recordSync(CAFE, new SearchArea(LAT, LNG, RADIUS), "2024-05-14T09:41:12Z");
+        
+        // A free-text search finds the same café again
+        store.putAll("name", new PlaceInfo[] { place("1001", "Café de Flore") });
+        
+        assertNotNull(store.findSyncedArea(CAFE, LAT, LNG, RADIUS / 2));
+        assertTrue(containsId(store.findNearby(CAFE, LAT, LNG, RADIUS), "1001"));
+        assertTrue(containsId(store.findNearby("name", LAT, LNG, RADIUS), "1001"));
+        assertEquals(2, store.findNearby(CAFE, LAT, LNG, RADIUS).size());
+        assertEquals(2, store.size());
+    }
+    
+    @Test
+    public void deltaDropsOnlyTheAreaCategory() {
+        store.putAll(CAFE, new PlaceInfo[] { place("1001", "Café de Flore"), place("1002", "Les Deux Magots") });
+        store.recordSync(CAFE, new SearchArea(LAT, LNG, RADIUS), "2024-05-14T09:41:12Z");
+        store.putAll("name", new PlaceInfo[] { place("1001", "Café de Flore") });
+        
+        // Both places stopped being cafés
+        LocalPlaceStore.SyncedArea synced = store.findSyncedArea(CAFE, LAT, LNG, RADIUS / 2);
+        int removed = store.applyDelta(synced, new PlaceInfo[0], Collections.emptySet(), "2024-05-15T09:41:12Z");
+        
+        assertEquals(2, removed);
+        assertTrue(store.findNearby(CAFE, LAT, LNG, RADIUS).isEmpty());
+        assertTrue(containsId(store.findNearby("name", LAT, LNG, RADIUS), "1001"));
+        assertEquals(1, store.size());
+    }
+    
+    @Test
+    public void packMakesRoomAndListsStoredPlacesUnderItsCategory() throws IOException {
+        // A full store, including one of the pack's cafés found by a free-text search
+        PlaceInfo[] searched = new PlaceInfo[100];
+        for (int i = 0; i < searched.length; i++) {
+            searched[i] = new PlaceInfo(String.valueOf(5000 + i), "Elsewhere " + i, LAT + 1, LNG + 1, "", "",
+                    null, false);
+        }
+        searched[99] = place("1001", "Café de Flore");
+        store.putAll("name", searched);
+        
+        PlaceInfo[] packed = new PlaceInfo[10];
+        for (int i = 0; i < packed.length; i++) {
+            packed[i] = place(String.valueOf(1001 + i), "Café " + i);
+        }
+        
+        assertEquals(9, store.addPack(pack(packed)));
+        assertEquals(100, store.size());
+        assertNotNull(store.findSyncedArea(CAFE, LAT, LNG, RADIUS / 2));
+        assertEquals(10, store.findNearby(CAFE, LAT, LNG, RADIUS).size());
+        assertTrue(containsId(store.findNearby("name", LAT, LNG, RADIUS), "1001"));
+    }
+    
+    @Test
+    public void packLargerThanStoreIsRefused() throws IOException {
+        PlaceInfo[] packed = new PlaceInfo[101];
+        for (int i = 0; i < packed.length; i++) {
+            packed[i] = place(String.valueOf(1001 + i), "Café " + i);
+        }
+        
+        assertEquals(-1, store.addPack(pack(packed)));
+        assertEquals(0, store.size());
+        assertNull(store.findSyncedArea(CAFE, LAT, LNG, RADIUS / 2));
+    }
+    
+    private static PoiPack pack(PlaceInfo[] places) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PoiPack.write(out, "test", CAFE, "2024-05-14T09:41:12Z", System.currentTimeMillis(),
+                new SearchArea(LAT, LNG, RADIUS), places);
+        return PoiPack.open(new ByteArrayInputStream(out.toByteArray()));
+    }
+    
+    private static PlaceInfo place(String id, String name) {
+        return new PlaceInfo(id, name, LAT + 0.001, LNG + 0.001, "", "", null, false);
+    }
+    
+    private static boolean containsId(List<PlaceInfo> places, String id) {
+        for (PlaceInfo place : places) {
+            if (id.equals(place.getId())) return true;
+        }
+        return false;
+    }
+}
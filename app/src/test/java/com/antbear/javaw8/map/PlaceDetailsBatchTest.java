@@ -0,0 +1,183 @@
+package com.antbear.javaw8.map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link PlaceDetailsBatch} against a fake Places client whose responses
+ * arrive after a fixed latency.
+ */
+public class PlaceDetailsBatchTest {
+    private static final long LATENCY_MS = 100;
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private ScheduledExecutorService clock;
+    private PlaceDetailsCache cache;
+    private FakeFetcher fetcher;
+    private RecordingListener listener;
+    
+    @Before
+    public void setUp() {
+        clock = Executors.newScheduledThreadPool(4);
+        cache = new PlaceDetailsCache(new File(folder.getRoot(), "details.bin"), 60_000, 100);
+        fetcher = new FakeFetcher();
+        listener = new RecordingListener();
+    }
+    
+    @After
+    public void tearDown() {
+        clock.shutdownNow();
+    }
+    
+    @Test
+    public void keepsConcurrencyLimit() throws Exception {
+        PlaceDetailsBatch batch = newBatch(placeIds(10), 3, 5000);
+        batch.start();
+        
+        assertTrue(listener.finished.await(5, TimeUnit.SECONDS));
+        assertEquals(10, listener.fetchedCount);
+        assertFalse(listener.timedOut);
+        assertEquals(10, listener.places.size());
+        assertEquals(3, fetcher.maxInFlight.get());
+    }
+    
+    @Test
+    public void deadlineCancelsOutstandingFetches() throws Exception {
+        // Two rounds of two fetches fit before the deadline, the third round does not
+        PlaceDetailsBatch batch = newBatch(placeIds(10), 2, LATENCY_MS * 2 + LATENCY_MS / 2);
+        batch.start();
+        
+        assertTrue(listener.finished.await(5, TimeUnit.SECONDS));
+        assertTrue(listener.timedOut);
+        assertTrue(fetcher.cancelled.get());
+        assertTrue(listener.fetchedCount >= 2 && listener.fetchedCount < 10);
+        
+        // Nothing arrives after the batch finished
+        int delivered = listener.places.size();
+        Thread.sleep(LATENCY_MS * 3);
+        assertEquals(listener.fetchedCount, delivered);
+        assertEquals(delivered, listener.places.size());
+        assertTrue(fetcher.started.get() < 10);
+    }
+    
+    @Test
+    public void cancelStopsFetchingSilently() throws Exception {
+        PlaceDetailsBatch batch = newBatch(placeIds(10), 3, 5000);
+        batch.start();
+        Thread.sleep(LATENCY_MS / 2);
+        batch.cancel();
+        
+        Thread.sleep(LATENCY_MS * 3);
+        assertTrue(fetcher.cancelled.get());
+        assertEquals(1, listener.finished.getCount());
+        assertTrue(listener.places.isEmpty());
+        assertEquals(3, fetcher.started.get());
+    }
+    
+    @Test
+    public void cachedPlacesSkipTheNetwork() throws Exception {
+        for (String id : placeIds(4)) {
+            cache.put(place(id));
+        }
+        PlaceDetailsBatch batch = newBatch(placeIds(4), 2, 5000);
+        batch.start();
+        
+        assertTrue(listener.finished.await(5, TimeUnit.SECONDS));
+        assertEquals(4, listener.fetchedCount);
+        assertEquals(0, fetcher.started.get());
+    }
+    
+    private PlaceDetailsBatch newBatch(List<String> ids, int maxConcurrent, long deadlineMs) {
+        return new PlaceDetailsBatch(fetcher, cache, ids, maxConcurrent, deadlineMs, (action, delayMs) -> {
+            ScheduledFuture<?> future = clock.schedule(action, delayMs, TimeUnit.MILLISECONDS);
+            return () -> future.cancel(false);
+        }, listener);
+    }
+    
+    private static List<String> placeIds(int count) {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ids.add("ChIJ" + i);
+        }
+        return ids;
+    }
+    
+    private static PlaceInfo place(String id) {
+        return new PlaceInfo(id, "Place " + id, 48.8566, 2.3522, "", "", 4.5f, false);
+    }
+    
+    /**
+     * Answers every fetch after {@link #LATENCY_MS}, like a slow network.
+     */
+    private class FakeFetcher implements PlaceDetailsBatch.Fetcher {
+        final AtomicInteger started = new AtomicInteger();
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        final Map<PlaceDetailsCache.Callback, ScheduledFuture<?>> pending = new ConcurrentHashMap<>();
+        
+        @Override
+        public void fetch(String placeId, PlaceDetailsCache.Callback callback) {
+            started.incrementAndGet();
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            pending.put(callback, clock.schedule(() -> {
+                pending.remove(callback);
+                inFlight.decrementAndGet();
+                callback.onResult(place(placeId));
+            }, LATENCY_MS, TimeUnit.MILLISECONDS));
+        }
+        
+        @Override
+        public void cancelAll() {
+            cancelled.set(true);
+            for (Map.Entry<PlaceDetailsCache.Callback, ScheduledFuture<?>> entry : pending.entrySet()) {
+                if (entry.getValue().cancel(false)) {
+                    pending.remove(entry.getKey());
+                    inFlight.decrementAndGet();
+                    entry.getKey().onResult(null);
+                }
+            }
+        }
+    }
+    
+    private static class RecordingListener implements PlaceDetailsBatch.Listener {
+        final List<PlaceInfo> places = new ArrayList<>();
+        final CountDownLatch finished = new CountDownLatch(1);
+        volatile int fetchedCount;
+        volatile boolean timedOut;
+        
+        @Override
+        public synchronized void onPlaceFetched(PlaceInfo place) {
+            places.add(place);
+        }
+        
+        @Override
+        public void onFinished(int fetchedCount, boolean timedOut) {
+            this.fetchedCount = fetchedCount;
+            this.timedOut = timedOut;
+            finished.countDown();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.antbear.javaw8.map;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Callbacks of a {@link SearchTask} that are posted but not yet run when
+ * the search is cancelled.
+ */
+public class SearchTaskTest {
+    private final Queue<Runnable> posted = new ArrayDeque<>();
+    private final Executor mainThread = posted::add;
+    private final List<String> callbacks = new ArrayList<>();
+    
+    private final MapProvider.OnPlacesStreamListener listener = new MapProvider.OnPlacesStreamListener() {
+        @Override
+        public void onPlacesBatch(PlaceInfo[] places) {
+            callbacks.add("batch");
+        }
+        
+        @Override
+        public void onSearchComplete(int totalPlaces) {
+            callbacks.add("complete");
+        }
+        
+        @Override
+        public void onSearchError(String errorMessage) {
+            callbacks.add("error");
+        }
+    };
+    
+    @Test
+    public void cancelDropsPostedCompletion() {
+        SearchTask task = new SearchTask(listener, mainThread);
+        task.deliverBatch(new PlaceInfo[] { new PlaceInfo("1", "Café", 0, 0, "", "", null, false) });
+        task.complete();
+        task.cancel();
+        runPosted();
+        
+        assertTrue(callbacks.isEmpty());
+        assertEquals(SearchHandle.Status.COMPLETED, task.getStatus());
+    }
+    
+    @Test
+    public void cancelDropsPostedError() {
+        SearchTask task = new SearchTask(listener, mainThread);
+        task.fail("timeout");
+        task.cancel();
+        runPosted();
+        
+        assertTrue(callbacks.isEmpty());
+        assertEquals(SearchHandle.Status.FAILED, task.getStatus());
+    }
+    
+    @Test
+    public void finishedSearchIsReported() {
+        SearchTask task = new SearchTask(listener, mainThread);
+        task.deliverBatch(new PlaceInfo[] { new PlaceInfo("1", "Café", 0, 0, "", "", null, false) });
+        task.complete();
+        runPosted();
+        task.cancel();
+        
+        assertEquals(Arrays.asList("batch", "complete"), callbacks);
+    }
+    
+    private void runPosted() {
+        Runnable action;
+        while ((action = posted.poll()) != null) {
+            action.run();
+        }
+    }
+}
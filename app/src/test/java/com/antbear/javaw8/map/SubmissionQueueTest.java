@@ -0,0 +1,120 @@
+package com.antbear.javaw8.map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Reloading the {@link SubmissionQueue} log after a crash in the middle of a
+ * write, and telling new shops from ones already on the map.
+ */
+public class SubmissionQueueTest {
+    private static final double LAT = 48.8566;
+    private static final double LNG = 2.3522;
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private File logFile;
+    private LocalPlaceStore store;
+    
+    @Before
+    public void setUp() throws Exception {
+        logFile = new File(folder.getRoot(), "submissions.log");
+        store = new LocalPlaceStore(new File(folder.getRoot(), "places.bin"), 24 * 60 * 60 * 1000L, 100);
+        store.whenLoaded().get();
+    }
+    
+    @Test
+    public void tornTailIsDropped() throws Exception {
+        SubmissionQueue queue = newQueue();
+        queue.submit(new PlaceSubmission("Alpha Coffee", "", "", 0, LAT, LNG)).get();
+        queue.submit(new PlaceSubmission("Beta Roasters", "", "", 0, LAT + 0.01, LNG)).get();
+        long validLength = logFile.length();
+        
+        // The start of a third record: its type and part of its length
+        try (FileOutputStream out = new FileOutputStream(logFile, true)) {
+            out.write(new byte[] { 1, 0, 0 });
+        }
+        
+        SubmissionQueue reloaded = newQueue();
+        assertEquals(2, reloaded.nextBatch(10).size());
+        assertEquals(validLength, logFile.length());
+        
+        // Later records follow the valid ones
+        reloaded.submit(new PlaceSubmission("Gamma Espresso", "", "", 0, LAT + 0.02, LNG)).get();
+        assertEquals(3, newQueue().nextBatch(10).size());
+    }
+    
+    @Test
+    public void recordWithBadChecksumIsDropped() throws Exception {
+        SubmissionQueue queue = newQueue();
+        queue.submit(new PlaceSubmission("Alpha Coffee", "", "", 0, LAT, LNG)).get();
+        long firstLength = logFile.length();
+        queue.submit(new PlaceSubmission("Beta Roasters", "", "", 0, LAT + 0.01, LNG)).get();
+        
+        // A partly written payload, with the length already in place
+        try (RandomAccessFile file = new RandomAccessFile(logFile, "rw")) {
+            long position = logFile.length() - 6;
+            file.seek(position);
+            int value = file.read();
+            file.seek(position);
+            file.write(value ^ 0xFF);
+        }
+        
+        List<PlaceSubmission> pending = newQueue().nextBatch(10);
+        assertEquals(1, pending.size());
+        assertEquals("Alpha Coffee", pending.get(0).getName());
+        assertEquals(firstLength, logFile.length());
+    }
+    
+    @Test
+    public void finishedSubmissionsStayFinished() throws Exception {
+        SubmissionQueue queue = newQueue();
+        queue.submit(new PlaceSubmission("Alpha Coffee", "", "", 0, LAT, LNG)).get();
+        queue.submit(new PlaceSubmission("Beta Roasters", "", "", 0, LAT + 0.01, LNG)).get();
+        queue.markUploaded(queue.nextBatch(1));
+        
+        List<PlaceSubmission> pending = newQueue().nextBatch(10);
+        assertEquals(1, pending.size());
+        assertEquals("Beta Roasters", pending.get(0).getName());
+        assertTrue(logFile.length() > 0);
+    }
+    
+    @Test
+    public void genericNameNearbyIsNotADuplicate() throws Exception {
+        store.putAll(SubmissionQueue.CATEGORY, new PlaceInfo[] {
+                new PlaceInfo("1001", "Cafe", LAT, LNG, "", "", null, false),
+                new PlaceInfo("1002", "Bar", LAT, LNG, "", "", null, false) });
+        SubmissionQueue queue = newQueue();
+        
+        assertFalse(queue.submit(new PlaceSubmission("Cafe Luna", "", "", 0, LAT, LNG)).get().isDuplicate());
+        assertFalse(queue.submit(new PlaceSubmission("Barista Coffee", "", "", 0, LAT, LNG)).get().isDuplicate());
+    }
+    
+    @Test
+    public void sameShopNearbyIsADuplicate() throws Exception {
+        store.putAll(SubmissionQueue.CATEGORY, new PlaceInfo[] {
+                new PlaceInfo("1001", "Starbucks", LAT, LNG, "", "", null, false) });
+        SubmissionQueue queue = newQueue();
+        
+        SubmissionQueue.Result result = queue.submit(
+                new PlaceSubmission("STARBUCKS Coffee", "", "", 0, LAT + 0.0002, LNG)).get();
+        assertTrue(result.isDuplicate());
+        assertEquals("1001", result.getDuplicate().getId());
+    }
+    
+    private SubmissionQueue newQueue() {
+        return new SubmissionQueue(logFile, store, () -> { });
+    }
+}
@@ -0,0 +1,115 @@
+package com.antbear.javaw8.map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link SubmissionUploader} against a local server answering with each
+ * kind of status code.
+ */
+public class SubmissionUploaderTest {
+    private static final double LAT = 48.8566;
+    private static final double LNG = 2.3522;
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private final MockWebServer server = new MockWebServer();
+    private File logFile;
+    private LocalPlaceStore store;
+    private SubmissionQueue queue;
+    private SubmissionUploader uploader;
+    
+    @Before
+    public void setUp() throws Exception {
+        server.start();
+        logFile = new File(folder.getRoot(), "submissions.log");
+        store = new LocalPlaceStore(new File(folder.getRoot(), "places.bin"), 24 * 60 * 60 * 1000L, 100);
+        store.whenLoaded().get();
+        queue = new SubmissionQueue(logFile, store, () -> { });
+        queue.submit(new PlaceSubmission("Alpha Coffee", "", "", 0, LAT, LNG)).get();
+        queue.submit(new PlaceSubmission("Beta Roasters", "", "", 4.5f, LAT + 0.01, LNG)).get();
+        uploader = new SubmissionUploader(new OkHttpClient(), server.url("/submissions").toString(), "test");
+    }
+    
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+    
+    @Test
+    public void acceptedBatchIsMarkedUploaded() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(201));
+        
+        assertTrue(uploader.uploadAll(queue, () -> false));
+        assertEquals(0, queue.getPendingCount());
+        assertEquals(1, server.getRequestCount());
+        
+        RecordedRequest request = server.takeRequest();
+        assertEquals("POST", request.getMethod());
+        assertEquals("test", request.getHeader("User-Agent"));
+        String body = request.getBody().readUtf8();
+        assertTrue(body.contains("\"name\":\"Alpha Coffee\""));
+        assertTrue(body.contains("\"rating\":null"));
+        assertTrue(body.contains("\"name\":\"Beta Roasters\""));
+        
+        // Still uploaded after a restart, and still on the map
+        assertEquals(0, new SubmissionQueue(logFile, store, () -> { }).nextBatch(10).size());
+        assertEquals(2, store.findNearby(SubmissionQueue.CATEGORY, LAT, LNG, 2000).size());
+    }
+    
+    @Test
+    public void rejectedBatchIsDropped() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(422));
+        
+        assertTrue(uploader.uploadAll(queue, () -> false));
+        assertEquals(0, queue.getPendingCount());
+        assertEquals(1, server.getRequestCount());
+        assertTrue(store.findNearby(SubmissionQueue.CATEGORY, LAT, LNG, 2000).isEmpty());
+        assertEquals(0, new SubmissionQueue(logFile, store, () -> { }).nextBatch(10).size());
+    }
+    
+    @Test
+    public void serverErrorIsRetried() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(503));
+        
+        assertFalse(uploader.uploadAll(queue, () -> false));
+        assertEquals(2, queue.getPendingCount());
+        assertEquals(2, store.findNearby(SubmissionQueue.CATEGORY, LAT, LNG, 2000).size());
+        
+        // The next run sends the same batch again
+        server.enqueue(new MockResponse().setResponseCode(200));
+        assertTrue(uploader.uploadAll(queue, () -> false));
+        assertEquals(0, queue.getPendingCount());
+        assertEquals(2, server.getRequestCount());
+    }
+    
+    @Test
+    public void throttlingIsRetried() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(429));
+        
+        assertFalse(uploader.uploadAll(queue, () -> false));
+        assertEquals(2, queue.getPendingCount());
+    }
+    
+    @Test
+    public void stoppedUploadSendsNothing() {
+        assertTrue(uploader.uploadAll(queue, () -> true));
+        assertEquals(0, server.getRequestCount());
+        assertEquals(2, queue.getPendingCount());
+    }
+}
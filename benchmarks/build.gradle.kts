@@ -0,0 +1,56 @@
+plugins {
+    id("java")
+    id("me.champeau.jmh") version "0.7.2"
+}
+
+// Pure-Java sources from the app's map package, compiled for the host JVM
+val sharedMapSources = listOf(
+    "MapCameraPosition.java",
+    "MappedPlaceSnapshot.java",
+    "MortonOrder.java",
+    "OverpassParser.java",
+    "OverpassQueryBuilder.java",
+    "PlaceDeduplicator.java",
+    "PlaceInfo.java",
+    "PlaceInfoCodec.java",
+    "PlaceRanker.java",
+    "PlaceSearchIndex.java",
+    "PlaceSnippet.java",
+    "PlaceTable.java",
+    "PoiPack.java",
+    "SearchArea.java",
+    "StringDictionary.java",
+)
+
+sourceSets {
+    main {
+        java {
+            srcDir("../app/src/main/java")
+            sharedMapSources.forEach { include("com/antbear/javaw8/map/$it") }
+        }
+    }
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+dependencies {
+    // Streaming JSON reader used by OverpassParser, as in the app
+    implementation("com.google.code.gson:gson:2.10.1")
+    // The JSON library the Overpass parser replaced, for comparison
+    jmh("org.json:json:20231013")
+    // Retained heap sizes for the footprint comparison
+    jmh("org.openjdk.jol:jol-core:0.17")
+}
+
+tasks.withType<JavaCompile> {
+    options.encoding = "UTF-8"
+}
+
+jmh {
+    warmupIterations.set(3)
+    iterations.set(5)
+    fork.set(1)
+}
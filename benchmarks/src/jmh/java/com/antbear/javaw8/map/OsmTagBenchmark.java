@@ -0,0 +1,38 @@
+package com.antbear.javaw8.map;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapping search queries to OSM tags with
+ * {@link OverpassQueryBuilder#tagForQuery}, done once per source for every
+ * search, over a mix of keyword and free-text queries.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class OsmTagBenchmark {
+    // Keywords early and late in the chain, with and without padding, and free text that matches nothing
+    private final String[] queries = {
+            "coffee", "Coffee Shop", "  cafe ", "restaurant", "bar", "hotel", "park", "bookstore",
+            "gas station", "school", "hospital", "bank", "Starbucks", "Boulangerie Poilâne",
+            "pharmacie", "Le Pick-Clops",
+    };
+    
+    /**
+     * Map every query in the mix.
+     */
+    @Benchmark
+    public void tagForQuery(Blackhole blackhole) {
+        for (String query : queries) {
+            blackhole.consume(OverpassQueryBuilder.tagForQuery(query));
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.antbear.javaw8.map;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing an Overpass response for cafés around central Paris (about 400
+ * nodes, 150 KB): the streaming {@link OverpassParser} used by the app, with
+ * and without skipping places by position as {@link PlaceRanker} does, a
+ * Gson tree, and the org.json path the app used before.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OverpassParseBenchmark {
+    static final String FIXTURE = "/overpass_cafes_paris.json";
+    
+    private static final int MAX_RESULTS = 50;
+    
+    private String response;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        response = readFixture();
+    }
+    
+    static String readFixture() throws IOException {
+        try (InputStream in = OverpassParseBenchmark.class.getResourceAsStream(FIXTURE)) {
+            if (in == null) {
+                throw new IOException("Missing fixture " + FIXTURE);
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+    
+    /**
+     * Stream the response into a list of places.
+     */
+    @Benchmark
+    public List<PlaceInfo> streaming() throws IOException {
+        List<PlaceInfo> places = new ArrayList<>();
+        OverpassParser.parse(new StringReader(response), place -> {
+            places.add(place);
+            return true;
+        });
+        return places;
+    }
+    
+    /**
+     * Stream the response into the nearest places, skipping elements that cannot make the cut.
+     */
+    @Benchmark
+    public PlaceInfo[] streamingRanked() throws IOException {
+        PlaceRanker ranker = new PlaceRanker(SamplePlaces.CENTER_LAT, SamplePlaces.CENTER_LNG,
+                MAX_RESULTS, PlaceRanker.BY_DISTANCE);
+        OverpassParser.parse(new StringReader(response), ranker::couldAccept, ranker::offer);
+        return ranker.toSortedArray();
+    }
+    
+    /**
+     * Parse the whole response into a Gson tree, then read the places from it.
+     */
+    @Benchmark
+    public List<PlaceInfo> gsonTree() {
+        List<PlaceInfo> places = new ArrayList<>();
+        JsonArray elements = JsonParser.parseString(response).getAsJsonObject().getAsJsonArray("elements");
+        for (JsonElement item : elements) {
+            JsonObject element = item.getAsJsonObject();
+            if (!"node".equals(element.get("type").getAsString())) continue;
+            
+            JsonObject tags = element.getAsJsonObject("tags");
+            if (tags == null) continue;
+            
+            places.add(new PlaceInfo(element.get("id").getAsString(),
+                    gsonTag(tags, "name", "Unnamed Place"),
+                    element.get("lat").getAsDouble(),
+                    element.get("lon").getAsDouble(),
+                    OverpassParser.formatAddress(gsonTag(tags, "addr:street", ""),
+                            gsonTag(tags, "addr:housenumber", ""), gsonTag(tags, "addr:city", "")),
+                    gsonTag(tags, "phone", ""),
+                    null,
+                    false));
+        }
+        return places;
+    }
+    
+    private static String gsonTag(JsonObject tags, String key, String fallback) {
+        JsonElement value = tags.get(key);
+        return value != null ? value.getAsString() : fallback;
+    }
+    
+    /**
+     * Parse the whole response with org.json, as the app did before streaming.
+     */
+    @Benchmark
+    public List<PlaceInfo> orgJson() {
+        List<PlaceInfo> places = new ArrayList<>();
+        
+        JSONObject root = new JSONObject(response);
+        JSONArray elements = root.getJSONArray("elements");
+        
+        for (int i = 0; i < elements.length(); i++) {
+            JSONObject element = elements.getJSONObject(i);
+            if (!element.getString("type").equals("node")) continue;
+            
+            JSONObject tags = element.optJSONObject("tags");
+            if (tags == null) continue;
+            
+            // Android's getString() converts the numeric ID; this org.json does not
+            String id = element.get("id").toString();
+            double lat = element.getDouble("lat");
+            double lon = element.getDouble("lon");
+            
+            String name = tags.optString("name", "Unnamed Place");
+            String street = tags.optString("addr:street", "");
+            String houseNumber = tags.optString("addr:housenumber", "");
+            String city = tags.optString("addr:city", "");
+            String address = "";
+            if (!street.isEmpty()) {
+                if (!houseNumber.isEmpty()) {
+                    address = houseNumber + " " + street;
+                } else {
+                    address = street;
+                }
+                if (!city.isEmpty()) {
+                    address += ", " + city;
+                }
+            }
+            
+            places.add(new PlaceInfo(id, name, lat, lon, address, tags.optString("phone", ""), null, false));
+        }
+        return places;
+    }
+}
@@ -0,0 +1,34 @@
+package com.antbear.javaw8.map;
+
+import org.openjdk.jol.info.GraphLayout;
+
+/**
+ * Prints the retained heap size of 100k places as objects and as a
+ * {@link PlaceTable}. Run from the benchmark jar:
+ * {@code java -cp benchmarks-jmh.jar com.antbear.javaw8.map.PlaceFootprint}
+ */
+public final class PlaceFootprint {
+    private static final int PLACE_COUNT = 100_000;
+    
+    private PlaceFootprint() {
+        // Entry point only
+    }
+    
+    public static void main(String[] args) {
+        PlaceInfo[] places = SamplePlaces.generate(PLACE_COUNT);
+        long objectBytes = GraphLayout.parseInstance((Object) places).totalSize();
+        
+        PlaceTable table = new PlaceTable(places.length);
+        for (PlaceInfo place : places) {
+            table.add(place, "amenity=cafe", 0);
+        }
+        // Drop the objects first so strings shared with them are not counted twice
+        places = null;
+        long tableBytes = GraphLayout.parseInstance(table).totalSize();
+        
+        System.out.printf("%d places as PlaceInfo[]: %,d bytes (%d per place)%n",
+                PLACE_COUNT, objectBytes, objectBytes / PLACE_COUNT);
+        System.out.printf("%d places as PlaceTable:  %,d bytes (%d per place, %.0f%% of objects)%n",
+                PLACE_COUNT, tableBytes, tableBytes / PLACE_COUNT, 100.0 * tableBytes / objectBytes);
+    }
+}
@@ -0,0 +1,59 @@
+package com.antbear.javaw8.map;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Search-as-you-type over 100k place names: building the index, and the
+ * lookups made while a query is typed one character at a time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PlaceSearchIndexBenchmark {
+    private static final int PLACE_COUNT = 100_000;
+
+    @Param({"c", "ca", "caf", "cafe", "cafe b", "cafe bou", "rue montorgueil"})
+    public String query;
+    
+    private PlaceInfo[] places;
+    private PlaceSearchIndex index;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        places = SamplePlaces.generate(PLACE_COUNT);
+        
+        index = new PlaceSearchIndex();
+        index.addAll(places);
+    }
+    
+    /**
+     * One keystroke: rank the 20 best matches near the viewport center.
+     */
+    @Benchmark
+    public List<PlaceInfo> searchNearViewport() {
+        return index.search(query, SamplePlaces.CENTER_LAT, SamplePlaces.CENTER_LNG, Double.MAX_VALUE, 20);
+    }
+    
+    /**
+     * Indexing all places from scratch, e.g. after loading the place store.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public PlaceSearchIndex buildIndex() {
+        PlaceSearchIndex fresh = new PlaceSearchIndex();
+        fresh.addAll(places);
+        return fresh;
+    }
+}
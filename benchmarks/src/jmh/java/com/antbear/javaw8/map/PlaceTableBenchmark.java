@@ -0,0 +1,78 @@
+package com.antbear.javaw8.map;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Places as objects versus the columnar {@link PlaceTable}: a radius scan
+ * over 100k places, as in {@link LocalPlaceStore#findNearby}, and building
+ * the table. Heap footprints are reported by {@link PlaceFootprint}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PlaceTableBenchmark {
+    private static final int PLACE_COUNT = 100_000;
+    private static final double RADIUS_METERS = 1000;
+    
+    private PlaceInfo[] places;
+    private PlaceTable table;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        places = SamplePlaces.generate(PLACE_COUNT);
+        table = buildTable();
+    }
+    
+    /**
+     * Count the places within the radius, reading object fields.
+     */
+    @Benchmark
+    public int scanObjects() {
+        int matches = 0;
+        for (PlaceInfo place : places) {
+            if (SearchArea.distanceMeters(SamplePlaces.CENTER_LAT, SamplePlaces.CENTER_LNG,
+                    place.getLatitude(), place.getLongitude()) <= RADIUS_METERS) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+    
+    /**
+     * Count the places within the radius, reading the coordinate columns.
+     */
+    @Benchmark
+    public int scanTable() {
+        int matches = 0;
+        for (int row = 0; row < table.getRowCount(); row++) {
+            if (!table.isDeleted(row) && SearchArea.distanceMeters(SamplePlaces.CENTER_LAT,
+                    SamplePlaces.CENTER_LNG, table.getLatitude(row), table.getLongitude(row)) <= RADIUS_METERS) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+    
+    /**
+     * Load all places into a table, e.g. when the place store is read from disk.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public PlaceTable buildTable() {
+        PlaceTable fresh = new PlaceTable(places.length);
+        for (PlaceInfo place : places) {
+            fresh.add(place, "amenity=cafe", 0);
+        }
+        return fresh;
+    }
+}
@@ -0,0 +1,101 @@
+package com.antbear.javaw8.map;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bulk loading a region: reading a {@link PoiPack} into a {@link PlaceTable}
+ * versus decoding the same places from the place store's stream encoding
+ * ({@link PlaceInfoCodec}) and adding each place object to a table.
+ * Run {@link #main} for the encoded sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PoiPackBenchmark {
+    private static final int PLACE_COUNT = 5000;
+    private static final String CATEGORY = "amenity=cafe";
+    
+    private byte[] pack;
+    private byte[] stream;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        PlaceInfo[] places = SamplePlaces.generate(PLACE_COUNT);
+        
+        ByteArrayOutputStream packBytes = new ByteArrayOutputStream();
+        PoiPack.write(packBytes, "paris", CATEGORY, "2024-05-01T00:00:00Z", System.currentTimeMillis(),
+                new SearchArea(SamplePlaces.CENTER_LAT, SamplePlaces.CENTER_LNG, 20_000), places);
+        pack = packBytes.toByteArray();
+        
+        ByteArrayOutputStream streamBytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(streamBytes)) {
+            out.writeInt(places.length);
+            for (PlaceInfo place : places) {
+                PlaceInfoCodec.writePlace(out, place);
+            }
+        }
+        stream = streamBytes.toByteArray();
+    }
+    
+    /**
+     * Decompress and read the pack straight into table rows.
+     */
+    @Benchmark
+    public PlaceTable readPack() throws IOException {
+        try (PoiPack poiPack = PoiPack.open(new ByteArrayInputStream(pack))) {
+            return poiPack.readPlaces();
+        }
+    }
+    
+    /**
+     * Decode place objects from the store encoding and add them to a table.
+     */
+    @Benchmark
+    public PlaceTable decodeStream() throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(stream))) {
+            int count = in.readInt();
+            PlaceTable table = new PlaceTable(count);
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < count; i++) {
+                table.add(PlaceInfoCodec.readPlace(in), CATEGORY, now);
+            }
+            return table;
+        }
+    }
+    
+    /**
+     * Print the encoded sizes and check that the pack holds the same places.
+     */
+    public static void main(String[] args) throws IOException {
+        PoiPackBenchmark benchmark = new PoiPackBenchmark();
+        benchmark.setUp();
+        PlaceTable fromPack = benchmark.readPack();
+        PlaceTable fromStream = benchmark.decodeStream();
+        for (int row = 0; row < fromStream.getRowCount(); row++) {
+            int packRow = fromPack.findRow(fromStream.getId(row));
+            if (packRow < 0 || !fromPack.getName(packRow).equals(fromStream.getName(row))
+                    || !fromPack.getAddress(packRow).equals(fromStream.getAddress(row))
+                    || !fromPack.getPhoneNumber(packRow).equals(fromStream.getPhoneNumber(row))
+                    || fromPack.getLatitude(packRow) != fromStream.getLatitude(row)
+                    || fromPack.getLongitude(packRow) != fromStream.getLongitude(row)) {
+                throw new IllegalStateException("Mismatch at " + fromStream.getId(row));
+            }
+        }
+        System.out.println(PLACE_COUNT + " places match; pack " + benchmark.pack.length
+                + " bytes, store encoding " + benchmark.stream.length + " bytes");
+    }
+}
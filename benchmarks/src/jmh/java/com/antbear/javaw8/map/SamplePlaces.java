@@ -0,0 +1,61 @@
+package com.antbear.javaw8.map;
+
+import java.util.Random;
+
+/**
+ * Generates realistic-looking places around Paris for the benchmarks:
+ * OSM-style numeric IDs, chain and compound names, street addresses and
+ * some phone numbers. A fixed seed gives the same places on every run.
+ */
+final class SamplePlaces {
+    static final double CENTER_LAT = 48.8566;
+    static final double CENTER_LNG = 2.3522;
+    
+    private static final String[] NAME_WORDS = {
+            "Café", "Coffee", "Bäckerei", "Boulangerie", "Espresso", "Bar", "Brew", "Bean",
+            "Roasters", "Corner", "Little", "Green", "Blue", "Bottle", "Tea", "House",
+            "Pâtisserie", "Dolce", "Market", "Kaffee", "Haus", "Starbucks", "Costa", "Nero",
+            "Crème", "Latte", "Mocha", "Golden", "Station", "Garden", "Central", "Old",
+    };
+    private static final String[] STREETS = {
+            "Rue de Rivoli", "Boulevard Saint-Germain", "Avenue des Champs-Élysées",
+            "Rue Montorgueil", "Rue de la Roquette", "Königstraße", "High Street", "Main Street",
+    };
+    
+    private SamplePlaces() {
+        // Static helpers only
+    }
+    
+    /**
+     * Generate places spread over roughly 50 x 50 km around the center.
+     * @param count The number of places
+     * @return The places
+     */
+    static PlaceInfo[] generate(int count) {
+        Random random = new Random(42);
+        PlaceInfo[] places = new PlaceInfo[count];
+        for (int i = 0; i < count; i++) {
+            StringBuilder name = new StringBuilder(pick(random, NAME_WORDS));
+            int extraWords = 1 + random.nextInt(2);
+            for (int w = 0; w < extraWords; w++) {
+                name.append(' ').append(pick(random, NAME_WORDS));
+            }
+            String address = (1 + random.nextInt(200)) + " " + pick(random, STREETS) + ", Paris";
+            String phone = random.nextInt(3) == 0
+                    ? String.format("+33 1 %02d %02d %02d %02d", random.nextInt(100), random.nextInt(100),
+                            random.nextInt(100), random.nextInt(100))
+                    : "";
+            
+            // new String() so equal values are separate objects, as after JSON parsing
+            places[i] = new PlaceInfo(String.valueOf(300_000_000L + i * 37L), new String(name),
+                    CENTER_LAT + (random.nextDouble() - 0.5) * 0.45,
+                    CENTER_LNG + (random.nextDouble() - 0.5) * 0.7,
+                    new String(address), phone, null, false);
+        }
+        return places;
+    }
+    
+    private static String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+}
@@ -0,0 +1,94 @@
+package com.antbear.javaw8.map;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Info window text for one screen of results: building snippets with
+ * {@link PlaceInfo#createSnippet()}, and reading them back with
+ * {@link PlaceSnippet} versus splitting them into lines, as the info
+ * window adapters did before.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SnippetBenchmark {
+    private static final int PLACE_COUNT = 50;
+    
+    private PlaceInfo[] places;
+    private String[] snippets;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        PlaceInfo[] generated = SamplePlaces.generate(PLACE_COUNT);
+        places = new PlaceInfo[PLACE_COUNT];
+        snippets = new String[PLACE_COUNT];
+        for (int i = 0; i < PLACE_COUNT; i++) {
+            // Some places have ratings, as from Google, and a few are sample data
+            PlaceInfo place = generated[i];
+            places[i] = new PlaceInfo(place.getId(), place.getName(), place.getLatitude(), place.getLongitude(),
+                    place.getAddress(), place.getPhoneNumber(), i % 4 == 0 ? 3.5f + (i % 3) * 0.5f : null,
+                    i % 10 == 0);
+            snippets[i] = places[i].createSnippet();
+        }
+    }
+    
+    /**
+     * Build the snippets of places that have not cached one yet.
+     */
+    @Benchmark
+    public void createSnippets(Blackhole blackhole) {
+        for (PlaceInfo place : places) {
+            // A copy, since createSnippet() caches its result
+            PlaceInfo fresh = new PlaceInfo(place.getId(), place.getName(), place.getLatitude(),
+                    place.getLongitude(), place.getAddress(), place.getPhoneNumber(), place.getRating(),
+                    place.isSampleData());
+            blackhole.consume(fresh.createSnippet());
+        }
+    }
+    
+    /**
+     * Read the snippets back in one pass each.
+     */
+    @Benchmark
+    public void parseSnippets(Blackhole blackhole) {
+        for (String snippet : snippets) {
+            blackhole.consume(PlaceSnippet.parse(snippet));
+        }
+    }
+    
+    /**
+     * Read the snippets back by splitting them into lines.
+     */
+    @Benchmark
+    public void splitSnippets(Blackhole blackhole) {
+        for (String snippet : snippets) {
+            String[] lines = snippet.split("\n");
+            String phone = null;
+            String rating = null;
+            boolean sampleData = false;
+            for (String line : lines) {
+                if (line.startsWith("Phone:")) {
+                    phone = line;
+                } else if (line.startsWith("Rating:")) {
+                    rating = line;
+                } else if (line.contains("(Sample Data)")) {
+                    sampleData = true;
+                }
+            }
+            blackhole.consume(lines.length > 0 ? lines[0] : null);
+            blackhole.consume(phone);
+            blackhole.consume(rating);
+            blackhole.consume(sampleData);
+        }
+    }
+}
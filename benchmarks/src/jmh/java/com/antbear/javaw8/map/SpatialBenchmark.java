@@ -0,0 +1,84 @@
+package com.antbear.javaw8.map;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The spatial work of merging search results: deduplicating the batches
+ * of two sources that report mostly the same places, as
+ * {@link FederatedSearch} does, and keeping the nearest places with
+ * {@link PlaceRanker} versus sorting them all by distance.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SpatialBenchmark {
+    private static final int PLACE_COUNT = 2000;
+    private static final int MAX_RESULTS = 50;
+    private static final double DEDUP_DISTANCE_METERS = 50;
+    
+    private PlaceInfo[] places;
+    private PlaceInfo[] otherSource;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        places = SamplePlaces.generate(PLACE_COUNT);
+        
+        // The second source has its own IDs, slightly different positions and some renamed places
+        otherSource = new PlaceInfo[PLACE_COUNT];
+        for (int i = 0; i < PLACE_COUNT; i++) {
+            PlaceInfo place = places[i];
+            String name = i % 5 == 0 ? place.getName().toUpperCase() : place.getName();
+            otherSource[i] = new PlaceInfo("g" + i, name, place.getLatitude() + 0.0001,
+                    place.getLongitude() - 0.0001, place.getAddress(), place.getPhoneNumber(), 4.0f, false);
+        }
+    }
+    
+    /**
+     * Merge both sources, dropping the places reported twice.
+     */
+    @Benchmark
+    public int deduplicate() {
+        PlaceDeduplicator deduplicator = new PlaceDeduplicator(DEDUP_DISTANCE_METERS);
+        int unique = 0;
+        for (int i = 0; i < PLACE_COUNT; i++) {
+            if (deduplicator.add(places[i])) unique++;
+            if (deduplicator.add(otherSource[i])) unique++;
+        }
+        return unique;
+    }
+    
+    /**
+     * Keep the nearest places with a bounded heap.
+     */
+    @Benchmark
+    public PlaceInfo[] rankNearest() {
+        PlaceRanker ranker = new PlaceRanker(SamplePlaces.CENTER_LAT, SamplePlaces.CENTER_LNG,
+                MAX_RESULTS, PlaceRanker.BY_DISTANCE);
+        for (PlaceInfo place : places) {
+            ranker.offer(place);
+        }
+        return ranker.toSortedArray();
+    }
+    
+    /**
+     * Sort every place by great-circle distance and keep the nearest.
+     */
+    @Benchmark
+    public PlaceInfo[] sortAllByDistance() {
+        PlaceInfo[] sorted = places.clone();
+        Arrays.sort(sorted, Comparator.comparingDouble(place -> SearchArea.distanceMeters(
+                SamplePlaces.CENTER_LAT, SamplePlaces.CENTER_LNG, place.getLatitude(), place.getLongitude())));
+        return Arrays.copyOf(sorted, MAX_RESULTS);
+    }
+}
@@ -0,0 +1,124 @@
+package com.antbear.javaw8.map;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading the last results at startup: reading and decoding the whole
+ * stream-encoded file (the previous {@link LastResultsStore} format) versus
+ * mapping a {@link MappedPlaceSnapshot}, until the first marker can be
+ * placed and until every place has been created. The files are in the page
+ * cache, as on a warm start.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class WarmStartBenchmark {
+    @Param({"50", "2000"})
+    public int placeCount;
+    
+    private File streamFile;
+    private File mappedFile;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        PlaceInfo[] places = SamplePlaces.generate(placeCount);
+        MapCameraPosition camera = new MapCameraPosition(SamplePlaces.CENTER_LAT, SamplePlaces.CENTER_LNG, 14);
+        SearchArea area = new SearchArea(SamplePlaces.CENTER_LAT, SamplePlaces.CENTER_LNG, 1500);
+        
+        streamFile = File.createTempFile("last_results", ".bin");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(streamFile)))) {
+            out.writeInt(places.length);
+            for (PlaceInfo place : places) {
+                PlaceInfoCodec.writePlace(out, place);
+            }
+        }
+        
+        mappedFile = File.createTempFile("last_results", ".places");
+        MappedPlaceSnapshot.write(mappedFile, camera, places, area);
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        streamFile.delete();
+        mappedFile.delete();
+    }
+    
+    /**
+     * Read and decode the whole stream file, as before: nothing can be drawn until it is done.
+     */
+    @Benchmark
+    public PlaceInfo[] decodeStream() throws IOException {
+        byte[] data = Files.readAllBytes(streamFile.toPath());
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            PlaceInfo[] places = new PlaceInfo[in.readInt()];
+            for (int i = 0; i < places.length; i++) {
+                places[i] = PlaceInfoCodec.readPlace(in);
+            }
+            return places;
+        }
+    }
+    
+    /**
+     * Map the snapshot and create the first place, which is all the first marker needs.
+     */
+    @Benchmark
+    public PlaceInfo mapFirstPlace() throws IOException {
+        return MappedPlaceSnapshot.open(mappedFile).get(0);
+    }
+    
+    /**
+     * Map the snapshot and create every place, as once all markers are attached.
+     */
+    @Benchmark
+    public PlaceInfo[] mapAllPlaces() throws IOException {
+        return MappedPlaceSnapshot.open(mappedFile).asList().toArray(new PlaceInfo[0]);
+    }
+    
+    /**
+     * Check that both files hold the same places.
+     */
+    public static void main(String[] args) throws IOException {
+        WarmStartBenchmark benchmark = new WarmStartBenchmark();
+        benchmark.placeCount = 2000;
+        benchmark.setUp();
+        try {
+            PlaceInfo[] decoded = benchmark.decodeStream();
+            PlaceInfo[] mapped = benchmark.mapAllPlaces();
+            Arrays.sort(decoded, (a, b) -> a.getId().compareTo(b.getId()));
+            Arrays.sort(mapped, (a, b) -> a.getId().compareTo(b.getId()));
+            for (int i = 0; i < decoded.length; i++) {
+                if (!decoded[i].getId().equals(mapped[i].getId())
+                        || !decoded[i].getName().equals(mapped[i].getName())
+                        || !decoded[i].getAddress().equals(mapped[i].getAddress())
+                        || !decoded[i].getPhoneNumber().equals(mapped[i].getPhoneNumber())
+                        || decoded[i].getLatitude() != mapped[i].getLatitude()) {
+                    throw new IllegalStateException("Mismatch at " + decoded[i].getId());
+                }
+            }
+            System.out.println(decoded.length + " places match; stream file " + benchmark.streamFile.length()
+                    + " bytes, mapped file " + benchmark.mappedFile.length() + " bytes");
+        } finally {
+            benchmark.tearDown();
+        }
+    }
+}
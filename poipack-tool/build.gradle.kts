@@ -0,0 +1,48 @@
+plugins {
+    id("java")
+    id("application")
+}
+
+// Pure-Java sources from the app's map package, compiled for the host JVM
+val sharedMapSources = listOf(
+    "MortonOrder.java",
+    "OverpassParser.java",
+    "PlaceInfo.java",
+    "PlaceInfoCodec.java",
+    "PlaceTable.java",
+    "PoiPack.java",
+    "SearchArea.java",
+    "StringDictionary.java",
+)
+
+// The tool's own sources in src/main/java
+val toolSources = listOf(
+    "OsmXmlExtract.java",
+    "PoiPackTool.java",
+)
+
+sourceSets {
+    main {
+        java {
+            srcDir("../app/src/main/java")
+            (sharedMapSources + toolSources).forEach { include("com/antbear/javaw8/map/$it") }
+        }
+    }
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+dependencies {
+    implementation("com.google.code.gson:gson:2.10.1")
+}
+
+tasks.withType<JavaCompile> {
+    options.encoding = "UTF-8"
+}
+
+application {
+    mainClass.set("com.antbear.javaw8.map.PoiPackTool")
+}
@@ -0,0 +1,151 @@
+package com.antbear.javaw8.map;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Streaming reader for OSM XML extracts (as written by osmium, osmosis or
+ * Overpass with {@code [out:xml]}). Keeps the nodes carrying one tag, mapped
+ * to places the same way as {@link OverpassParser}. PBF extracts can be
+ * converted first with {@code osmium cat extract.osm.pbf -o extract.osm}.
+ */
+final class OsmXmlExtract {
+    private final List<PlaceInfo> places = new ArrayList<>();
+    private String osmTimestamp;
+    private SearchArea bounds;
+    
+    private OsmXmlExtract() {
+    }
+    
+    /**
+     * Read the matching nodes of an extract.
+     *
+     * @param input The XML document
+     * @param tagKey Key of the tag places must have (e.g. "amenity")
+     * @param tagValue Value of the tag (e.g. "cafe")
+     * @return The extract
+     * @throws XMLStreamException If the document is not valid XML
+     */
+    static OsmXmlExtract read(InputStream input, String tagKey, String tagValue) throws XMLStreamException {
+        OsmXmlExtract extract = new OsmXmlExtract();
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        XMLStreamReader xml = factory.createXMLStreamReader(input);
+        
+        String id = null;
+        double lat = Double.NaN;
+        double lon = Double.NaN;
+        boolean matches = false;
+        String name = "Unnamed Place";
+        String street = "";
+        String houseNumber = "";
+        String city = "";
+        String phone = "";
+        
+        while (xml.hasNext()) {
+            int event = xml.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                switch (xml.getLocalName()) {
+                    case "osm":
+                        // Replication timestamp written by osmium and osmosis
+                        if (xml.getAttributeValue(null, "timestamp") != null) {
+                            extract.osmTimestamp = xml.getAttributeValue(null, "timestamp");
+                        }
+                        break;
+                    case "meta":
+                        // Data timestamp written by Overpass
+                        if (xml.getAttributeValue(null, "osm_base") != null) {
+                            extract.osmTimestamp = xml.getAttributeValue(null, "osm_base");
+                        }
+                        break;
+                    case "bounds":
+                        extract.bounds = inscribedArea(
+                                Double.parseDouble(xml.getAttributeValue(null, "minlat")),
+                                Double.parseDouble(xml.getAttributeValue(null, "minlon")),
+                                Double.parseDouble(xml.getAttributeValue(null, "maxlat")),
+                                Double.parseDouble(xml.getAttributeValue(null, "maxlon")));
+                        break;
+                    case "node":
+                        id = xml.getAttributeValue(null, "id");
+                        lat = Double.parseDouble(xml.getAttributeValue(null, "lat"));
+                        lon = Double.parseDouble(xml.getAttributeValue(null, "lon"));
+                        matches = false;
+                        name = "Unnamed Place";
+                        street = "";
+                        houseNumber = "";
+                        city = "";
+                        phone = "";
+                        break;
+                    case "tag":
+                        if (id == null) break;
+                        String key = xml.getAttributeValue(null, "k");
+                        String value = xml.getAttributeValue(null, "v");
+                        if (tagKey.equals(key) && tagValue.equals(value)) {
+                            matches = true;
+                        }
+                        switch (key) {
+                            case "name":
+                                name = value;
+                                break;
+                            case "addr:street":
+                                street = value;
+                                break;
+                            case "addr:housenumber":
+                                houseNumber = value;
+                                break;
+                            case "addr:city":
+                                city = value;
+                                break;
+                            case "phone":
+                                phone = value;
+                                break;
+                            default:
+                                break;
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT && "node".equals(xml.getLocalName())) {
+                if (matches) {
+                    extract.places.add(new PlaceInfo(id, name, lat, lon,
+                            OverpassParser.formatAddress(street, houseNumber, city), phone, null, false));
+                }
+                id = null;
+            }
+        }
+        xml.close();
+        return extract;
+    }
+    
+    // Getters
+    List<PlaceInfo> getPlaces() { return places; }
+    
+    /**
+     * @return The OSM data timestamp of the extract, or null if it has none
+     */
+    String getOsmTimestamp() { return osmTimestamp; }
+    
+    /**
+     * @return The largest circle inside the extract's bounds, or null if it has none
+     */
+    SearchArea getBounds() { return bounds; }
+    
+    /**
+     * Get the largest circle inside a bounding box.
+     */
+    static SearchArea inscribedArea(double minLat, double minLng, double maxLat, double maxLng) {
+        double centerLat = (minLat + maxLat) / 2;
+        double centerLng = (minLng + maxLng) / 2;
+        double radius = Math.min(
+                SearchArea.distanceMeters(centerLat, centerLng, minLat, centerLng),
+                SearchArea.distanceMeters(centerLat, centerLng, centerLat, minLng));
+        return new SearchArea(centerLat, centerLng, radius);
+    }
+}
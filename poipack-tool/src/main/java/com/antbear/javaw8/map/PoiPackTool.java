@@ -0,0 +1,139 @@
+package com.antbear.javaw8.map;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * Builds {@link PoiPack} files for the app's assets or for sideloading.
+ * <p>
+ * Input is either an Overpass JSON response ({@code .json}), whose query
+ * already selected the category, e.g.
+ * {@code [out:json];node["amenity"="cafe"](48.81,2.25,48.91,2.42);out;},
+ * or an OSM XML extract ({@code .osm} or {@code .osm.gz}), from which the
+ * nodes with the category tag are kept.
+ * <pre>
+ * poipack-tool --category amenity=cafe --region paris --output paris-cafe.pack
+ *              [--area LAT,LNG,RADIUS] [--timestamp 2024-05-01T00:00:00Z] INPUT
+ * </pre>
+ * The app trusts the pack to hold every place of the category inside the
+ * area, so it must not reach beyond the data: by default it is the largest
+ * circle inside the extract's bounds, or inside the places' bounding box.
+ * The timestamp defaults to the one in the input and is required, as the
+ * app refreshes the area with places changed since then.
+ */
+public final class PoiPackTool {
+    private PoiPackTool() {
+    }
+    
+    public static void main(String[] args) throws IOException, XMLStreamException {
+        Map<String, String> options = new LinkedHashMap<>();
+        String input = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].startsWith("--") && i + 1 < args.length) {
+                options.put(args[i].substring(2), args[++i]);
+            } else {
+                input = args[i];
+            }
+        }
+        String category = options.get("category");
+        String region = options.get("region");
+        String output = options.get("output");
+        if (input == null || category == null || !category.contains("=") || region == null || output == null) {
+            System.err.println("Usage: poipack-tool --category KEY=VALUE --region NAME --output FILE"
+                    + " [--area LAT,LNG,RADIUS] [--timestamp ISO8601] INPUT.json|INPUT.osm[.gz]");
+            System.exit(2);
+            return;
+        }
+        
+        List<PlaceInfo> places = new ArrayList<>();
+        String[] osmTimestamp = new String[1];
+        SearchArea area = null;
+        try (InputStream in = openInput(new File(input))) {
+            if (input.replaceFirst("\\.gz$", "").endsWith(".json")) {
+                Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+                OverpassParser.parse(reader, new OverpassParser.PlaceCallback() {
+                    @Override
+                    public boolean onPlace(PlaceInfo place) {
+                        places.add(place);
+                        return true;
+                    }
+                    
+                    @Override
+                    public void onDataTimestamp(String timestamp) {
+                        osmTimestamp[0] = timestamp;
+                    }
+                });
+            } else {
+                String[] tag = category.split("=", 2);
+                OsmXmlExtract extract = OsmXmlExtract.read(in, tag[0], tag[1]);
+                places.addAll(extract.getPlaces());
+                osmTimestamp[0] = extract.getOsmTimestamp();
+                area = extract.getBounds();
+            }
+        }
+        
+        if (options.containsKey("timestamp")) {
+            osmTimestamp[0] = options.get("timestamp");
+        }
+        if (osmTimestamp[0] == null) {
+            fail("The input has no OSM data timestamp; pass --timestamp");
+        }
+        if (places.isEmpty()) {
+            fail("No places found in " + input);
+        }
+        if (options.containsKey("area")) {
+            String[] parts = options.get("area").split(",");
+            area = new SearchArea(Double.parseDouble(parts[0]), Double.parseDouble(parts[1]),
+                    Double.parseDouble(parts[2]));
+        } else if (area == null) {
+            area = boundingArea(places);
+        }
+        
+        File outputFile = new File(output);
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(outputFile))) {
+            PoiPack.write(out, region, category, osmTimestamp[0], System.currentTimeMillis(), area,
+                    places.toArray(new PlaceInfo[0]));
+        }
+        System.out.printf("Wrote %d places to %s (%d bytes); complete within %.0f m of %.5f,%.5f as of %s%n",
+                places.size(), outputFile, outputFile.length(), area.getRadiusMeters(),
+                area.getLatitude(), area.getLongitude(), osmTimestamp[0]);
+    }
+    
+    private static InputStream openInput(File file) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(file), 64 * 1024);
+        return file.getName().endsWith(".gz") ? new GZIPInputStream(in, 64 * 1024) : in;
+    }
+    
+    private static SearchArea boundingArea(List<PlaceInfo> places) {
+        double minLat = Double.MAX_VALUE, maxLat = -Double.MAX_VALUE;
+        double minLng = Double.MAX_VALUE, maxLng = -Double.MAX_VALUE;
+        for (PlaceInfo place : places) {
+            minLat = Math.min(minLat, place.getLatitude());
+            maxLat = Math.max(maxLat, place.getLatitude());
+            minLng = Math.min(minLng, place.getLongitude());
+            maxLng = Math.max(maxLng, place.getLongitude());
+        }
+        return OsmXmlExtract.inscribedArea(minLat, minLng, maxLat, maxLng);
+    }
+    
+    private static void fail(String message) {
+        System.err.println(message);
+        System.exit(1);
+    }
+}
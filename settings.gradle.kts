@@ -24,3 +24,5 @@ dependencyResolutionManagement {
 
 rootProject.name = "JavaW8"
 include(":app")
+include(":benchmarks")
+include(":poipack-tool")